@@ -6,9 +6,20 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks live in their own source set and run with `./gradlew jmh`,
+// benchmarks against the embedded XMPP server use it from the test sources
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.testImplementation.get())
+
 dependencies {
+    // No smack-extensions at runtime, Smack would instantiate all of its providers and managers on start-up
     implementation(libs.smack)
-    implementation(libs.smack.extensions)
     implementation(libs.smack.tcp)
 
     testImplementation(libs.windowlicker)
@@ -16,6 +27,9 @@ dependencies {
     testImplementation(libs.smack.tcp)
     testImplementation(libs.smack.im)
     testImplementation(libs.smack.extensions)
+
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
 }
 
 testing {
@@ -56,6 +70,72 @@ tasks.withType<JavaCompile> {
     options.compilerArgs.addAll(arrayOf("-Xlint:all", "-Xlint:-serial"))
 }
 
+// The installed sniper starts with an AppCDS archive next to its jars, `./gradlew appCdsArchive` creates it
+// from a training run. Without it, the JVM creates the archive when the sniper exits for the first time.
+val appCdsArchiveName = "sniper.jsa"
+val installedLibDir = tasks.installDist.map { it.destinationDir.resolve("lib") }
+val installedAppCdsArchive = installedLibDir.map { it.resolve(appCdsArchiveName) }
+// The same jars in the same order as in the start scripts, CDS only maps the archive for a matching classpath
+val installedClasspath = installedLibDir.map { libDir ->
+    tasks.startScripts.get().classpath!!.joinToString(File.pathSeparator) { libDir.resolve(it.name).path }
+}
+
+tasks.startScripts {
+    defaultJvmOpts = listOf("-XX:SharedArchiveFile=APP_HOME_PLACEHOLDER/lib/$appCdsArchiveName", "-XX:+AutoCreateSharedArchive")
+    // DEFAULT_JVM_OPTS isn't expanded when the script runs, so the installation directory goes in when it is assigned
+    doLast {
+        unixScript.writeText(unixScript.readText().replace("APP_HOME_PLACEHOLDER", "'\"\$APP_HOME\"'"))
+        windowsScript.writeText(windowsScript.readText().replace("APP_HOME_PLACEHOLDER", "%APP_HOME%"))
+    }
+}
+
+// Pass -Pcds.training=swing to train the Swing mode instead of the headless one
+tasks.register<JavaExec>("appCdsArchive") {
+    group = "distribution"
+    description = "Creates the AppCDS archive of the installed sniper from a training run."
+    dependsOn(tasks.installDist)
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass = "me.forketyfork.growing.StartupTraining"
+    outputs.file(installedAppCdsArchive)
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(installedAppCdsArchive.get().path, installedClasspath.get(),
+                providers.gradleProperty("cds.training").getOrElse("headless"))
+    })
+}
+
+// Pass a benchmark name pattern with -Pjmh.includes=... and extra JMH options with -Pjmh.args="..."
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    providers.gradleProperty("jmh.args").orNull?.let { args(it.split(" ")) }
+    args(providers.gradleProperty("jmh.includes").getOrElse(".*"))
+    // StartupBenchmark launches the installed sniper, JMH passes these on to its forks
+    dependsOn(tasks.installDist)
+    jvmArgumentProviders.add(CommandLineArgumentProvider {
+        listOf("-Dsniper.startup.classpath=${installedClasspath.get()}",
+                "-Dsniper.startup.archive=${installedAppCdsArchive.get().path}")
+    })
+}
+
 application {
     mainClass = "me.forketyfork.growing.Main"
 }
+
+// The auction house for load tests is installed next to the sniper, `bin/auction-house <hostname> <username> <password> <item>...`
+val auctionHouseStartScripts = tasks.register<CreateStartScripts>("auctionHouseStartScripts") {
+    description = "Creates the start scripts of the auction house."
+    applicationName = "auction-house"
+    mainClass = "me.forketyfork.growing.auctionhouse.XmppAuctionHouse"
+    classpath = tasks.startScripts.get().classpath
+    outputDir = layout.buildDirectory.dir("auctionHouseScripts").get().asFile
+}
+
+distributions.main {
+    contents {
+        from(auctionHouseStartScripts) {
+            into("bin")
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package me.forketyfork.growing;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching the headless sniper to its JOIN arriving at the auction, with and without
+ * the AppCDS archive. Without it the JVM still uses the default CDS archive of the JDK classes. Covers the JVM start-up the archive is meant to shorten, the Smack
+ * initialization and the login.
+ * Run with {@code ./gradlew appCdsArchive jmh -Pjmh.includes=StartupBenchmark},
+ * the Gradle task passes the classpath of the installed sniper and the archive as system properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    public static final String CLASSPATH_PROPERTY = "sniper.startup.classpath";
+    public static final String ARCHIVE_PROPERTY = "sniper.startup.archive";
+
+    @Param({"false", "true"})
+    public boolean appCds;
+
+    private final List<String> jvmOptions = new ArrayList<>();
+    private String classpath;
+    private FakeAuctionServer auction;
+    private Process sniper;
+
+    @Setup(Level.Trial)
+    public void startAuction() throws Exception {
+        classpath = System.getProperty(CLASSPATH_PROPERTY);
+        if (classpath == null) {
+            throw new IllegalStateException("Set " + CLASSPATH_PROPERTY + " to the jars of the installed sniper");
+        }
+        jvmOptions.add("-D" + Main.HEADLESS_SINK_PROPERTY + "=log");
+        if (appCds) {
+            Path archive = Path.of(System.getProperty(ARCHIVE_PROPERTY, ""));
+            if (!Files.isRegularFile(archive)) {
+                throw new IllegalStateException("No AppCDS archive at '" + archive + "', run ./gradlew appCdsArchive first");
+            }
+            // Fail instead of silently running without the archive, e.g. when the classpath doesn't match
+            jvmOptions.add("-XX:SharedArchiveFile=" + archive);
+            jvmOptions.add("-Xshare:on");
+        }
+        auction = new FakeAuctionServer(StartupTraining.TRAINING_ITEM_ID);
+        auction.startSellingItem();
+    }
+
+    @Benchmark
+    public void launchToJoin() throws Exception {
+        sniper = SniperProcess.start(classpath, StartupTraining.TRAINING_ITEM_ID, jvmOptions);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopSniper() throws InterruptedException {
+        sniper.destroyForcibly().waitFor();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopAuction() {
+        auction.stop();
+        FakeAuctionServer.stopEmbeddedServer();
+    }
+}
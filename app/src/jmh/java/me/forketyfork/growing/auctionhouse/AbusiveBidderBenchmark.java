@@ -0,0 +1,101 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.Main;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Commands per second the {@link AuctionHouseEngine} processes when nine out of ten come from bots:
+ * a few bot names bid far below the price as fast as they can, and honest bidders from a large pool
+ * of names bid rising prices. With the {@link BidRateLimiter} the bots are stopped by their rate, without it
+ * only by the stale bid check. Every operation waits until all commands passed in so far have been processed,
+ * like {@link AuctionHouseEngineBenchmark}. Run with {@code ./gradlew jmh -Pjmh.includes=AbusiveBidderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AbusiveBidderBenchmark {
+
+    private static final int ITEMS = 1_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final int PRICE_STEPS = 1_000;
+    private static final int BOTS = 16;
+    private static final int HONEST_BIDDERS = 100_000;
+
+    @Param({"false", "true"})
+    public boolean rateLimited;
+
+    private ExecutorService workers;
+    private RealTimeClock clock;
+    private AuctionHouseEngine engine;
+    private final String[] itemIds = new String[ITEMS];
+    private final String[] bots = new String[BOTS];
+    private final String[] honestBidders = new String[HONEST_BIDDERS];
+    private final String[] bids = new String[PRICE_STEPS];
+    private final String staleBid = String.format(Main.BID_COMMAND_FORMAT, 0);
+    private final AtomicLong passedCommands = new AtomicLong();
+    private final LongAdder events = new LongAdder();
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void openAuctions() {
+        workers = AuctionHouseEngine.newWorkerPool(Runtime.getRuntime().availableProcessors());
+        clock = new RealTimeClock();
+        BidRateLimiter rateLimiter = rateLimited ? new BidRateLimiter(clock, 10, 20) : null;
+        engine = new AuctionHouseEngine(workers, clock, (itemId, bidder, message) -> events.increment(),
+                null, rateLimiter);
+        for (int i = 0; i < ITEMS; i++) {
+            itemIds[i] = "item-" + i;
+            // Above the stale bid from the start
+            engine.openAuction(itemIds[i], 10, 1);
+        }
+        for (int i = 0; i < BOTS; i++) {
+            bots[i] = "bot-" + i + "@localhost";
+        }
+        for (int i = 0; i < HONEST_BIDDERS; i++) {
+            honestBidders[i] = "bidder-" + i + "@localhost";
+        }
+        for (int i = 0; i < PRICE_STEPS; i++) {
+            bids[i] = String.format(Main.BID_COMMAND_FORMAT, 100 + i * 10);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void bid(Producer producer) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int n = producer.next++;
+            String itemId = itemIds[n % ITEMS];
+            if (n % 10 == 0) {
+                int honest = n / 10;
+                engine.process(itemId, honestBidders[honest % HONEST_BIDDERS], bids[(honest / ITEMS) % PRICE_STEPS]);
+            } else {
+                engine.process(itemId, bots[n % BOTS], staleBid);
+            }
+        }
+        long passed = passedCommands.addAndGet(BATCH_SIZE);
+        while (engine.getProcessedCommandCount() < passed) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopWorkers() {
+        System.out.println("Events sent: " + events.sum() + ", stale bids: " + engine.getStaleBidCount()
+                + ", rate limited bids: " + engine.getRateLimitedBidCount());
+        workers.shutdownNow();
+        clock.close();
+    }
+}
@@ -0,0 +1,81 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.Main;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bids per second the {@link AuctionHouseEngine} processes, from several producer threads
+ * spread over many items. Every operation waits until all bids queued so far have been processed,
+ * so the score is the processing rate and not only the queueing rate. The target is 100k bids per second.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=AuctionHouseEngineBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AuctionHouseEngineBenchmark {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int PRICE_STEPS = 1_000;
+
+    @Param({"100", "10000"})
+    public int items;
+
+    private ExecutorService workers;
+    private RealTimeClock clock;
+    private AuctionHouseEngine engine;
+    private String[] itemIds;
+    private final String[] bids = new String[PRICE_STEPS];
+    private final AtomicLong queuedBids = new AtomicLong();
+    private final LongAdder events = new LongAdder();
+
+    @State(Scope.Thread)
+    public static class Bidder {
+        final String name = "bidder-" + Thread.currentThread().threadId() + "@localhost";
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void openAuctions() {
+        workers = AuctionHouseEngine.newWorkerPool(Runtime.getRuntime().availableProcessors());
+        clock = new RealTimeClock();
+        engine = new AuctionHouseEngine(workers, clock, (itemId, bidder, message) -> events.increment());
+        itemIds = new String[items];
+        for (int i = 0; i < items; i++) {
+            itemIds[i] = "item-" + i;
+            engine.openAuction(itemIds[i], 0, 1);
+        }
+        for (int i = 0; i < PRICE_STEPS; i++) {
+            // Once the prices wrap around most bids are too low and only answered to their bidder
+            bids[i] = String.format(Main.BID_COMMAND_FORMAT, i * 10);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void bid(Bidder bidder) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int n = bidder.next++;
+            engine.process(itemIds[n % items], bidder.name, bids[(n / items) % PRICE_STEPS]);
+        }
+        long queued = queuedBids.addAndGet(BATCH_SIZE);
+        while (engine.getProcessedCommandCount() < queued) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopWorkers() {
+        System.out.println("Events sent: " + events.sum());
+        workers.shutdownNow();
+        clock.close();
+    }
+}
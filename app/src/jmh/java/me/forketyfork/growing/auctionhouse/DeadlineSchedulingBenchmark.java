@@ -0,0 +1,77 @@
+package me.forketyfork.growing.auctionhouse;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scheduling one auction deadline and cancelling another with 1M deadlines pending,
+ * in the {@link TimingWheel} and in a {@link ScheduledThreadPoolExecutor} that removes cancelled tasks.
+ * Deadlines are spread over an hour, the pending count stays the same during the run.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=DeadlineSchedulingBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DeadlineSchedulingBenchmark {
+
+    private static final int PENDING = 1_000_000;
+    private static final long SPAN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Runnable CLOSE = () -> {
+    };
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private TimingWheel wheel;
+    private TimingWheel.Timeout[] timeouts;
+
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?>[] futures;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void schedulePendingDeadlines() {
+        wheel = new TimingWheel(0);
+        timeouts = new TimingWheel.Timeout[PENDING];
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        futures = new ScheduledFuture<?>[PENDING];
+        for (int i = 0; i < PENDING; i++) {
+            long delay = 1 + random.nextLong(SPAN_MILLIS);
+            timeouts[i] = wheel.schedule(delay, CLOSE);
+            futures[i] = executor.schedule(CLOSE, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Benchmark
+    public TimingWheel.Timeout timingWheel() {
+        int i = next();
+        timeouts[i].cancel();
+        return timeouts[i] = wheel.schedule(1 + random.nextLong(SPAN_MILLIS), CLOSE);
+    }
+
+    @Benchmark
+    public ScheduledFuture<?> scheduledThreadPoolExecutor() {
+        int i = next();
+        futures[i].cancel(false);
+        return futures[i] = executor.schedule(CLOSE, 1 + random.nextLong(SPAN_MILLIS), TimeUnit.MILLISECONDS);
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == PENDING ? 0 : i + 1;
+        return i;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package me.forketyfork.growing.auctionhouse;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Events per second the {@link EventHistory} appends and scans, and the bytes an event takes.
+ * The history holds a realistic mix: every bid is followed by a price about half of the time,
+ * bidders come from a small set and times advance by a few milliseconds. A scan reads back
+ * a tenth of one item's history from the middle. Run with {@code ./gradlew jmh -Pjmh.includes=EventHistoryBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventHistoryBenchmark {
+
+    private static final int ITEMS = 100;
+    private static final int EVENTS_PER_ITEM = 100_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final String[] BIDDERS = {"sniper-1@localhost", "sniper-2@localhost", "sniper-3@localhost",
+            "sniper-4@localhost", "sniper-5@localhost", "sniper-6@localhost", "sniper-7@localhost"};
+
+    private EventHistory history;
+    // A fresh one every iteration, so appending doesn't grow it without bounds
+    private EventHistory appendHistory;
+    private EventHistory.ItemLog appendLog;
+    private long appendMillis;
+    private int appendPrice;
+    private int nextItem;
+
+    @Setup(Level.Trial)
+    public void fillHistory() {
+        history = EventHistory.inMemory();
+        for (int item = 0; item < ITEMS; item++) {
+            EventHistory.ItemLog log = history.log("item-" + item);
+            int price = 1000;
+            for (int i = 0; i < EVENTS_PER_ITEM; i += 2) {
+                String bidder = BIDDERS[i % BIDDERS.length];
+                price += i % 4 == 0 ? 10 : 0;
+                log.append(HistoryEvent.BID, i * 3L, price, 0, bidder);
+                log.append(HistoryEvent.PRICE, i * 3L, price, 10, bidder);
+            }
+        }
+        System.out.println("Bytes per event: " + history.bytesPerEvent()
+                + ", allocated: " + history.getAllocatedBytes() + " for " + history.getEventCount() + " events");
+    }
+
+    @Setup(Level.Iteration)
+    public void newAppendHistory() throws IOException {
+        if (appendHistory != null) {
+            appendHistory.close();
+        }
+        appendHistory = EventHistory.inMemory();
+        appendLog = appendHistory.log("item-1");
+        appendMillis = 0;
+        appendPrice = 0;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void append() {
+        EventHistory.ItemLog log = appendLog;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            appendMillis += i & 3;
+            appendPrice += i & 1;
+            log.append(HistoryEvent.BID, appendMillis, appendPrice, 0, BIDDERS[i % BIDDERS.length]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_ITEM / 10)
+    public void scan(Blackhole blackhole) {
+        String itemId = "item-" + (nextItem++ % ITEMS);
+        // The middle tenth of the item's times
+        long from = EVENTS_PER_ITEM * 3L * 45 / 100;
+        long to = from + EVENTS_PER_ITEM * 3L / 10 - 1;
+        history.scan(itemId, from, to, (type, millis, price, increment, bidder) -> blackhole.consume(price));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        history.close();
+        appendHistory.close();
+    }
+}
@@ -0,0 +1,75 @@
+package me.forketyfork.growing.auctionsniper.bidding;
+
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.auctionsniper.AuctionEventListener.PriceSource;
+import me.forketyfork.growing.auctionsniper.AuctionSniper;
+import me.forketyfork.growing.auctionsniper.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the bidding decision for a single auction and for a price tick across {@link #AUCTION_COUNT} auctions,
+ * and of the whole sniper reaction to a price, which includes publishing the new snapshot.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=BiddingStrategyBenchmark -Pjmh.args="-prof gc"}
+ * to check that the decisions don't allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BiddingStrategyBenchmark {
+
+    private static final int AUCTION_COUNT = 1000;
+
+    private final BiddingStrategy[] strategies = new BiddingStrategy[AUCTION_COUNT];
+    private BiddingStrategy strategy;
+    private AuctionSniper sniper;
+    private int price = 1000;
+
+    @Setup(Level.Trial)
+    public void createStrategies() {
+        for (int i = 0; i < AUCTION_COUNT; i++) {
+            // Mix limited and unlimited items, so the call site sees several strategy classes
+            strategies[i] = (i % 2 == 0 ? Item.of("item-" + i) : new Item("item-" + i, 5000 + i, 1 + i % 3))
+                    .biddingStrategy();
+        }
+        strategy = new Item("item", 5000, 2).biddingStrategy();
+        Auction auction = new Auction() {
+            @Override
+            public void join() {
+            }
+
+            @Override
+            public void bid(int amount) {
+            }
+        };
+        sniper = new AuctionSniper(new Item("item", Item.NO_STOP_PRICE, 1), auction, snapshot -> {
+        });
+    }
+
+    @Benchmark
+    public int decideOne() {
+        price = price >= 4000 ? 1000 : price + 1;
+        return strategy.bidFor(price, 25);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AUCTION_COUNT)
+    public long decidePriceTick() {
+        price = price >= 4000 ? 1000 : price + 1;
+        long total = 0;
+        for (BiddingStrategy auctionStrategy : strategies) {
+            total += auctionStrategy.bidFor(price, 25);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void sniperReactsToPrice() {
+        price = price >= 4000 ? 1000 : price + 1;
+        sniper.currentPrice(price, 25, PriceSource.FROM_OTHER_BIDDER);
+    }
+}
@@ -0,0 +1,89 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+import me.forketyfork.growing.Main;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the SOL codec with the {@code String.format} and {@code split}-based baseline,
+ * and the binary SOL encoding with the textual one. The sizes of a PRICE event are printed once per fork.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=SolCodecBenchmark -Pjmh.args="-prof gc"} to see allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolCodecBenchmark {
+
+    private final String priceEvent = String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder");
+    private final SolEvent event = new SolEvent();
+    private final SolEncoder encoder = new SolEncoder();
+    private final byte[] bytes = new byte[64];
+    private final byte[] binaryPriceEvent = new byte[64];
+    private int binaryPriceEventLength;
+    private int price = 1000;
+
+    @Setup(Level.Trial)
+    public void encodeBinaryEvent() {
+        binaryPriceEventLength = SolBinary.encodePrice(1000, 98, "other bidder", binaryPriceEvent, 0);
+        int textLength = priceEvent.getBytes(StandardCharsets.UTF_8).length;
+        int base64Length = Base64.getEncoder().encodeToString(new byte[binaryPriceEventLength]).length();
+        System.out.printf("PRICE event: text %d bytes (%d as a body element), binary %d bytes (%d as a base64 payload element)%n",
+                textLength, textLength + "<body></body>".length(),
+                binaryPriceEventLength, base64Length + "<sol xmlns='urn:xmpp:sol:binary' version='1'></sol>".length());
+    }
+
+    @Benchmark
+    public String encodeBidWithFormat() {
+        return String.format(Main.BID_COMMAND_FORMAT, price++);
+    }
+
+    @Benchmark
+    public int encodeBidWithEncoder() {
+        encoder.encodeBid(price++);
+        return encoder.writeTo(bytes, 0);
+    }
+
+    @Benchmark
+    public void decodePriceWithSplit(Blackhole blackhole) {
+        Map<String, String> fields = new HashMap<>();
+        for (String element : priceEvent.split(";")) {
+            String[] pair = element.split(":");
+            if (pair.length == 2) {
+                fields.put(pair[0].trim(), pair[1].trim());
+            }
+        }
+        blackhole.consume(Integer.parseInt(fields.get("CurrentPrice")));
+        blackhole.consume(Integer.parseInt(fields.get("Increment")));
+        blackhole.consume(fields.get("Bidder"));
+    }
+
+    @Benchmark
+    public int encodeBidBinary() {
+        return SolBinary.encodeBid(price++, bytes, 0);
+    }
+
+    @Benchmark
+    public void decodePriceBinary(Blackhole blackhole) {
+        SolBinary.decodeEvent(binaryPriceEvent, 0, binaryPriceEventLength, event);
+        blackhole.consume(event.getCurrentPrice());
+        blackhole.consume(event.getIncrement());
+        blackhole.consume(event.isFromBidder("sniper"));
+    }
+
+    @Benchmark
+    public void decodePriceWithDecoder(Blackhole blackhole) {
+        SolDecoder.decode(priceEvent, event);
+        blackhole.consume(event.getCurrentPrice());
+        blackhole.consume(event.getIncrement());
+        blackhole.consume(event.isFromBidder("sniper"));
+    }
+}
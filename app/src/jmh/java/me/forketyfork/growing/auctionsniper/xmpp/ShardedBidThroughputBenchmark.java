@@ -0,0 +1,122 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.Main;
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.xmpp.SimpleXmppServer;
+import me.forketyfork.growing.xmpp.XmppServerConfig;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.filter.MessageTypeFilter;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.parts.Resourcepart;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.SocketFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate bid throughput of a {@link ShardedAuctionHouse} against the embedded {@link SimpleXmppServer}
+ * for growing shard counts. Every bid goes to one of {@link #AUCTION_COUNT} connected auctions,
+ * the number of bids the auctions actually received is printed after each trial.
+ * The {@code loopback} transport connects through in-memory sockets, which leaves out the network stack.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=ShardedBidThroughputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ShardedBidThroughputBenchmark {
+
+    private static final int AUCTION_COUNT = 32;
+    private static final String SNIPER_LOGIN = "sniper";
+    private static final String PASSWORD = "password";
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"tcp", "loopback"})
+    public String transport;
+
+    private SimpleXmppServer server;
+    private final List<AbstractXMPPConnection> connections = new ArrayList<>();
+    private final List<Auction> auctions = new ArrayList<>();
+    private final LongAdder receivedBids = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void startAuctions() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        XmppServerConfig.Builder config = XmppServerConfig.builder()
+                .port(port)
+                .serverName("localhost")
+                .socketTimeoutMs(1000)
+                .shutdownTimeoutMs(5000)
+                .maxConnections(AUCTION_COUNT + shards);
+        config.addUser(SNIPER_LOGIN, PASSWORD);
+        for (int i = 0; i < AUCTION_COUNT; i++) {
+            config.addUser(String.format(Main.ITEM_ID_AS_LOGIN, itemId(i)), PASSWORD);
+        }
+        server = new SimpleXmppServer(config.build());
+        server.start();
+
+        for (int i = 0; i < AUCTION_COUNT; i++) {
+            AbstractXMPPConnection auction = connect(port, String.format(Main.ITEM_ID_AS_LOGIN, itemId(i)), Main.AUCTION_RESOURCE);
+            auction.addSyncStanzaListener(stanza -> receivedBids.increment(), MessageTypeFilter.CHAT);
+        }
+        List<AbstractXMPPConnection> sniperConnections = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            sniperConnections.add(connect(port, SNIPER_LOGIN, shardResource(shard)));
+        }
+        ShardedAuctionHouse auctionHouse = new ShardedAuctionHouse(sniperConnections);
+        for (int i = 0; i < AUCTION_COUNT; i++) {
+            auctions.add(auctionHouse.joinAuction(itemId(i), snapshot -> {
+            }));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopAuctions() {
+        System.out.printf("%d shards over %s: auctions received %d messages%n", shards, transport, receivedBids.sum());
+        connections.forEach(AbstractXMPPConnection::disconnect);
+        server.stop();
+    }
+
+    @Benchmark
+    public void bid() {
+        auctions.get(ThreadLocalRandom.current().nextInt(AUCTION_COUNT)).bid(1098);
+    }
+
+    private AbstractXMPPConnection connect(int port, String login, String resource) throws Exception {
+        AbstractXMPPConnection connection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+                .setHost("localhost")
+                .setXmppDomain("localhost")
+                .setPort(port)
+                .setSecurityMode(ConnectionConfiguration.SecurityMode.disabled)
+                .setCompressionEnabled(false)
+                .setSocketFactory("loopback".equals(transport) ? server.loopbackSocketFactory() : SocketFactory.getDefault())
+                .build());
+        connection.connect();
+        connection.login(login, PASSWORD, Resourcepart.from(resource));
+        connections.add(connection);
+        return connection;
+    }
+
+    private static String shardResource(int shard) {
+        return shard == 0 ? Main.AUCTION_RESOURCE : String.format(Main.SHARD_RESOURCE_FORMAT, shard);
+    }
+
+    private static String itemId(int i) {
+        return "item-" + i;
+    }
+}
@@ -1,96 +1,206 @@
 package me.forketyfork.growing;
 
+import me.forketyfork.growing.auctionsniper.Item;
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+import me.forketyfork.growing.auctionsniper.headless.FinishedAuctions;
+import me.forketyfork.growing.auctionsniper.headless.StatusSinks;
 import me.forketyfork.growing.auctionsniper.ui.MainWindow;
+import me.forketyfork.growing.auctionsniper.xmpp.ShardedAuctionHouse;
 import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.SmackException;
-import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
-import org.jivesoftware.smack.chat2.Chat;
-import org.jivesoftware.smack.chat2.ChatManager;
-import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
-import org.jxmpp.jid.EntityBareJid;
-import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.stringprep.XmppStringprepException;
 
-import javax.swing.*;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
+import javax.net.SocketFactory;
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.jivesoftware.smack.ConnectionConfiguration.SecurityMode;
 
 public class Main {
 
+    private static final Logger logger = Logger.getLogger("Main");
+
     public static final int ARG_HOSTNAME = 0;
     public static final int ARG_USERNAME = 1;
     public static final int ARG_PASSWORD = 2;
+    // the first item, any further arguments are items too, see Item.parse for the limits an item can carry
     public static final int ARG_ITEM_ID = 3;
 
     public static final String AUCTION_RESOURCE = "Auction";
     public static final String ITEM_ID_AS_LOGIN = "auction-%s";
     public static final String AUCTION_ID_FORMAT = ITEM_ID_AS_LOGIN + "@%s/" + AUCTION_RESOURCE;
+    // The auction of an item hosted by an auction house: the item is a resource of the auction house's account
+    public static final String HOSTED_AUCTION_ID_FORMAT = "%s@%s/%s";
 
     // event and command formats
     public static final String REPORT_PRICE_EVENT_FORMAT = "SOLVersion: 1.1; Event: PRICE; CurrentPrice: %d; Increment: %d; Bidder: %s;";
     public static final String BID_COMMAND_FORMAT = "SOLVersion: 1.1; Command: BID; Price: %d;";
     public static final String JOIN_COMMAND_FORMAT = "SOLVersion: 1.1; Command: JOIN;";
-
-    private MainWindow ui;
-
-    @SuppressWarnings("unused")
-    private Chat notToBeGCd;
+    // Optional last field of an event: its number in the sequence of events of the item, counting from 1.
+    // Snipers drop an event numbered at or below one they have seen, and resync when a number is skipped.
+    public static final String EVENT_SEQUENCE_FORMAT = " Seq: %d;";
+    public static final String REPORT_SEQUENCED_PRICE_EVENT_FORMAT = REPORT_PRICE_EVENT_FORMAT + EVENT_SEQUENCE_FORMAT;
+    public static final String SEQUENCED_CLOSE_EVENT_FORMAT = "SOLVersion: 1.1; Event: CLOSE;" + EVENT_SEQUENCE_FORMAT;
+    // Answer to a bid the auction didn't accept, the reason is a SolEvent.RejectionReason
+    public static final String REJECTED_EVENT_FORMAT = "SOLVersion: 1.1; Event: REJECTED; Price: %d; Reason: %s;";
+
+    // System property that runs the sniper without any UI, its value is the status sink spec, see StatusSinks
+    public static final String HEADLESS_SINK_PROPERTY = "sniper.headless";
+    // System property with the number of connections the auctions are spread over, 1 by default
+    public static final String SHARDS_PROPERTY = "sniper.shards";
+    // Resource of shard i > 0, every shard is a session of the sniper's account
+    public static final String SHARD_RESOURCE_FORMAT = AUCTION_RESOURCE + "-%d";
+    // System property with the account of the auction house hosting all items, see HOSTED_AUCTION_ID_FORMAT;
+    // without it every item is an account of its own, see AUCTION_ID_FORMAT
+    public static final String AUCTION_HOUSE_PROPERTY = "sniper.auctionHouse";
+
+    // Creates the sockets of the connections; tests running the sniper in the JVM of the server use in-memory sockets
+    private static volatile SocketFactory socketFactory = SocketFactory.getDefault();
+
+    // Swing classes are only referenced through MainWindow, so the headless mode never loads AWT
+    private final SniperListener sniperListener;
+    // Null in the Swing mode, where the event dispatch thread keeps the JVM running
+    private final FinishedAuctions finishedAuctions;
+
+    private final List<AbstractXMPPConnection> connections = new ArrayList<>();
+
+    private volatile ShardedAuctionHouse auctionHouse;
 
     public Main() throws Exception {
-        startUserInterface();
+        this.sniperListener = MainWindow.showSnipers(this::disconnect);
+        this.finishedAuctions = null;
+    }
+
+    private Main(FinishedAuctions finishedAuctions) {
+        this.sniperListener = finishedAuctions;
+        this.finishedAuctions = finishedAuctions;
     }
 
     public static void main(String... args) throws Exception {
-        Main main = new Main();
-        main.joinAuction(connectTo(args[ARG_HOSTNAME], args[ARG_USERNAME], args[ARG_PASSWORD]), args[ARG_ITEM_ID]);
+        // Connecting takes a few round trips to the server, they overlap with each other and with the UI start-up
+        List<CompletableFuture<AbstractXMPPConnection>> shards = connectShards(
+                args[ARG_HOSTNAME], args[ARG_USERNAME], args[ARG_PASSWORD], Integer.getInteger(SHARDS_PROPERTY, 1));
+        String statusSink = System.getProperty(HEADLESS_SINK_PROPERTY);
+        int auctionCount = Math.max(args.length - ARG_ITEM_ID, 0);
+        Main main = statusSink == null ? new Main() : headless(statusSink, auctionCount);
+        main.awaitShards(shards);
+        main.auctionHouse = new ShardedAuctionHouse(main.connections, System.getProperty(AUCTION_HOUSE_PROPERTY));
+        for (int i = ARG_ITEM_ID; i < args.length; i++) {
+            main.joinAuction(Item.parse(args[i]));
+        }
+        logger.log(Level.INFO, "Joined {0} auctions {1,number,#} ms after JVM start ({2} mode)", new Object[]{
+                auctionCount, ManagementFactory.getRuntimeMXBean().getUptime(),
+                statusSink == null ? "Swing" : "headless"});
+        if (main.finishedAuctions != null) {
+            // Nothing else keeps the JVM running, the shutdown hook disconnects once main returns
+            main.finishedAuctions.await();
+            logger.log(Level.INFO, "All {0} auctions finished", auctionCount);
+        }
+    }
+
+    private static Main headless(String statusSink, int auctionCount) throws IOException {
+        SniperListener sink = StatusSinks.fromSpec(statusSink);
+        Main main = new Main(new FinishedAuctions(sink, auctionCount));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            main.finishedAuctions.release();
+            main.disconnect();
+            if (sink instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to close the status sink", e);
+                }
+            }
+        }, "Sniper-Shutdown"));
+        return main;
     }
 
-    private void joinAuction(AbstractXMPPConnection connection, String itemId) throws SmackException.NotConnectedException, InterruptedException, XmppStringprepException {
-        disconnectWhenCloses(connection);
-        var chatManager = ChatManager.getInstanceFor(connection);
-        chatManager.addIncomingListener((EntityBareJid from, Message message, Chat chat) ->
-                SwingUtilities.invokeLater(() -> ui.showStatus(MainWindow.STATUS_LOST)));
+    /**
+     * Make the connections of the sniper started next use sockets from the factory.
+     */
+    static void useSocketFactory(SocketFactory factory) {
+        socketFactory = factory;
+    }
+
+    private void joinAuction(Item item) throws XmppStringprepException {
+        sniperListener.sniperStateChanged(SniperSnapshot.joining(item.identifier()));
+        auctionHouse.joinAuction(item, sniperListener);
+    }
+
+    private static List<CompletableFuture<AbstractXMPPConnection>> connectShards(
+            String hostname, String username, String password, int shardCount) {
+        List<CompletableFuture<AbstractXMPPConnection>> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            String resource = shard == 0 ? AUCTION_RESOURCE : String.format(SHARD_RESOURCE_FORMAT, shard);
+            shards.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return connectTo(hostname, username, password, resource);
+                } catch (XMPPException | IOException | SmackException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, Main::startConnectThread));
+        }
+        return shards;
+    }
 
-        var chat = chatManager.chatWith(JidCreate.from(auctionId(itemId, connection)).asEntityBareJidOrThrow());
-        chat.send(JOIN_COMMAND_FORMAT);
+    private static void startConnectThread(Runnable connect) {
+        Thread thread = new Thread(connect, "Sniper-Connect");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private void disconnectWhenCloses(AbstractXMPPConnection connection) {
-        ui.addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowClosed(WindowEvent e) {
-                connection.disconnect();
+    /**
+     * Wait for the shards in order, so shard i keeps index i in the auction house.
+     */
+    private void awaitShards(List<CompletableFuture<AbstractXMPPConnection>> shards) throws Exception {
+        for (CompletableFuture<AbstractXMPPConnection> shard : shards) {
+            AbstractXMPPConnection connection;
+            try {
+                connection = shard.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            synchronized (connections) {
+                connections.add(connection);
             }
-        });
+        }
     }
 
-    private void startUserInterface() throws Exception {
-        SwingUtilities.invokeAndWait((Runnable) () -> ui = MainWindow.createAndShow());
+    private void disconnect() {
+        ShardedAuctionHouse current = auctionHouse;
+        if (current != null) {
+            current.stopReconnecting();
+        }
+        synchronized (connections) {
+            connections.forEach(AbstractXMPPConnection::disconnect);
+        }
     }
 
-    private static AbstractXMPPConnection connectTo(String hostname, String username, String password) throws XMPPException, IOException, SmackException, InterruptedException {
+    private static AbstractXMPPConnection connectTo(String hostname, String username, String password, String resource) throws XMPPException, IOException, SmackException, InterruptedException {
         var connection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
                 .setHost(hostname)
                 .setXmppDomain("localhost")
                 .setPort(5222)
                 .setSecurityMode(SecurityMode.disabled)
                 .setCompressionEnabled(false)
+                .setSocketFactory(socketFactory)
                 .build())
                 .connect();
 
-        connection.login(username, password, Resourcepart.from(AUCTION_RESOURCE));
+        connection.login(username, password, Resourcepart.from(resource));
         return connection;
     }
 
-    private static String auctionId(String itemId, XMPPConnection connection) {
-        return String.format(AUCTION_ID_FORMAT, itemId, connection.getXMPPServiceDomain());
-    }
-
 }
@@ -0,0 +1,23 @@
+package me.forketyfork.growing.auctionhouse;
+
+/**
+ * Time source and timer service of the auction house, in milliseconds.
+ * The time has no fixed origin, only differences and comparisons are meaningful.
+ */
+public interface AuctionClock {
+
+    long millis();
+
+    /**
+     * Run the task once the clock reaches the deadline. A deadline in the past runs at the next tick.
+     */
+    Timer schedule(long deadlineMillis, Runnable task);
+
+    interface Timer {
+
+        /**
+         * Stop the task from running, does nothing if it has already run.
+         */
+        void cancel();
+    }
+}
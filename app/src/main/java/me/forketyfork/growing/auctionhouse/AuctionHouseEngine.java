@@ -0,0 +1,277 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.auctionsniper.AuctionMailbox;
+import me.forketyfork.growing.auctionsniper.sol.SolCommand;
+import me.forketyfork.growing.auctionsniper.sol.SolDecoder;
+import me.forketyfork.growing.auctionsniper.sol.SolEncoder;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent;
+import me.forketyfork.growing.auctionsniper.sol.SolFormatException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the auctions of many items, independent of how commands arrive and events leave.
+ * <p>
+ * Every item has its own {@link AuctionMailbox} on a shared worker pool, so commands for one item
+ * are processed one at a time and in arrival order, while different items are processed in parallel.
+ * Finding an item is a {@link ConcurrentHashMap} lookup and submitting a command a lock-free queue offer,
+ * there is no lock shared between items.
+ * <p>
+ * Deadlines are timers of the {@link AuctionClock}, usually a {@link TimingWheel}. A late bid only moves
+ * the deadline of its item; when the timer fires and finds the deadline moved, it is scheduled again.
+ * <p>
+ * Commands are decoded on the calling thread. A JOIN is answered right away from the latest event of the item,
+ * so a sniper joining near the end of a busy auction doesn't wait behind the queued bids. The mailbox then
+ * registers the bidder and sends the current event only if it has changed since.
+ * <p>
+ * Bids pass the intake checks on the calling thread before they reach the item: a bid from a bidder over its rate,
+ * if there is a {@link BidRateLimiter}, and a bid below the lowest one the item can still accept are answered
+ * with a SOL REJECTED event, or with the close once the auction has closed. A rate limited bidder is only told
+ * once until it is allowed again. A bidder the item hasn't heard of is claimed on arrival, once, and sent the latest
+ * event like after a JOIN. The item only hears of a rejected bid if it keeps a history, which has every bid
+ * as it arrived, or if the bid claimed a new bidder, who has to be registered for the later events.
+ * Rejecting a bid of a known bidder without a history costs a decode, a hash and a few concurrent reads,
+ * without allocation; a bid that gets past a stale minimum is still rejected in the mailbox.
+ * <p>
+ * With an {@link EventHistory}, every item's bids, prices and close are kept for later analysis.
+ */
+public class AuctionHouseEngine {
+
+    private static final Logger logger = Logger.getLogger("AuctionHouseEngine");
+
+    private final Executor workers;
+    private final AuctionClock clock;
+    private final AuctionOutbox outbox;
+    // Null when no history is kept
+    private final EventHistory history;
+    // Null when bids aren't rate limited
+    private final BidRateLimiter rateLimiter;
+    // Commands are decoded on the threads that pass them in
+    private final ThreadLocal<SolCommand> commands = ThreadLocal.withInitial(SolCommand::new);
+    private final ThreadLocal<SolEncoder> encoders = ThreadLocal.withInitial(SolEncoder::new);
+    private final ConcurrentHashMap<String, HostedItem> items = new ConcurrentHashMap<>();
+    private final LongAdder processedCommands = new LongAdder();
+    private final LongAdder staleBids = new LongAdder();
+    private final LongAdder rateLimitedBids = new LongAdder();
+
+    public AuctionHouseEngine(Executor workers, AuctionClock clock, AuctionOutbox outbox) {
+        this(workers, clock, outbox, null);
+    }
+
+    public AuctionHouseEngine(Executor workers, AuctionClock clock, AuctionOutbox outbox, EventHistory history) {
+        this(workers, clock, outbox, history, null);
+    }
+
+    public AuctionHouseEngine(Executor workers, AuctionClock clock, AuctionOutbox outbox, EventHistory history,
+                              BidRateLimiter rateLimiter) {
+        this.workers = workers;
+        this.clock = clock;
+        this.outbox = outbox;
+        this.history = history;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return a pool of daemon worker threads for the mailboxes of the items
+     */
+    public static ExecutorService newWorkerPool(int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "AuctionHouse-Worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Open an auction that is only closed by {@link #closeAuction(String)}.
+     *
+     * @throws IllegalStateException if the item is already being auctioned
+     */
+    public void openAuction(String itemId, int startingPrice, int increment) {
+        openAuction(itemId, startingPrice, increment, ItemAuction.NO_DEADLINE, 0);
+    }
+
+    /**
+     * Open an auction that closes at the deadline, or later if bids arrive shortly before it.
+     *
+     * @param deadline in {@link AuctionClock} millis
+     * @param extensionMillis a bid accepted less than this before the deadline moves the deadline to this after the bid
+     * @throws IllegalStateException if the item is already being auctioned
+     */
+    public void openAuction(String itemId, int startingPrice, int increment, long deadline, long extensionMillis) {
+        ItemAuction auction = new ItemAuction(itemId, startingPrice, increment, outbox, clock,
+                history == null ? null : history.log(itemId));
+        auction.setDeadline(deadline, extensionMillis);
+        HostedItem item = new HostedItem(auction, new AuctionMailbox(workers));
+        if (items.putIfAbsent(itemId, item) != null) {
+            throw new IllegalStateException("Item " + itemId + " is already being auctioned");
+        }
+        if (deadline != ItemAuction.NO_DEADLINE) {
+            item.mailbox().execute(() -> scheduleClose(item));
+        }
+        logger.log(Level.FINE, "Opened auction for {0} at {1}", new Object[]{itemId, startingPrice});
+    }
+
+    /**
+     * Process a SOL command from a bidder: answer or reject it right away, or queue it for the item.
+     * Malformed commands are logged and dropped.
+     *
+     * @return false if the item isn't auctioned here
+     */
+    public boolean process(String itemId, String bidder, String message) {
+        HostedItem item = items.get(itemId);
+        if (item == null) {
+            return false;
+        }
+        SolCommand command = commands.get();
+        try {
+            SolDecoder.decodeCommand(message, command);
+        } catch (SolFormatException e) {
+            logger.log(Level.WARNING, "Ignoring malformed command from " + bidder + " for " + itemId, e);
+            processedCommands.increment();
+            return true;
+        }
+        ItemAuction.LatestEvent latest = item.auction().latestEvent();
+        switch (command.getType()) {
+            case JOIN -> {
+                outbox.send(itemId, bidder, latest.event());
+                item.mailbox().execute(() -> {
+                    item.auction().join(bidder, latest.sequence());
+                    processedCommands.increment();
+                });
+            }
+            case BID -> bid(item, itemId, bidder, command.getPrice(), latest);
+        }
+        return true;
+    }
+
+    /**
+     * Close the auction and tell every bidder. The item stays known, late commands get the close event.
+     */
+    public void closeAuction(String itemId) {
+        HostedItem item = items.get(itemId);
+        if (item != null) {
+            item.mailbox().execute(() -> {
+                AuctionClock.Timer closeTimer = item.auction().getCloseTimer();
+                if (closeTimer != null) {
+                    closeTimer.cancel();
+                }
+                item.auction().close();
+            });
+        }
+    }
+
+    /**
+     * @return the state of the item after all commands queued so far, or null if the item isn't auctioned here
+     */
+    public CompletableFuture<ItemSnapshot> snapshot(String itemId) {
+        HostedItem item = items.get(itemId);
+        if (item == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<ItemSnapshot> snapshot = new CompletableFuture<>();
+        item.mailbox().execute(() -> snapshot.complete(item.auction().snapshot()));
+        return snapshot;
+    }
+
+    private void bid(HostedItem item, String itemId, String bidder, int price, ItemAuction.LatestEvent latest) {
+        if (rateLimiter != null) {
+            BidRateLimiter.Decision decision = rateLimiter.tryBid(bidder);
+            if (decision != BidRateLimiter.Decision.ALLOWED) {
+                rateLimitedBids.increment();
+                rejected(item, itemId, bidder, price, latest,
+                        decision == BidRateLimiter.Decision.REJECTED ? SolEvent.RejectionReason.RATE_LIMITED : null);
+                return;
+            }
+        }
+        if (price < latest.minimumBid()) {
+            staleBids.increment();
+            rejected(item, itemId, bidder, price, latest, SolEvent.RejectionReason.STALE);
+            return;
+        }
+        item.mailbox().execute(() -> {
+            item.auction().bid(bidder, price);
+            processedCommands.increment();
+        });
+    }
+
+    /**
+     * Answer a bid rejected on arrival, and pass it on to the item only if the item has to know.
+     *
+     * @param reason told to the bidder, null if the bidder isn't told
+     */
+    private void rejected(HostedItem item, String itemId, String bidder, int price, ItemAuction.LatestEvent latest,
+                          SolEvent.RejectionReason reason) {
+        processedCommands.increment();
+        boolean newBidder = item.auction().registerOnArrival(bidder);
+        if (latest.isClosed()) {
+            if (reason != null || newBidder) {
+                outbox.send(itemId, bidder, latest.event());
+            }
+        } else {
+            if (newBidder) {
+                outbox.send(itemId, bidder, latest.event());
+            }
+            if (reason != null) {
+                outbox.send(itemId, bidder, encoders.get().encodeRejected(price, reason));
+            }
+        }
+        if (newBidder || history != null) {
+            item.mailbox().execute(() -> item.auction().rejectedBid(bidder, price));
+        }
+    }
+
+    private void scheduleClose(HostedItem item) {
+        ItemAuction auction = item.auction();
+        auction.setCloseTimer(clock.schedule(auction.getDeadline(), () -> item.mailbox().execute(() -> closeIfDue(item))));
+    }
+
+    private void closeIfDue(HostedItem item) {
+        ItemAuction auction = item.auction();
+        if (auction.isClosed()) {
+            return;
+        }
+        if (clock.millis() < auction.getDeadline()) {
+            // Extended by a late bid since the timer was scheduled
+            scheduleClose(item);
+        } else {
+            auction.setCloseTimer(null);
+            auction.close();
+        }
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * @return the number of commands processed since the engine was created
+     */
+    public long getProcessedCommandCount() {
+        return processedCommands.sum();
+    }
+
+    /**
+     * @return the number of bids rejected on arrival for being below the lowest bid the item could accept
+     */
+    public long getStaleBidCount() {
+        return staleBids.sum();
+    }
+
+    /**
+     * @return the number of bids rejected on arrival for exceeding the rate of their bidder
+     */
+    public long getRateLimitedBidCount() {
+        return rateLimitedBids.sum();
+    }
+
+    private record HostedItem(ItemAuction auction, AuctionMailbox mailbox) {
+    }
+}
@@ -0,0 +1,14 @@
+package me.forketyfork.growing.auctionhouse;
+
+/**
+ * Delivers the SOL events of an auction to a bidder. Called from the mailboxes of the items, and for
+ * the immediate answer to a JOIN from the thread that passed the command to the engine.
+ */
+@FunctionalInterface
+public interface AuctionOutbox {
+
+    /**
+     * @param message the event, only valid during the call because the encoder buffer is reused
+     */
+    void send(String itemId, String bidder, CharSequence message);
+}
@@ -0,0 +1,104 @@
+package me.forketyfork.growing.auctionhouse;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits the bids of every bidder to a steady rate with a burst allowance, in the same fixed amount of memory
+ * however many bidders there are.
+ * <p>
+ * A slot holds the state of the generic cell rate algorithm: the theoretical time of the next bid, in microseconds
+ * of the {@link AuctionClock} since the limiter was created. A bid is allowed if it doesn't come earlier than
+ * that time minus the burst tolerance, and moves the time on by one interval. Every bidder hashes to two slots,
+ * like a count-min sketch: a bid is checked against the earlier of the two times and moves both on to at least
+ * the new time. A slot is never behind any of the bidders sharing it, so no bidder gets more than its rate,
+ * and an honest bidder is only limited by mistake when both its slots are shared with busier bidders.
+ * Slots change with compare-and-set, a bid takes no lock and allocates nothing; bids of bidders sharing
+ * a slot at the same moment may get slightly more than the rate.
+ * <p>
+ * The lowest bit of a slot records that a rejection has been reported, so a limited bidder is told
+ * once and then ignored until it is allowed again.
+ */
+public final class BidRateLimiter {
+
+    public static final int DEFAULT_SLOT_COUNT = 1 << 16;
+
+    public enum Decision {
+        ALLOWED,
+        // Rejected, and the bidder should be told
+        REJECTED,
+        // Rejected again before the bidder was allowed another bid
+        REJECTED_QUIETLY
+    }
+
+    private static final long REPORTED = 1;
+
+    private final AuctionClock clock;
+    private final long originMillis;
+    private final long intervalMicros;
+    private final long toleranceMicros;
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    public BidRateLimiter(AuctionClock clock, int bidsPerSecond, int burst) {
+        this(clock, bidsPerSecond, burst, DEFAULT_SLOT_COUNT);
+    }
+
+    /**
+     * @param burst     bids a bidder can send at once after being quiet
+     * @param slotCount a power of two, the slots take eight bytes each
+     */
+    public BidRateLimiter(AuctionClock clock, int bidsPerSecond, int burst, int slotCount) {
+        if (bidsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two, got: " + slotCount);
+        }
+        this.clock = clock;
+        this.originMillis = clock.millis();
+        this.intervalMicros = 1_000_000L / bidsPerSecond;
+        this.toleranceMicros = (burst - 1) * intervalMicros;
+        this.slots = new AtomicLongArray(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    public Decision tryBid(String bidder) {
+        long now = (clock.millis() - originMillis) * 1000;
+        // String caches its hash code, the second slot comes from a different mix of it
+        int hash = bidder.hashCode();
+        int first = spread(hash) & mask;
+        int second = spread(hash * 0x9E3779B9) & mask;
+        long firstTime = slots.get(first) >> 1;
+        long secondTime = slots.get(second) >> 1;
+        int limiting = firstTime <= secondTime ? first : second;
+        long next = Math.max(Math.min(firstTime, secondTime), now);
+        if (next - now > toleranceMicros) {
+            return markReported(limiting) ? Decision.REJECTED : Decision.REJECTED_QUIETLY;
+        }
+        raise(first, next + intervalMicros);
+        raise(second, next + intervalMicros);
+        return Decision.ALLOWED;
+    }
+
+    private void raise(int slot, long time) {
+        long value;
+        do {
+            value = slots.get(slot);
+            if (value >> 1 >= time) {
+                return;
+            }
+            // Clears the reported bit
+        } while (!slots.compareAndSet(slot, value, time << 1));
+    }
+
+    private boolean markReported(int slot) {
+        long value = slots.get(slot);
+        return (value & REPORTED) == 0 && slots.compareAndSet(slot, value, value | REPORTED);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+}
@@ -0,0 +1,388 @@
+package me.forketyfork.growing.auctionhouse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compact record of the BID, PRICE and CLOSE events of every item, for post-mortems and strategy tuning.
+ * <p>
+ * Events live off-heap, in direct buffers or in memory-mapped files, delta-encoded as varints: a record is
+ * the event code, the milliseconds since the previous record, the changes of the price and the increment
+ * since the previous record, and the bidder as an index into a dictionary. A typical event takes a few bytes.
+ * <p>
+ * Every item appends to its own chain of chunks, carved out of large segments and growing from
+ * {@value #FIRST_CHUNK_SIZE} to {@value #MAX_CHUNK_SIZE} bytes, so a scan only touches the memory of its item
+ * and an item with a few events takes little space. A chunk starts its deltas from the time kept for it
+ * in the index and from zero prices, so a range scan starts right at the chunk holding the start of the range.
+ * <p>
+ * Only one thread at a time appends to an item, e.g. the item's mailbox; scans can run on any thread meanwhile.
+ */
+public final class EventHistory implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final int FIRST_CHUNK_SIZE = 64;
+    static final int MAX_CHUNK_SIZE = 4096;
+    // FIRST_CHUNK_SIZE << CHUNK_DOUBLINGS == MAX_CHUNK_SIZE
+    private static final int CHUNK_DOUBLINGS = 6;
+    // Code, time, price, increment and bidder at their longest
+    private static final int MAX_RECORD_LENGTH = 1 + 10 + 5 + 5 + 5;
+    // Also ends the records of a chunk, the unused rest of a chunk is zeroed
+    private static final int END_OF_CHUNK = 0;
+    private static final int NO_BIDDER = 0;
+
+    /**
+     * Receives the events of a scan, without any allocation per event.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param price     of a BID or PRICE event, 0 for CLOSE
+         * @param increment of a PRICE event, 0 otherwise
+         * @param bidder    of a BID or PRICE event, null for a PRICE without a high bidder and for CLOSE
+         */
+        void event(HistoryEvent type, long millis, int price, int increment, String bidder);
+    }
+
+    private final int segmentSize;
+    // Null when the segments are direct buffers
+    private final Path directory;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+    // Guarded by this: where the next chunk goes
+    private int segmentPosition;
+    private long allocatedBytes;
+
+    private final ConcurrentHashMap<String, ItemLog> items = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> bidderIds = new ConcurrentHashMap<>();
+    // Written under this lock, before the bidder's id is published in bidderIds; grows by doubling
+    private volatile String[] bidderNames = new String[16];
+    // Guarded by this: the next bidder's id, 0 is NO_BIDDER
+    private int bidderCount = 1;
+    private final LongAdder eventCount = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+
+    private EventHistory(int segmentSize, Path directory) {
+        if (segmentSize < MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Segments must hold at least a " + MAX_CHUNK_SIZE + " byte chunk");
+        }
+        this.segmentSize = segmentSize;
+        this.directory = directory;
+    }
+
+    /**
+     * A history in direct buffers of {@link #DEFAULT_SEGMENT_SIZE}.
+     */
+    public static EventHistory inMemory() {
+        return inMemory(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static EventHistory inMemory(int segmentSize) {
+        return new EventHistory(segmentSize, null);
+    }
+
+    /**
+     * A history in files of the directory mapped into memory, one per segment, so it can grow beyond the heap
+     * and the page cache decides what stays in memory. Existing segment files are overwritten.
+     */
+    public static EventHistory mapped(Path directory) throws IOException {
+        return mapped(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static EventHistory mapped(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        return new EventHistory(segmentSize, directory);
+    }
+
+    /**
+     * @return the log to append the item's events to, the same one for every call with the item
+     */
+    ItemLog log(String itemId) {
+        return items.computeIfAbsent(itemId, id -> new ItemLog());
+    }
+
+    /**
+     * Visit the events of the item between the times, inclusive, in the order they were appended.
+     *
+     * @return the number of events visited
+     */
+    public int scan(String itemId, long fromMillis, long toMillis, Visitor visitor) {
+        ItemLog log = items.get(itemId);
+        return log == null ? 0 : log.scan(fromMillis, toMillis, visitor);
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public long getEventCount() {
+        return eventCount.sum();
+    }
+
+    /**
+     * @return the bytes taken by the records themselves
+     */
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    /**
+     * @return the bytes of all chunks handed out to items, including their unused rest
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public double bytesPerEvent() {
+        long events = getEventCount();
+        return events == 0 ? 0 : (double) getEncodedBytes() / events;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer mapped) {
+                mapped.force();
+            }
+        }
+        segments = new ByteBuffer[0];
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    /**
+     * @return the address of a zeroed chunk: the segment index in the high half, the offset in the low half
+     */
+    private synchronized long allocateChunk(int size) {
+        ByteBuffer[] current = segments;
+        if (current.length == 0 || segmentPosition + size > segmentSize) {
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = newSegment(current.length - 1);
+            segments = current;
+            segmentPosition = 0;
+        }
+        long address = ((long) (current.length - 1) << 32) | segmentPosition;
+        segmentPosition += size;
+        allocatedBytes += size;
+        return address;
+    }
+
+    private ByteBuffer newSegment(int index) {
+        if (directory == null) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        try {
+            FileChannel channel = FileChannel.open(directory.resolve(String.format("segment-%05d.bin", index)),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channels.add(channel);
+            // Mapping past the end grows the file with zeros
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map history segment " + index, e);
+        }
+    }
+
+    private int bidderId(String bidder) {
+        if (bidder == null) {
+            return NO_BIDDER;
+        }
+        Integer id = bidderIds.get(bidder);
+        return id != null ? id : registerBidder(bidder);
+    }
+
+    private synchronized int registerBidder(String bidder) {
+        Integer existing = bidderIds.get(bidder);
+        if (existing != null) {
+            return existing;
+        }
+        int id = bidderCount++;
+        String[] names = bidderNames;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            names[id] = bidder;
+            bidderNames = names;
+        } else {
+            names[id] = bidder;
+        }
+        bidderIds.put(bidder, id);
+        return id;
+    }
+
+    private static int chunkSize(int chunk) {
+        return FIRST_CHUNK_SIZE << Math.min(chunk, CHUNK_DOUBLINGS);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The events of one item. Appends come from one thread at a time and publish the end of the log
+     * with a volatile write, a scan reads up to the end it sees.
+     */
+    final class ItemLog {
+
+        // Volatile: a scan that sees a new end also has to see the chunk of that end
+        private volatile long[] chunkAddresses = new long[4];
+        private volatile long[] chunkFirstMillis = new long[4];
+        // Chunk count in the high half, the end of the last chunk in the low half
+        private volatile long published;
+
+        // Only used by the appending thread
+        private int chunkCount;
+        private ByteBuffer segment;
+        private int chunkStart;
+        private int chunkEnd;
+        private int position;
+        // The previous record of the current chunk, the base of the deltas
+        private long lastMillis;
+        private int lastPrice;
+        private int lastIncrement;
+
+        /**
+         * @param millis earlier than the previous event counts as the time of the previous event
+         */
+        void append(HistoryEvent type, long millis, int price, int increment, String bidder) {
+            millis = chunkCount == 0 ? millis : Math.max(millis, lastMillis);
+            if (chunkCount == 0 || chunkEnd - position < MAX_RECORD_LENGTH) {
+                newChunk(millis);
+            }
+            int start = position;
+            segment.put(position++, type.code);
+            putVarint(millis - lastMillis);
+            lastMillis = millis;
+            if (type != HistoryEvent.CLOSE) {
+                putVarint(zigzag(price - lastPrice) & 0xFFFFFFFFL);
+                lastPrice = price;
+                if (type == HistoryEvent.PRICE) {
+                    putVarint(zigzag(increment - lastIncrement) & 0xFFFFFFFFL);
+                    lastIncrement = increment;
+                }
+                putVarint(bidderId(bidder));
+            }
+            published = ((long) chunkCount << 32) | (position - chunkStart);
+            eventCount.increment();
+            encodedBytes.add(position - start);
+        }
+
+        private void newChunk(long millis) {
+            int size = chunkSize(chunkCount);
+            long address = allocateChunk(size);
+            if (chunkCount == chunkAddresses.length) {
+                chunkAddresses = Arrays.copyOf(chunkAddresses, chunkCount * 2);
+                chunkFirstMillis = Arrays.copyOf(chunkFirstMillis, chunkCount * 2);
+            }
+            chunkAddresses[chunkCount] = address;
+            chunkFirstMillis[chunkCount] = millis;
+            chunkCount++;
+            segment = segments[(int) (address >>> 32)];
+            chunkStart = (int) address;
+            chunkEnd = chunkStart + size;
+            position = chunkStart;
+            lastMillis = millis;
+            lastPrice = 0;
+            lastIncrement = 0;
+        }
+
+        private void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                segment.put(position++, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            segment.put(position++, (byte) value);
+        }
+
+        int scan(long fromMillis, long toMillis, Visitor visitor) {
+            long end = published;
+            int count = (int) (end >>> 32);
+            long[] addresses = chunkAddresses;
+            long[] firstMillis = chunkFirstMillis;
+            ByteBuffer[] allSegments = segments;
+            String[] names = bidderNames;
+            // The last chunk starting at or before the range, its earlier events are skipped
+            int chunk = Arrays.binarySearch(firstMillis, 0, count, fromMillis);
+            chunk = chunk >= 0 ? firstChunkAt(firstMillis, chunk) : Math.max(0, -chunk - 2);
+            ChunkReader reader = new ChunkReader();
+            int visited = 0;
+            for (; chunk < count && firstMillis[chunk] <= toMillis; chunk++) {
+                long address = addresses[chunk];
+                reader.buffer = allSegments[(int) (address >>> 32)];
+                reader.position = (int) address;
+                int limit = reader.position + (chunk == count - 1 ? (int) end : chunkSize(chunk));
+                long millis = firstMillis[chunk];
+                int price = 0;
+                int increment = 0;
+                while (reader.position < limit) {
+                    int code = reader.buffer.get(reader.position++);
+                    if (code == END_OF_CHUNK) {
+                        break;
+                    }
+                    HistoryEvent type = HistoryEvent.ofCode(code);
+                    millis += reader.varint();
+                    String bidder = null;
+                    if (type != HistoryEvent.CLOSE) {
+                        price += unzigzag((int) reader.varint());
+                        if (type == HistoryEvent.PRICE) {
+                            increment += unzigzag((int) reader.varint());
+                        }
+                        bidder = names[(int) reader.varint()];
+                    }
+                    if (millis > toMillis) {
+                        return visited;
+                    }
+                    if (millis >= fromMillis) {
+                        visitor.event(type, millis, type == HistoryEvent.CLOSE ? 0 : price,
+                                type == HistoryEvent.PRICE ? increment : 0, bidder);
+                        visited++;
+                    }
+                }
+            }
+            return visited;
+        }
+
+        /**
+         * Several chunks can start in the same millisecond, the range starts in the first of them
+         * or in the one before it.
+         */
+        private static int firstChunkAt(long[] firstMillis, int chunk) {
+            while (chunk > 0 && firstMillis[chunk - 1] == firstMillis[chunk]) {
+                chunk--;
+            }
+            return Math.max(0, chunk - 1);
+        }
+    }
+
+    private static final class ChunkReader {
+        ByteBuffer buffer;
+        int position;
+
+        long varint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package me.forketyfork.growing.auctionhouse;
+
+/**
+ * Kinds of events kept by the {@link EventHistory}. The codes are stored, don't reuse them.
+ */
+public enum HistoryEvent {
+    // A bid as it arrived, accepted or not
+    BID(1),
+    // The price announced after an accepted bid
+    PRICE(2),
+    CLOSE(3);
+
+    final byte code;
+
+    HistoryEvent(int code) {
+        this.code = (byte) code;
+    }
+
+    static HistoryEvent ofCode(int code) {
+        return switch (code) {
+            case 1 -> BID;
+            case 2 -> PRICE;
+            case 3 -> CLOSE;
+            default -> throw new IllegalStateException("Unknown history event code " + code);
+        };
+    }
+}
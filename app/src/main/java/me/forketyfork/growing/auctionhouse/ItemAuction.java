@@ -0,0 +1,222 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.auctionsniper.sol.SolEncoder;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The auction of one item: current price, increment, high bidder and the bidders to notify.
+ * A bid is accepted if it is at least the current price plus the increment, or the starting price
+ * for the first bid. Every accepted bid is announced to all bidders, a rejected one is answered with
+ * a REJECTED event, preceded by the current price if the bidder is new. An auction can have a deadline, a bid accepted shortly before it pushes the deadline back
+ * so that the other bidders get a chance to answer. Bids, prices and the close are appended to the item's
+ * {@link EventHistory} if there is one. Only ever called from the item's mailbox, so it needs no locks,
+ * except for {@link #latestEvent()}: the event every bidder was told last and the lowest bid that can still win,
+ * published with a volatile write so that a JOIN can be answered and a stale bid rejected on any thread
+ * without waiting for the mailbox, and {@link #registerOnArrival(String)}. A bid rejected on arrival only comes
+ * here through {@link #rejectedBid(String, int)}, to be kept in the history or to register its bidder.
+ * <p>
+ * Every change of the auction, an accepted bid or the close, gets the next sequence number, starting from 1
+ * for the starting price. Events carry the number of the state they report, so a bidder can drop
+ * a repeated state and notice a skipped one.
+ */
+final class ItemAuction {
+
+    // Bidder reported with the starting price, before anyone has bid
+    static final String NO_BIDDER = "none";
+    // Deadline of an auction that is only closed by hand
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * @param sequence   the number of the latest change, a JOIN answered with an older one gets the current event
+     * @param event      the PRICE or CLOSE event
+     * @param minimumBid the lowest bid that would be accepted, it only ever grows; {@code Long.MAX_VALUE} once closed
+     */
+    record LatestEvent(int sequence, String event, long minimumBid) {
+
+        boolean isClosed() {
+            return minimumBid == Long.MAX_VALUE;
+        }
+    }
+
+    private final String itemId;
+    private final int increment;
+    private final AuctionOutbox outbox;
+    private final AuctionClock clock;
+    // Null when the engine keeps no history
+    private final EventHistory.ItemLog history;
+    private final SolEncoder encoder = new SolEncoder();
+    // In joining order, so every bidder sees the events in the same order in tests
+    private final Set<String> bidders = new LinkedHashSet<>();
+    // The same bidders and those registered on arrival, for the threads that reject bids on arrival
+    private final Set<String> knownBidders = ConcurrentHashMap.newKeySet();
+
+    private int currentPrice;
+    private String highBidder;
+    private boolean closed;
+    private long deadline = NO_DEADLINE;
+    private long extensionMillis;
+    // Pending timer of the deadline, managed by the engine
+    private AuctionClock.Timer closeTimer;
+    private int sequence = 1;
+    private volatile LatestEvent latestEvent;
+
+    ItemAuction(String itemId, int startingPrice, int increment, AuctionOutbox outbox, AuctionClock clock) {
+        this(itemId, startingPrice, increment, outbox, clock, null);
+    }
+
+    ItemAuction(String itemId, int startingPrice, int increment, AuctionOutbox outbox, AuctionClock clock,
+                EventHistory.ItemLog history) {
+        this.itemId = itemId;
+        this.currentPrice = startingPrice;
+        this.increment = increment;
+        this.outbox = outbox;
+        this.clock = clock;
+        this.history = history;
+        publish(encodePrice());
+    }
+
+    /**
+     * @param extensionMillis a bid accepted less than this before the deadline moves the deadline to this after the bid
+     */
+    void setDeadline(long deadline, long extensionMillis) {
+        this.deadline = deadline;
+        this.extensionMillis = extensionMillis;
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    LatestEvent latestEvent() {
+        return latestEvent;
+    }
+
+    AuctionClock.Timer getCloseTimer() {
+        return closeTimer;
+    }
+
+    void setCloseTimer(AuctionClock.Timer closeTimer) {
+        this.closeTimer = closeTimer;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (history != null) {
+            history.append(HistoryEvent.CLOSE, clock.millis(), 0, 0, null);
+        }
+        sequence++;
+        CharSequence event = encoder.encodeClose(sequence);
+        publish(event);
+        for (String bidder : bidders) {
+            outbox.send(itemId, bidder, event);
+        }
+    }
+
+    ItemSnapshot snapshot() {
+        return new ItemSnapshot(itemId, currentPrice, increment, highBidder, bidders.size(), closed, deadline);
+    }
+
+    /**
+     * @param answeredSequence the number of the event the bidder was already sent
+     */
+    void join(String bidder, int answeredSequence) {
+        addBidder(bidder);
+        if (answeredSequence != sequence) {
+            outbox.send(itemId, bidder, encodeCurrent());
+        }
+    }
+
+    void bid(String bidder, int price) {
+        boolean newBidder = addBidder(bidder);
+        long now = history != null || deadline != NO_DEADLINE ? clock.millis() : 0;
+        if (history != null) {
+            history.append(HistoryEvent.BID, now, price, 0, bidder);
+        }
+        if (closed) {
+            outbox.send(itemId, bidder, encodeCurrent());
+            return;
+        }
+        if (price < minimumBid()) {
+            if (newBidder) {
+                // Like the answer to a JOIN
+                outbox.send(itemId, bidder, encodePrice());
+            }
+            outbox.send(itemId, bidder, encoder.encodeRejected(price, SolEvent.RejectionReason.STALE));
+            return;
+        }
+        currentPrice = price;
+        highBidder = bidder;
+        if (deadline != NO_DEADLINE && deadline - now < extensionMillis) {
+            deadline = now + extensionMillis;
+        }
+        if (history != null) {
+            history.append(HistoryEvent.PRICE, now, currentPrice, increment, highBidder);
+        }
+        sequence++;
+        CharSequence event = encodePrice();
+        publish(event);
+        for (String each : bidders) {
+            outbox.send(itemId, each, event);
+        }
+    }
+
+    /**
+     * A bid that was rejected and answered on arrival: register the bidder and keep the bid in the history,
+     * like a bid rejected here.
+     */
+    void rejectedBid(String bidder, int price) {
+        // Already in knownBidders, claimed on arrival
+        bidders.add(bidder);
+        if (history != null) {
+            history.append(HistoryEvent.BID, clock.millis(), price, 0, bidder);
+        }
+    }
+
+    /**
+     * Claim the registration of a bidder whose bid was rejected on arrival, from any thread.
+     *
+     * @return true the first time the item hears of the bidder, the caller then passes the bid to
+     * {@link #rejectedBid(String, int)} in the mailbox
+     */
+    boolean registerOnArrival(String bidder) {
+        return knownBidders.add(bidder);
+    }
+
+    /**
+     * @return true if the bidder hadn't joined or bid before, not even with a bid rejected on arrival
+     */
+    private boolean addBidder(String bidder) {
+        // A bidder claimed on arrival has already been sent the state of the auction
+        return bidders.add(bidder) && knownBidders.add(bidder);
+    }
+
+    private void publish(CharSequence event) {
+        latestEvent = new LatestEvent(sequence, event.toString(), closed ? Long.MAX_VALUE : minimumBid());
+    }
+
+    private long minimumBid() {
+        return highBidder == null ? currentPrice : (long) currentPrice + increment;
+    }
+
+    private CharSequence encodeCurrent() {
+        return closed ? encoder.encodeClose(sequence) : encodePrice();
+    }
+
+    private CharSequence encodePrice() {
+        return encoder.encodePrice(currentPrice, increment, highBidder == null ? NO_BIDDER : highBidder, sequence);
+    }
+}
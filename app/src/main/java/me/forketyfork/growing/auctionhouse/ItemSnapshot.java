@@ -0,0 +1,11 @@
+package me.forketyfork.growing.auctionhouse;
+
+/**
+ * The state of one auction at a point in time.
+ *
+ * @param highBidder the bidder of the current price, or null before the first accepted bid
+ * @param deadline when the auction closes in clock millis, {@code Long.MAX_VALUE} if it is only closed by hand
+ */
+public record ItemSnapshot(String itemId, int currentPrice, int increment, String highBidder, int bidderCount,
+                           boolean closed, long deadline) {
+}
@@ -0,0 +1,62 @@
+package me.forketyfork.growing.auctionhouse;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link TimingWheel} advanced by a ticker thread along the monotonic system time.
+ * Timers can be scheduled and cancelled from any thread: the requests go through a lock-free queue
+ * that the ticker drains before every advance, so the wheel itself stays single-threaded.
+ * Tasks run on the ticker thread and should only hand work over, e.g. to an item's mailbox.
+ */
+public class RealTimeClock implements AuctionClock, AutoCloseable {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TimingWheel wheel = new TimingWheel(millis());
+    private final ConcurrentLinkedQueue<Runnable> requests = new ConcurrentLinkedQueue<>();
+    private final Thread ticker = new Thread(this::tick, "AuctionHouse-Ticker");
+    private volatile boolean running = true;
+
+    public RealTimeClock() {
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the deadline is more than {@link TimingWheel#MAX_DELAY_MILLIS} ahead
+     */
+    @Override
+    public Timer schedule(long deadlineMillis, Runnable task) {
+        // Checked here, the ticker thread must not fail
+        if (deadlineMillis - millis() > TimingWheel.MAX_DELAY_MILLIS - 1_000) {
+            throw new IllegalArgumentException("Deadline " + deadlineMillis + " is too far ahead");
+        }
+        TimingWheel.Timeout timeout = wheel.new Timeout(deadlineMillis, task);
+        requests.offer(() -> wheel.add(timeout));
+        return () -> requests.offer(timeout::cancel);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private void tick() {
+        while (running) {
+            Runnable request;
+            while ((request = requests.poll()) != null) {
+                request.run();
+            }
+            wheel.advanceTo(millis());
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+}
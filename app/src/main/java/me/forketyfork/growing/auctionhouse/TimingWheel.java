@@ -0,0 +1,264 @@
+package me.forketyfork.growing.auctionhouse;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed hierarchical timing wheel with millisecond ticks.
+ * <p>
+ * Level 0 has one slot per millisecond of the current 64 ms, every higher level has 64 slots that each
+ * span a whole revolution of the level below. A timer goes into the lowest level whose current revolution
+ * contains its deadline, and moves down a level whenever the wheel enters its slot, until it expires in level 0.
+ * Slots are intrusive doubly linked lists, so scheduling and cancelling are O(1) whatever the number of
+ * pending timers, and a timer moves at most {@link #LEVELS} - 1 times in its life. A bitmap of the occupied
+ * slots of every level lets the wheel skip straight to the next millisecond that has work to do.
+ * <p>
+ * The wheel isn't thread-safe: timers are scheduled, cancelled and expired on the thread that advances it,
+ * see {@link RealTimeClock} for a wheel driven by real time.
+ */
+public final class TimingWheel implements AuctionClock {
+
+    private static final Logger logger = Logger.getLogger("TimingWheel");
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    public static final int LEVELS = 7;
+    // About 139 years, the span of the top level
+    public static final long MAX_DELAY_MILLIS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    // One sentinel per slot, a slot is empty when its sentinel links to itself
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    // Bit i of a level is set while slot i of the level has timers
+    private final long[] occupied = new long[LEVELS];
+    // The last millisecond that has been processed
+    private long now;
+    private int pending;
+
+    public TimingWheel(long startMillis) {
+        this.now = startMillis;
+        for (Timeout[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Timeout(0, null);
+            }
+        }
+    }
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the deadline is more than {@link #MAX_DELAY_MILLIS} ahead
+     */
+    @Override
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(deadlineMillis, task);
+        add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Schedule a timer created by the caller, e.g. on another thread.
+     */
+    void add(Timeout timeout) {
+        if (timeout.deadline - now > MAX_DELAY_MILLIS) {
+            throw new IllegalArgumentException("Deadline " + timeout.deadline + " is too far after " + now);
+        }
+        if (timeout.state != Timeout.NEW) {
+            return;
+        }
+        timeout.state = Timeout.PENDING;
+        // The current millisecond has been processed, an overdue timer expires in the next one
+        insert(timeout, now + 1);
+        pending++;
+    }
+
+    /**
+     * Process every millisecond up to the given time, running the tasks of the expired timers in deadline order.
+     * Does nothing if the time is not after the current one.
+     *
+     * @return the number of tasks run
+     */
+    public int advanceTo(long millis) {
+        int expired = 0;
+        while (now < millis) {
+            long next = nextBusyMillis();
+            if (next > millis) {
+                now = millis;
+                break;
+            }
+            now = next;
+            cascade();
+            expired += expire((int) (now & SLOT_MASK));
+        }
+        return expired;
+    }
+
+    /**
+     * Like {@link #advanceTo(long)}, but stop after the first millisecond in which timers expired.
+     * Lets a simulation driven by the wheel stop at the time of its last event.
+     *
+     * @return the number of tasks run
+     */
+    public int advanceToNextExpiry(long millis) {
+        int expired = 0;
+        while (now < millis && expired == 0) {
+            long next = nextBusyMillis();
+            if (next > millis) {
+                now = millis;
+                break;
+            }
+            now = next;
+            cascade();
+            expired = expire((int) (now & SLOT_MASK));
+        }
+        return expired;
+    }
+
+    /**
+     * @return the number of scheduled timers that haven't expired or been cancelled
+     */
+    public int size() {
+        return pending;
+    }
+
+    /**
+     * @return the next millisecond that expires or cascades timers, or Long.MAX_VALUE if there are none
+     */
+    private long nextBusyMillis() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            int current = (int) ((now >>> shift) & SLOT_MASK);
+            // Timers of a level are always in slots after the current one
+            long later = occupied[level] & (-2L << current);
+            if (later != 0) {
+                // A slot of a level comes after all slots of the current revolution of the levels below
+                long revolution = (now >>> (shift + SLOT_BITS)) << (shift + SLOT_BITS);
+                return revolution | ((long) Long.numberOfTrailingZeros(later) << shift);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void insert(Timeout timeout, long earliest) {
+        long deadline = Math.max(timeout.deadline, earliest);
+        int level = 0;
+        // The lowest level where the deadline is in the current revolution
+        while (level < LEVELS - 1 && (deadline >>> (SLOT_BITS * (level + 1))) != (now >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.linkBefore(slots[level][slot]);
+        occupied[level] |= 1L << slot;
+    }
+
+    /**
+     * When the wheel enters a new slot of a higher level, move its timers down, highest level first.
+     */
+    private void cascade() {
+        int top = 0;
+        while (top < LEVELS - 1 && (now & ((1L << (SLOT_BITS * (top + 1))) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level > 0; level--) {
+            int slot = (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timeout sentinel = slots[level][slot];
+            occupied[level] &= ~(1L << slot);
+            Timeout timeout = sentinel.next;
+            while (timeout != sentinel) {
+                Timeout next = timeout.next;
+                timeout.unlink();
+                // Still due in the current millisecond, its level 0 slot is expired right after the cascade
+                insert(timeout, now);
+                timeout = next;
+            }
+        }
+    }
+
+    private int expire(int slot) {
+        Timeout sentinel = slots[0][slot];
+        occupied[0] &= ~(1L << slot);
+        int expired = 0;
+        while (sentinel.next != sentinel) {
+            Timeout timeout = sentinel.next;
+            timeout.unlink();
+            timeout.state = Timeout.EXPIRED;
+            pending--;
+            expired++;
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Timer task failed", e);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * A scheduled task, a node of the slot it waits in.
+     */
+    public final class Timeout implements Timer {
+
+        private static final int NEW = 0;
+        private static final int PENDING = 1;
+        private static final int EXPIRED = 2;
+        private static final int CANCELLED = 3;
+
+        private final long deadline;
+        private final Runnable task;
+        private int state = NEW;
+        private int level;
+        private int slot;
+        private Timeout previous = this;
+        private Timeout next = this;
+
+        Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        /**
+         * Must be called on the thread that advances the wheel.
+         */
+        @Override
+        public void cancel() {
+            if (state == PENDING) {
+                unlink();
+                pending--;
+                Timeout sentinel = slots[level][slot];
+                if (sentinel.next == sentinel) {
+                    occupied[level] &= ~(1L << slot);
+                }
+            }
+            if (state != EXPIRED) {
+                state = CANCELLED;
+            }
+        }
+
+        private void linkBefore(Timeout sentinel) {
+            previous = sentinel.previous;
+            next = sentinel;
+            sentinel.previous.next = this;
+            sentinel.previous = this;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+        }
+    }
+}
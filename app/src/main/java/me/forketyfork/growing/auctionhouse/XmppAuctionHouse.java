@@ -0,0 +1,201 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.Main;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.filter.MessageTypeFilter;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An auction house process hosting many items over one XMPP connection, for load-testing snipers
+ * where {@code FakeAuctionServer} only echoes the messages of one item.
+ * <p>
+ * The auction house logs in once, and every item is a resource of its account: snipers started with
+ * {@code -D}{@value Main#AUCTION_HOUSE_PROPERTY}{@code =<account>} address the auction of an item as
+ * {@code <account>@<host>/<item>}. No session is bound to these resources, so the server hands their messages
+ * to the auction house with the {@code to} address unchanged, and commands are dispatched on its resource
+ * the way the sniper dispatches events on their {@code from} address. Commands are handed to an
+ * {@link AuctionHouseEngine} straight from the connection thread. The events go back from the item's JID
+ * to the full JID the bidder last wrote from, so each of a sniper's shards gets the events of its items,
+ * while PRICE events name the bidder by its bare JID.
+ * <p>
+ * {@code SimpleXmppServer} accepts an item's JID as the sender of the events because it is a resource of the
+ * auction house's own account. Other servers stamp the full JID of the session, there the auction house
+ * would have to connect as an external component (XEP-0114) instead.
+ */
+public class XmppAuctionHouse implements AuctionOutbox {
+
+    private static final Logger logger = Logger.getLogger("XmppAuctionHouse");
+
+    public static final int DEFAULT_STARTING_PRICE = 1000;
+    public static final int DEFAULT_INCREMENT = 98;
+    public static final long DEFAULT_DURATION_MILLIS = 60_000;
+    public static final long DEFAULT_EXTENSION_MILLIS = 5_000;
+    // System property with the port of the XMPP server, 5222 by default
+    public static final String PORT_PROPERTY = "auctionhouse.port";
+    public static final int DEFAULT_PORT = 5222;
+
+    private final AbstractXMPPConnection connection;
+    private final String username;
+    private final String password;
+    private final ExecutorService workers = AuctionHouseEngine.newWorkerPool(Runtime.getRuntime().availableProcessors());
+    private final RealTimeClock clock = new RealTimeClock();
+    private final AuctionHouseEngine engine = new AuctionHouseEngine(workers, clock, this);
+    private final ConcurrentHashMap<String, HostedItem> items = new ConcurrentHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param username the account hosting the items, see {@link #connect()}
+     */
+    public XmppAuctionHouse(String hostname, int port, String username, String password) {
+        this.connection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+                .setHost(hostname)
+                .setXmppDomain(hostname)
+                .setPort(port)
+                .setSecurityMode(ConnectionConfiguration.SecurityMode.disabled)
+                .setCompressionEnabled(false)
+                .build());
+        this.username = username;
+        this.password = password;
+    }
+
+    /**
+     * Usage: {@code XmppAuctionHouse <hostname> <username> <password> <item>...}, runs until the process is stopped.
+     * The server port is taken from the {@value #PORT_PROPERTY} system property.
+     * Every auction closes {@link #DEFAULT_DURATION_MILLIS} after it opened, or later after late bids.
+     */
+    public static void main(String... args) throws Exception {
+        XmppAuctionHouse auctionHouse = new XmppAuctionHouse(args[0], Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT),
+                args[1], args[2]);
+        Runtime.getRuntime().addShutdownHook(new Thread(auctionHouse::stop, "AuctionHouse-Shutdown"));
+        auctionHouse.connect();
+        for (int i = 3; i < args.length; i++) {
+            auctionHouse.openAuction(args[i], DEFAULT_STARTING_PRICE, DEFAULT_INCREMENT,
+                    DEFAULT_DURATION_MILLIS, DEFAULT_EXTENSION_MILLIS);
+        }
+        logger.log(Level.INFO, "Auctioning {0} items as {1}", new Object[]{auctionHouse.engine.getItemCount(),
+                auctionHouse.connection.getUser()});
+        // Smack and the workers only run daemon threads
+        auctionHouse.awaitStop();
+    }
+
+    /**
+     * Log in to the server, the only connection of the auction house for all of its items.
+     */
+    public void connect() throws XMPPException, SmackException, IOException, InterruptedException {
+        connection.addSyncStanzaListener(this::process, MessageTypeFilter.CHAT);
+        connection.connect();
+        connection.login(username, password, Resourcepart.from(Main.AUCTION_RESOURCE));
+    }
+
+    /**
+     * Open an auction that is only closed by {@link #closeAuction(String)}.
+     */
+    public void openAuction(String itemId, int startingPrice, int increment) throws XmppStringprepException {
+        openAuction(itemId, startingPrice, increment, ItemAuction.NO_DEADLINE, 0);
+    }
+
+    /**
+     * Open an auction that closes after the duration, see {@link AuctionHouseEngine} for the extension.
+     */
+    public void openAuction(String itemId, int startingPrice, int increment, long durationMillis, long extensionMillis)
+            throws XmppStringprepException {
+        EntityFullJid itemJid = JidCreate.entityFullFrom(String.format(Main.HOSTED_AUCTION_ID_FORMAT,
+                username, connection.getXMPPServiceDomain(), itemId));
+        long deadline = durationMillis == ItemAuction.NO_DEADLINE ? ItemAuction.NO_DEADLINE : clock.millis() + durationMillis;
+        // Registered first, the engine may answer a command as soon as the auction is open
+        items.put(itemId, new HostedItem(itemJid, new ConcurrentHashMap<>()));
+        engine.openAuction(itemId, startingPrice, increment, deadline, extensionMillis);
+    }
+
+    /**
+     * Hand a command to the auction of the item it is addressed to, on the connection thread.
+     */
+    private void process(Stanza stanza) {
+        Jid from = stanza.getFrom();
+        Jid to = stanza.getTo();
+        String body = ((Message) stanza).getBody();
+        if (from == null || to == null || body == null || body.isEmpty()) {
+            return;
+        }
+        String itemId = to.getResourceOrEmpty().toString();
+        HostedItem item = items.get(itemId);
+        if (item == null) {
+            logger.log(Level.FINE, "No auction for {0}, dropped a message from {1}", new Object[]{to, from});
+            return;
+        }
+        String bidder = from.asBareJid().toString();
+        // The reply address is cached when the bidder first writes, before the engine can answer it
+        if (!from.equals(item.bidders().get(bidder))) {
+            item.bidders().put(bidder, from);
+        }
+        engine.process(itemId, bidder, body);
+    }
+
+    public void closeAuction(String itemId) {
+        engine.closeAuction(itemId);
+    }
+
+    public AuctionHouseEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public void send(String itemId, String bidder, CharSequence message) {
+        HostedItem item = items.get(itemId);
+        Jid bidderJid = item == null ? null : item.bidders().get(bidder);
+        if (bidderJid == null) {
+            return;
+        }
+        try {
+            // The message only lives as long as the call, the stanza keeps a copy
+            connection.sendStanza(connection.getStanzaFactory().buildMessageStanza()
+                    .from(item.jid())
+                    .to(bidderJid)
+                    .ofType(Message.Type.chat)
+                    .setBody(message.toString())
+                    .build());
+        } catch (SmackException.NotConnectedException e) {
+            logger.log(Level.WARNING, "Failed to send to " + bidder + " for " + itemId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until {@link #stop()} is called.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    public void stop() {
+        connection.disconnect();
+        workers.shutdownNow();
+        clock.close();
+        stopped.countDown();
+    }
+
+    /**
+     * @param bidders the full JID each bidder of the item last wrote from, by bare JID
+     */
+    private record HostedItem(EntityFullJid jid, ConcurrentHashMap<String, Jid> bidders) {
+    }
+}
@@ -0,0 +1,11 @@
+package me.forketyfork.growing.auctionsniper;
+
+/**
+ * Commands a bidder can send to an auction.
+ */
+public interface Auction {
+
+    void join();
+
+    void bid(int amount);
+}
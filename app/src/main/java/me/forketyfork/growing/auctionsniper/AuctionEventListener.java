@@ -0,0 +1,23 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.auctionsniper.sol.SolEvent.RejectionReason;
+
+/**
+ * Receives the events an auction reports to a bidder.
+ */
+public interface AuctionEventListener {
+
+    enum PriceSource {
+        FROM_SNIPER,
+        FROM_OTHER_BIDDER
+    }
+
+    void auctionClosed();
+
+    void currentPrice(int price, int increment, PriceSource priceSource);
+
+    /**
+     * The auction didn't accept a bid of the given price. The auction's state is reported by its other events.
+     */
+    void bidRejected(int price, RejectionReason reason);
+}
@@ -0,0 +1,61 @@
+package me.forketyfork.growing.auctionsniper;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the tasks of one auction on a shared pool, one at a time and in submission order,
+ * so the auction's sniper has a single writer without any locks.
+ * Submitting is a lock-free queue offer, and a mailbox occupies a pool thread only while it has tasks,
+ * so thousands of auctions share a pool of about one thread per core.
+ */
+public final class AuctionMailbox implements Executor {
+
+    private static final Logger logger = Logger.getLogger("AuctionMailbox");
+
+    // Tasks run per turn before the mailbox yields its pool thread to other auctions
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor pool;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    public AuctionMailbox(Executor pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        scheduleIfIdle();
+    }
+
+    private void scheduleIfIdle() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(drain);
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                break;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Auction task failed", e);
+            }
+        }
+        scheduled.set(false);
+        // A task offered after the last poll but before the flag was cleared would otherwise wait for the next one
+        if (!tasks.isEmpty()) {
+            scheduleIfIdle();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.auctionsniper.AuctionEventListener.PriceSource;
+import me.forketyfork.growing.auctionsniper.sol.SolBinary;
+import me.forketyfork.growing.auctionsniper.sol.SolDecoder;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent;
+import me.forketyfork.growing.auctionsniper.sol.SolFormatException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Translates SOL messages of a single auction into {@link AuctionEventListener} calls.
+ * A message without a body announces that the auction has closed.
+ * Binary SOL messages are translated the same way as textual ones.
+ * A price is reported as coming from the sniper when the bidder is the sniper's own id.
+ * <p>
+ * Events with a sequence number are checked against the highest number seen so far, which is all the state
+ * the check needs. An event numbered at or below it is a duplicate or arrived out of order, and is dropped.
+ * A skipped number means events were lost, e.g. around a reconnect: the event is still applied,
+ * since a PRICE carries the whole state of the auction, and the translator asks for a resync,
+ * so the auction sends its current state again. Events without a sequence number are always applied.
+ * A REJECTED event answers one of the sniper's bids rather than reporting a state of the auction,
+ * it is passed on without being checked against the sequence.
+ * <p>
+ * Messages are decoded into a reused {@link SolEvent}, so a translator must only be called from one thread at a time.
+ */
+public class AuctionMessageTranslator {
+
+    private static final Logger logger = Logger.getLogger("AuctionMessageTranslator");
+
+    private final String sniperId;
+    private final AuctionEventListener listener;
+    private final Runnable resync;
+    private final SolEvent event = new SolEvent();
+    // Highest sequence number seen, NO_SEQUENCE before the first sequenced event
+    private int lastSequence = SolEvent.NO_SEQUENCE;
+
+    public AuctionMessageTranslator(String sniperId, AuctionEventListener listener) {
+        this(sniperId, listener, () -> {
+        });
+    }
+
+    /**
+     * @param resync asks the auction for its current state, e.g. by joining again
+     */
+    public AuctionMessageTranslator(String sniperId, AuctionEventListener listener, Runnable resync) {
+        this.sniperId = sniperId;
+        this.listener = listener;
+        this.resync = resync;
+    }
+
+    public void processMessage(String body) {
+        if (body == null || body.isEmpty()) {
+            listener.auctionClosed();
+            return;
+        }
+        try {
+            SolDecoder.decode(body, event);
+        } catch (SolFormatException e) {
+            logger.log(Level.WARNING, "Ignoring malformed auction message", e);
+            return;
+        }
+        notifyListener();
+    }
+
+    public void processBinaryMessage(byte[] message, int offset, int length) {
+        try {
+            SolBinary.decodeEvent(message, offset, length, event);
+        } catch (SolFormatException e) {
+            logger.log(Level.WARNING, "Ignoring malformed binary auction message", e);
+            return;
+        }
+        notifyListener();
+    }
+
+    private void notifyListener() {
+        if (event.getType() == SolEvent.Type.REJECTED) {
+            listener.bidRejected(event.getRejectedPrice(), event.getRejectionReason());
+            event.clear();
+            return;
+        }
+        if (!acceptSequence(event.getSequence())) {
+            event.clear();
+            return;
+        }
+        switch (event.getType()) {
+            case CLOSE -> listener.auctionClosed();
+            case PRICE -> listener.currentPrice(event.getCurrentPrice(), event.getIncrement(),
+                    event.isFromBidder(sniperId) ? PriceSource.FROM_SNIPER : PriceSource.FROM_OTHER_BIDDER);
+        }
+        // Don't keep the message alive until the next one arrives
+        event.clear();
+    }
+
+    /**
+     * @return false if the event is a duplicate or older than an event already applied
+     */
+    private boolean acceptSequence(int sequence) {
+        if (sequence == SolEvent.NO_SEQUENCE) {
+            return true;
+        }
+        if (sequence <= lastSequence) {
+            logger.log(Level.FINE, "Dropping event {0}, already at {1}", new Object[]{sequence, lastSequence});
+            return false;
+        }
+        if (lastSequence != SolEvent.NO_SEQUENCE && sequence != lastSequence + 1) {
+            logger.log(Level.INFO, "Missed events {0} to {1}, resyncing", new Object[]{lastSequence + 1, sequence - 1});
+            resync.run();
+        }
+        lastSequence = sequence;
+        return true;
+    }
+}
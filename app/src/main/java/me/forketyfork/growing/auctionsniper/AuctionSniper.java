@@ -0,0 +1,78 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.auctionsniper.bidding.BiddingStrategy;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent.RejectionReason;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bids in a single auction: when another bidder raises the price, bids what the {@link BiddingStrategy} decides,
+ * and loses interest once the strategy doesn't bid any more. Never bids against its own bid.
+ * Once the auction has closed, the sniper stays LOST or WON and ignores late events. A rejected bid is only logged:
+ * a stale bid has been overtaken by a price the sniper gets anyway, and a rate limited sniper bids again
+ * when the price changes.
+ * Not thread-safe, all events of an auction must come from its {@link AuctionMailbox}.
+ */
+public class AuctionSniper implements AuctionEventListener {
+
+    private static final Logger logger = Logger.getLogger("AuctionSniper");
+
+    private final Auction auction;
+    private final BiddingStrategy strategy;
+    private final SniperListener sniperListener;
+    private SniperSnapshot snapshot;
+
+    public AuctionSniper(String itemId, Auction auction, SniperListener sniperListener) {
+        this(Item.of(itemId), auction, sniperListener);
+    }
+
+    public AuctionSniper(Item item, Auction auction, SniperListener sniperListener) {
+        this.auction = auction;
+        this.strategy = item.biddingStrategy();
+        this.sniperListener = sniperListener;
+        this.snapshot = SniperSnapshot.joining(item.identifier());
+    }
+
+    public SniperSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void auctionClosed() {
+        if (snapshot.state().isFinished()) {
+            return;
+        }
+        snapshot = snapshot.closed();
+        notifyChange();
+    }
+
+    @Override
+    public void currentPrice(int price, int increment, PriceSource priceSource) {
+        if (snapshot.state().isFinished()) {
+            return;
+        }
+        switch (priceSource) {
+            case FROM_SNIPER -> snapshot = snapshot.winning(price);
+            case FROM_OTHER_BIDDER -> {
+                int bid = strategy.bidFor(price, increment);
+                if (bid == BiddingStrategy.NO_BID) {
+                    snapshot = snapshot.losing(price);
+                } else {
+                    auction.bid(bid);
+                    snapshot = snapshot.bidding(price, bid);
+                }
+            }
+        }
+        notifyChange();
+    }
+
+    @Override
+    public void bidRejected(int price, RejectionReason reason) {
+        logger.log(Level.INFO, "Bid of {0} for {1} rejected: {2}", new Object[]{price, snapshot.itemId(), reason});
+    }
+
+    private void notifyChange() {
+        sniperListener.sniperStateChanged(snapshot);
+    }
+}
@@ -0,0 +1,59 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.auctionsniper.bidding.BiddingStrategy;
+
+/**
+ * An item to snipe for, with the limits the sniper bids within.
+ * Written on the command line as {@code <identifier>[,stop=<price>][,multiplier=<n>]}.
+ */
+public record Item(String identifier, int stopPrice, int incrementMultiplier) {
+
+    public static final int NO_STOP_PRICE = Integer.MAX_VALUE;
+
+    private static final String STOP_PRICE = "stop=";
+    private static final String MULTIPLIER = "multiplier=";
+
+    public Item {
+        if (identifier == null || identifier.isEmpty()) {
+            throw new IllegalArgumentException("Item identifier must not be empty");
+        }
+        if (stopPrice < 0) {
+            throw new IllegalArgumentException("Stop price must not be negative, got: " + stopPrice);
+        }
+        if (incrementMultiplier < 1) {
+            throw new IllegalArgumentException("Increment multiplier must be positive, got: " + incrementMultiplier);
+        }
+    }
+
+    /**
+     * An item bid for without a stop price, by the minimal increment.
+     */
+    public static Item of(String identifier) {
+        return new Item(identifier, NO_STOP_PRICE, 1);
+    }
+
+    public static Item parse(String spec) {
+        String[] parts = spec.split(",");
+        int stopPrice = NO_STOP_PRICE;
+        int multiplier = 1;
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.startsWith(STOP_PRICE)) {
+                stopPrice = Integer.parseInt(part.substring(STOP_PRICE.length()));
+            } else if (part.startsWith(MULTIPLIER)) {
+                multiplier = Integer.parseInt(part.substring(MULTIPLIER.length()));
+            } else {
+                throw new IllegalArgumentException("Unknown limit '" + part + "' for item " + parts[0]);
+            }
+        }
+        return new Item(parts[0].trim(), stopPrice, multiplier);
+    }
+
+    /**
+     * @return the strategy bidding by the increment multiplier up to the stop price
+     */
+    public BiddingStrategy biddingStrategy() {
+        BiddingStrategy strategy = BiddingStrategy.incrementBy(incrementMultiplier);
+        return stopPrice == NO_STOP_PRICE ? strategy : strategy.upTo(stopPrice);
+    }
+}
@@ -0,0 +1,9 @@
+package me.forketyfork.growing.auctionsniper;
+
+/**
+ * Notified when the state of a sniper changes.
+ */
+public interface SniperListener {
+
+    void sniperStateChanged(SniperSnapshot snapshot);
+}
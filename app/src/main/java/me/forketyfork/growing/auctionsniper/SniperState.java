@@ -0,0 +1,24 @@
+package me.forketyfork.growing.auctionsniper;
+
+public enum SniperState {
+    JOINING,
+    BIDDING,
+    WINNING,
+    LOSING,
+    LOST,
+    WON;
+
+    public boolean isFinished() {
+        return this == LOST || this == WON;
+    }
+
+    /**
+     * @return the final state once the auction closes in this state
+     */
+    public SniperState whenAuctionClosed() {
+        return switch (this) {
+            case WINNING, WON -> WON;
+            case JOINING, BIDDING, LOSING, LOST -> LOST;
+        };
+    }
+}
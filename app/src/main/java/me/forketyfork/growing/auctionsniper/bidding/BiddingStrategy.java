@@ -0,0 +1,43 @@
+package me.forketyfork.growing.auctionsniper.bidding;
+
+/**
+ * Decides how much the sniper bids when another bidder raises the price of an auction.
+ * The sniper never asks about prices it set itself, it doesn't bid against its own bid.
+ * Decisions run for every PRICE event of every auction, implementations must not allocate.
+ */
+@FunctionalInterface
+public interface BiddingStrategy {
+
+    /**
+     * Decision not to bid any more in the auction.
+     */
+    int NO_BID = -1;
+
+    /**
+     * @return the amount to bid, or {@link #NO_BID}
+     */
+    int bidFor(int price, int increment);
+
+    /**
+     * Bid the current price plus the minimal increment taken {@code multiplier} times.
+     */
+    static BiddingStrategy incrementBy(int multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Increment multiplier must be positive, got: " + multiplier);
+        }
+        return (price, increment) -> {
+            long bid = price + (long) increment * multiplier;
+            return bid > Integer.MAX_VALUE ? NO_BID : (int) bid;
+        };
+    }
+
+    /**
+     * Stop bidding once this strategy would bid more than the stop price.
+     */
+    default BiddingStrategy upTo(int stopPrice) {
+        return (price, increment) -> {
+            int bid = bidFor(price, increment);
+            return bid > stopPrice ? NO_BID : bid;
+        };
+    }
+}
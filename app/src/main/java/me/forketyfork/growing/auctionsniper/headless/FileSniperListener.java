@@ -0,0 +1,45 @@
+package me.forketyfork.growing.auctionsniper.headless;
+
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends every sniper state change to a file as a line of {@code item,lastPrice,lastBid,STATE}.
+ * Snipers of different auctions report from different threads, lines are never interleaved.
+ */
+public class FileSniperListener implements SniperListener, Closeable {
+
+    private final BufferedWriter writer;
+
+    public FileSniperListener(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void sniperStateChanged(SniperSnapshot snapshot) {
+        try {
+            writer.write(snapshot.itemId() + "," + snapshot.lastPrice() + "," + snapshot.lastBid() + ","
+                    + snapshot.state());
+            writer.newLine();
+            // A line is visible to readers of the file as soon as the state changes
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write sniper state of " + snapshot.itemId(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
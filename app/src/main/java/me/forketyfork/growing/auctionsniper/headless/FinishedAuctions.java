@@ -0,0 +1,52 @@
+package me.forketyfork.growing.auctionsniper.headless;
+
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Passes sniper state changes on to a status sink and counts the auctions that have finished.
+ * All threads of the sniper are daemons, so the headless mode waits here to keep the JVM running
+ * until every auction is LOST or WON.
+ */
+public class FinishedAuctions implements SniperListener {
+
+    private final SniperListener sink;
+    private final int auctionCount;
+    private final Set<String> finishedItems = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public FinishedAuctions(SniperListener sink, int auctionCount) {
+        this.sink = sink;
+        this.auctionCount = auctionCount;
+        if (auctionCount == 0) {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public void sniperStateChanged(SniperSnapshot snapshot) {
+        sink.sniperStateChanged(snapshot);
+        if (snapshot.state().isFinished() && finishedItems.add(snapshot.itemId())
+                && finishedItems.size() >= auctionCount) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Stop waiting even though some auctions haven't finished, e.g. because the JVM is shutting down.
+     */
+    public void release() {
+        done.countDown();
+    }
+
+    /**
+     * Wait until every auction has finished or {@link #release()} was called.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+}
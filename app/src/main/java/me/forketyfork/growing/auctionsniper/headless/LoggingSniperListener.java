@@ -0,0 +1,21 @@
+package me.forketyfork.growing.auctionsniper.headless;
+
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports sniper state changes to the log.
+ */
+public class LoggingSniperListener implements SniperListener {
+
+    private static final Logger logger = Logger.getLogger("Sniper");
+
+    @Override
+    public void sniperStateChanged(SniperSnapshot snapshot) {
+        logger.log(Level.INFO, "SNIPER: {0} is {1}, last price {2,number,#}, last bid {3,number,#}",
+                new Object[]{snapshot.itemId(), snapshot.state(), snapshot.lastPrice(), snapshot.lastBid()});
+    }
+}
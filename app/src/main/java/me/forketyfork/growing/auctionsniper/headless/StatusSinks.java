@@ -0,0 +1,33 @@
+package me.forketyfork.growing.auctionsniper.headless;
+
+import me.forketyfork.growing.auctionsniper.SniperListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates the listener that receives sniper state changes in headless mode.
+ * Any other {@link SniperListener}, e.g. one feeding metrics, can be plugged in the same way.
+ */
+public final class StatusSinks {
+
+    public static final String LOG = "log";
+    public static final String FILE_PREFIX = "file:";
+
+    private StatusSinks() {
+    }
+
+    /**
+     * @param spec {@code log} to log state changes, or {@code file:<path>} to append them to a file
+     */
+    public static SniperListener fromSpec(String spec) throws IOException {
+        if (LOG.equals(spec)) {
+            return new LoggingSniperListener();
+        }
+        if (spec.startsWith(FILE_PREFIX) && spec.length() > FILE_PREFIX.length()) {
+            return new FileSniperListener(Path.of(spec.substring(FILE_PREFIX.length())));
+        }
+        throw new IllegalArgumentException("Unknown status sink '" + spec + "', expected '" + LOG
+                + "' or '" + FILE_PREFIX + "<path>'");
+    }
+}
@@ -0,0 +1,265 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+/**
+ * Compact binary form of SOL messages. A message starts with the format version and the message kind,
+ * followed by the fields of that kind in a fixed order, without field names:
+ * <pre>
+ * PRICE: version, kind, currentPrice (zigzag varint), increment (zigzag varint), bidder length (varint), bidder (UTF-8),
+ *        [sequence (varint)]
+ * CLOSE: version, kind, [sequence (varint)]
+ * REJECTED: version, kind, price (zigzag varint), reason code (varint)
+ * JOIN:  version, kind
+ * BID:   version, kind, price (zigzag varint)
+ * </pre>
+ * The sequence number of an event is optional and comes last, so decoders that don't know it ignore it.
+ * Encoding writes into a caller-provided array and decoding reads into a reusable {@link SolEvent},
+ * so neither allocates.
+ */
+public final class SolBinary {
+
+    public static final int VERSION = 1;
+
+    // Upper bound of an encoded message without a bidder: version, kind and two varints of at most five bytes
+    public static final int MAX_FIXED_LENGTH = 12;
+
+    private static final byte KIND_PRICE = 1;
+    private static final byte KIND_CLOSE = 2;
+    private static final byte KIND_JOIN = 3;
+    private static final byte KIND_BID = 4;
+    private static final byte KIND_REJECTED = 5;
+    private static final SolEvent.RejectionReason[] REASONS = SolEvent.RejectionReason.values();
+
+    private SolBinary() {
+    }
+
+    /**
+     * @return the number of bytes a PRICE event with the given bidder takes at most, with a sequence number
+     */
+    public static int maxPriceLength(CharSequence bidder) {
+        // The bidder length and the sequence number are varints of at most five bytes
+        return MAX_FIXED_LENGTH + 5 + 5 + bidder.length() * 3;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public static int encodePrice(int currentPrice, int increment, CharSequence bidder, byte[] destination, int offset) {
+        return encodePrice(currentPrice, increment, bidder, SolEvent.NO_SEQUENCE, destination, offset);
+    }
+
+    /**
+     * @param sequence the number of the event, {@link SolEvent#NO_SEQUENCE} to leave it out
+     * @return the number of bytes written
+     */
+    public static int encodePrice(int currentPrice, int increment, CharSequence bidder, int sequence,
+                                  byte[] destination, int offset) {
+        int position = header(KIND_PRICE, destination, offset);
+        position = writeVarint(zigzag(currentPrice), destination, position);
+        position = writeVarint(zigzag(increment), destination, position);
+        position = writeVarint(utf8Length(bidder), destination, position);
+        position = writeUtf8(bidder, destination, position);
+        return writeSequence(sequence, destination, position) - offset;
+    }
+
+    public static int encodeClose(byte[] destination, int offset) {
+        return encodeClose(SolEvent.NO_SEQUENCE, destination, offset);
+    }
+
+    /**
+     * @param sequence the number of the event, {@link SolEvent#NO_SEQUENCE} to leave it out
+     */
+    public static int encodeClose(int sequence, byte[] destination, int offset) {
+        return writeSequence(sequence, destination, header(KIND_CLOSE, destination, offset)) - offset;
+    }
+
+    public static int encodeRejected(int price, SolEvent.RejectionReason reason, byte[] destination, int offset) {
+        int position = header(KIND_REJECTED, destination, offset);
+        position = writeVarint(zigzag(price), destination, position);
+        return writeVarint(reason.code, destination, position) - offset;
+    }
+
+    public static int encodeJoin(byte[] destination, int offset) {
+        return header(KIND_JOIN, destination, offset) - offset;
+    }
+
+    public static int encodeBid(int price, byte[] destination, int offset) {
+        int position = header(KIND_BID, destination, offset);
+        return writeVarint(zigzag(price), destination, position) - offset;
+    }
+
+    /**
+     * Decode a PRICE, CLOSE or REJECTED event into the given event, replacing its previous content.
+     * The event refers to the source array for the bidder.
+     *
+     * @throws SolFormatException if the message is truncated, isn't an event, has a sequence number below 1
+     * or an unknown rejection reason, or isn't of the supported version
+     */
+    public static void decodeEvent(byte[] source, int offset, int length, SolEvent event) {
+        event.clear();
+        int end = offset + length;
+        if (length < 2) {
+            throw new SolFormatException("Truncated binary SOL message");
+        }
+        if (source[offset] != VERSION) {
+            throw new SolFormatException("Unsupported binary SOL version " + source[offset]);
+        }
+        byte kind = source[offset + 1];
+        if (kind == KIND_CLOSE) {
+            event.setType(SolEvent.Type.CLOSE);
+            readSequence(source, offset + 2, end, event);
+            return;
+        }
+        if (kind == KIND_REJECTED) {
+            long field = readVarint(source, offset + 2, end);
+            event.setRejectedPrice(unzigzag((int) field));
+            event.setRejectionReason(rejectionReason((int) readVarint(source, position(field), end)));
+            event.setType(SolEvent.Type.REJECTED);
+            return;
+        }
+        if (kind != KIND_PRICE) {
+            throw new SolFormatException("Not a binary SOL event: kind " + kind);
+        }
+        long field = readVarint(source, offset + 2, end);
+        event.setCurrentPrice(unzigzag((int) field));
+        field = readVarint(source, position(field), end);
+        event.setIncrement(unzigzag((int) field));
+        field = readVarint(source, position(field), end);
+        int bidderStart = position(field);
+        int bidderEnd = bidderStart + (int) field;
+        if (bidderEnd > end || bidderEnd < bidderStart) {
+            throw new SolFormatException("Truncated binary SOL message");
+        }
+        event.setType(SolEvent.Type.PRICE);
+        event.setBidder(source, bidderStart, bidderEnd);
+        readSequence(source, bidderEnd, end, event);
+    }
+
+    /**
+     * @return the price of a binary BID command
+     * @throws SolFormatException if the message is truncated, isn't a bid, or isn't of the supported version
+     */
+    public static int decodeBid(byte[] source, int offset, int length) {
+        if (length < 2 || source[offset] != VERSION || source[offset + 1] != KIND_BID) {
+            throw new SolFormatException("Not a binary SOL bid");
+        }
+        return unzigzag((int) readVarint(source, offset + 2, offset + length));
+    }
+
+    /**
+     * @return true if the message is a binary JOIN command of the supported version
+     */
+    public static boolean isJoin(byte[] source, int offset, int length) {
+        return length == 2 && source[offset] == VERSION && source[offset + 1] == KIND_JOIN;
+    }
+
+    private static SolEvent.RejectionReason rejectionReason(int code) {
+        for (SolEvent.RejectionReason reason : REASONS) {
+            if (reason.code == code) {
+                return reason;
+            }
+        }
+        throw new SolFormatException("Unknown binary SOL rejection reason " + code);
+    }
+
+    private static int header(byte kind, byte[] destination, int offset) {
+        destination[offset] = VERSION;
+        destination[offset + 1] = kind;
+        return offset + 2;
+    }
+
+    private static int writeSequence(int sequence, byte[] destination, int position) {
+        return sequence == SolEvent.NO_SEQUENCE ? position : writeVarint(sequence, destination, position);
+    }
+
+    private static void readSequence(byte[] source, int position, int end, SolEvent event) {
+        if (position < end) {
+            int sequence = (int) readVarint(source, position, end);
+            if (sequence <= SolEvent.NO_SEQUENCE) {
+                throw new SolFormatException("Binary SOL sequence numbers start at 1");
+            }
+            event.setSequence(sequence);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarint(int value, byte[] destination, int position) {
+        while ((value & ~0x7F) != 0) {
+            destination[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        destination[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Read an unsigned varint of at most five bytes.
+     * @return the value in the low 32 bits and the position after the varint in the high 32 bits,
+     * so that reading doesn't need a holder object
+     */
+    private static long readVarint(byte[] source, int position, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position >= end) {
+                throw new SolFormatException("Truncated binary SOL message");
+            }
+            byte b = source[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return ((long) position << 32) | (value & 0xFFFFFFFFL);
+            }
+        }
+        throw new SolFormatException("Binary SOL varint is too long");
+    }
+
+    private static int position(long varint) {
+        return (int) (varint >>> 32);
+    }
+
+    private static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int writeUtf8(CharSequence text, byte[] destination, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                destination[position++] = (byte) c;
+            } else if (c < 0x800) {
+                destination[position++] = (byte) (0xC0 | (c >> 6));
+                destination[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                destination[position++] = (byte) (0xF0 | (codePoint >> 18));
+                destination[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                destination[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                destination[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                destination[position++] = (byte) (0xE0 | (c >> 12));
+                destination[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                destination[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+}
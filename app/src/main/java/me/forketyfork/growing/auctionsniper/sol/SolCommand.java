@@ -0,0 +1,45 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+/**
+ * A decoded SOL command, the auction side counterpart of {@link SolEvent}.
+ * Instances are mutable and meant to be reused for every message from the same source.
+ */
+public final class SolCommand {
+
+    public enum Type {
+        JOIN,
+        BID
+    }
+
+    private Type type;
+    private int price;
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the price of a bid, 0 for other commands
+     */
+    public int getPrice() {
+        return price;
+    }
+
+    public void clear() {
+        type = null;
+        price = 0;
+    }
+
+    void setType(Type type) {
+        this.type = type;
+    }
+
+    void setPrice(int price) {
+        this.price = price;
+    }
+
+    @Override
+    public String toString() {
+        return "SolCommand{type=" + type + ", price=" + price + "}";
+    }
+}
@@ -0,0 +1,224 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+/**
+ * Decodes SOL events such as {@code SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1000; Increment: 98; Bidder: other;}
+ * into a reusable {@link SolEvent}, and SOL commands such as {@code SOLVersion: 1.1; Command: BID; Price: 1098;}
+ * into a reusable {@link SolCommand}. A REJECTED event such as
+ * {@code SOLVersion: 1.1; Event: REJECTED; Price: 1097; Reason: STALE;} answers a bid that wasn't accepted.
+ * Keys and values are compared and parsed in place,
+ * so decoding a well-formed message doesn't allocate. Unknown keys are ignored, so decoders that don't know
+ * the optional {@code Seq} field of events still read sequenced events.
+ */
+public final class SolDecoder {
+
+    public static final String VERSION = "1.1";
+
+    private static final String VERSION_KEY = "SOLVersion";
+    private static final String EVENT_KEY = "Event";
+    private static final String CURRENT_PRICE_KEY = "CurrentPrice";
+    private static final String INCREMENT_KEY = "Increment";
+    private static final String BIDDER_KEY = "Bidder";
+    private static final String SEQUENCE_KEY = "Seq";
+    private static final String COMMAND_KEY = "Command";
+    private static final String PRICE_KEY = "Price";
+    private static final String REASON_KEY = "Reason";
+
+    // Cached because values() returns a new array on every call
+    private static final SolEvent.Type[] TYPES = SolEvent.Type.values();
+    private static final SolEvent.RejectionReason[] REASONS = SolEvent.RejectionReason.values();
+    private static final SolCommand.Type[] COMMAND_TYPES = SolCommand.Type.values();
+
+    private SolDecoder() {
+    }
+
+    /**
+     * Decode the message into the given event, replacing its previous content.
+     * The event refers to the message for the bidder, so the message must stay unchanged while the event is in use.
+     *
+     * @throws SolFormatException if the message is malformed, has no event type or a sequence number below 1,
+     * is a REJECTED event without a reason, or isn't of the supported version
+     */
+    public static void decode(CharSequence message, SolEvent event) {
+        event.clear();
+        boolean hasVersion = false;
+        int length = message.length();
+        int position = skipWhitespace(message, 0, length);
+        while (position < length) {
+            int fieldEnd = indexOf(message, ';', position, length);
+            int colon = indexOf(message, ':', position, fieldEnd < 0 ? length : fieldEnd);
+            if (fieldEnd < 0 || colon < 0) {
+                throw new SolFormatException("Malformed SOL field at " + position + ": " + message);
+            }
+            int keyEnd = trimEnd(message, position, colon);
+            int valueStart = skipWhitespace(message, colon + 1, fieldEnd);
+            int valueEnd = trimEnd(message, valueStart, fieldEnd);
+
+            if (regionEquals(message, position, keyEnd, VERSION_KEY)) {
+                if (!regionEquals(message, valueStart, valueEnd, VERSION)) {
+                    throw new SolFormatException("Unsupported SOL version: " + message);
+                }
+                hasVersion = true;
+            } else if (regionEquals(message, position, keyEnd, EVENT_KEY)) {
+                event.setType(eventType(message, valueStart, valueEnd));
+            } else if (regionEquals(message, position, keyEnd, CURRENT_PRICE_KEY)) {
+                event.setCurrentPrice(parseInt(message, valueStart, valueEnd));
+            } else if (regionEquals(message, position, keyEnd, INCREMENT_KEY)) {
+                event.setIncrement(parseInt(message, valueStart, valueEnd));
+            } else if (regionEquals(message, position, keyEnd, BIDDER_KEY)) {
+                event.setBidder(message, valueStart, valueEnd);
+            } else if (regionEquals(message, position, keyEnd, SEQUENCE_KEY)) {
+                int sequence = parseInt(message, valueStart, valueEnd);
+                if (sequence <= SolEvent.NO_SEQUENCE) {
+                    throw new SolFormatException("Sequence numbers start at 1: " + message);
+                }
+                event.setSequence(sequence);
+            } else if (regionEquals(message, position, keyEnd, PRICE_KEY)) {
+                event.setRejectedPrice(parseInt(message, valueStart, valueEnd));
+            } else if (regionEquals(message, position, keyEnd, REASON_KEY)) {
+                event.setRejectionReason(rejectionReason(message, valueStart, valueEnd));
+            }
+            position = skipWhitespace(message, fieldEnd + 1, length);
+        }
+        if (!hasVersion) {
+            throw new SolFormatException("Missing SOL version: " + message);
+        }
+        if (event.getType() == null) {
+            throw new SolFormatException("Missing SOL event type: " + message);
+        }
+        if (event.getType() == SolEvent.Type.REJECTED && event.getRejectionReason() == null) {
+            throw new SolFormatException("Missing rejection reason: " + message);
+        }
+    }
+
+    /**
+     * Decode the message into the given command, replacing its previous content.
+     *
+     * @throws SolFormatException if the message is malformed, has no command type, is a bid without a price,
+     * or isn't of the supported version
+     */
+    public static void decodeCommand(CharSequence message, SolCommand command) {
+        command.clear();
+        boolean hasVersion = false;
+        boolean hasPrice = false;
+        int length = message.length();
+        int position = skipWhitespace(message, 0, length);
+        while (position < length) {
+            int fieldEnd = indexOf(message, ';', position, length);
+            int colon = indexOf(message, ':', position, fieldEnd < 0 ? length : fieldEnd);
+            if (fieldEnd < 0 || colon < 0) {
+                throw new SolFormatException("Malformed SOL field at " + position + ": " + message);
+            }
+            int keyEnd = trimEnd(message, position, colon);
+            int valueStart = skipWhitespace(message, colon + 1, fieldEnd);
+            int valueEnd = trimEnd(message, valueStart, fieldEnd);
+
+            if (regionEquals(message, position, keyEnd, VERSION_KEY)) {
+                if (!regionEquals(message, valueStart, valueEnd, VERSION)) {
+                    throw new SolFormatException("Unsupported SOL version: " + message);
+                }
+                hasVersion = true;
+            } else if (regionEquals(message, position, keyEnd, COMMAND_KEY)) {
+                command.setType(commandType(message, valueStart, valueEnd));
+            } else if (regionEquals(message, position, keyEnd, PRICE_KEY)) {
+                command.setPrice(parseInt(message, valueStart, valueEnd));
+                hasPrice = true;
+            }
+            position = skipWhitespace(message, fieldEnd + 1, length);
+        }
+        if (!hasVersion) {
+            throw new SolFormatException("Missing SOL version: " + message);
+        }
+        if (command.getType() == null) {
+            throw new SolFormatException("Missing SOL command type: " + message);
+        }
+        if (command.getType() == SolCommand.Type.BID && !hasPrice) {
+            throw new SolFormatException("Missing bid price: " + message);
+        }
+    }
+
+    private static SolEvent.Type eventType(CharSequence message, int start, int end) {
+        for (SolEvent.Type type : TYPES) {
+            if (regionEquals(message, start, end, type.name())) {
+                return type;
+            }
+        }
+        throw new SolFormatException("Unknown SOL event: " + message);
+    }
+
+    private static SolEvent.RejectionReason rejectionReason(CharSequence message, int start, int end) {
+        for (SolEvent.RejectionReason reason : REASONS) {
+            if (regionEquals(message, start, end, reason.name())) {
+                return reason;
+            }
+        }
+        throw new SolFormatException("Unknown rejection reason: " + message);
+    }
+
+    private static SolCommand.Type commandType(CharSequence message, int start, int end) {
+        for (SolCommand.Type type : COMMAND_TYPES) {
+            if (regionEquals(message, start, end, type.name())) {
+                return type;
+            }
+        }
+        throw new SolFormatException("Unknown SOL command: " + message);
+    }
+
+    private static int parseInt(CharSequence message, int start, int end) {
+        if (start >= end) {
+            throw new SolFormatException("Missing number: " + message);
+        }
+        boolean negative = message.charAt(start) == '-';
+        int position = negative ? start + 1 : start;
+        if (position >= end) {
+            throw new SolFormatException("Missing number: " + message);
+        }
+        // Accumulate negatively so that Integer.MIN_VALUE fits as well
+        int result = 0;
+        for (; position < end; position++) {
+            int digit = message.charAt(position) - '0';
+            if (digit < 0 || digit > 9 || result < (Integer.MIN_VALUE + digit) / 10) {
+                throw new SolFormatException("Invalid number: " + message);
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative && result == Integer.MIN_VALUE) {
+            throw new SolFormatException("Invalid number: " + message);
+        }
+        return negative ? result : -result;
+    }
+
+    private static boolean regionEquals(CharSequence message, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (message.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence message, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(CharSequence message, int start, int end) {
+        while (start < end && Character.isWhitespace(message.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence message, int start, int end) {
+        while (end > start && Character.isWhitespace(message.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
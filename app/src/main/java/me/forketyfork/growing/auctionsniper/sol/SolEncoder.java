@@ -0,0 +1,157 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+import java.nio.CharBuffer;
+
+/**
+ * Encodes SOL commands, and the events an auction sends, into a reusable character buffer
+ * instead of formatting new strings. The result of an encode call is a view of the buffer
+ * that stays valid until the next call, so an encoder must not be shared between threads.
+ * Events get the optional sequence field when they are encoded with a sequence number.
+ */
+public final class SolEncoder {
+
+    private static final char[] JOIN_COMMAND = ("SOLVersion: " + SolDecoder.VERSION + "; Command: JOIN;").toCharArray();
+    private static final char[] BID_COMMAND_PREFIX = ("SOLVersion: " + SolDecoder.VERSION + "; Command: BID; Price: ").toCharArray();
+    private static final char[] CLOSE_EVENT = ("SOLVersion: " + SolDecoder.VERSION + "; Event: CLOSE;").toCharArray();
+    private static final char[] PRICE_EVENT_PREFIX = ("SOLVersion: " + SolDecoder.VERSION + "; Event: PRICE; CurrentPrice: ").toCharArray();
+    private static final char[] INCREMENT_FIELD = "; Increment: ".toCharArray();
+    private static final char[] BIDDER_FIELD = "; Bidder: ".toCharArray();
+    private static final char[] REJECTED_EVENT_PREFIX = ("SOLVersion: " + SolDecoder.VERSION + "; Event: REJECTED; Price: ").toCharArray();
+    private static final char[] REASON_FIELD = "; Reason: ".toCharArray();
+    // Follows the semicolon that ends the other fields
+    private static final char[] SEQUENCE_FIELD = " Seq: ".toCharArray();
+
+    // Longest command: the bid prefix, a sign, ten digits, and the terminating semicolon.
+    // Price events name a bidder of any length, the buffer grows for them.
+    private char[] chars = new char[BID_COMMAND_PREFIX.length + 12];
+    private CharBuffer view = CharBuffer.wrap(chars);
+    private int length;
+
+    public CharSequence encodeJoin() {
+        System.arraycopy(JOIN_COMMAND, 0, chars, 0, JOIN_COMMAND.length);
+        return result(JOIN_COMMAND.length);
+    }
+
+    public CharSequence encodeBid(int price) {
+        System.arraycopy(BID_COMMAND_PREFIX, 0, chars, 0, BID_COMMAND_PREFIX.length);
+        int end = writeInt(price, BID_COMMAND_PREFIX.length);
+        chars[end++] = ';';
+        return result(end);
+    }
+
+    public CharSequence encodeClose() {
+        return encodeClose(SolEvent.NO_SEQUENCE);
+    }
+
+    /**
+     * @param sequence the number of the event, {@link SolEvent#NO_SEQUENCE} to leave the sequence field out
+     */
+    public CharSequence encodeClose(int sequence) {
+        ensureCapacity(CLOSE_EVENT.length + SEQUENCE_FIELD.length + 11 + 1);
+        System.arraycopy(CLOSE_EVENT, 0, chars, 0, CLOSE_EVENT.length);
+        return result(writeSequence(sequence, CLOSE_EVENT.length));
+    }
+
+    public CharSequence encodePrice(int currentPrice, int increment, CharSequence bidder) {
+        return encodePrice(currentPrice, increment, bidder, SolEvent.NO_SEQUENCE);
+    }
+
+    /**
+     * @param sequence the number of the event, {@link SolEvent#NO_SEQUENCE} to leave the sequence field out
+     */
+    public CharSequence encodePrice(int currentPrice, int increment, CharSequence bidder, int sequence) {
+        ensureCapacity(PRICE_EVENT_PREFIX.length + INCREMENT_FIELD.length + BIDDER_FIELD.length + 2 * 11 + bidder.length() + 1
+                + SEQUENCE_FIELD.length + 11 + 1);
+        System.arraycopy(PRICE_EVENT_PREFIX, 0, chars, 0, PRICE_EVENT_PREFIX.length);
+        int end = writeInt(currentPrice, PRICE_EVENT_PREFIX.length);
+        System.arraycopy(INCREMENT_FIELD, 0, chars, end, INCREMENT_FIELD.length);
+        end = writeInt(increment, end + INCREMENT_FIELD.length);
+        System.arraycopy(BIDDER_FIELD, 0, chars, end, BIDDER_FIELD.length);
+        end += BIDDER_FIELD.length;
+        for (int i = 0; i < bidder.length(); i++) {
+            chars[end++] = bidder.charAt(i);
+        }
+        chars[end++] = ';';
+        return result(writeSequence(sequence, end));
+    }
+
+    /**
+     * Encode the answer to a bid that wasn't accepted.
+     */
+    public CharSequence encodeRejected(int price, SolEvent.RejectionReason reason) {
+        String reasonName = reason.name();
+        ensureCapacity(REJECTED_EVENT_PREFIX.length + 11 + REASON_FIELD.length + reasonName.length() + 1);
+        System.arraycopy(REJECTED_EVENT_PREFIX, 0, chars, 0, REJECTED_EVENT_PREFIX.length);
+        int end = writeInt(price, REJECTED_EVENT_PREFIX.length);
+        System.arraycopy(REASON_FIELD, 0, chars, end, REASON_FIELD.length);
+        end += REASON_FIELD.length;
+        reasonName.getChars(0, reasonName.length(), chars, end);
+        end += reasonName.length();
+        chars[end++] = ';';
+        return result(end);
+    }
+
+    /**
+     * Copy the last encoded command into the byte array. SOL commands are plain ASCII,
+     * so the bytes are valid UTF-8. Not meant for price events, their bidder may not be ASCII.
+     *
+     * @return the number of bytes written
+     */
+    public int writeTo(byte[] destination, int offset) {
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = (byte) chars[i];
+        }
+        return length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, 2 * chars.length)];
+            view = CharBuffer.wrap(chars);
+        }
+    }
+
+    private CharSequence result(int length) {
+        this.length = length;
+        view.clear();
+        view.limit(length);
+        return view;
+    }
+
+    private int writeSequence(int sequence, int position) {
+        if (sequence == SolEvent.NO_SEQUENCE) {
+            return position;
+        }
+        System.arraycopy(SEQUENCE_FIELD, 0, chars, position, SEQUENCE_FIELD.length);
+        int end = writeInt(sequence, position + SEQUENCE_FIELD.length);
+        chars[end++] = ';';
+        return end;
+    }
+
+    private int writeInt(int value, int position) {
+        if (value == Integer.MIN_VALUE) {
+            // Can't be negated, fall back to the generic conversion
+            String digits = Integer.toString(value);
+            digits.getChars(0, digits.length(), chars, position);
+            return position + digits.length();
+        }
+        if (value < 0) {
+            chars[position++] = '-';
+            value = -value;
+        }
+        int digitCount = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digitCount++;
+        }
+        int end = position + digitCount;
+        for (int i = end - 1; i >= position; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,192 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoded SOL event. Instances are mutable and meant to be reused for every message
+ * from the same source, so decoding doesn't allocate. The bidder is kept as a range
+ * of the decoded text or binary message instead of a separate string.
+ * <p>
+ * A REJECTED event answers a bid the auction didn't accept, with the price of the bid and the reason.
+ * It is about the bid, not the state of the auction, so it has no sequence number.
+ */
+public final class SolEvent {
+
+    // Sequence number of an event sent without one
+    public static final int NO_SEQUENCE = 0;
+
+    public enum Type {
+        PRICE,
+        CLOSE,
+        REJECTED
+    }
+
+    public enum RejectionReason {
+        // Below the current price plus the increment, the price has moved on since the bid was made
+        STALE(1),
+        // The bidder bids faster than the auction allows
+        RATE_LIMITED(2);
+
+        // Stable code in binary messages
+        final int code;
+
+        RejectionReason(int code) {
+            this.code = code;
+        }
+    }
+
+    private Type type;
+    private int currentPrice;
+    private int increment;
+    private int sequence;
+    private int rejectedPrice;
+    private RejectionReason rejectionReason;
+    private CharSequence source;
+    private byte[] binarySource;
+    private int bidderStart;
+    private int bidderEnd;
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getCurrentPrice() {
+        return currentPrice;
+    }
+
+    public int getIncrement() {
+        return increment;
+    }
+
+    /**
+     * @return the number of the event in the sequence of events of its item, {@link #NO_SEQUENCE} if it has none
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the price of the bid a REJECTED event answers
+     */
+    public int getRejectedPrice() {
+        return rejectedPrice;
+    }
+
+    /**
+     * @return why the bid of a REJECTED event was rejected, null for other events
+     */
+    public RejectionReason getRejectionReason() {
+        return rejectionReason;
+    }
+
+    /**
+     * Compare the bidder with the given name without materializing the bidder as a string.
+     */
+    public boolean isFromBidder(CharSequence bidder) {
+        if (binarySource != null) {
+            return isFromBinaryBidder(bidder);
+        }
+        int length = bidderEnd - bidderStart;
+        if (source == null || bidder.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(bidderStart + i) != bidder.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isFromBinaryBidder(CharSequence bidder) {
+        int length = bidderEnd - bidderStart;
+        if (bidder.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < bidder.length(); i++) {
+            char c = bidder.charAt(i);
+            if (c >= 0x80) {
+                // UTF-8 bytes don't map one to one onto characters, compare the decoded bidder instead
+                return bidder.toString().equals(getBidder());
+            }
+            if (binarySource[bidderStart + i] != c) {
+                return false;
+            }
+        }
+        return bidder.length() == length;
+    }
+
+    /**
+     * @return the bidder as a new string, or null if the event has no bidder
+     */
+    public String getBidder() {
+        if (bidderEnd <= bidderStart) {
+            return null;
+        }
+        if (binarySource != null) {
+            return new String(binarySource, bidderStart, bidderEnd - bidderStart, StandardCharsets.UTF_8);
+        }
+        return source == null ? null : source.subSequence(bidderStart, bidderEnd).toString();
+    }
+
+    /**
+     * Forget the decoded values and the reference to the decoded message.
+     */
+    public void clear() {
+        type = null;
+        currentPrice = 0;
+        increment = 0;
+        sequence = NO_SEQUENCE;
+        rejectedPrice = 0;
+        rejectionReason = null;
+        source = null;
+        binarySource = null;
+        bidderStart = 0;
+        bidderEnd = 0;
+    }
+
+    void setType(Type type) {
+        this.type = type;
+    }
+
+    void setCurrentPrice(int currentPrice) {
+        this.currentPrice = currentPrice;
+    }
+
+    void setIncrement(int increment) {
+        this.increment = increment;
+    }
+
+    void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    void setRejectedPrice(int rejectedPrice) {
+        this.rejectedPrice = rejectedPrice;
+    }
+
+    void setRejectionReason(RejectionReason rejectionReason) {
+        this.rejectionReason = rejectionReason;
+    }
+
+    void setBidder(CharSequence source, int start, int end) {
+        this.source = source;
+        this.binarySource = null;
+        this.bidderStart = start;
+        this.bidderEnd = end;
+    }
+
+    void setBidder(byte[] utf8Source, int start, int end) {
+        this.source = null;
+        this.binarySource = utf8Source;
+        this.bidderStart = start;
+        this.bidderEnd = end;
+    }
+
+    @Override
+    public String toString() {
+        return "SolEvent{type=" + type + ", currentPrice=" + currentPrice + ", increment=" + increment
+                + ", bidder=" + getBidder() + ", sequence=" + sequence + ", rejectedPrice=" + rejectedPrice
+                + ", rejectionReason=" + rejectionReason + "}";
+    }
+}
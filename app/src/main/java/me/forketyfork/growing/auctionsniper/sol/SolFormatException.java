@@ -0,0 +1,11 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+/**
+ * Thrown when a message isn't a well-formed SOL message of a supported version.
+ */
+public class SolFormatException extends RuntimeException {
+
+    public SolFormatException(String message) {
+        super(message);
+    }
+}
@@ -1,45 +1,69 @@
 package me.forketyfork.growing.auctionsniper.ui;
 
+import me.forketyfork.growing.auctionsniper.SniperListener;
+
 import javax.swing.*;
-import javax.swing.border.LineBorder;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.reflect.InvocationTargetException;
 
 public class MainWindow extends JFrame {
     public static final String STATUS_JOINING = "Joining";
     public static final String STATUS_LOST = "Lost";
     public static final String STATUS_BIDDING = "Bidding";
-    public static final String SNIPER_STATUS_NAME = "Status";
+    public static final String STATUS_WINNING = "Winning";
+    public static final String STATUS_LOSING = "Losing";
+    public static final String STATUS_WON = "Won";
+    public static final String SNIPERS_TABLE_NAME = "Snipers";
     public static final String MAIN_WINDOW_NAME = "Auction Sniper Main";
 
-    private final JLabel sniperStatus;
+    private final SnipersTableModel snipers;
 
-    private MainWindow() {
+    private MainWindow(SnipersTableModel snipers) {
         super("Auction Sniper");
-        this.sniperStatus = createLabel(STATUS_JOINING);
+        this.snipers = snipers;
+    }
+
+    /**
+     * Show the window with an empty snipers table, waiting until it is visible.
+     * @param onClose called when the window is closed
+     * @return the listener that shows sniper state changes in the table
+     */
+    public static SniperListener showSnipers(Runnable onClose) throws InterruptedException, InvocationTargetException {
+        SnipersTableModel snipers = new SnipersTableModel();
+        SwingUtilities.invokeAndWait(() -> createAndShow(snipers).addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                onClose.run();
+            }
+        }));
+        return snipers;
     }
 
-    public static MainWindow createAndShow() {
-        MainWindow window = new MainWindow();
+    public static MainWindow createAndShow(SnipersTableModel snipers) {
+        MainWindow window = new MainWindow(snipers);
         window.initialize();
         return window;
     }
 
     private void initialize() {
         setName(MAIN_WINDOW_NAME);
-        add(sniperStatus);
+        fillContentPane(makeSnipersTable());
         pack();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setVisible(true);
     }
 
-    private static JLabel createLabel(String initialText) {
-        JLabel result = new JLabel(initialText);
-        result.setName(SNIPER_STATUS_NAME);
-        result.setBorder(new LineBorder(Color.BLACK));
-        return result;
+    private void fillContentPane(JTable snipersTable) {
+        Container contentPane = getContentPane();
+        contentPane.setLayout(new BorderLayout());
+        contentPane.add(new JScrollPane(snipersTable), BorderLayout.CENTER);
     }
 
-    public void showStatus(String status) {
-        sniperStatus.setText(status);
+    private JTable makeSnipersTable() {
+        JTable snipersTable = new JTable(snipers);
+        snipersTable.setName(SNIPERS_TABLE_NAME);
+        return snipersTable;
     }
 }
@@ -0,0 +1,151 @@
+package me.forketyfork.growing.auctionsniper.ui;
+
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+import me.forketyfork.growing.auctionsniper.SniperState;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Table of snipers, one row per item, fed with snapshots from any thread.
+ * <p>
+ * Rows keep the order in which items were first reported.
+ * A snapshot only replaces the pending one of its item, so the Swing event dispatch thread sees
+ * at most one update per row however fast prices change. Pending updates are applied at most
+ * {@link #MAX_REFRESHES_PER_SECOND} times per second, and only the rows that changed are repainted.
+ */
+public class SnipersTableModel extends AbstractTableModel implements SniperListener {
+
+    public static final int MAX_REFRESHES_PER_SECOND = 30;
+
+    private static final Column[] COLUMNS = Column.values();
+
+    // Latest snapshot per item not yet shown, written by the sniper threads
+    private final ConcurrentHashMap<String, SniperSnapshot> pending = new ConcurrentHashMap<>();
+    // Items get their rows in the order they were first reported
+    private final Set<String> reportedItems = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<String> newItems = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final Timer refreshTimer;
+
+    // Only accessed on the event dispatch thread
+    private final ArrayList<SniperSnapshot> rows = new ArrayList<>();
+    private final HashMap<String, Integer> rowsByItem = new HashMap<>();
+    private final BitSet changedRows = new BitSet();
+
+    public SnipersTableModel() {
+        this(1000 / MAX_REFRESHES_PER_SECOND);
+    }
+
+    SnipersTableModel(int refreshIntervalMillis) {
+        refreshTimer = new Timer(refreshIntervalMillis, e -> applyPendingUpdates());
+        refreshTimer.setRepeats(false);
+    }
+
+    @Override
+    public void sniperStateChanged(SniperSnapshot snapshot) {
+        if (reportedItems.add(snapshot.itemId())) {
+            newItems.offer(snapshot.itemId());
+        }
+        pending.put(snapshot.itemId(), snapshot);
+        if (refreshScheduled.compareAndSet(false, true)) {
+            refreshTimer.start();
+        }
+    }
+
+    /**
+     * Show the pending snapshots and repaint the rows that changed, must be called on the event dispatch thread.
+     */
+    void applyPendingUpdates() {
+        // Cleared before draining, so a snapshot that misses this pass schedules the next one
+        refreshScheduled.set(false);
+        int firstNewRow = rows.size();
+        for (String itemId = newItems.poll(); itemId != null; itemId = newItems.poll()) {
+            rowsByItem.put(itemId, rows.size());
+            rows.add(SniperSnapshot.joining(itemId));
+        }
+        for (SniperSnapshot snapshot : pending.values()) {
+            Integer row = rowsByItem.get(snapshot.itemId());
+            if (row == null) {
+                // Reported after the new items were taken, it gets its row in the next pass
+                continue;
+            }
+            // A newer snapshot that replaced this one meanwhile stays pending for the next pass
+            pending.remove(snapshot.itemId(), snapshot);
+            rows.set(row, snapshot);
+            if (row < firstNewRow) {
+                changedRows.set(row);
+            }
+        }
+        for (int start = changedRows.nextSetBit(0); start >= 0; start = changedRows.nextSetBit(start)) {
+            int end = changedRows.nextClearBit(start);
+            fireTableRowsUpdated(start, end - 1);
+            start = end;
+        }
+        changedRows.clear();
+        if (rows.size() > firstNewRow) {
+            fireTableRowsInserted(firstNewRow, rows.size() - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column].title;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return COLUMNS[columnIndex].valueIn(rows.get(rowIndex));
+    }
+
+    public static String textFor(SniperState state) {
+        return switch (state) {
+            case JOINING -> MainWindow.STATUS_JOINING;
+            case BIDDING -> MainWindow.STATUS_BIDDING;
+            case WINNING -> MainWindow.STATUS_WINNING;
+            case LOSING -> MainWindow.STATUS_LOSING;
+            case LOST -> MainWindow.STATUS_LOST;
+            case WON -> MainWindow.STATUS_WON;
+        };
+    }
+
+    public enum Column {
+        ITEM_IDENTIFIER("Item"),
+        LAST_PRICE("Last Price"),
+        LAST_BID("Last Bid"),
+        SNIPER_STATE("State");
+
+        public final String title;
+
+        Column(String title) {
+            this.title = title;
+        }
+
+        public Object valueIn(SniperSnapshot snapshot) {
+            return switch (this) {
+                case ITEM_IDENTIFIER -> snapshot.itemId();
+                case LAST_PRICE -> snapshot.lastPrice();
+                case LAST_BID -> snapshot.lastBid();
+                case SNIPER_STATE -> textFor(snapshot.state());
+            };
+        }
+    }
+}
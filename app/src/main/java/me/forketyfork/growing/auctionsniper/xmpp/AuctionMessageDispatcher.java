@@ -0,0 +1,79 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.auctionsniper.AuctionMailbox;
+import me.forketyfork.growing.auctionsniper.AuctionMessageTranslator;
+import org.jivesoftware.smack.StanzaListener;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Stanza;
+import org.jxmpp.jid.Jid;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches the messages arriving on the shared connection to the translator of the auction
+ * that sent them. The lookup by the sender's full JID is a single hash map access,
+ * no matter how many auctions the sniper tracks, and tells apart the items an auction house
+ * hosts as resources of one account.
+ * A binary SOL payload takes precedence over the body and switches the auction's commands to binary SOL.
+ * Translation and sniping run in the auction's {@link AuctionMailbox}, so the connection's listener thread
+ * only enqueues and a slow auction or the UI never holds up the others.
+ */
+public class AuctionMessageDispatcher implements StanzaListener {
+
+    private final Executor sniperPool;
+    private final ConcurrentHashMap<Jid, TrackedAuction> auctions = new ConcurrentHashMap<>();
+
+    public AuctionMessageDispatcher(Executor sniperPool) {
+        this.sniperPool = sniperPool;
+    }
+
+    public void register(XMPPAuction auction, AuctionMessageTranslator translator) {
+        auctions.put(auction.getAuctionJid(),
+                new TrackedAuction(auction, translator, new AuctionMailbox(sniperPool)));
+    }
+
+    public void unregister(Jid auctionJid) {
+        auctions.remove(auctionJid);
+    }
+
+    /**
+     * Run the task for every tracked auction in the auction's mailbox,
+     * so the auctions are handled concurrently and each one in order with its events.
+     */
+    public void forEachAuction(Consumer<XMPPAuction> task) {
+        for (TrackedAuction tracked : auctions.values()) {
+            tracked.mailbox().execute(() -> task.accept(tracked.auction()));
+        }
+    }
+
+    public int getTrackedAuctionCount() {
+        return auctions.size();
+    }
+
+    @Override
+    public void processStanza(Stanza stanza) {
+        Jid from = stanza.getFrom();
+        if (from == null || !(stanza instanceof Message message)) {
+            return;
+        }
+        TrackedAuction tracked = auctions.get(from);
+        if (tracked == null) {
+            return;
+        }
+        SolBinaryExtension binary = message.getExtension(SolBinaryExtension.class);
+        AuctionMessageTranslator translator = tracked.translator();
+        if (binary != null && binary.hasPayload()) {
+            tracked.auction().useBinaryEncoding();
+            byte[] payload = binary.getPayload();
+            tracked.mailbox().execute(() -> translator.processBinaryMessage(payload, 0, payload.length));
+        } else {
+            String body = message.getBody();
+            tracked.mailbox().execute(() -> translator.processMessage(body));
+        }
+    }
+
+    private record TrackedAuction(XMPPAuction auction, AuctionMessageTranslator translator, AuctionMailbox mailbox) {
+    }
+}
@@ -0,0 +1,107 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.ConnectionListener;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Brings a connection that was closed on error back, then runs the recovery action.
+ * Attempts are spaced by an exponential backoff with jitter, so many snipers cut off by the same outage
+ * don't hit the server at the same moment. A connection closed on purpose isn't reconnected.
+ */
+public class Reconnector implements ConnectionListener {
+
+    private static final Logger logger = Logger.getLogger("Reconnector");
+
+    public static final long INITIAL_DELAY_MS = 50;
+    public static final long MAX_DELAY_MS = 10_000;
+
+    private final AbstractXMPPConnection connection;
+    private final Runnable onReconnected;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Sniper-Reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Only accessed on the scheduler thread
+    private int attempt;
+    private long disconnectedAt;
+
+    private Reconnector(AbstractXMPPConnection connection, Runnable onReconnected) {
+        this.connection = connection;
+        this.onReconnected = onReconnected;
+    }
+
+    /**
+     * Start watching the connection.
+     * @param onReconnected runs on the reconnect thread after every successful reconnect and login
+     */
+    public static Reconnector install(AbstractXMPPConnection connection, Runnable onReconnected) {
+        Reconnector reconnector = new Reconnector(connection, onReconnected);
+        connection.addConnectionListener(reconnector);
+        return reconnector;
+    }
+
+    /**
+     * Stop reconnecting, e.g. before the connection is closed on purpose.
+     */
+    public void stop() {
+        connection.removeConnectionListener(this);
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void connectionClosedOnError(Exception e) {
+        logger.log(Level.WARNING, "Connection closed on error, reconnecting", e);
+        scheduler.execute(() -> {
+            attempt = 0;
+            disconnectedAt = System.nanoTime();
+            scheduleAttempt();
+        });
+    }
+
+    private void scheduleAttempt() {
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::reconnect, nextDelayMs(attempt++), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconnect() {
+        try {
+            if (!connection.isConnected()) {
+                connection.connect();
+            }
+            // Logs in again with the username, password and resource of the previous login
+            connection.login();
+        } catch (SmackException | IOException | XMPPException e) {
+            logger.log(Level.INFO, "Reconnect attempt {0} failed: {1}", new Object[]{attempt, e.getMessage()});
+            connection.disconnect();
+            scheduleAttempt();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        logger.log(Level.INFO, "Reconnected after {0} attempts in {1,number,#} ms", new Object[]{attempt,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedAt)});
+        onReconnected.run();
+    }
+
+    /**
+     * Equal jitter: half of the exponential delay is fixed, the other half is random.
+     */
+    static long nextDelayMs(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(attempt, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+}
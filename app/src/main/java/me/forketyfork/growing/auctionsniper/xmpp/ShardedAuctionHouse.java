@@ -0,0 +1,83 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.auctionsniper.Item;
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads auctions over several XMPP connections, each served by its own {@link XMPPAuctionHouse}.
+ * An item always goes to the same shard, chosen by a stable hash of its id,
+ * so all messages of an auction keep going through one connection in order.
+ * Each shard has its own sniper threads, so a shard blocked on a full Smack writer queue
+ * or waiting for a reconnect only holds up its own auctions.
+ * Each shard reconnects on its own through a {@link Reconnector} and then rejoins its auctions.
+ */
+public class ShardedAuctionHouse {
+
+    private final List<XMPPAuctionHouse> shards;
+    private final List<Reconnector> reconnectors = new ArrayList<>();
+
+    public ShardedAuctionHouse(List<? extends XMPPConnection> connections) {
+        this(connections, null);
+    }
+
+    /**
+     * @param auctionHouseAccount the account hosting all items as its resources,
+     *                            or null if every item is an account of its own
+     */
+    public ShardedAuctionHouse(List<? extends XMPPConnection> connections, String auctionHouseAccount) {
+        if (connections.isEmpty()) {
+            throw new IllegalArgumentException("At least one connection is required");
+        }
+        int threadsPerShard = Math.max(1, Runtime.getRuntime().availableProcessors() / connections.size());
+        this.shards = connections.stream()
+                .map(connection -> new XMPPAuctionHouse(connection, XMPPAuctionHouse.newSniperPool(threadsPerShard),
+                        auctionHouseAccount))
+                .toList();
+        for (int i = 0; i < shards.size(); i++) {
+            if (connections.get(i) instanceof AbstractXMPPConnection connection) {
+                reconnectors.add(Reconnector.install(connection, shards.get(i)::rejoinAuctions));
+            }
+        }
+    }
+
+    /**
+     * Stop reconnecting the shards, before their connections are closed on purpose.
+     */
+    public void stopReconnecting() {
+        reconnectors.forEach(Reconnector::stop);
+    }
+
+    public Auction joinAuction(String itemId, SniperListener sniperListener) throws XmppStringprepException {
+        return joinAuction(Item.of(itemId), sniperListener);
+    }
+
+    /**
+     * Start sniping in the auction for the item on the shard the item belongs to.
+     */
+    public Auction joinAuction(Item item, SniperListener sniperListener) throws XmppStringprepException {
+        return shards.get(shardIndex(item.identifier(), shards.size())).joinAuction(item, sniperListener);
+    }
+
+    /**
+     * @return the shard of the item, the same for the same item id and shard count in every process
+     */
+    public static int shardIndex(String itemId, int shardCount) {
+        // String.hashCode() is specified, so the mapping doesn't change between runs or JVMs
+        return Math.floorMod(itemId.hashCode(), shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int getTrackedAuctionCount() {
+        return shards.stream().mapToInt(XMPPAuctionHouse::getTrackedAuctionCount).sum();
+    }
+}
@@ -0,0 +1,98 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.auctionsniper.sol.SolBinary;
+import org.jivesoftware.smack.packet.ExtensionElement;
+import org.jivesoftware.smack.packet.XmlEnvironment;
+import org.jivesoftware.smack.provider.ExtensionElementProvider;
+import org.jivesoftware.smack.util.XmlStringBuilder;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.xml.XmlPullParserException;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Message payload carrying a binary SOL message, base64-encoded.
+ * <p>
+ * Without content, the element advertises the binary format version the sender understands;
+ * the sniper attaches it to its JOIN request, next to the textual body that older auctions read.
+ * An auction that supports the format answers with events in this element instead of a body,
+ * and from then on the sniper sends its commands the same way.
+ */
+public class SolBinaryExtension implements ExtensionElement {
+
+    public static final String ELEMENT = "sol";
+    public static final String NAMESPACE = "urn:xmpp:sol:binary";
+    public static final QName QNAME = new QName(NAMESPACE, ELEMENT);
+
+    private final int version;
+    private final byte[] payload;
+
+    private SolBinaryExtension(int version, byte[] payload) {
+        this.version = version;
+        this.payload = payload;
+    }
+
+    /**
+     * @return an element that only advertises support of the current binary format version
+     */
+    public static SolBinaryExtension advertisement() {
+        return new SolBinaryExtension(SolBinary.VERSION, null);
+    }
+
+    /**
+     * @return an element carrying a copy of the first {@code length} bytes of the given binary SOL message
+     */
+    public static SolBinaryExtension of(byte[] message, int length) {
+        return new SolBinaryExtension(SolBinary.VERSION, Arrays.copyOf(message, length));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean hasPayload() {
+        return payload != null;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String getNamespace() {
+        return NAMESPACE;
+    }
+
+    @Override
+    public String getElementName() {
+        return ELEMENT;
+    }
+
+    @Override
+    public XmlStringBuilder toXML(XmlEnvironment enclosingNamespace) {
+        XmlStringBuilder xml = new XmlStringBuilder(this, enclosingNamespace);
+        xml.attribute("version", version);
+        if (payload == null) {
+            return xml.closeEmptyElement();
+        }
+        xml.rightAngleBracket();
+        xml.append(Base64.getEncoder().encodeToString(payload));
+        xml.closeElement(this);
+        return xml;
+    }
+
+    public static class Provider extends ExtensionElementProvider<SolBinaryExtension> {
+
+        @Override
+        public SolBinaryExtension parse(XmlPullParser parser, int initialDepth, XmlEnvironment xmlEnvironment)
+                throws XmlPullParserException, IOException {
+            String versionAttribute = parser.getAttributeValue("", "version");
+            int version = versionAttribute == null ? SolBinary.VERSION : Integer.parseInt(versionAttribute);
+            String content = parser.nextText().trim();
+            return new SolBinaryExtension(version, content.isEmpty() ? null : Base64.getDecoder().decode(content));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.auctionsniper.sol.SolBinary;
+import me.forketyfork.growing.auctionsniper.sol.SolEncoder;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.MessageBuilder;
+import org.jxmpp.jid.EntityFullJid;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An auction reached over the shared XMPP connection of the sniper.
+ * Commands are sent as chat messages directly to the auction's full JID, as textual SOL
+ * until the auction shows that it understands binary SOL by sending a binary event.
+ */
+public class XMPPAuction implements Auction {
+
+    private static final Logger logger = Logger.getLogger("XMPPAuction");
+
+    // Commands are sent from the main thread and from the sniper threads
+    private static final ThreadLocal<SolEncoder> encoders = ThreadLocal.withInitial(SolEncoder::new);
+    private static final ThreadLocal<byte[]> binaryBuffers = ThreadLocal.withInitial(() -> new byte[SolBinary.MAX_FIXED_LENGTH]);
+
+    private final XMPPConnection connection;
+    private final EntityFullJid auctionJid;
+    private volatile boolean binaryEncoding;
+
+    public XMPPAuction(XMPPConnection connection, EntityFullJid auctionJid) {
+        this.connection = connection;
+        this.auctionJid = auctionJid;
+    }
+
+    public EntityFullJid getAuctionJid() {
+        return auctionJid;
+    }
+
+    /**
+     * Switch to binary SOL for the commands, once the auction has sent a binary event.
+     */
+    public void useBinaryEncoding() {
+        binaryEncoding = true;
+    }
+
+    public boolean isUsingBinaryEncoding() {
+        return binaryEncoding;
+    }
+
+    @Override
+    public void join() {
+        // The textual join keeps older auctions working, the payload offers them the binary format
+        MessageBuilder message = newMessage()
+                .setBody(encoders.get().encodeJoin().toString())
+                .addExtension(SolBinaryExtension.advertisement());
+        sendMessage(message.build());
+    }
+
+    @Override
+    public void bid(int amount) {
+        if (binaryEncoding) {
+            byte[] buffer = binaryBuffers.get();
+            int length = SolBinary.encodeBid(amount, buffer, 0);
+            sendMessage(newMessage().addExtension(SolBinaryExtension.of(buffer, length)).build());
+        } else {
+            // Smack keeps message bodies as strings, this is the only copy of the encoded command
+            sendMessage(newMessage().setBody(encoders.get().encodeBid(amount).toString()).build());
+        }
+    }
+
+    private MessageBuilder newMessage() {
+        return connection.getStanzaFactory().buildMessageStanza()
+                .to(auctionJid)
+                .ofType(Message.Type.chat);
+    }
+
+    private void sendMessage(Message message) {
+        try {
+            connection.sendStanza(message);
+        } catch (SmackException.NotConnectedException e) {
+            logger.log(Level.WARNING, "Failed to send to auction " + auctionJid, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
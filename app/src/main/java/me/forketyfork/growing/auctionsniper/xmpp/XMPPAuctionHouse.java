@@ -0,0 +1,109 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.Main;
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.auctionsniper.AuctionMessageTranslator;
+import me.forketyfork.growing.auctionsniper.AuctionSniper;
+import me.forketyfork.growing.auctionsniper.Item;
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.filter.MessageTypeFilter;
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs snipers for any number of auctions over a single XMPP connection.
+ * One synchronous listener receives all chat messages in order and hands each one
+ * to the auction it came from through the {@link AuctionMessageDispatcher}.
+ * The snipers of all auctions share a pool of one thread per core, each auction's events run one at a time in order.
+ * An item is auctioned by an account of its own, or by an auction house hosting all items as resources of its account.
+ */
+public class XMPPAuctionHouse {
+
+    private final XMPPConnection connection;
+    private final AuctionMessageDispatcher dispatcher;
+    private final String auctionHouseAccount;
+
+    public XMPPAuctionHouse(XMPPConnection connection) {
+        this(connection, newSniperPool(Runtime.getRuntime().availableProcessors()));
+    }
+
+    public XMPPAuctionHouse(XMPPConnection connection, Executor sniperPool) {
+        this(connection, sniperPool, null);
+    }
+
+    /**
+     * @param auctionHouseAccount the account hosting all items as its resources,
+     *                            or null if every item is an account of its own
+     */
+    public XMPPAuctionHouse(XMPPConnection connection, Executor sniperPool, String auctionHouseAccount) {
+        this.connection = connection;
+        this.auctionHouseAccount = auctionHouseAccount;
+        this.dispatcher = new AuctionMessageDispatcher(sniperPool);
+        ProviderManager.addExtensionProvider(SolBinaryExtension.ELEMENT, SolBinaryExtension.NAMESPACE,
+                new SolBinaryExtension.Provider());
+        connection.addSyncStanzaListener(dispatcher, MessageTypeFilter.CHAT);
+    }
+
+    public Auction joinAuction(String itemId, SniperListener sniperListener) throws XmppStringprepException {
+        return joinAuction(Item.of(itemId), sniperListener);
+    }
+
+    /**
+     * Start sniping in the auction for the item within its limits: track its messages and send the join request.
+     */
+    public Auction joinAuction(Item item, SniperListener sniperListener) throws XmppStringprepException {
+        XMPPAuction auction = new XMPPAuction(connection, auctionJid(item.identifier()));
+        EntityFullJid auctionJid = auction.getAuctionJid();
+        AuctionSniper sniper = new AuctionSniper(item, auction, snapshot -> {
+            sniperListener.sniperStateChanged(snapshot);
+            // A closed auction has nothing more to say, stop tracking it
+            if (snapshot.state().isFinished()) {
+                dispatcher.unregister(auctionJid);
+            }
+        });
+        // A gap in the event sequence is repaired by joining again, the auction answers with its current state
+        dispatcher.register(auction, new AuctionMessageTranslator(sniperId(), sniper, auction::join));
+        auction.join();
+        return auction;
+    }
+
+    /**
+     * Join every auction still in progress again, after the connection has been re-established.
+     * The joins are sent concurrently from the auctions' mailboxes. Each sniper keeps its state
+     * and catches up with the auction on the next PRICE event.
+     */
+    public void rejoinAuctions() {
+        dispatcher.forEachAuction(XMPPAuction::join);
+    }
+
+    public int getTrackedAuctionCount() {
+        return dispatcher.getTrackedAuctionCount();
+    }
+
+    private String sniperId() {
+        return connection.getUser().asBareJid().toString();
+    }
+
+    static ExecutorService newSniperPool(int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Sniper-Worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private EntityFullJid auctionJid(String itemId) throws XmppStringprepException {
+        if (auctionHouseAccount != null) {
+            return JidCreate.entityFullFrom(String.format(Main.HOSTED_AUCTION_ID_FORMAT,
+                    auctionHouseAccount, connection.getXMPPServiceDomain(), itemId));
+        }
+        return JidCreate.entityFullFrom(String.format(Main.AUCTION_ID_FORMAT, itemId, connection.getXMPPServiceDomain()));
+    }
+}
@@ -8,13 +8,25 @@ public class ApplicationRunner {
     public static final String SNIPER_XMPP_ID = "sniper@localhost";
 
     private AuctionSniperDriver driver;
+    private String itemId;
 
     public void startBiddingIn(final FakeAuctionServer auction) {
+        startSniper(auction, auction.getItemId());
+    }
+
+    public void startBiddingWithStopPrice(final FakeAuctionServer auction, int stopPrice) {
+        startSniper(auction, auction.getItemId() + ",stop=" + stopPrice);
+    }
+
+    private void startSniper(final FakeAuctionServer auction, final String item) {
+        itemId = auction.getItemId();
+        // The sniper runs in this JVM, it reaches the embedded server in memory like the auctions
+        Main.useSocketFactory(FakeAuctionServer.LOOPBACK_SOCKET_FACTORY);
         Thread thread = new Thread("Test Application") {
             @Override
             public void run() {
                 try {
-                    Main.main(FakeAuctionServer.XMPP_HOSTNAME, SNIPER_ID, SNIPER_PASSWORD, auction.getItemId());
+                    Main.main(FakeAuctionServer.XMPP_HOSTNAME, SNIPER_ID, SNIPER_PASSWORD, item);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -26,12 +38,24 @@ public class ApplicationRunner {
         driver.showsSniperStatus(MainWindow.STATUS_JOINING);
     }
 
-    public void showsSniperHasLostAuction() {
-        driver.showsSniperStatus(MainWindow.STATUS_LOST);
+    public void showsSniperHasLostAuction(int lastPrice, int lastBid) {
+        driver.showsSniperStatus(itemId, lastPrice, lastBid, MainWindow.STATUS_LOST);
+    }
+
+    public void hasShownSniperIsBidding(int lastPrice, int lastBid) {
+        driver.showsSniperStatus(itemId, lastPrice, lastBid, MainWindow.STATUS_BIDDING);
+    }
+
+    public void hasShownSniperIsLosing(int lastPrice, int lastBid) {
+        driver.showsSniperStatus(itemId, lastPrice, lastBid, MainWindow.STATUS_LOSING);
+    }
+
+    public void hasShownSniperIsWinning(int winningBid) {
+        driver.showsSniperStatus(itemId, winningBid, winningBid, MainWindow.STATUS_WINNING);
     }
 
-    public void hasShownSniperIsBidding() {
-        driver.showsSniperStatus(MainWindow.STATUS_BIDDING);
+    public void showsSniperHasWonAuction(int lastPrice) {
+        driver.showsSniperStatus(itemId, lastPrice, lastPrice, MainWindow.STATUS_WON);
     }
 
     public void stop() {
@@ -2,10 +2,12 @@ package me.forketyfork.growing;
 
 import com.objogate.wl.swing.AWTEventQueueProber;
 import com.objogate.wl.swing.driver.JFrameDriver;
-import com.objogate.wl.swing.driver.JLabelDriver;
+import com.objogate.wl.swing.driver.JTableDriver;
 import com.objogate.wl.swing.gesture.GesturePerformer;
 import me.forketyfork.growing.auctionsniper.ui.MainWindow;
 
+import static com.objogate.wl.swing.matcher.IterableComponentsMatcher.matching;
+import static com.objogate.wl.swing.matcher.JLabelTextMatcher.withLabelText;
 import static org.hamcrest.Matchers.equalTo;
 
 public class AuctionSniperDriver extends JFrameDriver {
@@ -19,7 +21,21 @@ public class AuctionSniperDriver extends JFrameDriver {
 
     @SuppressWarnings("unchecked")  // WindowLicker API uses varargs Matcher parameters
     public void showsSniperStatus(String statusText) {
-        new JLabelDriver(this, named(MainWindow.SNIPER_STATUS_NAME)).hasText(equalTo(statusText));
+        snipersTable().hasCell(withLabelText(equalTo(statusText)));
+    }
+
+    @SuppressWarnings("unchecked")  // WindowLicker API uses varargs Matcher parameters
+    public void showsSniperStatus(String itemId, int lastPrice, int lastBid, String statusText) {
+        snipersTable().hasRow(matching(
+                withLabelText(itemId),
+                withLabelText(String.valueOf(lastPrice)),
+                withLabelText(String.valueOf(lastBid)),
+                withLabelText(statusText)));
+    }
+
+    @SuppressWarnings("unchecked")  // WindowLicker API uses varargs Matcher parameters
+    private JTableDriver snipersTable() {
+        return new JTableDriver(this, named(MainWindow.SNIPERS_TABLE_NAME));
     }
 
 }
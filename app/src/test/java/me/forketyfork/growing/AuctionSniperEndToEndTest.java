@@ -2,12 +2,22 @@ package me.forketyfork.growing;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.jxmpp.stringprep.XmppStringprepException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class AuctionSniperEndToEndTest {
 
+    private static final Logger logger = Logger.getLogger("AuctionSniperEndToEndTest");
+
+    // Includes waiting for the server to notice the dropped connection before it accepts the same login again
+    private static final long MAX_RECOVERY_MS = 3_000;
+
     private final FakeAuctionServer auction = new FakeAuctionServer("item-54321");
     private final ApplicationRunner application = new ApplicationRunner();
 
@@ -20,11 +30,10 @@ public class AuctionSniperEndToEndTest {
         application.startBiddingIn(auction);
         auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
         auction.announceClosed();
-        application.showsSniperHasLostAuction();
+        application.showsSniperHasLostAuction(0, 0);
     }
 
     @Test
-    @Disabled
     public void sniperMakesAHigherBidButLoses() throws Exception {
         auction.startSellingItem();
 
@@ -32,12 +41,81 @@ public class AuctionSniperEndToEndTest {
         auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
 
         auction.reportPrice(1000, 98, "other bidder");
-        application.hasShownSniperIsBidding();
+        application.hasShownSniperIsBidding(1000, 1098);
+
+        auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
+
+        auction.announceClosed();
+        application.showsSniperHasLostAuction(1000, 1098);
+    }
+
+    @Test
+    public void sniperWinsAnAuctionByBiddingHigher() throws Exception {
+        auction.startSellingItem();
+
+        application.startBiddingIn(auction);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+
+        auction.reportPrice(1000, 98, "other bidder");
+        application.hasShownSniperIsBidding(1000, 1098);
 
         auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
 
+        auction.reportPrice(1098, 97, ApplicationRunner.SNIPER_XMPP_ID);
+        application.hasShownSniperIsWinning(1098);
+
+        auction.announceClosed();
+        application.showsSniperHasWonAuction(1098);
+    }
+
+    @Test
+    public void sniperLosesAnAuctionWhenThePriceIsTooHigh() throws Exception {
+        auction.startSellingItem();
+
+        application.startBiddingWithStopPrice(auction, 1100);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+
+        auction.reportPrice(1000, 98, "other bidder");
+        application.hasShownSniperIsBidding(1000, 1098);
+
+        auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
+
+        auction.reportPrice(1197, 10, "third party");
+        application.hasShownSniperIsLosing(1197, 1098);
+
+        auction.reportPrice(1207, 10, "fourth party");
+        application.hasShownSniperIsLosing(1207, 1098);
+
+        auction.announceClosed();
+        application.showsSniperHasLostAuction(1207, 1098);
+    }
+
+    @Test
+    public void sniperRejoinsTheAuctionAfterLosingItsConnection() throws Exception {
+        auction.startSellingItem();
+
+        application.startBiddingIn(auction);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+
+        auction.reportPrice(1000, 98, "other bidder");
+        application.hasShownSniperIsBidding(1000, 1098);
+        auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
+
+        long droppedAt = System.nanoTime();
+        auction.dropConnectionsOf(ApplicationRunner.SNIPER_ID);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+        long recoveryMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - droppedAt);
+        logger.log(Level.INFO, "Sniper rejoined the auction {0} ms after losing its connection", recoveryMs);
+        assertTrue(recoveryMs < MAX_RECOVERY_MS, "Sniper took " + recoveryMs + " ms to rejoin");
+
+        // The sniper kept its state and catches up with the next price
+        application.hasShownSniperIsBidding(1000, 1098);
+        auction.reportPrice(1200, 10, "other bidder");
+        application.hasShownSniperIsBidding(1200, 1210);
+        auction.hasReceivedBid(1210, ApplicationRunner.SNIPER_XMPP_ID);
+
         auction.announceClosed();
-        application.showsSniperHasLostAuction();
+        application.showsSniperHasLostAuction(1200, 1210);
     }
 
     // Additional cleanup
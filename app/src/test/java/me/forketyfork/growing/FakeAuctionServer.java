@@ -1,5 +1,7 @@
 package me.forketyfork.growing;
 
+import me.forketyfork.growing.xmpp.LoopbackSocket;
+import me.forketyfork.growing.xmpp.LoopbackSocketFactory;
 import me.forketyfork.growing.xmpp.SimpleXmppServer;
 import me.forketyfork.growing.xmpp.XmppServerConfig;
 import org.hamcrest.Matcher;
@@ -13,10 +15,13 @@ import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
 import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.stringprep.XmppStringprepException;
 
+import javax.net.SocketFactory;
 import java.io.IOException;
+import java.net.ConnectException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 
 public class FakeAuctionServer {
 
@@ -25,13 +30,16 @@ public class FakeAuctionServer {
     public static final String XMPP_HOSTNAME = "localhost";
     public static final String AUCTION_PASSWORD = "auction";
 
-    private static SimpleXmppServer embeddedServer;
+    // Connects to whichever embedded server is running, without going through TCP
+    public static final SocketFactory LOOPBACK_SOCKET_FACTORY = new LoopbackSocketFactory(FakeAuctionServer::acceptLoopback);
+
+    private static volatile SimpleXmppServer embeddedServer;
 
     private final String itemId;
     private final AbstractXMPPConnection connection;
 
 
-    private final SingleMessageListener messageListener = new SingleMessageListener();
+    private final MessageProbe messageListener = new MessageProbe();
 
     public FakeAuctionServer(String itemId) throws XmppStringprepException {
         this.itemId = itemId;
@@ -41,6 +49,7 @@ public class FakeAuctionServer {
                 .setPort(5222)
                 .setSecurityMode(org.jivesoftware.smack.ConnectionConfiguration.SecurityMode.disabled)
                 .setCompressionEnabled(false)
+                .setSocketFactory(LOOPBACK_SOCKET_FACTORY)
                 .build());
     }
 
@@ -73,6 +82,14 @@ public class FakeAuctionServer {
         }
     }
 
+    private static void acceptLoopback(LoopbackSocket serverEnd) throws IOException {
+        SimpleXmppServer server = embeddedServer;
+        if (server == null) {
+            throw new ConnectException("The embedded server is not running");
+        }
+        server.acceptLoopback(serverEnd);
+    }
+
     public void hasReceivedJoinRequestFrom(String sniperId) throws InterruptedException {
         receivesAMessageMatching(sniperId, equalTo(Main.JOIN_COMMAND_FORMAT));
     }
@@ -98,6 +115,13 @@ public class FakeAuctionServer {
         connection.disconnect();
     }
 
+    /**
+     * Reset the connections of a user at the embedded server, as if the network between them failed.
+     */
+    public void dropConnectionsOf(String username) {
+        assertThat("Dropped connections", embeddedServer.dropConnections(username), greaterThan(0));
+    }
+
     public static void stopEmbeddedServer() {
         embeddedServer.stop();
         embeddedServer = null;
@@ -0,0 +1,123 @@
+package me.forketyfork.growing;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Runs the sniper in its own JVM, so the classes it loads can be checked.
+ */
+public class HeadlessSniperEndToEndTest {
+
+    private static final Logger logger = Logger.getLogger("HeadlessSniperEndToEndTest");
+
+    private static final long STATUS_TIMEOUT_MS = 5000;
+
+    private final FakeAuctionServer auction = new FakeAuctionServer("item-54321");
+    private final List<Process> snipers = new ArrayList<>();
+
+    @TempDir
+    Path tempDir;
+
+    public HeadlessSniperEndToEndTest() throws XmppStringprepException {
+    }
+
+    @Test
+    public void reportsSniperStatusToTheSinkWithoutLoadingAwt() throws Exception {
+        Path statusFile = tempDir.resolve("snipers.csv");
+        Path classLog = tempDir.resolve("classes.log");
+        auction.startSellingItem();
+
+        startSniper("-D" + Main.HEADLESS_SINK_PROPERTY + "=file:" + statusFile,
+                "-Xlog:class+load=info:file=" + classLog);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+        hasReportedStatus(statusFile, "item-54321,0,0,JOINING");
+
+        auction.reportPrice(1000, 98, "other bidder");
+        auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
+        hasReportedStatus(statusFile, "item-54321,1000,1098,BIDDING");
+
+        auction.announceClosed();
+        hasReportedStatus(statusFile, "item-54321,1000,1098,LOST");
+        // Once its only auction has finished, the sniper exits by itself
+        Process sniper = snipers.getFirst();
+        assertTrue(sniper.waitFor(STATUS_TIMEOUT_MS, TimeUnit.MILLISECONDS), "The sniper didn't exit");
+        assertEquals(0, sniper.exitValue());
+
+        List<String> uiClasses = Files.readAllLines(classLog).stream()
+                .filter(line -> line.contains(" java.awt.") || line.contains(" javax.swing.") || line.contains(" sun.awt."))
+                .toList();
+        assertTrue(uiClasses.isEmpty(), "Headless sniper loaded UI classes: " + uiClasses);
+    }
+
+    @Test
+    public void joinsSoonerWithoutUserInterface() throws Exception {
+        assumeFalse(GraphicsEnvironment.isHeadless(), "The Swing mode needs a display");
+        auction.startSellingItem();
+
+        long headlessMs = millisToJoin("-D" + Main.HEADLESS_SINK_PROPERTY + "=log");
+        stopSnipers();
+        long swingMs = millisToJoin();
+
+        logger.log(Level.INFO, "Startup to JOIN: headless {0,number,#} ms, Swing {1,number,#} ms",
+                new Object[]{headlessMs, swingMs});
+    }
+
+    private long millisToJoin(String... jvmOptions) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        startSniper(jvmOptions);
+        auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    private void startSniper(String... jvmOptions) throws IOException {
+        snipers.add(SniperProcess.start(System.getProperty("java.class.path"), auction.getItemId(), List.of(jvmOptions)));
+    }
+
+    private static void hasReportedStatus(Path statusFile, String line) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STATUS_TIMEOUT_MS;
+        while (!Files.exists(statusFile) || !Files.readAllLines(statusFile).contains(line)) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Status '" + line + "' wasn't reported, got " +
+                        (Files.exists(statusFile) ? Files.readAllLines(statusFile) : List.of()));
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @AfterEach
+    public void stopSnipers() throws InterruptedException {
+        for (Process sniper : snipers) {
+            sniper.destroy();
+            if (!sniper.waitFor(5, TimeUnit.SECONDS)) {
+                sniper.destroyForcibly();
+            }
+        }
+        snipers.clear();
+    }
+
+    @AfterEach
+    public void stopAuction() {
+        auction.stop();
+    }
+
+    @AfterAll
+    public static void stopEmbeddedServer() {
+        FakeAuctionServer.stopEmbeddedServer();
+    }
+}
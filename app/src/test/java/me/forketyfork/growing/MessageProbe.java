@@ -0,0 +1,167 @@
+package me.forketyfork.growing;
+
+import org.hamcrest.Matcher;
+import org.jivesoftware.smack.chat2.Chat;
+import org.jivesoftware.smack.chat2.IncomingChatMessageListener;
+import org.jivesoftware.smack.packet.Message;
+import org.jxmpp.jid.EntityBareJid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+/**
+ * Records every incoming message with the time it was received, however many arrive and however fast.
+ * <p>
+ * Assertions on message bodies consume the recording from a cursor: each one waits for as many
+ * messages after the cursor as it has matchers, checks them in order or in any order, and moves the cursor
+ * past them. The whole recording stays available for throughput and latency checks.
+ * Messages can also be recorded from other sources than a chat, e.g. a stanza listener, with {@link #record}.
+ */
+public class MessageProbe implements IncomingChatMessageListener {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5_000;
+
+    /**
+     * @param receivedNanos {@link System#nanoTime()} when the message was recorded
+     */
+    public record ReceivedMessage(String body, long receivedNanos) {
+    }
+
+    private final long timeoutMs;
+    // Guarded by this
+    private final List<ReceivedMessage> received = new ArrayList<>();
+    private int cursor;
+    private volatile Chat currentChat;
+
+    public MessageProbe() {
+        this(DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs how long an assertion waits for the messages it expects
+     */
+    public MessageProbe(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public void newIncomingMessage(EntityBareJid from, Message message, Chat chat) {
+        this.currentChat = chat;
+        record(message.getBody());
+    }
+
+    public synchronized void record(String body) {
+        received.add(new ReceivedMessage(body, System.nanoTime()));
+        notifyAll();
+    }
+
+    /**
+     * @return the chat of the latest message, null before the first one
+     */
+    public Chat getCurrentChat() {
+        return currentChat;
+    }
+
+    public void receivesAMessage(Matcher<? super String> messageMatcher) throws InterruptedException {
+        receivesInOrder(List.of(messageMatcher));
+    }
+
+    @SafeVarargs
+    public final void receivesInOrder(Matcher<? super String>... messageMatchers) throws InterruptedException {
+        receivesInOrder(Arrays.asList(messageMatchers));
+    }
+
+    public void receivesInOrder(List<Matcher<? super String>> messageMatchers) throws InterruptedException {
+        assertThat("Messages", nextBodies(messageMatchers.size()), contains(messageMatchers));
+    }
+
+    @SafeVarargs
+    public final void receivesInAnyOrder(Matcher<? super String>... messageMatchers) throws InterruptedException {
+        receivesInAnyOrder(Arrays.asList(messageMatchers));
+    }
+
+    public void receivesInAnyOrder(List<Matcher<? super String>> messageMatchers) throws InterruptedException {
+        assertThat("Messages", nextBodies(messageMatchers.size()), containsInAnyOrder(messageMatchers));
+    }
+
+    /**
+     * Wait until at least the given number of messages have been recorded since the probe was created.
+     *
+     * @return all messages recorded so far, fewer than the count if the timeout expired first
+     */
+    public synchronized List<ReceivedMessage> awaitMessages(int count) throws InterruptedException {
+        awaitCount(count);
+        return List.copyOf(received);
+    }
+
+    public synchronized List<ReceivedMessage> getReceivedMessages() {
+        return List.copyOf(received);
+    }
+
+    /**
+     * @return messages per second between the first and the last message recorded, 0 for less than two messages
+     */
+    public synchronized double messagesPerSecond() {
+        if (received.size() < 2) {
+            return 0;
+        }
+        long elapsedNanos = received.get(received.size() - 1).receivedNanos() - received.get(0).receivedNanos();
+        return elapsedNanos == 0 ? Double.POSITIVE_INFINITY : (received.size() - 1) * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * The latency of the given percentile of all messages recorded so far, by the nearest rank.
+     *
+     * @param percentile between 0 (exclusive) and 100
+     * @param sentNanos  the {@link System#nanoTime()} a message was sent at, typically looked up by a sequence
+     *                   number in its body
+     * @throws IllegalStateException if no message has been recorded
+     */
+    public long latencyPercentile(double percentile, TimeUnit unit, ToLongFunction<ReceivedMessage> sentNanos) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100], got: " + percentile);
+        }
+        List<ReceivedMessage> messages = getReceivedMessages();
+        if (messages.isEmpty()) {
+            throw new IllegalStateException("No message received");
+        }
+        long[] latencies = new long[messages.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            ReceivedMessage message = messages.get(i);
+            latencies[i] = message.receivedNanos() - sentNanos.applyAsLong(message);
+        }
+        Arrays.sort(latencies);
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+        return unit.convert(latencies[Math.max(rank, 1) - 1], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Take the next messages after the cursor, waiting for them up to the timeout.
+     * Returns the messages there are if fewer arrive, so the matcher reports what was received.
+     */
+    private synchronized List<String> nextBodies(int count) throws InterruptedException {
+        awaitCount(cursor + count);
+        int end = Math.min(received.size(), cursor + count);
+        List<String> bodies = new ArrayList<>(end - cursor);
+        for (ReceivedMessage message : received.subList(cursor, end)) {
+            bodies.add(message.body());
+        }
+        cursor = end;
+        return bodies;
+    }
+
+    private void awaitCount(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long remainingNanos;
+        while (received.size() < count && (remainingNanos = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+    }
+}
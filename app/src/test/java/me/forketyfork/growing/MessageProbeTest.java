@@ -0,0 +1,66 @@
+package me.forketyfork.growing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageProbeTest {
+
+    private final MessageProbe probe = new MessageProbe(200);
+
+    @Test
+    public void keepsMessagesThatArriveBeforeTheyAreChecked() throws Exception {
+        probe.record("first");
+        probe.record("second");
+        probe.record("third");
+
+        probe.receivesAMessage(equalTo("first"));
+        probe.receivesInOrder(equalTo("second"), equalTo("third"));
+    }
+
+    @Test
+    public void matchesUnorderedSequences() throws Exception {
+        probe.record("BID 1098");
+        probe.record("JOIN");
+
+        probe.receivesInAnyOrder(equalTo("JOIN"), startsWith("BID"));
+    }
+
+    @Test
+    public void waitsForMessagesStillToCome() throws Exception {
+        CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS).execute(() -> probe.record("late"));
+
+        probe.receivesAMessage(equalTo("late"));
+    }
+
+    @Test
+    public void failsWhenMessagesAreMissingOrOutOfOrder() {
+        probe.record("second");
+        probe.record("first");
+
+        assertThrows(AssertionError.class, () -> probe.receivesInOrder(equalTo("first"), equalTo("second")));
+        assertThrows(AssertionError.class, () -> probe.receivesAMessage(equalTo("third")));
+    }
+
+    @Test
+    public void measuresRateAndLatencyPercentiles() throws Exception {
+        long start = System.nanoTime();
+        long[] sentNanos = new long[100];
+        for (int i = 0; i < sentNanos.length; i++) {
+            sentNanos[i] = System.nanoTime();
+            probe.record(Integer.toString(i));
+        }
+
+        assertEquals(100, probe.awaitMessages(100).size());
+        assertTrue(probe.messagesPerSecond() > 0);
+        long p50 = probe.latencyPercentile(50, TimeUnit.NANOSECONDS, m -> sentNanos[Integer.parseInt(m.body())]);
+        long max = probe.latencyPercentile(100, TimeUnit.NANOSECONDS, m -> sentNanos[Integer.parseInt(m.body())]);
+        assertTrue(0 <= p50 && p50 <= max, p50 + " > " + max);
+        assertTrue(max <= System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,29 @@
+package me.forketyfork.growing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the sniper in its own JVM, bidding in one auction of the embedded server.
+ */
+public class SniperProcess {
+
+    private SniperProcess() {
+    }
+
+    /**
+     * @param classpath the classpath of the sniper JVM
+     * @param jvmOptions options of the sniper JVM, e.g. system properties selecting the headless mode
+     */
+    public static Process start(String classpath, String itemId, List<String> jvmOptions) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-cp");
+        command.add(classpath);
+        command.addAll(jvmOptions);
+        command.addAll(List.of(Main.class.getName(), FakeAuctionServer.XMPP_HOSTNAME,
+                ApplicationRunner.SNIPER_ID, ApplicationRunner.SNIPER_PASSWORD, itemId));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+}
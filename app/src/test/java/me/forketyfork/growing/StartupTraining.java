@@ -0,0 +1,64 @@
+package me.forketyfork.growing;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Training run for the AppCDS archive of the sniper, used by the {@code appCdsArchive} Gradle task.
+ * <p>
+ * Starts the embedded server and runs the sniper through one whole auction in its own JVM,
+ * so the archive holds every class loaded on the way to the first JOIN and the first BID.
+ * The sniper JVM writes the archive when it exits.
+ * <p>
+ * Arguments: the archive file, the classpath of the installed sniper (jar files only, CDS ignores
+ * directories), and optionally {@code swing} to train the Swing mode instead of the headless one.
+ */
+public class StartupTraining {
+
+    private static final Logger logger = Logger.getLogger("StartupTraining");
+
+    public static final String TRAINING_ITEM_ID = "item-training";
+    private static final long ARCHIVE_TIMEOUT_SECONDS = 60;
+
+    public static void main(String... args) throws Exception {
+        Path archive = Path.of(args[0]);
+        String classpath = args[1];
+        boolean swing = args.length > 2 && "swing".equals(args[2]);
+        Files.createDirectories(archive.toAbsolutePath().getParent());
+        Files.deleteIfExists(archive);
+
+        FakeAuctionServer auction = new FakeAuctionServer(TRAINING_ITEM_ID);
+        auction.startSellingItem();
+        List<String> jvmOptions = new ArrayList<>();
+        jvmOptions.add("-XX:ArchiveClassesAtExit=" + archive);
+        if (!swing) {
+            jvmOptions.add("-D" + Main.HEADLESS_SINK_PROPERTY + "=log");
+        }
+        Process sniper = SniperProcess.start(classpath, TRAINING_ITEM_ID, jvmOptions);
+        try {
+            auction.hasReceivedJoinRequestFrom(ApplicationRunner.SNIPER_XMPP_ID);
+            auction.reportPrice(1000, 98, "other bidder");
+            auction.hasReceivedBid(1098, ApplicationRunner.SNIPER_XMPP_ID);
+            auction.announceClosed();
+            // The headless sniper exits by itself once the auction has closed
+            sniper.waitFor(ARCHIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            // The archive is dumped when the JVM exits, also when it is terminated
+            sniper.destroy();
+            if (!sniper.waitFor(ARCHIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                sniper.destroyForcibly();
+            }
+            auction.stop();
+            FakeAuctionServer.stopEmbeddedServer();
+        }
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("The sniper didn't write the archive " + archive);
+        }
+        logger.log(Level.INFO, "Wrote AppCDS archive {0}, {1} KB", new Object[]{archive, Files.size(archive) / 1024});
+    }
+}
@@ -0,0 +1,367 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuctionHouseEngineTest {
+
+    private static final Logger logger = Logger.getLogger("AuctionHouseEngineTest");
+
+    private static final String JOIN = Main.JOIN_COMMAND_FORMAT;
+
+    private final List<String> sent = new ArrayList<>();
+    private final TimingWheel clock = new TimingWheel(0);
+    private final AuctionHouseEngine engine = new AuctionHouseEngine(Runnable::run, clock,
+            (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message));
+    private ExecutorService workers;
+    private final RealTimeClock realTime = new RealTimeClock();
+
+    private static String bid(int price) {
+        return String.format(Main.BID_COMMAND_FORMAT, price);
+    }
+
+    private static String price(int price, int increment, String bidder, int sequence) {
+        return String.format(Main.REPORT_SEQUENCED_PRICE_EVENT_FORMAT, price, increment, bidder, sequence);
+    }
+
+    private static String rejected(int price, String reason) {
+        return String.format(Main.REJECTED_EVENT_FORMAT, price, reason);
+    }
+
+    private static String close(int sequence) {
+        return String.format(Main.SEQUENCED_CLOSE_EVENT_FORMAT, sequence);
+    }
+
+    @Test
+    public void reportsTheStartingPriceToAJoiningBidder() {
+        engine.openAuction("item-1", 1000, 98);
+
+        assertTrue(engine.process("item-1", "sniper@localhost", JOIN));
+
+        assertEquals(List.of("item-1 -> sniper@localhost: " + price(1000, 98, ItemAuction.NO_BIDDER, 1)), sent);
+    }
+
+    @Test
+    public void announcesAcceptedBidsToAllBidders() throws Exception {
+        engine.openAuction("item-1", 1000, 98);
+        engine.process("item-1", "sniper@localhost", JOIN);
+        engine.process("item-1", "other@localhost", JOIN);
+        sent.clear();
+
+        engine.process("item-1", "other@localhost", bid(1000));
+        engine.process("item-1", "sniper@localhost", bid(1098));
+
+        assertEquals(List.of(
+                "item-1 -> sniper@localhost: " + price(1000, 98, "other@localhost", 2),
+                "item-1 -> other@localhost: " + price(1000, 98, "other@localhost", 2),
+                "item-1 -> sniper@localhost: " + price(1098, 98, "sniper@localhost", 3),
+                "item-1 -> other@localhost: " + price(1098, 98, "sniper@localhost", 3)), sent);
+        assertEquals(new ItemSnapshot("item-1", 1098, 98, "sniper@localhost", 2, false, ItemAuction.NO_DEADLINE),
+                engine.snapshot("item-1").get());
+    }
+
+    @Test
+    public void answersAJoinBeforeTheQueuedBids() {
+        List<Runnable> queued = new ArrayList<>();
+        AuctionHouseEngine busyEngine = new AuctionHouseEngine(queued::add, clock,
+                (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message));
+        busyEngine.openAuction("item-1", 1000, 98);
+        busyEngine.process("item-1", "other@localhost", bid(1000));
+
+        busyEngine.process("item-1", "sniper@localhost", JOIN);
+        assertEquals(List.of("item-1 -> sniper@localhost: " + price(1000, 98, ItemAuction.NO_BIDDER, 1)), sent);
+
+        // The bid changed the price after the answer, so the joining bidder is told again
+        queued.forEach(Runnable::run);
+        assertEquals(List.of(
+                "item-1 -> sniper@localhost: " + price(1000, 98, ItemAuction.NO_BIDDER, 1),
+                "item-1 -> other@localhost: " + price(1000, 98, "other@localhost", 2),
+                "item-1 -> sniper@localhost: " + price(1000, 98, "other@localhost", 2)), sent);
+    }
+
+    @Test
+    public void answersATooLowBidWithARejection() throws Exception {
+        engine.openAuction("item-1", 1000, 98);
+        engine.process("item-1", "other@localhost", bid(1000));
+        engine.process("item-1", "sniper@localhost", JOIN);
+        sent.clear();
+
+        engine.process("item-1", "sniper@localhost", bid(1097));
+
+        assertEquals(List.of("item-1 -> sniper@localhost: " + rejected(1097, "STALE")), sent);
+        assertEquals("other@localhost", engine.snapshot("item-1").get().highBidder());
+    }
+
+    @Test
+    public void rejectsStaleBidsOnArrival() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        AuctionHouseEngine busyEngine = new AuctionHouseEngine(queued::add, clock,
+                (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message));
+        busyEngine.openAuction("item-1", 1000, 98);
+        busyEngine.process("item-1", "bot@localhost", JOIN);
+        busyEngine.process("item-1", "other@localhost", bid(1000));
+        queued.remove(0).run();
+        sent.clear();
+
+        // The bot is already registered and there is no history, the item doesn't need to hear of the bid
+        busyEngine.process("item-1", "bot@localhost", bid(1097));
+
+        assertTrue(queued.isEmpty(), "The stale bid reached the item");
+        assertEquals(List.of("item-1 -> bot@localhost: " + rejected(1097, "STALE")), sent);
+        assertEquals(1, busyEngine.getStaleBidCount());
+        assertEquals(3, busyEngine.getProcessedCommandCount());
+    }
+
+    @Test
+    public void limitsTheBidRateOfEachBidderAndTellsItOnce() throws Exception {
+        AuctionHouseEngine limitedEngine = new AuctionHouseEngine(Runnable::run, clock,
+                (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message),
+                null, new BidRateLimiter(clock, 10, 2));
+        limitedEngine.openAuction("item-1", 1000, 98);
+
+        limitedEngine.process("item-1", "bot@localhost", bid(1000));
+        limitedEngine.process("item-1", "bot@localhost", bid(1098));
+        limitedEngine.process("item-1", "bot@localhost", bid(1196));
+        limitedEngine.process("item-1", "bot@localhost", bid(1294));
+        limitedEngine.process("item-1", "sniper@localhost", bid(1196));
+
+        assertEquals(List.of(
+                "item-1 -> bot@localhost: " + price(1000, 98, "bot@localhost", 2),
+                "item-1 -> bot@localhost: " + price(1098, 98, "bot@localhost", 3),
+                "item-1 -> bot@localhost: " + rejected(1196, "RATE_LIMITED"),
+                "item-1 -> bot@localhost: " + price(1196, 98, "sniper@localhost", 4),
+                "item-1 -> sniper@localhost: " + price(1196, 98, "sniper@localhost", 4)), sent);
+        assertEquals(2, limitedEngine.getRateLimitedBidCount());
+
+        // One bid per 100 ms is the steady rate
+        clock.advanceTo(100);
+        limitedEngine.process("item-1", "bot@localhost", bid(1294));
+        assertEquals(1294, limitedEngine.snapshot("item-1").get().currentPrice());
+    }
+
+    @Test
+    public void claimsAnUnknownBidderOnlyOnceOnArrival() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        AuctionHouseEngine busyEngine = new AuctionHouseEngine(queued::add, clock,
+                (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message));
+        busyEngine.openAuction("item-1", 1000, 98);
+
+        for (int i = 0; i < 3; i++) {
+            busyEngine.process("item-1", "bot@localhost", bid(1));
+        }
+
+        // Only the first bid claims the bot and tells it the price, like the answer to a JOIN
+        assertEquals(List.of(
+                "item-1 -> bot@localhost: " + price(1000, 98, ItemAuction.NO_BIDDER, 1),
+                "item-1 -> bot@localhost: " + rejected(1, "STALE"),
+                "item-1 -> bot@localhost: " + rejected(1, "STALE"),
+                "item-1 -> bot@localhost: " + rejected(1, "STALE")), sent);
+        CompletableFuture<ItemSnapshot> snapshot = busyEngine.snapshot("item-1");
+        queued.forEach(Runnable::run);
+        assertEquals(1, snapshot.get().bidderCount());
+    }
+
+    @Test
+    public void registersBiddersAndKeepsTheHistoryOfBidsRejectedOnArrival() throws Exception {
+        try (EventHistory history = EventHistory.inMemory(64 * 1024)) {
+            AuctionHouseEngine limitedEngine = new AuctionHouseEngine(Runnable::run, clock,
+                    (itemId, bidder, message) -> sent.add(itemId + " -> " + bidder + ": " + message),
+                    history, new BidRateLimiter(clock, 10, 1));
+            limitedEngine.openAuction("item-1", 1000, 98);
+            clock.advanceTo(10_000);
+            limitedEngine.process("item-1", "other@localhost", bid(1000));
+            // The first bid of the sniper is stale, the second one over its rate
+            limitedEngine.process("item-1", "sniper@localhost", bid(500));
+            limitedEngine.process("item-1", "sniper@localhost", bid(1098));
+            assertEquals(List.of(
+                    "item-1 -> other@localhost: " + price(1000, 98, "other@localhost", 2),
+                    "item-1 -> sniper@localhost: " + price(1000, 98, "other@localhost", 2),
+                    "item-1 -> sniper@localhost: " + rejected(500, "STALE"),
+                    "item-1 -> sniper@localhost: " + rejected(1098, "RATE_LIMITED")), sent);
+            sent.clear();
+
+            clock.advanceTo(20_000);
+            limitedEngine.process("item-1", "other@localhost", bid(1098));
+
+            assertEquals(List.of(
+                    "item-1 -> other@localhost: " + price(1098, 98, "other@localhost", 3),
+                    "item-1 -> sniper@localhost: " + price(1098, 98, "other@localhost", 3)), sent);
+            assertEquals(2, limitedEngine.snapshot("item-1").get().bidderCount());
+            List<String> events = new ArrayList<>();
+            history.scan("item-1", 0, Long.MAX_VALUE,
+                    (type, millis, price, increment, bidder) -> events.add(type + " " + millis + " " + price + " " + bidder));
+            assertEquals(List.of(
+                    "BID 10000 1000 other@localhost",
+                    "PRICE 10000 1000 other@localhost",
+                    "BID 10000 500 sniper@localhost",
+                    "BID 10000 1098 sniper@localhost",
+                    "BID 20000 1098 other@localhost",
+                    "PRICE 20000 1098 other@localhost"), events);
+        }
+    }
+
+    @Test
+    public void closesTheAuctionForAllBiddersAndLateCommands() {
+        engine.openAuction("item-1", 1000, 98);
+        engine.process("item-1", "sniper@localhost", JOIN);
+        engine.process("item-1", "other@localhost", bid(1000));
+        sent.clear();
+
+        engine.closeAuction("item-1");
+        engine.process("item-1", "late@localhost", bid(5000));
+
+        assertEquals(List.of(
+                "item-1 -> sniper@localhost: " + close(3),
+                "item-1 -> other@localhost: " + close(3),
+                "item-1 -> late@localhost: " + close(3)), sent);
+    }
+
+    @Test
+    public void closesTheAuctionAtItsDeadline() {
+        engine.openAuction("item-1", 1000, 98, 60_000, 5_000);
+        engine.process("item-1", "sniper@localhost", JOIN);
+        sent.clear();
+
+        clock.advanceTo(59_999);
+        assertTrue(sent.isEmpty());
+        clock.advanceTo(60_000);
+
+        assertEquals(List.of("item-1 -> sniper@localhost: " + close(2)), sent);
+    }
+
+    @Test
+    public void extendsTheDeadlineOnLateBids() throws Exception {
+        engine.openAuction("item-1", 1000, 98, 60_000, 5_000);
+        engine.process("item-1", "sniper@localhost", JOIN);
+        clock.advanceTo(50_000);
+        engine.process("item-1", "other@localhost", bid(1000));
+        assertEquals(60_000, engine.snapshot("item-1").get().deadline());
+
+        clock.advanceTo(58_000);
+        engine.process("item-1", "sniper@localhost", bid(1098));
+        assertEquals(63_000, engine.snapshot("item-1").get().deadline());
+        sent.clear();
+
+        clock.advanceTo(62_999);
+        assertTrue(sent.isEmpty());
+        clock.advanceTo(63_000);
+        assertEquals(List.of(
+                "item-1 -> sniper@localhost: " + close(4),
+                "item-1 -> other@localhost: " + close(4)), sent);
+    }
+
+    @Test
+    public void cancelsTheDeadlineWhenClosedByHand() {
+        engine.openAuction("item-1", 1000, 98, 60_000, 5_000);
+
+        engine.closeAuction("item-1");
+
+        assertEquals(0, clock.size());
+    }
+
+    @Test
+    public void keepsTheHistoryOfBidsPricesAndTheClose() throws Exception {
+        try (EventHistory history = EventHistory.inMemory(64 * 1024)) {
+            AuctionHouseEngine recordingEngine = new AuctionHouseEngine(Runnable::run, clock,
+                    (itemId, bidder, message) -> sent.add(message.toString()), history);
+            recordingEngine.openAuction("item-1", 1000, 98, 60_000, 5_000);
+            clock.advanceTo(10_000);
+            recordingEngine.process("item-1", "other@localhost", bid(1000));
+            clock.advanceTo(20_000);
+            recordingEngine.process("item-1", "sniper@localhost", bid(1050));
+            clock.advanceTo(60_000);
+
+            List<String> events = new ArrayList<>();
+            history.scan("item-1", 0, Long.MAX_VALUE,
+                    (type, millis, price, increment, bidder) -> events.add(type + " " + millis + " " + price + " " + bidder));
+
+            assertEquals(List.of(
+                    "BID 10000 1000 other@localhost",
+                    "PRICE 10000 1000 other@localhost",
+                    "BID 20000 1050 sniper@localhost",
+                    "CLOSE 60000 0 null"), events);
+        }
+    }
+
+    @Test
+    public void ignoresUnknownItemsAndMalformedCommands() {
+        engine.openAuction("item-1", 1000, 98);
+
+        assertFalse(engine.process("item-2", "sniper@localhost", JOIN));
+        assertTrue(engine.process("item-1", "sniper@localhost", "SOLVersion: 1.1; Command: SELL;"));
+        assertTrue(sent.isEmpty());
+        assertThrows(IllegalStateException.class, () -> engine.openAuction("item-1", 1, 1));
+    }
+
+    @Test
+    public void processesManyItemsInParallelWithoutLosingBids() throws Exception {
+        int itemCount = 1_000;
+        int producerCount = 4;
+        int bidsPerProducer = 250_000;
+        workers = AuctionHouseEngine.newWorkerPool(Runtime.getRuntime().availableProcessors());
+        LongAdder events = new LongAdder();
+        AuctionHouseEngine parallelEngine = new AuctionHouseEngine(workers, realTime, (itemId, bidder, message) -> events.increment());
+        String[] bids = new String[bidsPerProducer / itemCount + 1];
+        for (int i = 0; i < bids.length; i++) {
+            bids[i] = bid(1000 + i * 100);
+        }
+        for (int item = 0; item < itemCount; item++) {
+            parallelEngine.openAuction("item-" + item, 1000, 98);
+        }
+
+        long started = System.nanoTime();
+        List<Thread> producers = new ArrayList<>();
+        for (int producer = 0; producer < producerCount; producer++) {
+            String bidder = "bidder-" + producer + "@localhost";
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < bidsPerProducer; i++) {
+                    parallelEngine.process("item-" + i % itemCount, bidder, bids[i / itemCount]);
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long total = (long) producerCount * bidsPerProducer;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (parallelEngine.getProcessedCommandCount() < total && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        logger.log(Level.INFO, "Processed {0} commands on {1} items at {2,number,#} commands/s, {3} bids stale on arrival",
+                new Object[]{total, itemCount, total * TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                        parallelEngine.getStaleBidCount()});
+
+        assertEquals(total, parallelEngine.getProcessedCommandCount());
+        // Every item got the same bids, the highest one wins everywhere
+        int highest = 1000 + (bids.length - 2) * 100;
+        for (int item = 0; item < itemCount; item++) {
+            ItemSnapshot snapshot = parallelEngine.snapshot("item-" + item).get(5, TimeUnit.SECONDS);
+            assertEquals(highest, snapshot.currentPrice(), snapshot.toString());
+            assertEquals(producerCount, snapshot.bidderCount());
+        }
+        assertTrue(events.sum() >= total);
+    }
+
+    @AfterEach
+    public void stopWorkers() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        realTime.close();
+    }
+}
@@ -0,0 +1,53 @@
+package me.forketyfork.growing.auctionhouse;
+
+import org.junit.jupiter.api.Test;
+
+import static me.forketyfork.growing.auctionhouse.BidRateLimiter.Decision.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BidRateLimiterTest {
+
+    private final TimingWheel clock = new TimingWheel(0);
+
+    @Test
+    public void allowsABurstAndThenTheSteadyRate() {
+        BidRateLimiter limiter = new BidRateLimiter(clock, 10, 3);
+
+        assertEquals(ALLOWED, limiter.tryBid("bot"));
+        assertEquals(ALLOWED, limiter.tryBid("bot"));
+        assertEquals(ALLOWED, limiter.tryBid("bot"));
+        assertEquals(REJECTED, limiter.tryBid("bot"));
+        assertEquals(REJECTED_QUIETLY, limiter.tryBid("bot"));
+
+        clock.advanceTo(99);
+        assertEquals(REJECTED_QUIETLY, limiter.tryBid("bot"));
+        clock.advanceTo(100);
+        assertEquals(ALLOWED, limiter.tryBid("bot"));
+        assertEquals(REJECTED, limiter.tryBid("bot"));
+
+        // A quiet bidder gets its whole burst back
+        clock.advanceTo(10_000);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ALLOWED, limiter.tryBid("bot"));
+        }
+    }
+
+    @Test
+    public void keepsBiddersApartInAFixedNumberOfSlots() {
+        // Few slots, so that many bidders share one of theirs with the bot
+        BidRateLimiter limiter = new BidRateLimiter(clock, 1, 1, 64);
+        for (int i = 0; i < 1_000; i++) {
+            limiter.tryBid("bot");
+        }
+
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (limiter.tryBid("bidder-" + i) == ALLOWED) {
+                allowed++;
+            }
+        }
+        // Only bidders with both slots taken by the bot or by the bidders before them are limited
+        assertTrue(allowed > 20, allowed + " of 100 bidders allowed");
+        assertThrows(IllegalArgumentException.class, () -> new BidRateLimiter(clock, 1, 1, 100));
+    }
+}
@@ -0,0 +1,132 @@
+package me.forketyfork.growing.auctionhouse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventHistoryTest {
+
+    private static final Logger logger = Logger.getLogger("EventHistoryTest");
+
+    private static List<String> scan(EventHistory history, String itemId, long fromMillis, long toMillis) {
+        List<String> events = new ArrayList<>();
+        int count = history.scan(itemId, fromMillis, toMillis, (type, millis, price, increment, bidder) ->
+                events.add(type + " " + millis + " " + price + " " + increment + " " + bidder));
+        assertEquals(events.size(), count);
+        return events;
+    }
+
+    @Test
+    public void readsBackTheEventsOfEachItem() throws Exception {
+        try (EventHistory history = EventHistory.inMemory(64 * 1024)) {
+            EventHistory.ItemLog first = history.log("item-1");
+            EventHistory.ItemLog second = history.log("item-2");
+            first.append(HistoryEvent.BID, 1_000, 1000, 0, "sniper@localhost");
+            second.append(HistoryEvent.BID, 1_005, 50, 0, "other@localhost");
+            first.append(HistoryEvent.PRICE, 1_000, 1000, 98, "sniper@localhost");
+            first.append(HistoryEvent.PRICE, 1_200, 900, 10, null);
+            // Earlier than the previous event, kept at its time
+            first.append(HistoryEvent.BID, 1_100, Integer.MAX_VALUE, 0, "other@localhost");
+            first.append(HistoryEvent.CLOSE, 90_000, 0, 0, null);
+
+            assertEquals(List.of(
+                    "BID 1000 1000 0 sniper@localhost",
+                    "PRICE 1000 1000 98 sniper@localhost",
+                    "PRICE 1200 900 10 null",
+                    "BID 1200 2147483647 0 other@localhost",
+                    "CLOSE 90000 0 0 null"), scan(history, "item-1", Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(List.of("BID 1005 50 0 other@localhost"), scan(history, "item-2", 0, Long.MAX_VALUE));
+            assertEquals(List.of(), scan(history, "item-3", 0, Long.MAX_VALUE));
+            assertSame(first, history.log("item-1"));
+            assertEquals(6, history.getEventCount());
+        }
+    }
+
+    @Test
+    public void scansRangesAcrossChunksAndSegments() throws Exception {
+        // The smallest segments, so the chunks of the items spread over many of them
+        try (EventHistory history = EventHistory.inMemory(EventHistory.MAX_CHUNK_SIZE)) {
+            EventHistory.ItemLog item = history.log("item-1");
+            EventHistory.ItemLog other = history.log("item-2");
+            for (int i = 0; i < 10_000; i++) {
+                // Several events per millisecond, so chunks start at the same time
+                item.append(HistoryEvent.PRICE, i / 4, 1000 + i * 7, 7, "bidder-" + i % 3);
+                other.append(HistoryEvent.BID, i, i, 0, "bidder-" + i % 5);
+            }
+
+            List<String> range = scan(history, "item-1", 100, 199);
+            assertEquals(400, range.size());
+            assertEquals("PRICE 100 3800 7 bidder-1", range.get(0));
+            assertEquals("PRICE 199 6593 7 bidder-1", range.get(399));
+            assertEquals(10_000, scan(history, "item-1", 0, Long.MAX_VALUE).size());
+            assertEquals(List.of("BID 9999 9999 0 bidder-4"), scan(history, "item-2", 9_999, 20_000));
+            assertEquals(List.of(), scan(history, "item-2", 20_000, 30_000));
+            assertTrue(history.bytesPerEvent() < 6, "Bytes per event: " + history.bytesPerEvent());
+            logger.log(Level.INFO, "{0} bytes per event, {1} bytes allocated for {2} bytes of events",
+                    new Object[]{history.bytesPerEvent(), history.getAllocatedBytes(), history.getEncodedBytes()});
+        }
+    }
+
+    @Test
+    public void keepsTheNamesOfManyBidders() throws Exception {
+        try (EventHistory history = EventHistory.inMemory(64 * 1024)) {
+            EventHistory.ItemLog item = history.log("item-1");
+            for (int i = 0; i < 1_000; i++) {
+                item.append(HistoryEvent.BID, i, i, 0, "bidder-" + i);
+            }
+            // Known bidders keep their names while the names of new ones are added
+            item.append(HistoryEvent.BID, 1_000, 1_000, 0, "bidder-0");
+
+            List<String> events = scan(history, "item-1", 0, Long.MAX_VALUE);
+            assertEquals(1_001, events.size());
+            for (int i = 0; i < 1_000; i++) {
+                assertEquals("BID " + i + " " + i + " 0 bidder-" + i, events.get(i));
+            }
+            assertEquals("BID 1000 1000 0 bidder-0", events.get(1_000));
+        }
+    }
+
+    @Test
+    public void keepsSegmentsInMappedFiles(@TempDir Path directory) throws Exception {
+        try (EventHistory history = EventHistory.mapped(directory, 64 * 1024)) {
+            EventHistory.ItemLog item = history.log("item-1");
+            for (int i = 0; i < 50_000; i++) {
+                item.append(HistoryEvent.BID, i, 1000 + i, 0, "sniper@localhost");
+            }
+
+            assertEquals(50_000, scan(history, "item-1", 0, Long.MAX_VALUE).size());
+            assertTrue(Files.list(directory).count() > 1);
+        }
+    }
+
+    @Test
+    public void scansWhileEventsAreAppended() throws Exception {
+        try (EventHistory history = EventHistory.inMemory(64 * 1024)) {
+            EventHistory.ItemLog item = history.log("item-1");
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    item.append(HistoryEvent.BID, i, i, 0, "sniper@localhost");
+                }
+            });
+
+            while (!writer.isDone()) {
+                AtomicLong expected = new AtomicLong();
+                history.scan("item-1", 0, Long.MAX_VALUE, (type, millis, price, increment, bidder) ->
+                        assertEquals(expected.getAndIncrement(), price));
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            assertEquals(200_000, scan(history, "item-1", 0, Long.MAX_VALUE).size());
+        }
+    }
+}
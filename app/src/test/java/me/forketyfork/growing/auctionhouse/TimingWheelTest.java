@@ -0,0 +1,110 @@
+package me.forketyfork.growing.auctionhouse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private final TimingWheel wheel = new TimingWheel(1_000);
+    private final List<Long> expiredAt = new ArrayList<>();
+
+    private TimingWheel.Timeout scheduleAt(long deadline) {
+        return wheel.schedule(deadline, () -> expiredAt.add(wheel.millis()));
+    }
+
+    @Test
+    public void expiresTimersAtTheirDeadlineOnEveryLevel() {
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 4097, 262_144, 10_000_000, 3_600_000_123L};
+        for (long delay : delays) {
+            scheduleAt(1_000 + delay);
+        }
+
+        wheel.advanceTo(1_000 + delays[delays.length - 1]);
+
+        List<Long> expected = new ArrayList<>();
+        for (long delay : delays) {
+            expected.add(1_000 + delay);
+        }
+        assertEquals(expected, expiredAt);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void expiresRandomTimersInDeadlineOrder() {
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long deadline = 1_000 + 1 + random.nextInt(5_000_000);
+            deadlines.add(deadline);
+            scheduleAt(deadline);
+        }
+        deadlines.sort(null);
+
+        int expired = 0;
+        for (long time = 1_000; time <= 5_001_000; time += 1 + random.nextInt(100_000)) {
+            expired += wheel.advanceTo(time);
+        }
+        expired += wheel.advanceTo(5_001_000);
+
+        assertEquals(deadlines.size(), expired);
+        assertEquals(deadlines, expiredAt);
+    }
+
+    @Test
+    public void doesNotRunCancelledTimers() {
+        TimingWheel.Timeout near = scheduleAt(1_010);
+        TimingWheel.Timeout far = scheduleAt(1_000_000);
+        scheduleAt(1_020);
+
+        near.cancel();
+        far.cancel();
+        assertEquals(1, wheel.size());
+        wheel.advanceTo(2_000_000);
+
+        assertEquals(List.of(1_020L), expiredAt);
+        assertFalse(near.isExpired());
+    }
+
+    @Test
+    public void runsOverdueTimersAtTheNextTick() {
+        wheel.advanceTo(2_000);
+        scheduleAt(1_500);
+
+        assertEquals(0, wheel.advanceTo(2_000));
+        assertEquals(1, wheel.advanceTo(2_001));
+        assertEquals(List.of(2_001L), expiredAt);
+    }
+
+    @Test
+    public void letsTasksScheduleFurtherTimers() {
+        wheel.schedule(1_064, () -> scheduleAt(wheel.millis() + 100));
+
+        wheel.advanceTo(10_000);
+
+        assertEquals(List.of(1_164L), expiredAt);
+    }
+
+    @Test
+    public void stopsAtTheFirstMillisecondWithExpiredTimers() {
+        scheduleAt(5_000);
+        scheduleAt(5_000);
+        scheduleAt(300_000);
+
+        assertEquals(2, wheel.advanceToNextExpiry(1_000_000));
+        assertEquals(5_000, wheel.millis());
+        assertEquals(1, wheel.advanceToNextExpiry(1_000_000));
+        assertEquals(300_000, wheel.millis());
+        assertEquals(0, wheel.advanceToNextExpiry(1_000_000));
+        assertEquals(1_000_000, wheel.millis());
+    }
+
+    @Test
+    public void rejectsDeadlinesBeyondTheTopLevel() {
+        assertThrows(IllegalArgumentException.class, () -> scheduleAt(1_000 + TimingWheel.MAX_DELAY_MILLIS + 1));
+    }
+}
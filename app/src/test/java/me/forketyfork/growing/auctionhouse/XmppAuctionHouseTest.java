@@ -0,0 +1,117 @@
+package me.forketyfork.growing.auctionhouse;
+
+import me.forketyfork.growing.Main;
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+import me.forketyfork.growing.auctionsniper.SniperState;
+import me.forketyfork.growing.auctionsniper.xmpp.XMPPAuctionHouse;
+import me.forketyfork.growing.xmpp.SimpleXmppServer;
+import me.forketyfork.growing.xmpp.XmppServerConfig;
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a sniper against an {@link XmppAuctionHouse} through an embedded {@link SimpleXmppServer},
+ * both connected over TCP like in a load test. The sniper addresses the items as resources of the auction house.
+ */
+public class XmppAuctionHouseTest {
+
+    private static final long SNAPSHOT_TIMEOUT_MS = 5000;
+    private static final String AUCTION_HOUSE = "auction-house";
+
+    private final BlockingQueue<SniperSnapshot> snapshots = new LinkedBlockingQueue<>();
+    private SimpleXmppServer server;
+    private XmppAuctionHouse auctionHouse;
+    private AbstractXMPPConnection sniperConnection;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        // Messages for a TCP client are written when its read times out, keep the timeout short
+        server = new SimpleXmppServer(XmppServerConfig.builder().port(port).socketTimeoutMs(100).build());
+        server.start();
+        auctionHouse = new XmppAuctionHouse("localhost", port, AUCTION_HOUSE, "auction");
+        auctionHouse.connect();
+        sniperConnection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+                .setHost("localhost")
+                .setXmppDomain("localhost")
+                .setPort(port)
+                .setSecurityMode(ConnectionConfiguration.SecurityMode.disabled)
+                .setCompressionEnabled(false)
+                .build());
+        sniperConnection.connect();
+        sniperConnection.login("sniper", "sniper", Resourcepart.from(Main.AUCTION_RESOURCE));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sniperConnection.disconnect();
+        auctionHouse.stop();
+        server.stop();
+    }
+
+    @Test
+    public void sniperWinsAnAuctionHeldOverXmpp() throws Exception {
+        auctionHouse.openAuction("item-1", 1000, 98);
+        sniperAuctionHouse().joinAuction("item-1", snapshots::add);
+
+        // The JOIN is answered with the starting price, which the sniper outbids
+        receivesSnapshot(new SniperSnapshot("item-1", 1000, 1098, SniperState.BIDDING));
+        receivesSnapshot(new SniperSnapshot("item-1", 1098, 1098, SniperState.WINNING));
+
+        auctionHouse.closeAuction("item-1");
+        receivesSnapshot(new SniperSnapshot("item-1", 1098, 1098, SniperState.WON));
+        ItemSnapshot item = auctionHouse.getEngine().snapshot("item-1").get(SNAPSHOT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals("sniper@localhost", item.highBidder());
+        assertTrue(item.closed());
+    }
+
+    @Test
+    public void hostsAllItemsOverOneConnection() throws Exception {
+        auctionHouse.openAuction("item-1", 1000, 98);
+        auctionHouse.openAuction("item-2", 2000, 50);
+        XMPPAuctionHouse sniper = sniperAuctionHouse();
+        sniper.joinAuction("item-1", snapshots::add);
+        sniper.joinAuction("item-2", snapshots::add);
+
+        Set<SniperSnapshot> received = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            received.add(snapshots.poll(SNAPSHOT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(Set.of(
+                new SniperSnapshot("item-1", 1000, 1098, SniperState.BIDDING),
+                new SniperSnapshot("item-1", 1098, 1098, SniperState.WINNING),
+                new SniperSnapshot("item-2", 2000, 2050, SniperState.BIDDING),
+                new SniperSnapshot("item-2", 2050, 2050, SniperState.WINNING)), received);
+        // The items are resources of the auction house's account, not sessions of their own
+        assertEquals(Set.of(AUCTION_HOUSE + "@localhost/" + Main.AUCTION_RESOURCE,
+                "sniper@localhost/" + Main.AUCTION_RESOURCE), server.getLocalFullJids());
+    }
+
+    private XMPPAuctionHouse sniperAuctionHouse() {
+        return new XMPPAuctionHouse(sniperConnection, ForkJoinPool.commonPool(), AUCTION_HOUSE);
+    }
+
+    private void receivesSnapshot(SniperSnapshot expected) throws InterruptedException {
+        assertEquals(expected, snapshots.poll(SNAPSHOT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,92 @@
+package me.forketyfork.growing.auctionsniper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuctionMailboxTest {
+
+    @Test
+    public void runsTasksOfOneAuctionOneAtATimeInSubmissionOrder() throws Exception {
+        int auctionCount = 100;
+        int tasksPerProducer = 1_000;
+        int producerCount = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<AuctionMailbox> mailboxes = new ArrayList<>();
+            List<List<Integer>> seen = new ArrayList<>();
+            AtomicInteger[] running = new AtomicInteger[auctionCount];
+            for (int i = 0; i < auctionCount; i++) {
+                mailboxes.add(new AuctionMailbox(pool));
+                // Only touched by the mailbox, the single writer needs no synchronization
+                seen.add(new ArrayList<>());
+                running[i] = new AtomicInteger();
+            }
+            AtomicInteger overlaps = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(auctionCount * tasksPerProducer * producerCount);
+
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < producerCount; p++) {
+                int producer = p;
+                Thread thread = new Thread(() -> {
+                    for (int t = 0; t < tasksPerProducer; t++) {
+                        for (int a = 0; a < auctionCount; a++) {
+                            int auction = a;
+                            int value = producer * tasksPerProducer + t;
+                            mailboxes.get(a).execute(() -> {
+                                if (running[auction].incrementAndGet() != 1) {
+                                    overlaps.incrementAndGet();
+                                }
+                                seen.get(auction).add(value);
+                                running[auction].decrementAndGet();
+                                done.countDown();
+                            });
+                        }
+                    }
+                });
+                thread.start();
+                producers.add(thread);
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            assertTrue(done.await(30, TimeUnit.SECONDS), "Not all tasks ran");
+            assertEquals(0, overlaps.get(), "Tasks of one auction ran concurrently");
+            for (List<Integer> values : seen) {
+                assertEquals(tasksPerProducer * producerCount, values.size());
+                int[] last = new int[producerCount];
+                Arrays.fill(last, -1);
+                for (int value : values) {
+                    int producer = value / tasksPerProducer;
+                    assertTrue(value > last[producer], "Tasks of one producer ran out of order");
+                    last[producer] = value;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepsRunningAfterAFailedTask() {
+        List<String> events = new ArrayList<>();
+        AuctionMailbox mailbox = new AuctionMailbox(Runnable::run);
+
+        mailbox.execute(() -> {
+            throw new IllegalStateException("failed");
+        });
+        mailbox.execute(() -> events.add("next"));
+
+        assertEquals(List.of("next"), events);
+    }
+}
@@ -0,0 +1,82 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.Main;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent.RejectionReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuctionMessageTranslatorTest {
+
+    private static final String SNIPER_ID = "sniper@localhost";
+
+    private final List<String> events = new ArrayList<>();
+    private int resyncs;
+    private final AuctionMessageTranslator translator = new AuctionMessageTranslator(SNIPER_ID,
+            new AuctionEventListener() {
+                @Override
+                public void auctionClosed() {
+                    events.add("closed");
+                }
+
+                @Override
+                public void currentPrice(int price, int increment, PriceSource priceSource) {
+                    events.add("price " + price + " " + priceSource);
+                }
+
+                @Override
+                public void bidRejected(int price, RejectionReason reason) {
+                    events.add("rejected " + price + " " + reason);
+                }
+            }, () -> resyncs++);
+
+    private static String price(int price, String bidder, int sequence) {
+        return String.format(Main.REPORT_SEQUENCED_PRICE_EVENT_FORMAT, price, 98, bidder, sequence);
+    }
+
+    @Test
+    public void dropsDuplicateAndOutOfOrderEvents() {
+        translator.processMessage(price(1000, "other", 4));
+        translator.processMessage(price(1000, "other", 4));
+        translator.processMessage(price(1098, SNIPER_ID, 5));
+        translator.processMessage(price(1000, "other", 4));
+        translator.processMessage(String.format(Main.SEQUENCED_CLOSE_EVENT_FORMAT, 6));
+
+        assertEquals(List.of("price 1000 FROM_OTHER_BIDDER", "price 1098 FROM_SNIPER", "closed"), events);
+        assertEquals(0, resyncs);
+    }
+
+    @Test
+    public void appliesTheEventAfterAGapAndAsksForAResync() {
+        translator.processMessage(price(1000, "other", 1));
+        translator.processMessage(price(1196, "other", 4));
+        translator.processMessage(price(1196, "other", 4));
+
+        assertEquals(List.of("price 1000 FROM_OTHER_BIDDER", "price 1196 FROM_OTHER_BIDDER"), events);
+        assertEquals(1, resyncs);
+    }
+
+    @Test
+    public void passesOnRejectionsWhateverTheSequence() {
+        translator.processMessage(price(1098, "other", 3));
+        translator.processMessage(String.format(Main.REJECTED_EVENT_FORMAT, 1097, "STALE"));
+        translator.processMessage(String.format(Main.REJECTED_EVENT_FORMAT, 1196, "RATE_LIMITED"));
+
+        assertEquals(List.of("price 1098 FROM_OTHER_BIDDER", "rejected 1097 STALE", "rejected 1196 RATE_LIMITED"), events);
+        assertEquals(0, resyncs);
+    }
+
+    @Test
+    public void appliesEventsWithoutSequenceNumbers() {
+        String unsequenced = String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other");
+        translator.processMessage(unsequenced);
+        translator.processMessage(unsequenced);
+        translator.processMessage("");
+
+        assertEquals(List.of("price 1000 FROM_OTHER_BIDDER", "price 1000 FROM_OTHER_BIDDER", "closed"), events);
+        assertEquals(0, resyncs);
+    }
+}
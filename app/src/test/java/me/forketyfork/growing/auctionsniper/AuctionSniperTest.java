@@ -0,0 +1,103 @@
+package me.forketyfork.growing.auctionsniper;
+
+import me.forketyfork.growing.auctionsniper.AuctionEventListener.PriceSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AuctionSniperTest {
+
+    private static final String ITEM_ID = "item-54321";
+
+    private final List<Integer> bids = new ArrayList<>();
+    private final List<SniperSnapshot> snapshots = new ArrayList<>();
+    private final Auction auction = new Auction() {
+        @Override
+        public void join() {
+        }
+
+        @Override
+        public void bid(int amount) {
+            bids.add(amount);
+        }
+    };
+    private final AuctionSniper sniper = new AuctionSniper(ITEM_ID, auction, snapshots::add);
+
+    @Test
+    public void reportsLostWhenAuctionClosesImmediately() {
+        sniper.auctionClosed();
+
+        assertEquals(List.of(new SniperSnapshot(ITEM_ID, 0, 0, SniperState.LOST)), snapshots);
+    }
+
+    @Test
+    public void bidsHigherAndReportsBiddingWhenNewPriceArrives() {
+        sniper.currentPrice(1001, 25, PriceSource.FROM_OTHER_BIDDER);
+
+        assertEquals(List.of(1026), bids);
+        assertEquals(List.of(new SniperSnapshot(ITEM_ID, 1001, 1026, SniperState.BIDDING)), snapshots);
+    }
+
+    @Test
+    public void reportsIsWinningWhenCurrentPriceComesFromSniper() {
+        sniper.currentPrice(123, 12, PriceSource.FROM_OTHER_BIDDER);
+        sniper.currentPrice(135, 45, PriceSource.FROM_SNIPER);
+
+        assertEquals(List.of(135), bids);
+        assertEquals(new SniperSnapshot(ITEM_ID, 135, 135, SniperState.WINNING), sniper.getSnapshot());
+    }
+
+    @Test
+    public void reportsLostIfAuctionClosesWhenBidding() {
+        sniper.currentPrice(123, 45, PriceSource.FROM_OTHER_BIDDER);
+        sniper.auctionClosed();
+
+        assertEquals(SniperState.LOST, sniper.getSnapshot().state());
+    }
+
+    @Test
+    public void bidsByMultipleIncrementsAndStopsAtTheStopPrice() {
+        AuctionSniper limited = new AuctionSniper(new Item(ITEM_ID, 1300, 2), auction, snapshots::add);
+
+        limited.currentPrice(1000, 50, PriceSource.FROM_OTHER_BIDDER);
+        limited.currentPrice(1150, 100, PriceSource.FROM_OTHER_BIDDER);
+
+        assertEquals(List.of(1100), bids);
+        assertEquals(new SniperSnapshot(ITEM_ID, 1150, 1100, SniperState.LOSING), limited.getSnapshot());
+    }
+
+    @Test
+    public void reportsLostIfAuctionClosesWhenLosing() {
+        AuctionSniper limited = new AuctionSniper(new Item(ITEM_ID, 1000, 1), auction, snapshots::add);
+
+        limited.currentPrice(1000, 50, PriceSource.FROM_OTHER_BIDDER);
+        limited.auctionClosed();
+
+        assertEquals(List.of(), bids);
+        assertEquals(new SniperSnapshot(ITEM_ID, 1000, 0, SniperState.LOST), limited.getSnapshot());
+    }
+
+    @Test
+    public void reportsWonIfAuctionClosesWhenWinning() {
+        sniper.currentPrice(123, 45, PriceSource.FROM_SNIPER);
+        sniper.auctionClosed();
+
+        assertEquals(new SniperSnapshot(ITEM_ID, 123, 0, SniperState.WON), sniper.getSnapshot());
+    }
+
+    @Test
+    public void ignoresPricesAndClosesAfterTheAuctionClosed() {
+        sniper.currentPrice(123, 45, PriceSource.FROM_SNIPER);
+        sniper.auctionClosed();
+        sniper.currentPrice(200, 10, PriceSource.FROM_OTHER_BIDDER);
+        sniper.currentPrice(210, 10, PriceSource.FROM_SNIPER);
+        sniper.auctionClosed();
+
+        assertEquals(List.of(), bids);
+        assertEquals(List.of(new SniperSnapshot(ITEM_ID, 123, 0, SniperState.WINNING),
+                new SniperSnapshot(ITEM_ID, 123, 0, SniperState.WON)), snapshots);
+    }
+}
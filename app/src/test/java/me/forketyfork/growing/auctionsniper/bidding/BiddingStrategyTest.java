@@ -0,0 +1,68 @@
+package me.forketyfork.growing.auctionsniper.bidding;
+
+import me.forketyfork.growing.auctionsniper.Item;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BiddingStrategyTest {
+
+    @Test
+    public void bidsByTheMultipliedIncrement() {
+        assertEquals(1098, BiddingStrategy.incrementBy(1).bidFor(1000, 98));
+        assertEquals(1294, BiddingStrategy.incrementBy(3).bidFor(1000, 98));
+    }
+
+    @Test
+    public void stopsBiddingAboveTheStopPrice() {
+        BiddingStrategy strategy = BiddingStrategy.incrementBy(1).upTo(1100);
+
+        assertEquals(1098, strategy.bidFor(1000, 98));
+        assertEquals(1100, strategy.bidFor(1000, 100));
+        assertEquals(BiddingStrategy.NO_BID, strategy.bidFor(1000, 101));
+    }
+
+    @Test
+    public void neverBidsBeyondTheLargestPrice() {
+        assertEquals(BiddingStrategy.NO_BID, BiddingStrategy.incrementBy(2).bidFor(Integer.MAX_VALUE - 10, 10));
+    }
+
+    @Test
+    public void parsesItemLimits() {
+        assertEquals(Item.of("item-54321"), Item.parse("item-54321"));
+        assertEquals(new Item("item-54321", 1500, 2), Item.parse("item-54321,stop=1500,multiplier=2"));
+        assertThrows(IllegalArgumentException.class, () -> Item.parse("item-54321,limit=10"));
+        assertThrows(IllegalArgumentException.class, () -> Item.parse("item-54321,multiplier=0"));
+    }
+
+    @Test
+    public void decidesWithoutAllocating() {
+        int auctionCount = 10_000;
+        BiddingStrategy[] strategies = new BiddingStrategy[auctionCount];
+        for (int i = 0; i < auctionCount; i++) {
+            strategies[i] = new Item("item-" + i, 1000 + i, 1 + i % 3).biddingStrategy();
+        }
+        long checksum = decideAll(strategies, 0);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int tick = 1; tick <= 100; tick++) {
+            checksum += decideAll(strategies, tick);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        assertTrue(checksum != 0);
+        // Leaves room for the measurement itself, a single allocation per decision would take megabytes
+        assertTrue(allocated < 1024, "Deciding 1M bids allocated " + allocated + " bytes");
+    }
+
+    private static long decideAll(BiddingStrategy[] strategies, int tick) {
+        long checksum = 0;
+        for (BiddingStrategy strategy : strategies) {
+            checksum += strategy.bidFor(900 + tick, 5);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,51 @@
+package me.forketyfork.growing.auctionsniper.headless;
+
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+import me.forketyfork.growing.auctionsniper.SniperState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FinishedAuctionsTest {
+
+    private final List<SniperSnapshot> reported = new ArrayList<>();
+    private final FinishedAuctions finishedAuctions = new FinishedAuctions(reported::add, 2);
+
+    @Test
+    public void waitsUntilEveryAuctionHasFinished() throws Exception {
+        Thread waiting = new Thread(() -> {
+            try {
+                finishedAuctions.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+
+        finishedAuctions.sniperStateChanged(new SniperSnapshot("item-1", 1000, 1098, SniperState.BIDDING));
+        finishedAuctions.sniperStateChanged(new SniperSnapshot("item-1", 1000, 0, SniperState.LOST));
+        // The same auction reported twice doesn't count for the other one
+        finishedAuctions.sniperStateChanged(new SniperSnapshot("item-1", 1000, 0, SniperState.LOST));
+        waiting.join(100);
+        assertTrue(waiting.isAlive(), "Stopped waiting with an auction running");
+
+        finishedAuctions.sniperStateChanged(new SniperSnapshot("item-2", 500, 500, SniperState.WON));
+        waiting.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(waiting.isAlive(), "Still waiting after every auction finished");
+        assertEquals(4, reported.size());
+    }
+
+    @Test
+    public void stopsWaitingWhenReleased() throws Exception {
+        finishedAuctions.release();
+
+        finishedAuctions.await();
+        assertEquals(List.of(), reported);
+    }
+}
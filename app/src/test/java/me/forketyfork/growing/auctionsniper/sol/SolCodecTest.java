@@ -0,0 +1,206 @@
+package me.forketyfork.growing.auctionsniper.sol;
+
+import me.forketyfork.growing.Main;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SolCodecTest {
+
+    private final SolEvent event = new SolEvent();
+    private final SolEncoder encoder = new SolEncoder();
+
+    @Test
+    public void decodesPriceEvent() {
+        SolDecoder.decode(String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder"), event);
+
+        assertEquals(SolEvent.Type.PRICE, event.getType());
+        assertEquals(1000, event.getCurrentPrice());
+        assertEquals(98, event.getIncrement());
+        assertTrue(event.isFromBidder("other bidder"));
+        assertFalse(event.isFromBidder("sniper"));
+        assertEquals("other bidder", event.getBidder());
+    }
+
+    @Test
+    public void decodesCloseEvent() {
+        SolDecoder.decode("SOLVersion: 1.1; Event: CLOSE;", event);
+
+        assertEquals(SolEvent.Type.CLOSE, event.getType());
+        assertNull(event.getBidder());
+    }
+
+    @Test
+    public void rejectsUnsupportedVersionsAndMalformedMessages() {
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("SOLVersion: 2.0; Event: CLOSE;", event));
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("Event: CLOSE;", event));
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("SOLVersion: 1.1; Event: CLOSE", event));
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("SOLVersion: 1.1; Event: OPEN;", event));
+        assertThrows(SolFormatException.class,
+                () -> SolDecoder.decode("SOLVersion: 1.1; Event: PRICE; CurrentPrice: 99999999999; Increment: 1;", event));
+    }
+
+    @Test
+    public void encodesCommandsLikeTheFormatStrings() {
+        assertEquals(Main.JOIN_COMMAND_FORMAT, encoder.encodeJoin().toString());
+        for (int price : new int[]{0, 7, 1098, -15, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(String.format(Main.BID_COMMAND_FORMAT, price), encoder.encodeBid(price).toString());
+        }
+
+        byte[] bytes = new byte[64];
+        int length = encoder.writeTo(bytes, 0);
+        assertEquals(String.format(Main.BID_COMMAND_FORMAT, Integer.MIN_VALUE), new String(bytes, 0, length));
+    }
+
+    @Test
+    public void decodesCommandsForTheAuction() {
+        SolCommand command = new SolCommand();
+
+        SolDecoder.decodeCommand(Main.JOIN_COMMAND_FORMAT, command);
+        assertEquals(SolCommand.Type.JOIN, command.getType());
+
+        SolDecoder.decodeCommand(encoder.encodeBid(1098), command);
+        assertEquals(SolCommand.Type.BID, command.getType());
+        assertEquals(1098, command.getPrice());
+
+        assertThrows(SolFormatException.class, () -> SolDecoder.decodeCommand("SOLVersion: 1.1; Command: BID;", command));
+        assertThrows(SolFormatException.class, () -> SolDecoder.decodeCommand("SOLVersion: 1.1; Command: SELL;", command));
+        assertThrows(SolFormatException.class, () -> SolDecoder.decodeCommand("Command: JOIN;", command));
+    }
+
+    @Test
+    public void encodesEventsLikeTheFormatStrings() {
+        assertEquals(String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder"),
+                encoder.encodePrice(1000, 98, "other bidder").toString());
+        String longBidder = "bidder@" + "x".repeat(200) + ".example";
+        assertEquals(String.format(Main.REPORT_PRICE_EVENT_FORMAT, Integer.MIN_VALUE, Integer.MAX_VALUE, longBidder),
+                encoder.encodePrice(Integer.MIN_VALUE, Integer.MAX_VALUE, longBidder).toString());
+
+        SolDecoder.decode(encoder.encodeClose(), event);
+        assertEquals(SolEvent.Type.CLOSE, event.getType());
+    }
+
+    @Test
+    public void carriesOptionalSequenceNumbersInEvents() {
+        String price = encoder.encodePrice(1000, 98, "other bidder", 7).toString();
+        assertEquals(String.format(Main.REPORT_SEQUENCED_PRICE_EVENT_FORMAT, 1000, 98, "other bidder", 7), price);
+        SolDecoder.decode(price, event);
+        assertEquals(7, event.getSequence());
+        assertTrue(event.isFromBidder("other bidder"));
+
+        String close = encoder.encodeClose(Integer.MAX_VALUE).toString();
+        assertEquals(String.format(Main.SEQUENCED_CLOSE_EVENT_FORMAT, Integer.MAX_VALUE), close);
+        SolDecoder.decode(close, event);
+        assertEquals(Integer.MAX_VALUE, event.getSequence());
+
+        SolDecoder.decode(String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder"), event);
+        assertEquals(SolEvent.NO_SEQUENCE, event.getSequence());
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("SOLVersion: 1.1; Event: CLOSE; Seq: 0;", event));
+
+        byte[] bytes = new byte[64];
+        int length = SolBinary.encodePrice(1000, 98, "other bidder", 300, bytes, 0);
+        assertTrue(length <= SolBinary.maxPriceLength("other bidder"));
+        SolBinary.decodeEvent(bytes, 0, length, event);
+        assertEquals(300, event.getSequence());
+        assertTrue(event.isFromBidder("other bidder"));
+        SolBinary.decodeEvent(bytes, 0, SolBinary.encodeClose(5, bytes, 0), event);
+        assertEquals(SolEvent.Type.CLOSE, event.getType());
+        assertEquals(5, event.getSequence());
+        SolBinary.decodeEvent(bytes, 0, SolBinary.encodeClose(bytes, 0), event);
+        assertEquals(SolEvent.NO_SEQUENCE, event.getSequence());
+    }
+
+    @Test
+    public void encodesAndDecodesRejections() {
+        String rejected = encoder.encodeRejected(1097, SolEvent.RejectionReason.STALE).toString();
+        assertEquals(String.format(Main.REJECTED_EVENT_FORMAT, 1097, "STALE"), rejected);
+        SolDecoder.decode(rejected, event);
+        assertEquals(SolEvent.Type.REJECTED, event.getType());
+        assertEquals(1097, event.getRejectedPrice());
+        assertEquals(SolEvent.RejectionReason.STALE, event.getRejectionReason());
+        assertEquals(SolEvent.NO_SEQUENCE, event.getSequence());
+        assertThrows(SolFormatException.class, () -> SolDecoder.decode("SOLVersion: 1.1; Event: REJECTED; Price: 1;", event));
+        assertThrows(SolFormatException.class,
+                () -> SolDecoder.decode("SOLVersion: 1.1; Event: REJECTED; Price: 1; Reason: BORED;", event));
+
+        byte[] bytes = new byte[64];
+        int length = SolBinary.encodeRejected(-5, SolEvent.RejectionReason.RATE_LIMITED, bytes, 0);
+        SolBinary.decodeEvent(bytes, 0, length, event);
+        assertEquals(SolEvent.Type.REJECTED, event.getType());
+        assertEquals(-5, event.getRejectedPrice());
+        assertEquals(SolEvent.RejectionReason.RATE_LIMITED, event.getRejectionReason());
+        bytes[length - 1] = 9;
+        assertThrows(SolFormatException.class, () -> SolBinary.decodeEvent(bytes, 0, length, event));
+    }
+
+    @Test
+    public void roundTripsBinaryMessages() {
+        byte[] bytes = new byte[64];
+        int length = SolBinary.encodePrice(1000, 98, "other bidder", bytes, 0);
+        SolBinary.decodeEvent(bytes, 0, length, event);
+
+        assertEquals(SolEvent.Type.PRICE, event.getType());
+        assertEquals(1000, event.getCurrentPrice());
+        assertEquals(98, event.getIncrement());
+        assertTrue(event.isFromBidder("other bidder"));
+        assertFalse(event.isFromBidder("other"));
+        assertTrue(length < String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder").length() / 4,
+                "Binary price event takes " + length + " bytes");
+
+        length = SolBinary.encodePrice(-1, Integer.MAX_VALUE, "bidder \u00e9\u20ac\ud83d\ude00", bytes, 0);
+        SolBinary.decodeEvent(bytes, 0, length, event);
+        assertEquals(-1, event.getCurrentPrice());
+        assertEquals(Integer.MAX_VALUE, event.getIncrement());
+        assertTrue(event.isFromBidder("bidder \u00e9\u20ac\ud83d\ude00"));
+
+        length = SolBinary.encodeClose(bytes, 0);
+        SolBinary.decodeEvent(bytes, 0, length, event);
+        assertEquals(SolEvent.Type.CLOSE, event.getType());
+
+        length = SolBinary.encodeBid(Integer.MIN_VALUE, bytes, 3);
+        assertEquals(Integer.MIN_VALUE, SolBinary.decodeBid(bytes, 3, length));
+        assertTrue(SolBinary.isJoin(bytes, 0, SolBinary.encodeJoin(bytes, 0)));
+    }
+
+    @Test
+    public void rejectsMalformedBinaryMessages() {
+        byte[] bytes = new byte[64];
+        int length = SolBinary.encodePrice(1000, 98, "other bidder", bytes, 0);
+
+        assertThrows(SolFormatException.class, () -> SolBinary.decodeEvent(bytes, 0, 6, event));
+        bytes[0] = SolBinary.VERSION + 1;
+        assertThrows(SolFormatException.class, () -> SolBinary.decodeEvent(bytes, 0, length, event));
+        int bidLength = SolBinary.encodeBid(1098, bytes, 0);
+        assertThrows(SolFormatException.class, () -> SolBinary.decodeEvent(bytes, 0, bidLength, event));
+    }
+
+    @Test
+    public void decodesAndEncodesWithoutAllocating() {
+        String message = String.format(Main.REPORT_PRICE_EVENT_FORMAT, 1000, 98, "other bidder");
+        byte[] bytes = new byte[64];
+        // Warm up so that class loading and lazy initialization don't count
+        for (int i = 0; i < 10_000; i++) {
+            roundTrip(message, bytes);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            roundTrip(message, bytes);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        assertTrue(allocated < 1024, "Decoding and encoding allocated " + allocated + " bytes");
+    }
+
+    private void roundTrip(String message, byte[] bytes) {
+        SolDecoder.decode(message, event);
+        encoder.encodeBid(event.getCurrentPrice() + event.getIncrement());
+        encoder.writeTo(bytes, 0);
+        int length = SolBinary.encodePrice(event.getCurrentPrice(), event.getIncrement(), "other bidder", bytes, 0);
+        SolBinary.decodeEvent(bytes, 0, length, event);
+        SolBinary.encodeBid(event.getCurrentPrice() + event.getIncrement(), bytes, 0);
+    }
+}
@@ -0,0 +1,113 @@
+package me.forketyfork.growing.auctionsniper.ui;
+
+import me.forketyfork.growing.auctionsniper.SniperSnapshot;
+import me.forketyfork.growing.auctionsniper.SniperState;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.forketyfork.growing.auctionsniper.ui.SnipersTableModel.Column;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnipersTableModelTest {
+
+    // Updates are applied explicitly, the refresh timer must not interfere
+    private final SnipersTableModel model = new SnipersTableModel(60_000);
+    private final List<TableModelEvent> events = new ArrayList<>();
+
+    public SnipersTableModelTest() {
+        model.addTableModelListener(events::add);
+    }
+
+    private void applyPendingUpdates() throws Exception {
+        SwingUtilities.invokeAndWait(model::applyPendingUpdates);
+    }
+
+    @Test
+    public void hasEnoughColumns() {
+        assertEquals(Column.values().length, model.getColumnCount());
+        assertEquals("Last Price", model.getColumnName(Column.LAST_PRICE.ordinal()));
+    }
+
+    @Test
+    public void showsOnlyTheLatestSnapshotOfAnItem() throws Exception {
+        model.sniperStateChanged(SniperSnapshot.joining("item-1"));
+        model.sniperStateChanged(new SniperSnapshot("item-1", 555, 666, SniperState.BIDDING));
+        model.sniperStateChanged(new SniperSnapshot("item-1", 666, 666, SniperState.WINNING));
+        applyPendingUpdates();
+
+        assertEquals(1, model.getRowCount());
+        assertRowMatches(0, "item-1", 666, 666, MainWindow.STATUS_WINNING);
+        assertEquals(1, events.size(), "Coalesced updates must fire a single event");
+        assertEquals(TableModelEvent.INSERT, events.get(0).getType());
+    }
+
+    @Test
+    public void notifiesOnlyAboutChangedRows() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            model.sniperStateChanged(SniperSnapshot.joining("item-" + i));
+        }
+        applyPendingUpdates();
+        events.clear();
+
+        model.sniperStateChanged(new SniperSnapshot("item-3", 100, 110, SniperState.BIDDING));
+        model.sniperStateChanged(new SniperSnapshot("item-4", 100, 120, SniperState.BIDDING));
+        model.sniperStateChanged(new SniperSnapshot("item-8", 0, 0, SniperState.LOST));
+        applyPendingUpdates();
+
+        assertEquals(2, events.size());
+        assertRowsUpdated(events.get(0), 3, 4);
+        assertRowsUpdated(events.get(1), 8, 8);
+        assertRowMatches(3, "item-3", 100, 110, MainWindow.STATUS_BIDDING);
+        assertRowMatches(8, "item-8", 0, 0, MainWindow.STATUS_LOST);
+    }
+
+    @Test
+    public void absorbsBurstsOfUpdatesAcrossManyRows() throws Exception {
+        int rowCount = 10_000;
+        int threadCount = 4;
+        int rowsPerThread = rowCount / threadCount;
+        int updatesPerThread = 25_000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int firstItem = t * rowsPerThread;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < updatesPerThread; i++) {
+                    model.sniperStateChanged(new SniperSnapshot("item-" + (firstItem + i % rowsPerThread),
+                            i, i + 1, SniperState.BIDDING));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        applyPendingUpdates();
+
+        assertEquals(rowCount, model.getRowCount());
+        assertEquals(1, events.size(), "All rows must be inserted by a single event");
+        for (int row = 0; row < rowCount; row++) {
+            String itemId = (String) model.getValueAt(row, Column.ITEM_IDENTIFIER.ordinal());
+            int lastPrice = updatesPerThread - rowsPerThread + Integer.parseInt(itemId.substring("item-".length())) % rowsPerThread;
+            assertRowMatches(row, itemId, lastPrice, lastPrice + 1, MainWindow.STATUS_BIDDING);
+        }
+    }
+
+    private void assertRowMatches(int row, String itemId, int lastPrice, int lastBid, String state) {
+        assertEquals(itemId, model.getValueAt(row, Column.ITEM_IDENTIFIER.ordinal()));
+        assertEquals(lastPrice, model.getValueAt(row, Column.LAST_PRICE.ordinal()));
+        assertEquals(lastBid, model.getValueAt(row, Column.LAST_BID.ordinal()));
+        assertEquals(state, model.getValueAt(row, Column.SNIPER_STATE.ordinal()));
+    }
+
+    private static void assertRowsUpdated(TableModelEvent event, int firstRow, int lastRow) {
+        assertEquals(TableModelEvent.UPDATE, event.getType());
+        assertEquals(firstRow, event.getFirstRow());
+        assertEquals(lastRow, event.getLastRow());
+    }
+}
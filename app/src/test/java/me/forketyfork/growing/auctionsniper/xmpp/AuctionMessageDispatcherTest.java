@@ -0,0 +1,156 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import me.forketyfork.growing.auctionsniper.AuctionEventListener;
+import me.forketyfork.growing.auctionsniper.AuctionMessageTranslator;
+import me.forketyfork.growing.auctionsniper.AuctionSniper;
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.sol.SolBinary;
+import me.forketyfork.growing.auctionsniper.sol.SolEvent;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.StanzaBuilder;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuctionMessageDispatcherTest {
+
+    private static final String SNIPER_ID = "sniper@localhost";
+    private static final String PRICE = "SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1000; Increment: 98; Bidder: other;";
+
+    // Retained heap allowed per tracked auction, including its JID
+    private static final long MEMORY_BUDGET_PER_AUCTION = 1024;
+
+    private final AuctionMessageDispatcher dispatcher = new AuctionMessageDispatcher(Runnable::run);
+
+    private static XMPPAuction auction(String jid) throws Exception {
+        return new XMPPAuction(null, JidCreate.entityFullFrom(jid));
+    }
+
+    private static Message messageFrom(String jid, String body) throws Exception {
+        return StanzaBuilder.buildMessage()
+                .from(JidCreate.entityFullFrom(jid))
+                .ofType(Message.Type.chat)
+                .setBody(body)
+                .build();
+    }
+
+    @Test
+    public void dispatchesMessagesToTheAuctionTheyCameFrom() throws Exception {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        dispatcher.register(auction("auction-item-1@localhost/Auction"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(first)));
+        dispatcher.register(auction("auction-item-2@localhost/Auction"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(second)));
+
+        dispatcher.processStanza(messageFrom("auction-item-2@localhost/Auction", PRICE));
+        dispatcher.processStanza(messageFrom("auction-item-1@localhost/Auction", ""));
+
+        assertEquals(List.of("closed"), first);
+        assertEquals(List.of("price 1000 98 FROM_OTHER_BIDDER"), second);
+    }
+
+    @Test
+    public void dispatchesMessagesToTheItemsOfOneAuctionHouse() throws Exception {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        dispatcher.register(auction("auction-house@localhost/item-1"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(first)));
+        dispatcher.register(auction("auction-house@localhost/item-2"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(second)));
+
+        dispatcher.processStanza(messageFrom("auction-house@localhost/item-2", PRICE));
+        dispatcher.processStanza(messageFrom("auction-house@localhost/item-1", ""));
+
+        assertEquals(List.of("closed"), first);
+        assertEquals(List.of("price 1000 98 FROM_OTHER_BIDDER"), second);
+    }
+
+    @Test
+    public void ignoresMessagesFromUntrackedSenders() throws Exception {
+        List<String> events = new ArrayList<>();
+        dispatcher.register(auction("auction-item-1@localhost/Auction"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(events)));
+
+        dispatcher.processStanza(messageFrom("other@localhost/Auction", PRICE));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void switchesAuctionToBinaryCommandsOnBinaryEvent() throws Exception {
+        List<String> events = new ArrayList<>();
+        XMPPAuction auction = auction("auction-item-1@localhost/Auction");
+        dispatcher.register(auction, new AuctionMessageTranslator(SNIPER_ID, recordingListener(events)));
+
+        dispatcher.processStanza(messageFrom("auction-item-1@localhost/Auction", PRICE));
+        assertFalse(auction.isUsingBinaryEncoding());
+
+        byte[] buffer = new byte[64];
+        int length = SolBinary.encodePrice(1200, 50, "other", buffer, 0);
+        dispatcher.processStanza(StanzaBuilder.buildMessage()
+                .from(JidCreate.entityFullFrom("auction-item-1@localhost/Auction"))
+                .ofType(Message.Type.chat)
+                .addExtension(SolBinaryExtension.of(buffer, length))
+                .build());
+
+        assertEquals(List.of("price 1000 98 FROM_OTHER_BIDDER", "price 1200 50 FROM_OTHER_BIDDER"), events);
+        assertTrue(auction.isUsingBinaryEncoding());
+    }
+
+    @Test
+    public void reportsPricesFromTheSniperItself() throws Exception {
+        List<String> events = new ArrayList<>();
+        dispatcher.register(auction("auction-item-1@localhost/Auction"), new AuctionMessageTranslator(SNIPER_ID, recordingListener(events)));
+
+        dispatcher.processStanza(messageFrom("auction-item-1@localhost/Auction",
+                "SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1098; Increment: 97; Bidder: " + SNIPER_ID + ";"));
+
+        assertEquals(List.of("price 1098 97 FROM_SNIPER"), events);
+    }
+
+    @Test
+    public void staysWithinMemoryBudgetPerTrackedAuction() throws Exception {
+        int auctionCount = 20_000;
+        SniperListener sniperListener = snapshot -> {
+        };
+
+        long usedBefore = usedHeap();
+        for (int i = 0; i < auctionCount; i++) {
+            XMPPAuction auction = auction("auction-item-" + i + "@localhost/Auction");
+            dispatcher.register(auction, new AuctionMessageTranslator(SNIPER_ID,
+                    new AuctionSniper("item-" + i, auction, sniperListener)));
+        }
+        long perAuction = (usedHeap() - usedBefore) / auctionCount;
+
+        assertEquals(auctionCount, dispatcher.getTrackedAuctionCount());
+        assertTrue(perAuction < MEMORY_BUDGET_PER_AUCTION, "Each tracked auction retains " + perAuction + " bytes");
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static AuctionEventListener recordingListener(List<String> events) {
+        return new AuctionEventListener() {
+            @Override
+            public void auctionClosed() {
+                events.add("closed");
+            }
+
+            @Override
+            public void currentPrice(int price, int increment, PriceSource priceSource) {
+                events.add("price " + price + " " + increment + " " + priceSource);
+            }
+
+            @Override
+            public void bidRejected(int price, SolEvent.RejectionReason reason) {
+                events.add("rejected " + price + " " + reason);
+            }
+        };
+    }
+}
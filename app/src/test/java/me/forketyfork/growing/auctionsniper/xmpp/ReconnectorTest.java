@@ -0,0 +1,20 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReconnectorTest {
+
+    @Test
+    public void growsTheBackoffExponentiallyWithJitterUpToTheMaximum() {
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long ceiling = Math.min(Reconnector.MAX_DELAY_MS, Reconnector.INITIAL_DELAY_MS << Math.min(attempt, 20));
+            for (int i = 0; i < 100; i++) {
+                long delay = Reconnector.nextDelayMs(attempt);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling, "Delay " + delay + " for attempt " + attempt);
+            }
+        }
+        assertTrue(Reconnector.nextDelayMs(0) <= Reconnector.INITIAL_DELAY_MS);
+    }
+}
@@ -0,0 +1,31 @@
+package me.forketyfork.growing.auctionsniper.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedAuctionHouseTest {
+
+    @Test
+    public void assignsAnItemToTheSameShardEveryTime() {
+        // The mapping must not depend on the process, so it is pinned to the String hash
+        assertEquals(Math.floorMod("item-54321".hashCode(), 4), ShardedAuctionHouse.shardIndex("item-54321", 4));
+        assertEquals(ShardedAuctionHouse.shardIndex("item-1", 8), ShardedAuctionHouse.shardIndex(new String("item-1"), 8));
+        assertEquals(0, ShardedAuctionHouse.shardIndex("item-1", 1));
+    }
+
+    @Test
+    public void spreadsItemsEvenlyOverShards() {
+        int shardCount = 8;
+        int itemCount = 80_000;
+        int[] items = new int[shardCount];
+        for (int i = 0; i < itemCount; i++) {
+            int shard = ShardedAuctionHouse.shardIndex("item-" + i, shardCount);
+            assertTrue(shard >= 0 && shard < shardCount);
+            items[shard]++;
+        }
+        for (int count : items) {
+            assertEquals(itemCount / shardCount, count, itemCount / shardCount / 10.0);
+        }
+    }
+}
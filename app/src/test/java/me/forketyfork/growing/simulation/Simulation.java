@@ -0,0 +1,197 @@
+package me.forketyfork.growing.simulation;
+
+import me.forketyfork.growing.auctionhouse.AuctionHouseEngine;
+import me.forketyfork.growing.auctionhouse.ItemSnapshot;
+import me.forketyfork.growing.auctionhouse.TimingWheel;
+import me.forketyfork.growing.auctionsniper.Auction;
+import me.forketyfork.growing.auctionsniper.AuctionMessageTranslator;
+import me.forketyfork.growing.auctionsniper.AuctionSniper;
+import me.forketyfork.growing.auctionsniper.Item;
+import me.forketyfork.growing.auctionsniper.SniperListener;
+import me.forketyfork.growing.auctionsniper.sol.SolEncoder;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs snipers against the auction house engine on a virtual clock, in the calling thread.
+ * <p>
+ * Every message between a sniper and an auction is encoded in SOL, delayed by a latency drawn from
+ * the seeded random generator, and delivered by a timer of a {@link TimingWheel} that serves as the clock.
+ * Like over the XMPP connection, the messages in each direction between a sniper and its auction arrive
+ * in the order they were sent: a message is delayed further rather than overtake the one sent before it.
+ * Auction deadlines are timers of the same wheel. Nothing depends on real time or on thread scheduling,
+ * so a seed always reproduces the same run, and the run takes only as long as the processing.
+ */
+public class Simulation {
+
+    private final SplittableRandom random;
+    private final int minLatencyMillis;
+    private final int maxLatencyMillis;
+    private final TimingWheel clock = new TimingWheel(0);
+    private final AuctionHouseEngine engine;
+    // Item id -> bidder -> the auction as seen by the bidder's sniper for the item
+    private final Map<String, Map<String, SimulatedAuction>> snipers = new HashMap<>();
+    private final SolEncoder encoder = new SolEncoder();
+    private long deliveredMessages;
+    private long resyncs;
+
+    /**
+     * @param minLatencyMillis the shortest delay of a message, at least 0
+     * @param maxLatencyMillis the longest delay of a message
+     */
+    public Simulation(long seed, int minLatencyMillis, int maxLatencyMillis) {
+        if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis) {
+            throw new IllegalArgumentException("Invalid latency range " + minLatencyMillis + ".." + maxLatencyMillis);
+        }
+        this.random = new SplittableRandom(seed);
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        // Mailboxes on a same-thread executor run each command right away, inside the delivering timer
+        this.engine = new AuctionHouseEngine(Runnable::run, clock, this::deliverToSniper);
+    }
+
+    public long millis() {
+        return clock.millis();
+    }
+
+    /**
+     * The generator of the run, for scenarios that need more random choices, e.g. stop prices.
+     */
+    public SplittableRandom random() {
+        return random;
+    }
+
+    public void openAuction(String itemId, int startingPrice, int increment, long durationMillis, long extensionMillis) {
+        engine.openAuction(itemId, startingPrice, increment, clock.millis() + durationMillis, extensionMillis);
+    }
+
+    /**
+     * Add a sniper that joins the auction of the item after a network delay.
+     */
+    public AuctionSniper addSniper(String bidder, Item item, SniperListener listener) {
+        String itemId = item.identifier();
+        SimulatedAuction auction = new SimulatedAuction(itemId, bidder);
+        SimulatedAuction previous = snipers.computeIfAbsent(itemId, id -> new HashMap<>()).putIfAbsent(bidder, auction);
+        if (previous != null) {
+            throw new IllegalStateException(bidder + " already has a sniper for " + itemId);
+        }
+        AuctionSniper sniper = new AuctionSniper(item, auction, listener);
+        auction.translator = new AuctionMessageTranslator(bidder, sniper, () -> {
+            resyncs++;
+            auction.join();
+        });
+        auction.join();
+        return sniper;
+    }
+
+    /**
+     * Advance the clock until the time, delivering every message and firing every deadline due by then.
+     */
+    public void runUntil(long millis) {
+        clock.advanceTo(millis);
+    }
+
+    /**
+     * Advance the clock until no message is in flight and no deadline is pending.
+     * The clock stops at the time of the last event.
+     *
+     * @throws IllegalStateException if there are still events after the time limit
+     */
+    public void runUntilIdle(long limitMillis) {
+        while (clock.size() > 0) {
+            if (clock.millis() >= limitMillis) {
+                throw new IllegalStateException(clock.size() + " events still pending at " + clock.millis());
+            }
+            clock.advanceToNextExpiry(limitMillis);
+        }
+    }
+
+    public ItemSnapshot auctionState(String itemId) {
+        try {
+            // Already complete, the engine runs in this thread
+            return engine.snapshot(itemId).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of messages delivered in both directions so far
+     */
+    public long getDeliveredMessageCount() {
+        return deliveredMessages;
+    }
+
+    /**
+     * @return how many times snipers missed events and asked their auction for its state again
+     */
+    public long getResyncCount() {
+        return resyncs;
+    }
+
+    private long deliveryTime() {
+        return clock.millis() + minLatencyMillis + random.nextInt(maxLatencyMillis - minLatencyMillis + 1);
+    }
+
+    private void deliverToSniper(String itemId, String bidder, CharSequence message) {
+        SimulatedAuction auction = snipers.getOrDefault(itemId, Map.of()).get(bidder);
+        if (auction == null) {
+            return;
+        }
+        // The event is only valid during the call, the encoder is reused for the next one
+        String body = message.toString();
+        auction.toSniper.send(() -> auction.translator.processMessage(body));
+    }
+
+    /**
+     * The messages in flight in one direction between a sniper and its auction.
+     */
+    private class Channel {
+
+        private final ArrayDeque<Runnable> inFlight = new ArrayDeque<>();
+        private long lastDeliveryTime;
+
+        void send(Runnable delivery) {
+            lastDeliveryTime = Math.max(lastDeliveryTime, deliveryTime());
+            inFlight.add(delivery);
+            // Timers due in the same millisecond don't expire in a fixed order, so each one delivers the oldest message
+            clock.schedule(lastDeliveryTime, () -> {
+                deliveredMessages++;
+                inFlight.poll().run();
+            });
+        }
+    }
+
+    private class SimulatedAuction implements Auction {
+
+        private final String itemId;
+        private final String bidder;
+        private final Channel toAuction = new Channel();
+        private final Channel toSniper = new Channel();
+        // Set right after the sniper is created
+        private AuctionMessageTranslator translator;
+
+        SimulatedAuction(String itemId, String bidder) {
+            this.itemId = itemId;
+            this.bidder = bidder;
+        }
+
+        @Override
+        public void join() {
+            sendToAuction(encoder.encodeJoin().toString());
+        }
+
+        @Override
+        public void bid(int amount) {
+            sendToAuction(encoder.encodeBid(amount).toString());
+        }
+
+        private void sendToAuction(String command) {
+            toAuction.send(() -> engine.process(itemId, bidder, command));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package me.forketyfork.growing.simulation;
+
+import me.forketyfork.growing.auctionhouse.ItemSnapshot;
+import me.forketyfork.growing.auctionsniper.AuctionSniper;
+import me.forketyfork.growing.auctionsniper.Item;
+import me.forketyfork.growing.auctionsniper.SniperState;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulationTest {
+
+    private static final Logger logger = Logger.getLogger("SimulationTest");
+
+    private static final long DAY_MILLIS = 24 * 3_600_000L;
+
+    @Test
+    public void sniperWithTheHigherStopPriceWinsOnVirtualTime() {
+        Simulation simulation = new Simulation(1, 5, 50);
+        simulation.openAuction("item-1", 1000, 98, 60_000, 5_000);
+        AuctionSniper bold = simulation.addSniper("bold", new Item("item-1", 3000, 1), snapshot -> {});
+        AuctionSniper careful = simulation.addSniper("careful", new Item("item-1", 2000, 1), snapshot -> {});
+
+        simulation.runUntilIdle(DAY_MILLIS);
+
+        assertEquals(SniperState.WON, bold.getSnapshot().state());
+        assertEquals(SniperState.LOST, careful.getSnapshot().state());
+        ItemSnapshot auction = simulation.auctionState("item-1");
+        assertTrue(auction.closed());
+        assertEquals("bold", auction.highBidder());
+        assertEquals(auction.currentPrice(), bold.getSnapshot().lastPrice());
+        // The auction closed at its deadline, a minute of virtual time, not after a minute of waiting
+        assertTrue(simulation.millis() >= 60_000, "Closed at " + simulation.millis());
+    }
+
+    @Test
+    public void sameSeedReproducesTheRun() {
+        assertEquals(transcript(42), transcript(42));
+        assertNotEquals(transcript(42), transcript(43));
+    }
+
+    @Test
+    public void deliversMessagesBetweenASniperAndItsAuctionInOrder() {
+        // Latencies wide enough that a later message would often overtake an earlier one
+        Simulation simulation = new Simulation(3, 0, 1_000);
+        simulation.openAuction("item-1", 1000, 10, 30_000, 1_000);
+        List<AuctionSniper> snipers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            snipers.add(simulation.addSniper("sniper-" + i, new Item("item-1", 2_000 + 100 * i, 1), snapshot -> {}));
+        }
+
+        simulation.runUntilIdle(DAY_MILLIS);
+
+        for (AuctionSniper sniper : snipers) {
+            assertTrue(sniper.getSnapshot().state().isFinished(), "Unfinished " + sniper.getSnapshot());
+        }
+        // A sniper only resyncs when it sees an event out of sequence
+        assertEquals(0, simulation.getResyncCount());
+    }
+
+    @Test
+    public void simulatesManyAuctionEventsQuickly() {
+        int items = 200;
+        int snipersPerItem = 10;
+        Simulation simulation = new Simulation(7, 1, 200);
+        List<AuctionSniper> snipers = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            String itemId = "item-" + i;
+            simulation.openAuction(itemId, 100, 100, 30_000 + simulation.random().nextInt(30_000), 2_000);
+            for (int j = 0; j < snipersPerItem; j++) {
+                Item item = new Item(itemId, 1_000 + simulation.random().nextInt(20_000), 1);
+                snipers.add(simulation.addSniper("sniper-" + j, item, snapshot -> {}));
+            }
+        }
+
+        long start = System.nanoTime();
+        simulation.runUntilIdle(DAY_MILLIS);
+        long elapsedNanos = System.nanoTime() - start;
+
+        for (AuctionSniper sniper : snipers) {
+            assertTrue(sniper.getSnapshot().state().isFinished(), "Unfinished " + sniper.getSnapshot());
+        }
+        long messages = simulation.getDeliveredMessageCount();
+        logger.log(Level.INFO, "Simulated {0} ms with {1} messages in {2} ms, {3} messages per second",
+                new Object[]{simulation.millis(), messages, elapsedNanos / 1_000_000,
+                        messages * 1_000_000_000L / Math.max(1, elapsedNanos)});
+        assertTrue(messages > (long) items * snipersPerItem * 2, "Only " + messages + " messages delivered");
+    }
+
+    private static List<String> transcript(long seed) {
+        List<String> transcript = new ArrayList<>();
+        Simulation simulation = new Simulation(seed, 1, 100);
+        simulation.openAuction("item-1", 1000, 10, 10_000, 1_000);
+        for (int i = 0; i < 5; i++) {
+            String bidder = "sniper-" + i;
+            simulation.addSniper(bidder, new Item("item-1", 1_500 + 100 * i, 1),
+                    snapshot -> transcript.add(simulation.millis() + " " + bidder + " " + snapshot));
+        }
+        simulation.runUntilIdle(DAY_MILLIS);
+        return transcript;
+    }
+}
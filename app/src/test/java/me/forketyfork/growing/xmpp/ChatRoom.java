@@ -0,0 +1,102 @@
+package me.forketyfork.growing.xmpp;
+
+/**
+ * A multi-user chat room. Membership changes are rare and copy the occupant array,
+ * while broadcasts iterate over the current snapshot without locking.
+ */
+public class ChatRoom {
+
+    private final String jid;
+    private final Object membershipLock = new Object();
+    private volatile Occupant[] occupants = new Occupant[0];
+
+    /**
+     * A room occupant together with its presence, encoded once when it joined.
+     */
+    public record Occupant(String nick, String fullJid, ClientSession session, EncodedStanza presence) {
+    }
+
+    public ChatRoom(String jid) {
+        this.jid = jid;
+    }
+
+    public String getJid() {
+        return jid;
+    }
+
+    /**
+     * Add an occupant to the room.
+     * @return false if the nickname is already taken by another client
+     */
+    public boolean join(Occupant occupant) {
+        synchronized (membershipLock) {
+            Occupant[] current = occupants;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].nick().equals(occupant.nick())) {
+                    if (!current[i].fullJid().equals(occupant.fullJid())) {
+                        return false;
+                    }
+                    // The same client re-joins with the same nickname, replace its entry
+                    Occupant[] updated = current.clone();
+                    updated[i] = occupant;
+                    occupants = updated;
+                    return true;
+                }
+            }
+            Occupant[] updated = new Occupant[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = occupant;
+            occupants = updated;
+            return true;
+        }
+    }
+
+    /**
+     * Remove the occupant with the given full JID.
+     * @return the removed occupant or null if the client wasn't in the room
+     */
+    public Occupant leave(String fullJid) {
+        synchronized (membershipLock) {
+            Occupant[] current = occupants;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].fullJid().equals(fullJid)) {
+                    Occupant removed = current[i];
+                    Occupant[] updated = new Occupant[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    occupants = updated;
+                    return removed;
+                }
+            }
+            return null;
+        }
+    }
+
+    public Occupant findByJid(String fullJid) {
+        for (Occupant occupant : occupants) {
+            if (occupant.fullJid().equals(fullJid)) {
+                return occupant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a snapshot of the current occupants; must not be modified
+     */
+    public Occupant[] getOccupants() {
+        return occupants;
+    }
+
+    /**
+     * Queue the same encoded stanza to every occupant.
+     * @return the number of occupants the stanza was queued for
+     */
+    public int broadcast(EncodedStanza stanza) {
+        Occupant[] current = occupants;
+        for (Occupant occupant : current) {
+            occupant.session().queueStanza(stanza);
+        }
+        return current.length;
+    }
+}
@@ -0,0 +1,12 @@
+package me.forketyfork.growing.xmpp;
+
+import java.net.Socket;
+
+/**
+ * Everything needed to keep serving a client connection: the socket, the XML input and output
+ * positioned inside the client's open stream, and the client context.
+ * Passed from one server instance to another during a session handoff.
+ */
+public record ClientConnection(Socket socket, ClientInput input, ClientOutput xmlWriter,
+                               ClientContext context) {
+}
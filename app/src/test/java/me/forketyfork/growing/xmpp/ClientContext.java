@@ -1,7 +1,9 @@
 package me.forketyfork.growing.xmpp;
 
 import javax.xml.stream.XMLStreamWriter;
-import java.util.Set;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -13,16 +15,28 @@ public class ClientContext {
     private String fullJid;
     private String bareJid;
     private final XMLStreamWriter xmlWriter;
+    private final OutputStream rawOutput;
     private final ConcurrentHashMap<String, ClientSession> clientRegistry;
-    private final Set<String> connectedUsernames;
+    // The sessions of each account by bare JID, in the order they were bound
+    private final ConcurrentHashMap<String, List<ClientSession>> accountSessions;
+    private RemoteRouter remoteRouter;
+    private Runnable wakeUp;
+    private ClientInput input;
 
     public ClientContext(ClientState initialState, XMLStreamWriter xmlWriter,
                          ConcurrentHashMap<String, ClientSession> clientRegistry,
-                         Set<String> connectedUsernames) {
+                         ConcurrentHashMap<String, List<ClientSession>> accountSessions) {
+        this(initialState, xmlWriter, null, clientRegistry, accountSessions);
+    }
+
+    public ClientContext(ClientState initialState, XMLStreamWriter xmlWriter, OutputStream rawOutput,
+                         ConcurrentHashMap<String, ClientSession> clientRegistry,
+                         ConcurrentHashMap<String, List<ClientSession>> accountSessions) {
         this.state = initialState;
         this.xmlWriter = xmlWriter;
+        this.rawOutput = rawOutput;
         this.clientRegistry = clientRegistry;
-        this.connectedUsernames = connectedUsernames;
+        this.accountSessions = accountSessions;
     }
 
     public ClientState getState() {
@@ -51,6 +65,8 @@ public class ClientContext {
         if (fullJid != null) {
             int resourceIndex = fullJid.indexOf('/');
             this.bareJid = resourceIndex >= 0 ? fullJid.substring(0, resourceIndex) : fullJid;
+        } else {
+            this.bareJid = null;
         }
     }
 
@@ -62,26 +78,120 @@ public class ClientContext {
         return xmlWriter;
     }
 
+    public OutputStream getRawOutput() {
+        return rawOutput;
+    }
+
     public ConcurrentHashMap<String, ClientSession> getClientRegistry() {
         return clientRegistry;
     }
 
-    public Set<String> getConnectedUsernames() {
-        return connectedUsernames;
+    public ConcurrentHashMap<String, List<ClientSession>> getAccountSessions() {
+        return accountSessions;
+    }
+
+    public RemoteRouter getRemoteRouter() {
+        return remoteRouter;
+    }
+
+    public void setRemoteRouter(RemoteRouter remoteRouter) {
+        this.remoteRouter = remoteRouter;
+    }
+
+    public Runnable getWakeUp() {
+        return wakeUp;
+    }
+
+    /**
+     * @param wakeUp interrupts the client's thread waiting for input, so it writes newly queued messages
+     */
+    public void setWakeUp(Runnable wakeUp) {
+        this.wakeUp = wakeUp;
+    }
+
+    ClientInput getInput() {
+        return input;
+    }
+
+    /**
+     * @param input the XML input of the client, which keeps the original bytes of its messages for forwarding
+     */
+    void setInput(ClientInput input) {
+        this.input = input;
     }
 
     /**
      * Register this client in the global registry once JID is assigned.
+     * An account may bind several resources; the first one bound gets the messages to the bare JID.
+     * @return false if another client is bound to the same full JID
      */
-    public void registerClient() {
+    public boolean registerClient() {
         if (fullJid != null && username != null) {
-            ClientSession session = new ClientSession(username, fullJid, bareJid, xmlWriter);
-            clientRegistry.put(fullJid, session);
-            // Also, register by bare JID for an easier lookup
-            clientRegistry.put(bareJid, session);
-            // Add username to the connected usernames set for efficient duplicate checking
-            connectedUsernames.add(username);
+            ClientSession session = new ClientSession(username, fullJid, bareJid, xmlWriter, rawOutput);
+            session.setWakeUp(wakeUp);
+            if (clientRegistry.putIfAbsent(fullJid, session) != null) {
+                return false;
+            }
+            addToAccount(clientRegistry, accountSessions, session);
+            if (remoteRouter != null) {
+                remoteRouter.sessionBound(fullJid);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove this client from the global registry. If it got the messages to the bare JID,
+     * the next session of the account gets them.
+     * @return true if this was the last session of the account
+     */
+    public boolean unregisterClient() {
+        ClientSession session = fullJid == null ? null : clientRegistry.get(fullJid);
+        if (session == null || !clientRegistry.remove(fullJid, session)) {
+            return false;
+        }
+        List<ClientSession> left = accountSessions.computeIfPresent(bareJid, (bare, sessions) -> {
+            sessions.remove(session);
+            if (clientRegistry.remove(bare, session) && !sessions.isEmpty()) {
+                clientRegistry.put(bare, sessions.get(0));
+            }
+            return sessions.isEmpty() ? null : sessions;
+        });
+        return left == null;
+    }
+
+    private static void addToAccount(ConcurrentHashMap<String, ClientSession> registry,
+                                     ConcurrentHashMap<String, List<ClientSession>> accountSessions,
+                                     ClientSession session) {
+        // The bare JID entry only changes while the account's sessions are computed
+        accountSessions.compute(session.getBareJid(), (bare, sessions) -> {
+            List<ClientSession> bound = sessions != null ? sessions : new ArrayList<>(1);
+            bound.add(session);
+            registry.putIfAbsent(bare, session);
+            return bound;
+        });
+    }
+
+    /**
+     * Move this client over to another server instance's registries.
+     * The client session, together with the messages queued for it, is carried over as-is.
+     * @return a context bound to the target registries, in the same state as this one
+     */
+    public ClientContext transferTo(ConcurrentHashMap<String, ClientSession> targetRegistry,
+                                    ConcurrentHashMap<String, List<ClientSession>> targetAccounts,
+                                    RemoteRouter targetRouter) {
+        ClientContext transferred = new ClientContext(state, xmlWriter, rawOutput, targetRegistry, targetAccounts);
+        transferred.setUsername(username);
+        transferred.setFullJid(fullJid);
+        transferred.setRemoteRouter(targetRouter);
+        transferred.setWakeUp(wakeUp);
+        transferred.setInput(input);
+        ClientSession session = fullJid == null ? null : clientRegistry.get(fullJid);
+        if (session != null) {
+            targetRegistry.put(fullJid, session);
+            addToAccount(targetRegistry, targetAccounts, session);
         }
+        return transferred;
     }
 
     /**
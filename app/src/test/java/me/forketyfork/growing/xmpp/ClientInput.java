@@ -0,0 +1,219 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The XML input of a client connection.
+ * <p>
+ * A parser holds tens of kilobytes, so it is released when the client has been idle between two stanzas
+ * for a while and created again when the client sends something. The new parser first reads a copy
+ * of the stream header, so it continues inside the open stream with the same namespaces.
+ * The parser is only released when none of its events is being handled, all open elements are the streams,
+ * and nothing but whitespace has arrived since the last stanza.
+ * <p>
+ * The original bytes of a message can be taken once the parser has read it to its end, see {@link StanzaFramer}.
+ * Both count the top-level elements other than the streams, and both take any element named {@code stream}
+ * for a stream, as the framer can't resolve namespaces.
+ */
+final class ClientInput {
+
+    private static final Logger logger = Logger.getLogger("ClientInput");
+
+    // Configured once, a factory is safe to share between the connections
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    private final ConnectionReader reader;
+    // Null while released
+    private XMLStreamReader xmlReader;
+    // Open elements, and how many of them are streams: a stream restart opens a stream in the first one
+    private int depth;
+    private int streamDepth;
+    // The start tag of the innermost stream with its namespaces, null before the client opened a stream
+    private String streamHeader;
+    private boolean handlingEvent;
+    // Set if a handler failed in the middle of an element, the depth is unknown from then on
+    private boolean depthLost;
+    private long lastEventMillis;
+    // The number of the latest top-level element other than a stream
+    private long stanzaOrdinal;
+
+    ClientInput(InputStream input) throws XMLStreamException {
+        this.reader = new ConnectionReader(input);
+        this.xmlReader = inputFactory.createXMLStreamReader(reader);
+    }
+
+    /**
+     * @return the parser, created again if it was released, after waiting for input
+     * @throws XMLStreamException caused by a {@link java.net.SocketTimeoutException} if no input arrived in time
+     */
+    XMLStreamReader xmlReader() throws XMLStreamException {
+        if (xmlReader == null) {
+            try {
+                if (!reader.awaitInput()) {
+                    throw new XMLStreamException("Connection closed");
+                }
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to read from client", e);
+            }
+            reader.replay(streamHeader);
+            xmlReader = inputFactory.createXMLStreamReader(reader);
+            // Skip the copy of the stream header, the client's input follows
+            while (xmlReader.next() != XMLStreamConstants.START_ELEMENT) {
+                // Nothing before the start tag
+            }
+            depth = 1;
+            streamDepth = 1;
+            logger.log(Level.FINE, "Parser created again for new input");
+        }
+        return xmlReader;
+    }
+
+    /**
+     * Called before the event the parser has just returned is handled.
+     */
+    void handlingEvent(int event) {
+        if (handlingEvent) {
+            // The handler of the previous event failed, maybe inside a stanza
+            depthLost = true;
+        }
+        handlingEvent = true;
+        if (event == XMLStreamConstants.START_ELEMENT && depth == streamDepth && !isStream(xmlReader)) {
+            stanzaOrdinal++;
+        }
+    }
+
+    /**
+     * @return true if the original bytes of the top-level element being handled are kept
+     */
+    boolean keepsRawStanza() {
+        // Once the depth is lost, the elements may be counted differently
+        return !depthLost && reader.framer().keeps(stanzaOrdinal);
+    }
+
+    /**
+     * @return the original bytes of the top-level element being handled, once the parser has read it to its end;
+     * null if they weren't kept
+     */
+    StanzaFramer.RawStanza takeRawStanza() {
+        return reader.framer().take(stanzaOrdinal);
+    }
+
+    /**
+     * Called after the event has been handled, with the parser at the end of whatever the handler read.
+     */
+    void eventHandled(int event) {
+        handlingEvent = false;
+        lastEventMillis = System.currentTimeMillis();
+        if (event == XMLStreamConstants.START_ELEMENT && xmlReader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            // Not read to its end by a handler: a stream, or an element the server ignores
+            if (depth == streamDepth && isStream(xmlReader)) {
+                streamDepth = depth + 1;
+                streamHeader = streamHeader(xmlReader);
+            }
+            depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+            streamDepth = Math.min(streamDepth, depth);
+        }
+        if (depth == streamDepth) {
+            // Nobody wants the bytes of a stanza after it was handled
+            reader.framer().discardBefore(stanzaOrdinal + 1);
+        }
+    }
+
+    private static boolean isStream(XMLStreamReader xmlReader) {
+        return "stream".equals(xmlReader.getLocalName());
+    }
+
+    /**
+     * Release the parser if the client has been idle between stanzas for at least the given time.
+     *
+     * @return true if the parser was released
+     */
+    boolean releaseIfIdle(long idleMillis) {
+        if (xmlReader == null || streamHeader == null || handlingEvent || depthLost || depth != streamDepth
+                || reader.hasTextAfterTag() || System.currentTimeMillis() - lastEventMillis < idleMillis) {
+            return false;
+        }
+        closeParser();
+        return true;
+    }
+
+    /**
+     * Close the parser, the socket is closed separately.
+     */
+    void close() {
+        if (xmlReader != null) {
+            closeParser();
+        }
+    }
+
+    private void closeParser() {
+        try {
+            xmlReader.close();
+        } catch (XMLStreamException e) {
+            logger.log(Level.FINE, "Error closing XML reader", e);
+        }
+        xmlReader = null;
+    }
+
+    private static String streamHeader(XMLStreamReader xmlReader) {
+        StringBuilder header = new StringBuilder("<");
+        String prefix = xmlReader.getPrefix();
+        boolean prefixDeclared = prefix == null || prefix.isEmpty();
+        boolean defaultDeclared = false;
+        if (!prefixDeclared) {
+            header.append(prefix).append(':');
+        }
+        header.append(xmlReader.getLocalName());
+        for (int i = 0; i < xmlReader.getNamespaceCount(); i++) {
+            String declared = xmlReader.getNamespacePrefix(i);
+            if (declared == null || declared.isEmpty()) {
+                defaultDeclared = true;
+                appendNamespace(header, null, xmlReader.getNamespaceURI(i));
+            } else {
+                prefixDeclared |= declared.equals(prefix);
+                appendNamespace(header, declared, xmlReader.getNamespaceURI(i));
+            }
+        }
+        // Declared on an outer stream
+        NamespaceContext namespaces = xmlReader.getNamespaceContext();
+        if (!prefixDeclared) {
+            appendNamespace(header, prefix, xmlReader.getNamespaceURI());
+        }
+        String defaultNamespace = namespaces.getNamespaceURI("");
+        if (!defaultDeclared && defaultNamespace != null && !defaultNamespace.isEmpty()) {
+            appendNamespace(header, null, defaultNamespace);
+        }
+        return header.append('>').toString();
+    }
+
+    private static void appendNamespace(StringBuilder header, String prefix, String uri) {
+        header.append(prefix == null ? " xmlns" : " xmlns:" + prefix).append("='");
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            switch (c) {
+                case '&' -> header.append("&amp;");
+                case '<' -> header.append("&lt;");
+                case '\'' -> header.append("&apos;");
+                default -> header.append(c);
+            }
+        }
+        header.append('\'');
+    }
+}
@@ -0,0 +1,362 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The XML output of a client connection, an {@link XMLStreamWriter} for the handlers.
+ * <p>
+ * A writer holds a couple of kilobytes of symbol table and element stack, so it is released when nothing
+ * has been written to the client for a while and created again by the next write. The new writer gets the namespaces
+ * declared on the open streams, and the end tags of the streams the released writer started are written by hand.
+ * The writer is only released when all open elements are the streams and everything written has been flushed.
+ * A flush finishes the tag of an empty element, which the writer would otherwise keep open for attributes
+ * until the next write. Used by the connection's thread only.
+ */
+final class ClientOutput implements XMLStreamWriter {
+
+    private static final Logger logger = Logger.getLogger("ClientOutput");
+
+    // Configured once, a factory is safe to share between the connections
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private final ConnectionWriter writer;
+    // Null while released
+    private XMLStreamWriter xmlWriter;
+    // Open elements, how many of them are streams, and how many were started by released writers
+    private int depth;
+    private int streamDepth;
+    private int releasedDepth;
+    private String streamPrefix;
+    // Prefix and namespace pairs declared on the streams, the empty prefix for the default namespace
+    private final List<String> streamNamespaces = new ArrayList<>(4);
+    // The start tag of the innermost open element, or the tag of an empty element, can still get attributes
+    private boolean startTagOpen;
+    private boolean emptyTagOpen;
+    private boolean flushed = true;
+    private long lastFlushMillis;
+
+    ClientOutput(OutputStream output) throws XMLStreamException {
+        this.writer = new ConnectionWriter(output);
+        this.xmlWriter = outputFactory.createXMLStreamWriter(writer);
+    }
+
+    private XMLStreamWriter xmlWriter() throws XMLStreamException {
+        if (xmlWriter == null) {
+            xmlWriter = outputFactory.createXMLStreamWriter(writer);
+            for (int i = 0; i < streamNamespaces.size(); i += 2) {
+                String prefix = streamNamespaces.get(i);
+                if (prefix.isEmpty()) {
+                    xmlWriter.setDefaultNamespace(streamNamespaces.get(i + 1));
+                } else {
+                    xmlWriter.setPrefix(prefix, streamNamespaces.get(i + 1));
+                }
+            }
+            logger.log(Level.FINE, "Writer created again for new output");
+        }
+        flushed = false;
+        return xmlWriter;
+    }
+
+    /**
+     * Release the writer if nothing has been written to the client for at least the given time.
+     *
+     * @return true if the writer was released
+     */
+    boolean releaseIfIdle(long idleMillis) {
+        if (xmlWriter == null || !flushed || startTagOpen || emptyTagOpen || depth != streamDepth
+                || System.currentTimeMillis() - lastFlushMillis < idleMillis) {
+            return false;
+        }
+        xmlWriter = null;
+        releasedDepth = depth;
+        return true;
+    }
+
+    private void started(String prefix, String localName, String namespaceURI) {
+        if (depth == streamDepth && "stream".equals(localName) && XmppServerConfig.NAMESPACE_STREAM.equals(namespaceURI)) {
+            streamDepth = depth + 1;
+            streamPrefix = prefix;
+        }
+        depth++;
+        startTagOpen = true;
+        emptyTagOpen = false;
+    }
+
+    private void startedEmpty() {
+        startTagOpen = false;
+        emptyTagOpen = true;
+    }
+
+    private void tagsClosed() {
+        startTagOpen = false;
+        emptyTagOpen = false;
+    }
+
+    private void declared(String prefix, String namespaceURI) {
+        if (startTagOpen && depth == streamDepth) {
+            streamNamespaces.add(prefix);
+            streamNamespaces.add(namespaceURI);
+        }
+    }
+
+    /**
+     * Write the end tag of a stream started by a released writer, after whatever the current writer holds.
+     */
+    private void writeReleasedEndTag() throws XMLStreamException {
+        if (xmlWriter != null) {
+            xmlWriter.flush();
+        }
+        try {
+            writer.write(streamPrefix == null || streamPrefix.isEmpty()
+                    ? "</stream>" : "</" + streamPrefix + ":stream>");
+        } catch (IOException e) {
+            throw new XMLStreamException("Failed to write to client", e);
+        }
+        flushed = false;
+        releasedDepth--;
+        depth--;
+        streamDepth = Math.min(streamDepth, depth);
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        xmlWriter().writeStartElement(localName);
+        started(null, localName, null);
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        XMLStreamWriter current = xmlWriter();
+        current.writeStartElement(namespaceURI, localName);
+        started(current.getPrefix(namespaceURI), localName, namespaceURI);
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        xmlWriter().writeStartElement(prefix, localName, namespaceURI);
+        started(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        xmlWriter().writeEmptyElement(namespaceURI, localName);
+        startedEmpty();
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        xmlWriter().writeEmptyElement(prefix, localName, namespaceURI);
+        startedEmpty();
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        xmlWriter().writeEmptyElement(localName);
+        startedEmpty();
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        if (depth > releasedDepth) {
+            xmlWriter().writeEndElement();
+            depth--;
+            streamDepth = Math.min(streamDepth, depth);
+        } else if (releasedDepth > 0) {
+            closeStartTag();
+            writeReleasedEndTag();
+        } else {
+            // Let the writer report the error
+            xmlWriter().writeEndElement();
+        }
+        tagsClosed();
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        if (xmlWriter != null) {
+            // Closes the elements the current writer started
+            xmlWriter.writeEndDocument();
+            flushed = false;
+            depth = releasedDepth;
+        }
+        tagsClosed();
+        while (releasedDepth > 0) {
+            writeReleasedEndTag();
+        }
+        streamDepth = 0;
+    }
+
+    private void closeStartTag() throws XMLStreamException {
+        if ((startTagOpen || emptyTagOpen) && xmlWriter != null) {
+            xmlWriter.writeCharacters("");
+        }
+        tagsClosed();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        if (xmlWriter != null) {
+            xmlWriter.close();
+            xmlWriter = null;
+        }
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+        if (emptyTagOpen) {
+            closeStartTag();
+        }
+        if (xmlWriter != null) {
+            xmlWriter.flush();
+        } else {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to write to client", e);
+            }
+        }
+        flushed = true;
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        xmlWriter().writeAttribute(localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+            throws XMLStreamException {
+        xmlWriter().writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        xmlWriter().writeAttribute(namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        xmlWriter().writeNamespace(prefix, namespaceURI);
+        if (prefix == null || prefix.isEmpty() || "xmlns".equals(prefix)) {
+            declared("", namespaceURI);
+        } else {
+            declared(prefix, namespaceURI);
+        }
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        xmlWriter().writeDefaultNamespace(namespaceURI);
+        declared("", namespaceURI);
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        xmlWriter().writeComment(data);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        xmlWriter().writeProcessingInstruction(target);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        xmlWriter().writeProcessingInstruction(target, data);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        xmlWriter().writeCData(data);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        xmlWriter().writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        xmlWriter().writeEntityRef(name);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        xmlWriter().writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        xmlWriter().writeStartDocument(version);
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        xmlWriter().writeStartDocument(encoding, version);
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        xmlWriter().writeCharacters(text);
+        tagsClosed();
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        xmlWriter().writeCharacters(text, start, len);
+        tagsClosed();
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        return xmlWriter().getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        xmlWriter().setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        xmlWriter().setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        xmlWriter().setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        try {
+            return xmlWriter().getNamespaceContext();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to create XML writer", e);
+        }
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        try {
+            return xmlWriter().getProperty(name);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to create XML writer", e);
+        }
+    }
+}
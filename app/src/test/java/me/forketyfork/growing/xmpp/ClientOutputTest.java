@@ -0,0 +1,55 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClientOutputTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private ClientOutput output;
+
+    @BeforeEach
+    public void setUp() throws XMLStreamException {
+        output = new ClientOutput(out);
+        output.writeStartElement("stream", "stream", XmppServerConfig.NAMESPACE_STREAM);
+        output.writeNamespace("stream", XmppServerConfig.NAMESPACE_STREAM);
+        output.writeDefaultNamespace(XmppServerConfig.NAMESPACE_CLIENT);
+        output.writeCharacters("");
+        output.flush();
+    }
+
+    private String written() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void finishesAnEmptyElementOnFlushAndReleasesTheWriter() throws XMLStreamException {
+        output.writeEmptyElement("iq");
+        output.writeAttribute("type", "result");
+        output.flush();
+
+        assertTrue(written().endsWith("<iq type=\"result\"/>"), written());
+        assertTrue(output.releaseIfIdle(0), "Writer kept after the empty element was flushed");
+    }
+
+    @Test
+    public void keepsOnlyTheNamespacesDeclaredOnTheStream() throws XMLStreamException {
+        output.writeEmptyElement("bind");
+        output.writeDefaultNamespace(XmppServerConfig.NAMESPACE_BIND);
+        output.flush();
+        assertTrue(output.releaseIfIdle(0), "Writer kept after the empty element was flushed");
+
+        // The new writer gets the default namespace of the stream, not the one of the empty element
+        output.writeStartElement(XmppServerConfig.NAMESPACE_CLIENT, "message");
+        output.writeEndElement();
+        output.flush();
+
+        assertTrue(written().endsWith("<message></message>"), written());
+    }
+}
@@ -2,8 +2,11 @@ package me.forketyfork.growing.xmpp;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,13 +22,29 @@ public class ClientSession {
     private final String fullJid;
     private final String bareJid;
     private final XMLStreamWriter xmlWriter;
-    private final BlockingQueue<PendingMessage> messageQueue = new LinkedBlockingQueue<>();
+    private final OutputStream rawOutput;
+    // Lock-free, an empty one is a single node
+    private final ConcurrentLinkedQueue<Object> messageQueue = new ConcurrentLinkedQueue<>();
+    // Lock-free stack of subscriptions with a notification to deliver, linked through the subscriptions themselves
+    private final AtomicReference<PubSubSubscription> pendingNotifications = new AtomicReference<>();
+    // Wakes the client's thread when it waits for input, null if the thread only checks the queue on socket timeouts
+    private volatile Runnable wakeUp;
 
     public ClientSession(String username, String fullJid, String bareJid, XMLStreamWriter xmlWriter) {
+        this(username, fullJid, bareJid, xmlWriter, null);
+    }
+
+    /**
+     * @param rawOutput the stream underneath {@code xmlWriter}, used to deliver pre-encoded stanzas;
+     *                  if null, pre-encoded stanzas are dropped with a warning
+     */
+    public ClientSession(String username, String fullJid, String bareJid, XMLStreamWriter xmlWriter,
+                         OutputStream rawOutput) {
         this.username = username;
         this.fullJid = fullJid;
         this.bareJid = bareJid;
         this.xmlWriter = xmlWriter;
+        this.rawOutput = rawOutput;
     }
 
     public String getUsername() {
@@ -40,29 +59,87 @@ public class ClientSession {
         return bareJid;
     }
 
+    void setWakeUp(Runnable wakeUp) {
+        this.wakeUp = wakeUp;
+    }
+
     /**
      * Queue a message for delivery to this client.
      * This method is thread-safe and can be called from any thread.
      */
     public void queueMessage(String from, String to, String body) {
-        PendingMessage message = new PendingMessage(from, to, body);
+        queueMessage(from, to, body, List.of());
+    }
+
+    /**
+     * Queue a message with extension elements for delivery to this client.
+     * A null body is left out, unless the message has no extension elements either.
+     * This method is thread-safe and can be called from any thread.
+     */
+    public void queueMessage(String from, String to, String body, List<MessagePayload> payloads) {
+        PendingMessage message = new PendingMessage(from, to, body, payloads);
         messageQueue.offer(message);
+        wakeUp();
         logger.log(Level.INFO, "QUEUE: Message queued for client {0}: from={1}, to={2}, body={3}",
                 new Object[]{fullJid, from, to, body});
     }
 
+    /**
+     * Queue a pre-encoded stanza for delivery to this client.
+     * The same {@link EncodedStanza} instance may be queued to many sessions at once.
+     * This method is thread-safe and can be called from any thread.
+     */
+    public void queueStanza(EncodedStanza stanza) {
+        messageQueue.offer(stanza);
+        wakeUp();
+        logger.log(Level.FINE, "QUEUE: Encoded stanza of {0} bytes queued for client {1}",
+                new Object[]{stanza.length(), fullJid});
+    }
+
+    /**
+     * @return true if this client can be sent pre-encoded stanzas
+     */
+    boolean hasRawOutput() {
+        return rawOutput != null;
+    }
+
+    /**
+     * Schedule delivery of the latest notification of a subscribed node.
+     * This method is thread-safe, allocation-free and can be called from any thread.
+     */
+    void scheduleNotification(PubSubSubscription subscription) {
+        PubSubSubscription head;
+        do {
+            head = pendingNotifications.get();
+            subscription.nextPending = head;
+        } while (!pendingNotifications.compareAndSet(head, subscription));
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        Runnable current = wakeUp;
+        if (current != null) {
+            current.run();
+        }
+    }
+
     /**
      * Process all pending messages in the queue and write them to the XML stream.
      * This method must ONLY be called from the client's own thread to maintain
      * XMLStreamWriter thread safety.
      */
     public synchronized void processPendingMessages() throws XMLStreamException {
-        int messageCount = messageQueue.size();
-        if (messageCount > 0) {
-            logger.log(Level.INFO, "PROCESSING: Starting to process {0} pending messages for client {1}", new Object[]{messageCount, fullJid});
+        processPendingNotifications();
+        if (!messageQueue.isEmpty()) {
+            logger.log(Level.INFO, "PROCESSING: Starting to process pending messages for client {0}", fullJid);
         }
-        PendingMessage message;
-        while ((message = messageQueue.poll()) != null) {
+        Object pending;
+        while ((pending = messageQueue.poll()) != null) {
+            if (pending instanceof EncodedStanza stanza) {
+                writeEncodedStanza(stanza);
+                continue;
+            }
+            PendingMessage message = (PendingMessage) pending;
             logger.log(Level.INFO, "XML: Writing message stanza to client {0} from thread {1}: from={2}, to={3}, body={4}",
                     new Object[]{fullJid, Thread.currentThread().getName(), message.from, message.to, message.body});
 
@@ -75,12 +152,17 @@ public class ClientSession {
             }
             xmlWriter.writeAttribute("type", "chat");
 
-            // Always include a body element, even for empty messages
-            xmlWriter.writeStartElement("jabber:client", "body");
-            if (message.body != null) {
-                xmlWriter.writeCharacters(message.body);
+            // Always include a body element, even for empty messages, unless the extension elements replace it
+            if (message.body != null || message.payloads.isEmpty()) {
+                xmlWriter.writeStartElement("jabber:client", "body");
+                if (message.body != null) {
+                    xmlWriter.writeCharacters(message.body);
+                }
+                xmlWriter.writeEndElement(); // body
+            }
+            for (MessagePayload payload : message.payloads) {
+                payload.writeTo(xmlWriter);
             }
-            xmlWriter.writeEndElement(); // body
 
             xmlWriter.writeEndElement(); // message
             xmlWriter.flush();
@@ -89,11 +171,43 @@ public class ClientSession {
         }
     }
 
+    private void processPendingNotifications() throws XMLStreamException {
+        PubSubSubscription subscription = pendingNotifications.getAndSet(null);
+        while (subscription != null) {
+            PubSubSubscription next = subscription.nextPending;
+            subscription.nextPending = null;
+            subscription.clearPending();
+            EncodedStanza notification = subscription.getNode().getLastNotification();
+            // A publish racing with clearPending() may schedule the same notification twice
+            if (notification != null && notification != subscription.lastDelivered && !subscription.isCancelled()) {
+                subscription.lastDelivered = notification;
+                writeEncodedStanza(notification);
+            }
+            subscription = next;
+        }
+    }
+
+    private void writeEncodedStanza(EncodedStanza stanza) throws XMLStreamException {
+        if (rawOutput == null) {
+            logger.log(Level.WARNING, "Client {0} has no raw output, dropping encoded stanza", fullJid);
+            return;
+        }
+        // Flush whatever the XML writer has buffered so that the stanzas stay in queue order
+        xmlWriter.flush();
+        try {
+            stanza.writeTo(rawOutput);
+            rawOutput.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException("Failed to write encoded stanza to client " + fullJid, e);
+        }
+        logger.log(Level.FINE, "XML: Encoded stanza written and flushed to client {0}", fullJid);
+    }
+
     /**
      * Check if there are pending messages to be processed.
      */
     public boolean hasPendingMessages() {
-        return !messageQueue.isEmpty();
+        return !messageQueue.isEmpty() || pendingNotifications.get() != null;
     }
 
     /**
@@ -111,11 +225,13 @@ public class ClientSession {
         final String from;
         final String to;
         final String body;
+        final List<MessagePayload> payloads;
 
-        PendingMessage(String from, String to, String body) {
+        PendingMessage(String from, String to, String body, List<MessagePayload> payloads) {
             this.from = from;
             this.to = to;
             this.body = body;
+            this.payloads = payloads;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A TCP link between two cluster nodes carrying small binary frames.
+ * Writes are synchronized so that any client thread can send over the link,
+ * reads happen on a dedicated thread owned by {@link ClusterNode}.
+ */
+public class ClusterLink implements Closeable {
+
+    static final byte HELLO = 1;
+    static final byte MEMBERS = 2;
+    static final byte ANNOUNCE = 3;
+    static final byte WITHDRAW = 4;
+    static final byte ROUTE = 5;
+    static final byte BYE = 6;
+
+    // Largest message body a ROUTE frame carries, in UTF-8 bytes
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final String initiatorId;
+    private volatile String peerId;
+    private volatile boolean closed;
+
+    /**
+     * @param initiatorId id of the node that opened the connection, used to break ties between duplicate links
+     */
+    public ClusterLink(Socket socket, String initiatorId) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.initiatorId = initiatorId;
+    }
+
+    public String getInitiatorId() {
+        return initiatorId;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    void setPeerId(String peerId) {
+        this.peerId = peerId;
+    }
+
+    DataInputStream input() {
+        return in;
+    }
+
+    public synchronized void sendHello(String nodeId, String host, int clusterPort) throws IOException {
+        out.writeByte(HELLO);
+        out.writeUTF(nodeId);
+        out.writeUTF(host);
+        out.writeInt(clusterPort);
+        out.flush();
+    }
+
+    public synchronized void sendMembers(Map<String, NodeAddress> members) throws IOException {
+        out.writeByte(MEMBERS);
+        out.writeInt(members.size());
+        for (var entry : members.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue().host());
+            out.writeInt(entry.getValue().port());
+        }
+        out.flush();
+    }
+
+    public synchronized void sendAnnounce(byte type, String bareJid, String hostNodeId) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(bareJid);
+        out.writeUTF(hostNodeId);
+        out.flush();
+    }
+
+    /**
+     * Send a message to the peer. The frame is encoded before anything is written, so a message that can't be sent
+     * leaves the link as it was.
+     *
+     * @throws IOException if the body is larger than {@link #MAX_BODY_BYTES} or the link failed
+     */
+    public void sendRoute(String from, String to, String body, int hops) throws IOException {
+        byte[] bodyBytes = (body == null ? "" : body).getBytes(StandardCharsets.UTF_8);
+        if (bodyBytes.length > MAX_BODY_BYTES) {
+            throw new IOException("Message body of " + bodyBytes.length + " bytes is larger than "
+                    + MAX_BODY_BYTES + " bytes");
+        }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(bodyBytes.length + 64);
+        DataOutputStream frameOut = new DataOutputStream(frame);
+        frameOut.writeByte(ROUTE);
+        frameOut.writeUTF(from);
+        frameOut.writeUTF(to);
+        frameOut.writeInt(bodyBytes.length);
+        frameOut.write(bodyBytes);
+        frameOut.writeByte(hops);
+        synchronized (this) {
+            frame.writeTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Read the body of a ROUTE frame as written by {@link #sendRoute}.
+     */
+    static String readRouteBody(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_BODY_BYTES) {
+            throw new IOException("Invalid message body length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public synchronized void sendBye() throws IOException {
+        out.writeByte(BYE);
+        out.flush();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing else to release
+        }
+    }
+
+    /**
+     * Address of a cluster node's link listener.
+     */
+    public record NodeAddress(String host, int port) {
+    }
+}
@@ -0,0 +1,62 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the frames of a {@link ClusterLink}, read on the other end of a loopback connection.
+ */
+public class ClusterLinkTest {
+
+    private ClusterLink sender;
+    private ClusterLink receiver;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            sender = new ClusterLink(new Socket(listener.getInetAddress(), listener.getLocalPort()), "sender");
+            Socket accepted = listener.accept();
+            accepted.setSoTimeout(10_000);
+            receiver = new ClusterLink(accepted, "sender");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void rejectsAnOversizedBodyWithoutBreakingTheLink() throws IOException {
+        String oversized = "\u00e9".repeat(ClusterLink.MAX_BODY_BYTES / 2 + 1);
+        assertThrows(IOException.class, () -> sender.sendRoute("a@localhost/res", "b@localhost/res", oversized, 1));
+
+        // A body too large for writeUTF() still fits a frame
+        String large = "x".repeat(100_000);
+        sender.sendRoute("a@localhost/res", "b@localhost/res", large, 1);
+        sender.sendRoute("a@localhost/res", "b@localhost/res", "next", 2);
+
+        DataInputStream in = receiver.input();
+        assertEquals(ClusterLink.ROUTE, in.readByte());
+        assertEquals("a@localhost/res", in.readUTF());
+        assertEquals("b@localhost/res", in.readUTF());
+        assertEquals(large, ClusterLink.readRouteBody(in));
+        assertEquals(1, in.readByte());
+        assertEquals(ClusterLink.ROUTE, in.readByte());
+        assertEquals("a@localhost/res", in.readUTF());
+        assertEquals("b@localhost/res", in.readUTF());
+        assertEquals("next", ClusterLink.readRouteBody(in));
+        assertEquals(2, in.readByte());
+    }
+}
@@ -0,0 +1,351 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link SimpleXmppServer} that forms a cluster with other instances over local TCP links.
+ * <p>
+ * Every bare JID is owned by one node, chosen by consistent hashing. The owner keeps a directory
+ * entry pointing at the node the client is actually connected to. A message for a client that
+ * isn't connected locally goes to the owner, which delivers it or forwards it to the hosting node.
+ * The entry names one node per bare JID, so the resources of an account are reachable when they are bound
+ * to the same node; otherwise the node that announced last gets the messages from other nodes.
+ * When nodes join or leave, each node re-announces its local clients to their new owners,
+ * so sessions stay reachable without reconnecting.
+ */
+public class ClusterNode implements RemoteRouter {
+
+    private static final Logger logger = Logger.getLogger("ClusterNode");
+
+    // A message is forwarded at most to the owner and then to the hosting node, plus one retry during rebalancing
+    private static final int MAX_HOPS = 3;
+    private static final String SERVER_SENDER = "server";
+
+    private final String nodeId;
+    private final String host;
+    private final int clusterPort;
+    private final SimpleXmppServer server;
+
+    private final Object membershipLock = new Object();
+    private volatile ConsistentHashRing ring;
+    private final ConcurrentHashMap<String, ClusterLink> links = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ClusterLink.NodeAddress> peerAddresses = new ConcurrentHashMap<>();
+    // Bare JID -> id of the node hosting the session, for the bare JIDs owned by this node
+    private final ConcurrentHashMap<String, String> directory = new ConcurrentHashMap<>();
+
+    private ServerSocket clusterSocket;
+    private volatile boolean running;
+    private final ExecutorService linkThreads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ClusterNode-Link");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ClusterNode(String nodeId, XmppServerConfig config, int clusterPort) {
+        this.nodeId = nodeId;
+        this.host = "localhost";
+        this.clusterPort = clusterPort;
+        this.server = new SimpleXmppServer(config);
+        this.ring = new ConsistentHashRing(List.of(nodeId));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    public SimpleXmppServer getServer() {
+        return server;
+    }
+
+    /**
+     * @return ids of all nodes this node currently considers cluster members, including itself
+     */
+    public Set<String> getMembers() {
+        return ring.getNodeIds();
+    }
+
+    public String ownerOf(String bareJid) {
+        return ring.ownerOf(bareJid);
+    }
+
+    public void start() throws IOException {
+        server.setRemoteRouter(this);
+        server.start();
+        clusterSocket = new ServerSocket(clusterPort);
+        running = true;
+        linkThreads.submit(() -> {
+            while (running) {
+                try {
+                    Socket socket = clusterSocket.accept();
+                    linkThreads.submit(() -> acceptLink(socket));
+                } catch (IOException e) {
+                    if (running) {
+                        logger.log(Level.WARNING, "IOException while accepting cluster link", e);
+                    }
+                }
+            }
+        });
+        logger.log(Level.INFO, "CLUSTER: Node {0} listening for peers on port {1}", new Object[]{nodeId, clusterPort});
+    }
+
+    /**
+     * Join the cluster the seed node belongs to. The seed shares its member list,
+     * and this node then links to every other member.
+     */
+    public void join(String seedHost, int seedClusterPort) throws IOException {
+        connect(new ClusterLink.NodeAddress(seedHost, seedClusterPort));
+    }
+
+    /**
+     * Leave the cluster and stop the local server. Peers rebalance the JIDs owned by this node.
+     */
+    public void leave() {
+        // Stopping the server first lets the owners of the local JIDs drop their directory entries
+        server.stop();
+        running = false;
+        for (ClusterLink link : links.values()) {
+            try {
+                link.sendBye();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Failed to say goodbye to " + link.getPeerId(), e);
+            }
+            link.close();
+        }
+        links.clear();
+        try {
+            if (clusterSocket != null) clusterSocket.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "IOException occurred on closing the cluster socket", e);
+        }
+        linkThreads.shutdownNow();
+        logger.log(Level.INFO, "CLUSTER: Node {0} left the cluster", nodeId);
+    }
+
+    @Override
+    public void sessionBound(String fullJid) {
+        announce(ClusterLink.ANNOUNCE, bareJid(fullJid));
+    }
+
+    @Override
+    public void sessionClosed(String fullJid) {
+        announce(ClusterLink.WITHDRAW, bareJid(fullJid));
+    }
+
+    @Override
+    public boolean routeMessage(String from, String to, String body) {
+        return forward(from, to, body, 0);
+    }
+
+    private void connect(ClusterLink.NodeAddress address) throws IOException {
+        Socket socket = new Socket(address.host(), address.port());
+        ClusterLink link = new ClusterLink(socket, nodeId);
+        link.sendHello(nodeId, host, clusterPort);
+        linkThreads.submit(() -> runLink(link));
+    }
+
+    private void acceptLink(Socket socket) {
+        try {
+            ClusterLink link = new ClusterLink(socket, null);
+            link.sendHello(nodeId, host, clusterPort);
+            runLink(link);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to set up cluster link", e);
+        }
+    }
+
+    private void runLink(ClusterLink link) {
+        DataInputStream in = link.input();
+        try {
+            while (running) {
+                byte type = in.readByte();
+                switch (type) {
+                    case ClusterLink.HELLO -> {
+                        String peerId = in.readUTF();
+                        ClusterLink.NodeAddress address = new ClusterLink.NodeAddress(in.readUTF(), in.readInt());
+                        registerLink(link, peerId, address);
+                    }
+                    case ClusterLink.MEMBERS -> {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            String memberId = in.readUTF();
+                            ClusterLink.NodeAddress address = new ClusterLink.NodeAddress(in.readUTF(), in.readInt());
+                            if (!memberId.equals(nodeId) && !links.containsKey(memberId)) {
+                                connect(address);
+                            }
+                        }
+                    }
+                    case ClusterLink.ANNOUNCE -> directory.put(in.readUTF(), in.readUTF());
+                    case ClusterLink.WITHDRAW -> directory.remove(in.readUTF(), in.readUTF());
+                    case ClusterLink.ROUTE -> {
+                        String from = in.readUTF();
+                        String to = in.readUTF();
+                        String body = ClusterLink.readRouteBody(in);
+                        int hops = in.readByte();
+                        if (!forward(from, to, body, hops)) {
+                            bounce(from, to);
+                        }
+                    }
+                    case ClusterLink.BYE -> {
+                        return;
+                    }
+                    default -> throw new IOException("Unknown cluster frame type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            logger.log(Level.FINE, "Cluster link to {0} closed", link.getPeerId());
+        } catch (IOException e) {
+            if (running && !link.isClosed()) {
+                logger.log(Level.WARNING, "Cluster link to " + link.getPeerId() + " failed", e);
+            }
+        } finally {
+            link.close();
+            unregisterLink(link);
+        }
+    }
+
+    private void registerLink(ClusterLink link, String peerId, ClusterLink.NodeAddress address) throws IOException {
+        link.setPeerId(peerId);
+        synchronized (membershipLock) {
+            ClusterLink existing = links.get(peerId);
+            if (existing != null) {
+                // Both nodes connected to each other at once, both keep the link opened by the smaller node id
+                String keptInitiator = nodeId.compareTo(peerId) < 0 ? nodeId : peerId;
+                if (keptInitiator.equals(initiatorOf(existing, peerId))) {
+                    link.close();
+                    return;
+                }
+                links.put(peerId, link);
+                existing.close();
+                return;
+            }
+            links.put(peerId, link);
+            peerAddresses.put(peerId, address);
+            ring = ring.with(peerId);
+            logger.log(Level.INFO, "CLUSTER: Node {0} linked to {1}, members: {2}",
+                    new Object[]{nodeId, peerId, ring.getNodeIds()});
+            link.sendMembers(new HashMap<>(peerAddresses));
+            rebalance();
+        }
+    }
+
+    private void unregisterLink(ClusterLink link) {
+        String peerId = link.getPeerId();
+        if (peerId == null) {
+            return;
+        }
+        synchronized (membershipLock) {
+            if (!links.remove(peerId, link)) {
+                return;
+            }
+            peerAddresses.remove(peerId);
+            ring = ring.without(peerId);
+            directory.values().removeIf(peerId::equals);
+            logger.log(Level.INFO, "CLUSTER: Node {0} lost {1}, members: {2}",
+                    new Object[]{nodeId, peerId, ring.getNodeIds()});
+            if (running) {
+                rebalance();
+            }
+        }
+    }
+
+    private String initiatorOf(ClusterLink link, String peerId) {
+        return link.getInitiatorId() != null ? link.getInitiatorId() : peerId;
+    }
+
+    /**
+     * Drop directory entries this node no longer owns and announce local clients to their current owners.
+     */
+    private void rebalance() {
+        ConsistentHashRing current = ring;
+        directory.keySet().removeIf(bareJid -> !nodeId.equals(current.ownerOf(bareJid)));
+        Set<String> localJids = server.getLocalFullJids();
+        for (String fullJid : localJids) {
+            announce(ClusterLink.ANNOUNCE, bareJid(fullJid));
+        }
+        logger.log(Level.FINE, "CLUSTER: Node {0} re-announced {1} local sessions", new Object[]{nodeId, localJids.size()});
+    }
+
+    private void announce(byte type, String bareJid) {
+        String owner = ring.ownerOf(bareJid);
+        if (nodeId.equals(owner)) {
+            if (type == ClusterLink.ANNOUNCE) {
+                directory.put(bareJid, nodeId);
+            } else {
+                directory.remove(bareJid, nodeId);
+            }
+            return;
+        }
+        ClusterLink link = links.get(owner);
+        if (link == null) {
+            logger.log(Level.FINE, "CLUSTER: No link to owner {0} of {1}, waiting for rebalance", new Object[]{owner, bareJid});
+            return;
+        }
+        try {
+            link.sendAnnounce(type, bareJid, nodeId);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to announce " + bareJid + " to " + owner, e);
+        }
+    }
+
+    /**
+     * Deliver locally or pass the message one hop closer to the node hosting the recipient.
+     * @return false if the message can't be delivered
+     */
+    private boolean forward(String from, String to, String body, int hops) {
+        if (hops > 0 && server.deliverLocal(from, to, body)) {
+            return true;
+        }
+        String bareJid = bareJid(to);
+        String owner = ring.ownerOf(bareJid);
+        String next = nodeId.equals(owner) ? directory.get(bareJid) : owner;
+        if (next == null || next.equals(nodeId) || hops >= MAX_HOPS) {
+            return false;
+        }
+        ClusterLink link = links.get(next);
+        if (link == null) {
+            return false;
+        }
+        try {
+            link.sendRoute(from, to, body, hops + 1);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to forward message for " + to + " to " + next, e);
+            return false;
+        }
+    }
+
+    /**
+     * Report a failed remote delivery back to the original sender.
+     */
+    private void bounce(String from, String to) {
+        logger.log(Level.WARNING, "CLUSTER: Target client not found: {0}", to);
+        if (SERVER_SENDER.equals(from)) {
+            return;
+        }
+        String errorBody = "Message delivery failed: recipient-unavailable";
+        if (!server.deliverLocal(SERVER_SENDER, from, errorBody)) {
+            forward(SERVER_SENDER, from, errorBody, 0);
+        }
+    }
+
+    private static String bareJid(String jid) {
+        int resourceIndex = jid.indexOf('/');
+        return resourceIndex >= 0 ? jid.substring(0, resourceIndex) : jid;
+    }
+}
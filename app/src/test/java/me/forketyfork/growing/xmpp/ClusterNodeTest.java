@@ -0,0 +1,165 @@
+package me.forketyfork.growing.xmpp;
+
+import org.jivesoftware.smack.AbstractXMPPConnection;
+import org.jivesoftware.smack.chat2.Chat;
+import org.jivesoftware.smack.chat2.ChatManager;
+import org.jivesoftware.smack.tcp.XMPPTCPConnection;
+import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link ClusterNode} and {@link ConsistentHashRing}, running several nodes in one JVM.
+ */
+public class ClusterNodeTest {
+
+    private final List<ClusterNode> nodes = new ArrayList<>();
+    private final List<AbstractXMPPConnection> connections = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        for (AbstractXMPPConnection c : connections) {
+            if (c.isConnected()) {
+                c.disconnect();
+            }
+        }
+        for (ClusterNode node : nodes) {
+            node.leave();
+        }
+    }
+
+    private int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private ClusterNode startNode(String nodeId) throws IOException {
+        ClusterNode node = new ClusterNode(nodeId,
+                new XmppServerConfig(freePort(), "localhost", 200, 1000, 100, Map.of()), freePort());
+        node.start();
+        nodes.add(node);
+        return node;
+    }
+
+    private AbstractXMPPConnection connect(ClusterNode node, String user) throws Exception {
+        AbstractXMPPConnection connection = new XMPPTCPConnection(XMPPTCPConnectionConfiguration.builder()
+                .setHost("localhost")
+                .setXmppDomain("localhost")
+                .setPort(node.getServer().getConfig().port())
+                .setSecurityMode(org.jivesoftware.smack.ConnectionConfiguration.SecurityMode.disabled)
+                .setCompressionEnabled(false)
+                .build());
+        connection.connect();
+        connection.login(user, "password", Resourcepart.from("res"));
+        connections.add(connection);
+        return connection;
+    }
+
+    private List<String> collectMessages(AbstractXMPPConnection connection) {
+        List<String> messages = new CopyOnWriteArrayList<>();
+        ChatManager.getInstanceFor(connection).addIncomingListener((_, message, _) -> messages.add(message.getBody()));
+        return messages;
+    }
+
+    private void await(String description, BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 50 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(condition.getAsBoolean(), description);
+    }
+
+    private void awaitMembers(int count) throws InterruptedException {
+        await("cluster of " + count + " nodes", () -> nodes.stream().allMatch(node -> node.getMembers().size() == count));
+    }
+
+    @Test
+    public void routesMessagesBetweenClientsOnDifferentNodes() throws Exception {
+        ClusterNode node1 = startNode("node-1");
+        ClusterNode node2 = startNode("node-2");
+        node2.join("localhost", node1.getClusterPort());
+        awaitMembers(2);
+
+        AbstractXMPPConnection alice = connect(node1, "alice");
+        AbstractXMPPConnection bob = connect(node2, "bob");
+        List<String> bobMessages = collectMessages(bob);
+
+        Chat chat = ChatManager.getInstanceFor(alice).chatWith(JidCreate.entityBareFrom("bob@localhost"));
+        chat.send("hello");
+
+        await("bob receives the message", () -> bobMessages.contains("hello"));
+    }
+
+    @Test
+    public void keepsRoutingWhileNodesJoinAndLeave() throws Exception {
+        ClusterNode node1 = startNode("node-1");
+        ClusterNode node2 = startNode("node-2");
+        node2.join("localhost", node1.getClusterPort());
+        awaitMembers(2);
+
+        AbstractXMPPConnection alice = connect(node1, "alice");
+        AbstractXMPPConnection bob = connect(node2, "bob");
+        List<String> bobMessages = collectMessages(bob);
+        Chat chat = ChatManager.getInstanceFor(alice).chatWith(JidCreate.entityBareFrom("bob@localhost"));
+
+        ClusterNode node3 = startNode("node-3");
+        node3.join("localhost", node2.getClusterPort());
+        awaitMembers(3);
+
+        // Rebalancing is asynchronous, so keep sending until a message gets through
+        await("bob receives messages after a node joined", () -> sendAndCheck(chat, "after join", bobMessages));
+
+        nodes.remove(node3);
+        node3.leave();
+        awaitMembers(2);
+
+        await("bob receives messages after a node left", () -> sendAndCheck(chat, "after leave", bobMessages));
+        assertTrue(alice.isConnected());
+        assertTrue(bob.isConnected());
+    }
+
+    private boolean sendAndCheck(Chat chat, String body, List<String> received) {
+        if (received.contains(body)) {
+            return true;
+        }
+        try {
+            chat.send(body);
+        } catch (Exception e) {
+            return false;
+        }
+        return false;
+    }
+
+    @Test
+    public void ringMovesOnlyKeysOfTheJoiningNode() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"));
+        ConsistentHashRing grown = ring.with("node-4");
+
+        Map<String, Integer> keysPerNode = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            String jid = "sniper" + i + "@localhost";
+            String before = ring.ownerOf(jid);
+            String after = grown.ownerOf(jid);
+            if (!before.equals(after)) {
+                assertEquals("node-4", after);
+            }
+            keysPerNode.merge(after, 1, Integer::sum);
+        }
+
+        for (String node : grown.getNodeIds()) {
+            assertTrue(keysPerNode.get(node) > 1_000, "Too few keys on " + node + ": " + keysPerNode);
+        }
+        assertEquals(ring.ownerOf("alice@localhost"), new ConsistentHashRing(List.of("node-3", "node-1", "node-2"))
+                .ownerOf("alice@localhost"));
+    }
+}
@@ -0,0 +1,55 @@
+package me.forketyfork.growing.xmpp;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Buffers and a UTF-8 coder that a {@link ConnectionReader} borrows for one read and a {@link ConnectionWriter}
+ * until it is flushed. A connection holds none while it is idle, so a few of them serve any number of connections.
+ * Malformed input is replaced, like {@link java.io.InputStreamReader} and {@link java.io.OutputStreamWriter} do.
+ */
+final class ConnectionBuffers {
+
+    static final int BYTE_BUFFER_SIZE = 8 * 1024;
+    static final int CHAR_BUFFER_SIZE = 4 * 1024;
+    // Kept for reuse; when they are all borrowed, new ones are allocated and dropped after use
+    private static final int POOL_SIZE = 256;
+
+    private static final ArrayBlockingQueue<ConnectionBuffers> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+    final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ConnectionBuffers() {
+    }
+
+    /**
+     * @return cleared buffers, to be given back with {@link #release(ConnectionBuffers)}
+     */
+    static ConnectionBuffers borrow() {
+        ConnectionBuffers buffers = pool.poll();
+        if (buffers == null) {
+            return new ConnectionBuffers();
+        }
+        buffers.bytes.clear();
+        buffers.chars.clear();
+        buffers.decoder.reset();
+        buffers.encoder.reset();
+        return buffers;
+    }
+
+    static void release(ConnectionBuffers buffers) {
+        pool.offer(buffers);
+    }
+}
@@ -0,0 +1,162 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Decodes the UTF-8 input of a client connection without a buffer of its own.
+ * <p>
+ * A read first waits for one byte of input, which is where an idle connection spends its time, and only then
+ * borrows {@link ConnectionBuffers} to decode that byte and whatever else is available, and copies the chars into
+ * the parser's buffer. The reader keeps no more than an incomplete UTF-8 sequence and one char between reads,
+ * and a read allocates nothing.
+ * <p>
+ * It also tracks whether anything but whitespace has been read since the last {@code >}, so {@link ClientInput}
+ * can tell that the parser holds no part of a stanza, and passes every byte to a {@link StanzaFramer}.
+ */
+final class ConnectionReader extends Reader {
+
+    private final InputStream input;
+    private final StanzaFramer framer = new StanzaFramer();
+    // Bytes of an incomplete UTF-8 sequence, followed by the byte a read or awaitInput() waited for
+    private final byte[] pending = new byte[4];
+    private int pendingLength;
+    private boolean inputArrived;
+    // A char decoded beyond a read of one char, e.g. the second half of a surrogate pair, -1 if none
+    private int carried = -1;
+    // Read before the input of the connection, see replay()
+    private String replay;
+    private int replayPosition;
+    private boolean textAfterTag;
+
+    ConnectionReader(InputStream input) {
+        this.input = input;
+    }
+
+    StanzaFramer framer() {
+        return framer;
+    }
+
+    /**
+     * Make the next reads return the text before continuing with the input of the connection.
+     */
+    void replay(String text) {
+        replay = text;
+        replayPosition = 0;
+    }
+
+    /**
+     * Wait for input without holding a buffer.
+     *
+     * @return false at the end of the stream
+     */
+    boolean awaitInput() throws IOException {
+        if (inputArrived) {
+            return true;
+        }
+        int count = input.read(pending, pendingLength, 1);
+        if (count < 0) {
+            return false;
+        }
+        framer.scan(pending, pendingLength, count);
+        pendingLength += count;
+        inputArrived = true;
+        return true;
+    }
+
+    /**
+     * @return true if anything but whitespace was read since the last {@code >}
+     */
+    boolean hasTextAfterTag() {
+        return textAfterTag;
+    }
+
+    @Override
+    public int read(char[] destination, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int count = readChars(destination, offset, length);
+        if (count > 0) {
+            track(destination, offset, count);
+        }
+        return count;
+    }
+
+    private int readChars(char[] destination, int offset, int length) throws IOException {
+        if (carried >= 0) {
+            destination[offset] = (char) carried;
+            carried = -1;
+            return 1;
+        }
+        if (replay != null) {
+            int count = Math.min(length, replay.length() - replayPosition);
+            replay.getChars(replayPosition, replayPosition + count, destination, offset);
+            replayPosition += count;
+            if (replayPosition == replay.length()) {
+                replay = null;
+            }
+            return count;
+        }
+        // A surrogate pair takes two chars, so even a read of one char decodes up to two
+        int limit = Math.min(Math.max(length, 2), ConnectionBuffers.CHAR_BUFFER_SIZE);
+        while (true) {
+            if (!awaitInput()) {
+                // An incomplete sequence at the end of the stream is dropped
+                return -1;
+            }
+            inputArrived = false;
+            ConnectionBuffers buffers = ConnectionBuffers.borrow();
+            try {
+                ByteBuffer bytes = buffers.bytes;
+                bytes.put(pending, 0, pendingLength);
+                // A UTF-8 byte never decodes to more than one char, so the decoded chars always fit
+                int more = Math.min(input.available(), Math.min(bytes.remaining(), limit - pendingLength));
+                if (more > 0) {
+                    int count = input.read(bytes.array(), bytes.position(), more);
+                    if (count > 0) {
+                        framer.scan(bytes.array(), bytes.position(), count);
+                        bytes.position(bytes.position() + count);
+                    }
+                }
+                bytes.flip();
+                CharBuffer chars = buffers.chars;
+                chars.limit(limit);
+                buffers.decoder.decode(bytes, chars, false);
+                // Only an incomplete sequence is left
+                pendingLength = bytes.remaining();
+                bytes.get(pending, 0, pendingLength);
+                int count = Math.min(chars.position(), length);
+                if (count > 0) {
+                    chars.flip();
+                    chars.get(destination, offset, count);
+                    if (chars.hasRemaining()) {
+                        carried = chars.get();
+                    }
+                    return count;
+                }
+            } finally {
+                ConnectionBuffers.release(buffers);
+            }
+        }
+    }
+
+    private void track(char[] chars, int offset, int count) {
+        // Only the last char that isn't whitespace matters
+        for (int i = offset + count - 1; i >= offset; i--) {
+            char c = chars[i];
+            if (!Character.isWhitespace(c)) {
+                textAfterTag = c != '>';
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
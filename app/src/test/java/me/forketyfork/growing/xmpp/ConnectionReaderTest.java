@@ -0,0 +1,44 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConnectionReaderTest {
+
+    // An ASCII char, a two-byte char, a surrogate pair and an ASCII char again
+    private static final String TEXT = "<a>\u00e9\ud83d\ude00b</a>";
+
+    private static ConnectionReader readerOf(String text) {
+        return new ConnectionReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void readsOneCharAtATimeAcrossASurrogatePair() throws IOException {
+        ConnectionReader reader = readerOf(TEXT);
+        StringBuilder read = new StringBuilder();
+        char[] buffer = new char[1];
+        int count;
+        while ((count = reader.read(buffer, 0, 1)) >= 0) {
+            assertEquals(1, count);
+            read.append(buffer[0]);
+        }
+        assertEquals(TEXT, read.toString());
+    }
+
+    @Test
+    public void readsWholeBuffers() throws IOException {
+        ConnectionReader reader = readerOf(TEXT);
+        StringBuilder read = new StringBuilder();
+        char[] buffer = new char[64];
+        int count;
+        while ((count = reader.read(buffer, 0, buffer.length)) >= 0) {
+            read.append(buffer, 0, count);
+        }
+        assertEquals(TEXT, read.toString());
+    }
+}
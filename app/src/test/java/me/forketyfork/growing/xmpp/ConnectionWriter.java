@@ -0,0 +1,108 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CoderResult;
+
+/**
+ * Encodes the output of a client connection to UTF-8 in {@link ConnectionBuffers} borrowed by the first write
+ * and given back on flush, so a connection holds no buffer between stanzas. Used by the connection's thread only.
+ */
+final class ConnectionWriter extends Writer {
+
+    private final OutputStream output;
+    // Null while nothing is buffered
+    private ConnectionBuffers buffers;
+
+    ConnectionWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        CharBuffer chars = chars();
+        chars.put((char) c);
+        if (!chars.hasRemaining()) {
+            encode();
+        }
+    }
+
+    @Override
+    public void write(char[] source, int offset, int length) throws IOException {
+        while (length > 0) {
+            CharBuffer chars = chars();
+            int count = Math.min(length, chars.remaining());
+            chars.put(source, offset, count);
+            offset += count;
+            length -= count;
+            if (!chars.hasRemaining()) {
+                encode();
+            }
+        }
+    }
+
+    @Override
+    public void write(String source, int offset, int length) throws IOException {
+        while (length > 0) {
+            CharBuffer chars = chars();
+            int count = Math.min(length, chars.remaining());
+            chars.put(source, offset, offset + count);
+            offset += count;
+            length -= count;
+            if (!chars.hasRemaining()) {
+                encode();
+            }
+        }
+    }
+
+    private CharBuffer chars() {
+        if (buffers == null) {
+            buffers = ConnectionBuffers.borrow();
+        }
+        return buffers.chars;
+    }
+
+    private void encode() throws IOException {
+        CharBuffer chars = buffers.chars;
+        ByteBuffer bytes = buffers.bytes;
+        chars.flip();
+        CoderResult result;
+        do {
+            result = buffers.encoder.encode(chars, bytes, false);
+            if (bytes.position() > 0) {
+                output.write(bytes.array(), 0, bytes.position());
+                bytes.clear();
+            }
+        } while (result.isOverflow());
+        // Keeps the first half of a surrogate pair until the second one is written
+        chars.compact();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffers != null) {
+            encode();
+            if (buffers.chars.position() == 0) {
+                ConnectionBuffers.release(buffers);
+                buffers = null;
+            }
+        }
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (buffers != null) {
+                ConnectionBuffers.release(buffers);
+                buffers = null;
+            }
+            output.close();
+        }
+    }
+}
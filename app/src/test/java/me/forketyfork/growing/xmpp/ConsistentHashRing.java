@@ -0,0 +1,95 @@
+package me.forketyfork.growing.xmpp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hash ring mapping keys (bare JIDs) to cluster node ids.
+ * Every node is placed on the ring several times so that keys spread evenly
+ * and only the keys of a joining or leaving node change owners.
+ * Instances are immutable, membership changes produce a new ring.
+ */
+public final class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final int virtualNodes;
+    private final SortedSet<String> nodeIds;
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> nodeIds) {
+        this(nodeIds, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Virtual nodes must be positive, got: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodeIds = Collections.unmodifiableSortedSet(new TreeSet<>(nodeIds));
+
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String nodeId : this.nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // Ties between nodes are resolved by the sorted iteration order, so all nodes build the same ring
+                ring.putIfAbsent(hash(nodeId + "#" + i), nodeId);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            points[i] = entry.getKey();
+            owners[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    public SortedSet<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    public ConsistentHashRing with(String nodeId) {
+        Set<String> updated = new TreeSet<>(nodeIds);
+        updated.add(nodeId);
+        return new ConsistentHashRing(updated, virtualNodes);
+    }
+
+    public ConsistentHashRing without(String nodeId) {
+        Set<String> updated = new TreeSet<>(nodeIds);
+        updated.remove(nodeId);
+        return new ConsistentHashRing(updated, virtualNodes);
+    }
+
+    /**
+     * @return the id of the node owning the key, or null if the ring is empty
+     */
+    public String ownerOf(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, stable across JVMs.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
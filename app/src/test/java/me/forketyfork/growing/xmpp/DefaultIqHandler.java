@@ -69,8 +69,13 @@ public class DefaultIqHandler implements XmppIqHandler {
             String fullJid = context.getUsername() + "@" + serverName + "/" + resource;
             context.setFullJid(fullJid);
             
-            // Register the client in the global registry
-            context.registerClient();
+            // Register the client in the global registry, other resources of the account may be bound too
+            if (!context.registerClient()) {
+                logger.log(Level.WARNING, "Resource {0} is already bound, rejecting with conflict", fullJid);
+                context.setFullJid(null);
+                sendConflict(context.getXmlWriter(), id);
+                return context;
+            }
             
             logger.log(Level.INFO, "ASSIGNED JID: {0} to client, registering in registry", fullJid);
         }
@@ -80,6 +85,19 @@ public class DefaultIqHandler implements XmppIqHandler {
         return context;
     }
     
+    private void sendConflict(XMLStreamWriter xmlWriter, String id) throws XMLStreamException {
+        xmlWriter.writeStartElement("iq");
+        xmlWriter.writeAttribute("type", "error");
+        xmlWriter.writeAttribute("id", id);
+        xmlWriter.writeStartElement("error");
+        xmlWriter.writeAttribute("type", "cancel");
+        xmlWriter.writeEmptyElement("conflict");
+        xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_STANZAS);
+        xmlWriter.writeEndElement(); // error
+        xmlWriter.writeEndElement(); // iq
+        xmlWriter.flush();
+    }
+    
     private void sendIqResponse(XMLStreamWriter xmlWriter, String type, String id, String queryNs,
                                boolean hasBind, ClientContext context) throws XMLStreamException {
         xmlWriter.writeStartElement("iq");
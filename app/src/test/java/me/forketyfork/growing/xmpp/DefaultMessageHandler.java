@@ -1,7 +1,14 @@
 package me.forketyfork.growing.xmpp;
 
+import javax.xml.namespace.NamespaceContext;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
@@ -12,6 +19,16 @@ public class DefaultMessageHandler implements XmppMessageHandler {
     private static final Logger logger = Logger.getLogger("DefaultMessageHandler");
     private static final BlockingQueue<MessageInfo> messageQueue = new LinkedBlockingQueue<>();
 
+    private final MultiUserChatService mucService;
+
+    public DefaultMessageHandler() {
+        this(null);
+    }
+
+    public DefaultMessageHandler(MultiUserChatService mucService) {
+        this.mucService = mucService;
+    }
+
     @Override
     public ClientContext handleMessageStanza(XMLStreamReader xmlReader, ClientContext context) throws XMLStreamException {
         logger.log(Level.INFO, "Handling message stanza, currentState: {0}", context.getState());
@@ -23,8 +40,14 @@ public class DefaultMessageHandler implements XmppMessageHandler {
         logger.log(Level.INFO, "Message - from: {0}, to: {1}, type: {2}", new Object[]{from, to, type});
         logger.log(Level.INFO, "ROUTING ATTEMPT: Message routing will be attempted for to='{0}'", to);
 
-        // Read the message content
+        if (forwardRaw(xmlReader, context, from, to, type)) {
+            return context;
+        }
+
+        // Read the message content, text-only extension elements are forwarded along with the body
         StringBuilder messageBody = new StringBuilder();
+        boolean hasBody = false;
+        List<MessagePayload> payloads = new ArrayList<>();
         int depth = 1;
 
         while (xmlReader.hasNext() && depth > 0) {
@@ -33,8 +56,16 @@ public class DefaultMessageHandler implements XmppMessageHandler {
                 case XMLStreamReader.START_ELEMENT:
                     depth++;
                     if ("body".equals(xmlReader.getLocalName())) {
-                        messageBody.append(xmlReader.getElementText());
-                        depth--; // getElementText() positions reader at END_ELEMENT
+                        // Markup inside the body is dropped, all of its text is kept
+                        MessagePayload.readText(xmlReader, messageBody);
+                        hasBody = true;
+                        depth--; // readText() positions reader at END_ELEMENT
+                    } else if (depth == 2 && !XmppServerConfig.NAMESPACE_CLIENT.equals(xmlReader.getNamespaceURI())) {
+                        MessagePayload payload = MessagePayload.read(xmlReader);
+                        if (payload != null) {
+                            payloads.add(payload);
+                        }
+                        depth--; // read() positions reader at END_ELEMENT
                     }
                     break;
                 case XMLStreamReader.END_ELEMENT:
@@ -48,9 +79,16 @@ public class DefaultMessageHandler implements XmppMessageHandler {
             }
         }
 
+        // Groupchat messages are encoded once and fanned out to the room occupants
+        if ("groupchat".equals(type) && mucService != null && mucService.isRoomAddress(to)) {
+            broadcastToRoom(context, to, messageBody.toString());
+            return context;
+        }
+
         // IMPORTANT: Implement message routing instead of just queuing
         if (to != null && !to.trim().isEmpty()) {
-            routeMessage(context, from, to, messageBody.toString());
+            String body = hasBody || payloads.isEmpty() ? messageBody.toString() : null;
+            routeMessage(context, from, to, body, payloads);
         } else {
             logger.log(Level.WARNING, "Message has no 'to' attribute, cannot route");
         }
@@ -67,51 +105,32 @@ public class DefaultMessageHandler implements XmppMessageHandler {
      * Route a message from sender to target client.
      * This is the core functionality that enables client-to-client communication.
      */
-    private void routeMessage(ClientContext senderContext, String originalFrom, String to, String body) {
+    private void routeMessage(ClientContext senderContext, String originalFrom, String to, String body,
+                              List<MessagePayload> payloads) {
         try {
-            // Use sender's full JID as the 'from' address (overrides client-provided 'from')
-            String actualFrom = senderContext.getFullJid();
+            // Use sender's full JID as the 'from' address, unless the client names another resource of its account
+            String actualFrom = senderJid(senderContext, originalFrom);
             if (actualFrom == null) {
                 logger.log(Level.WARNING, "Sender has no assigned JID, cannot route message");
                 return;
             }
 
             logger.log(Level.INFO, "ROUTING: Attempting to route message from {0} to {1}", new Object[]{actualFrom, to});
-            logger.log(Level.INFO, "ROUTING: Available clients in registry: {0}", senderContext.getClientRegistry().keySet());
-
-            // Find target client session
-            ClientSession targetSession = senderContext.findClientSession(to);
-            logger.log(Level.INFO, "ROUTING: Direct lookup for ''{0}'' found: {1}", new Object[]{to, targetSession != null});
-
-            // If not found by exact JID, try bare JID (remove resource part)
-            if (targetSession == null) {
-                int resourceIndex = to.indexOf('/');
-                if (resourceIndex >= 0) {
-                    String bareJid = to.substring(0, resourceIndex);
-                    targetSession = senderContext.findClientSession(bareJid);
-                    logger.log(Level.INFO, "ROUTING: Bare JID lookup for ''{0}'' found: {1}", new Object[]{bareJid, targetSession != null});
-                } else {
-                    // 'to' is already a bare JID, but let's also try exact match with full JIDs
-                    logger.log(Level.INFO, "ROUTING: Target ''{0}'' is already bare JID, checking full JIDs", to);
-                    for (String registeredJid : senderContext.getClientRegistry().keySet()) {
-                        if (registeredJid.startsWith(to + "/")) {
-                            targetSession = senderContext.findClientSession(registeredJid);
-                            logger.log(Level.INFO, "ROUTING: Found matching full JID: {0}", registeredJid);
-                            break;
-                        }
-                    }
-                }
-            }
+            ClientSession targetSession = findTargetSession(senderContext, to);
 
             if (targetSession != null) {
                 // Queue the message for the target client - it will be processed by the client's own thread
-                String targetJid = targetSession.getFullJid();
-                targetSession.queueMessage(actualFrom, targetJid, body);
+                String targetJid = recipientJid(targetSession, to);
+                targetSession.queueMessage(actualFrom, targetJid, body, payloads);
                 logger.log(Level.INFO, "SUCCESS: Message queued for routing from {0} to {1} (target full JID: {2})", new Object[]{actualFrom, to, targetJid});
                 logger.log(Level.INFO, "QUEUE STATUS: Message added to queue, target session has {0} pending messages", targetSession.hasPendingMessages() ? "some" : "no");
 
                 // Note: Cannot immediately process messages here due to cross-thread XMLStreamWriter issues
                 // The target client's own thread must process the messages to maintain XML stream integrity
+            } else if (senderContext.getRemoteRouter() != null
+                    // Remote routing carries the body only
+                    && senderContext.getRemoteRouter().routeMessage(actualFrom, to, body == null ? "" : body)) {
+                logger.log(Level.INFO, "SUCCESS: Message from {0} to {1} handed over for remote delivery", new Object[]{actualFrom, to});
             } else {
                 logger.log(Level.WARNING, "FAILED: Target client not found: {0}. Available clients: {1}",
                         new Object[]{to, senderContext.getClientRegistry().keySet()});
@@ -123,6 +142,169 @@ public class DefaultMessageHandler implements XmppMessageHandler {
         }
     }
 
+    /**
+     * The 'from' of a message the client sent: its full JID, or the full JID it names if that is another
+     * resource of its own account. This lets one session speak for many resources, like an auction house
+     * hosting each item as a resource of its account. Other servers stamp the session's full JID,
+     * there such a client has to be an external component (XEP-0114).
+     */
+    static String senderJid(ClientContext context, String from) {
+        String bareJid = context.getBareJid();
+        if (from != null && bareJid != null && from.length() > bareJid.length() + 1
+                && from.startsWith(bareJid) && from.charAt(bareJid.length()) == '/') {
+            return from;
+        }
+        return context.getFullJid();
+    }
+
+    /**
+     * The 'to' the recipient gets: the full JID the message was addressed to, even when it names a resource
+     * that isn't bound and the message went to another session of the account, or the recipient's
+     * full JID for a message to the bare JID.
+     */
+    static String recipientJid(ClientSession target, String to) {
+        return to.indexOf('/') >= 0 ? to : target.getFullJid();
+    }
+
+    /**
+     * Find the local session of the recipient, by full JID or by bare JID.
+     */
+    private ClientSession findTargetSession(ClientContext senderContext, String to) {
+        logger.log(Level.INFO, "ROUTING: Available clients in registry: {0}", senderContext.getClientRegistry().keySet());
+
+        // Find target client session
+        ClientSession targetSession = senderContext.findClientSession(to);
+        logger.log(Level.INFO, "ROUTING: Direct lookup for ''{0}'' found: {1}", new Object[]{to, targetSession != null});
+
+        // If not found by exact JID, try bare JID (remove resource part)
+        if (targetSession == null) {
+            int resourceIndex = to.indexOf('/');
+            if (resourceIndex >= 0) {
+                String bareJid = to.substring(0, resourceIndex);
+                targetSession = senderContext.findClientSession(bareJid);
+                logger.log(Level.INFO, "ROUTING: Bare JID lookup for ''{0}'' found: {1}", new Object[]{bareJid, targetSession != null});
+            } else {
+                // 'to' is already a bare JID, but let's also try exact match with full JIDs
+                logger.log(Level.INFO, "ROUTING: Target ''{0}'' is already bare JID, checking full JIDs", to);
+                for (String registeredJid : senderContext.getClientRegistry().keySet()) {
+                    if (registeredJid.startsWith(to + "/")) {
+                        targetSession = senderContext.findClientSession(registeredJid);
+                        logger.log(Level.INFO, "ROUTING: Found matching full JID: {0}", registeredJid);
+                        break;
+                    }
+                }
+            }
+        }
+        return targetSession;
+    }
+
+    /**
+     * Forward a one-to-one message to a local recipient as the bytes the sender wrote, only 'from' and 'to' replaced.
+     * The recipient gets every extension element, and the message is neither read into strings
+     * nor serialized again.
+     *
+     * @return false if the message can't be forwarded this way and hasn't been read
+     */
+    private boolean forwardRaw(XMLStreamReader xmlReader, ClientContext context, String from, String to,
+                               String type) throws XMLStreamException {
+        ClientInput input = context.getInput();
+        String actualFrom = senderJid(context, from);
+        if (input == null || actualFrom == null || to == null || to.isBlank() || "groupchat".equals(type)
+                || !XmppServerConfig.NAMESPACE_CLIENT.equals(xmlReader.getNamespaceURI()) || !input.keepsRawStanza()) {
+            return false;
+        }
+        // Remote recipients get the body only, and unknown ones an error
+        ClientSession targetSession = findTargetSession(context, to);
+        if (targetSession == null || !targetSession.hasRawOutput()) {
+            return false;
+        }
+
+        Map<String, String> namespaces = readToEnd(xmlReader);
+        StanzaFramer.RawStanza stanza = input.takeRawStanza();
+        if (stanza == null) {
+            // The framer and the parser didn't agree on the elements of the stream
+            logger.log(Level.WARNING, "FAILED: Lost the bytes of a message from {0} to {1}", new Object[]{actualFrom, to});
+            sendErrorResponse(context, actualFrom, to, "internal-server-error");
+            return true;
+        }
+        String targetJid = recipientJid(targetSession, to);
+        targetSession.queueStanza(EncodedStanza.forward(stanza, actualFrom, targetJid, namespaces));
+        logger.log(Level.FINE, "SUCCESS: Message of {0} bytes forwarded from {1} to {2}",
+                new Object[]{stanza.length(), actualFrom, targetJid});
+        return true;
+    }
+
+    /**
+     * Read the message the reader is positioned at, leaving the reader at its end element.
+     *
+     * @return the namespaces of the prefixes the message uses without declaring them, by prefix
+     */
+    private static Map<String, String> readToEnd(XMLStreamReader xmlReader) throws XMLStreamException {
+        Set<String> prefixes = addPrefixes(xmlReader, null);
+        int depth = 1;
+        while (depth > 0) {
+            int event = xmlReader.next();
+            if (event == XMLStreamReader.START_ELEMENT) {
+                depth++;
+                prefixes = addPrefixes(xmlReader, prefixes);
+            } else if (event == XMLStreamReader.END_ELEMENT) {
+                depth--;
+            }
+        }
+        if (prefixes == null) {
+            return Map.of();
+        }
+        // At its end element the message's own declarations are still in scope, the others come from the stream
+        for (int i = 0; i < xmlReader.getNamespaceCount(); i++) {
+            prefixes.remove(xmlReader.getNamespacePrefix(i));
+        }
+        Map<String, String> namespaces = new HashMap<>();
+        NamespaceContext namespaceContext = xmlReader.getNamespaceContext();
+        for (String prefix : prefixes) {
+            String namespace = namespaceContext.getNamespaceURI(prefix);
+            if (namespace != null && !namespace.isEmpty()) {
+                namespaces.put(prefix, namespace);
+            }
+        }
+        return namespaces;
+    }
+
+    /**
+     * Add the prefixes of the element the reader is positioned at and of its attributes,
+     * the set is created on the first prefix.
+     */
+    private static Set<String> addPrefixes(XMLStreamReader xmlReader, Set<String> prefixes) {
+        prefixes = addPrefix(xmlReader.getPrefix(), prefixes);
+        for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+            prefixes = addPrefix(xmlReader.getAttributePrefix(i), prefixes);
+        }
+        return prefixes;
+    }
+
+    private static Set<String> addPrefix(String prefix, Set<String> prefixes) {
+        // The xml prefix is bound everywhere
+        if (prefix == null || prefix.isEmpty() || "xml".equals(prefix)) {
+            return prefixes;
+        }
+        if (prefixes == null) {
+            prefixes = new HashSet<>();
+        }
+        prefixes.add(prefix);
+        return prefixes;
+    }
+
+    private void broadcastToRoom(ClientContext senderContext, String roomJid, String body) throws XMLStreamException {
+        String actualFrom = senderContext.getFullJid();
+        if (actualFrom == null) {
+            logger.log(Level.WARNING, "Sender has no assigned JID, cannot broadcast to room");
+            return;
+        }
+        if (!mucService.broadcast(roomJid, actualFrom, body)) {
+            logger.log(Level.WARNING, "FAILED: {0} is not an occupant of room {1}", new Object[]{actualFrom, roomJid});
+            sendErrorResponse(senderContext, actualFrom, roomJid, "not-acceptable");
+        }
+    }
+
     /**
      * Send an error response back to the sender when message delivery fails.
      */
@@ -0,0 +1,89 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DefaultMessageHandlerTest {
+
+    private final ConcurrentHashMap<String, ClientSession> registry = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<ClientSession>> accountSessions = new ConcurrentHashMap<>();
+    private final DefaultMessageHandler handler = new DefaultMessageHandler();
+
+    private ClientContext connect(String username, ByteArrayOutputStream out) throws Exception {
+        XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+        // As declared on the stream
+        writer.setDefaultNamespace(XmppServerConfig.NAMESPACE_CLIENT);
+        ClientContext context = new ClientContext(ClientState.PROCESSING_STANZAS, writer, out, registry, accountSessions);
+        context.setUsername(username);
+        context.setFullJid(username + "@localhost/res");
+        context.registerClient();
+        return context;
+    }
+
+    @Test
+    public void keepsTheTextOfABodyWithChildElements() throws Exception {
+        ClientContext auction = connect("auction", new ByteArrayOutputStream());
+        ByteArrayOutputStream sniperOut = new ByteArrayOutputStream();
+        ClientContext sniper = connect("sniper", sniperOut);
+
+        String xml = "<stream><message to='sniper@localhost/res'><body>Event: <b>PRICE</b>;</body>"
+                + "<x xmlns='urn:test'>1</x></message><message to='sniper@localhost/res'><body>next</body></message></stream>";
+        XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+        reader.nextTag();
+        reader.nextTag();
+        handler.handleMessageStanza(reader, auction);
+        // The reader is left at the end of the first message and the second one is read as usual
+        assertEquals(XMLStreamReader.END_ELEMENT, reader.getEventType());
+        reader.nextTag();
+        handler.handleMessageStanza(reader, auction);
+        sniper.findClientSession(sniper.getFullJid()).processPendingMessages();
+
+        String received = sniperOut.toString(StandardCharsets.UTF_8);
+        assertTrue(received.contains("<body>Event: PRICE;</body>"), received);
+        assertTrue(received.contains("<body>next</body>"), received);
+    }
+
+    @Test
+    public void keepsTheResourcesOfTheAuctionHouseAccountItSpeaksFor() throws Exception {
+        ByteArrayOutputStream auctionHouseOut = new ByteArrayOutputStream();
+        ClientContext auctionHouse = connect("auction-house", auctionHouseOut);
+        ByteArrayOutputStream sniperOut = new ByteArrayOutputStream();
+        ClientContext sniper = connect("sniper", sniperOut);
+
+        handle(sniper, "<message to='auction-house@localhost/item-1'><body>join</body></message>");
+        handle(auctionHouse, "<message from='auction-house@localhost/item-1' to='sniper@localhost/res'>"
+                + "<body>price</body></message>");
+        handle(auctionHouse, "<message from='auction@localhost/item-1' to='sniper@localhost/res'>"
+                + "<body>spoofed</body></message>");
+        auctionHouse.findClientSession(auctionHouse.getFullJid()).processPendingMessages();
+        sniper.findClientSession(sniper.getFullJid()).processPendingMessages();
+
+        // The resource isn't bound, the message goes to the account's session still addressed to the item
+        String received = auctionHouseOut.toString(StandardCharsets.UTF_8);
+        assertTrue(received.contains("to=\"auction-house@localhost/item-1\""), received);
+        String sent = sniperOut.toString(StandardCharsets.UTF_8);
+        assertTrue(sent.contains("from=\"auction-house@localhost/item-1\""), sent);
+        // Another account can't be named
+        assertTrue(sent.contains("from=\"auction-house@localhost/res\""), sent);
+        assertFalse(sent.contains("auction@localhost"), sent);
+    }
+
+    private void handle(ClientContext sender, String message) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(message));
+        reader.nextTag();
+        handler.handleMessageStanza(reader, sender);
+    }
+}
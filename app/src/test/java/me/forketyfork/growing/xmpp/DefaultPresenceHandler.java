@@ -0,0 +1,57 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default implementation of XmppPresenceHandler.
+ * Presence addressed to a multi-user chat room joins or leaves the room,
+ * any other presence is consumed and ignored.
+ */
+public class DefaultPresenceHandler implements XmppPresenceHandler {
+
+    private static final Logger logger = Logger.getLogger("DefaultPresenceHandler");
+
+    private final MultiUserChatService mucService;
+
+    public DefaultPresenceHandler(MultiUserChatService mucService) {
+        this.mucService = mucService;
+    }
+
+    @Override
+    public ClientContext handlePresenceStanza(XMLStreamReader xmlReader, ClientContext context) throws XMLStreamException {
+        String to = xmlReader.getAttributeValue(null, "to");
+        String type = xmlReader.getAttributeValue(null, "type");
+        logger.log(Level.FINE, "Handling presence stanza, to: {0}, type: {1}", new Object[]{to, type});
+
+        // Skip the presence content, the room only cares about the addressing
+        int depth = 1;
+        while (xmlReader.hasNext() && depth > 0) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        if (!mucService.isRoomAddress(to) || context.getFullJid() == null) {
+            return context;
+        }
+        ClientSession session = context.findClientSession(context.getFullJid());
+        if (session == null) {
+            logger.log(Level.WARNING, "No session for {0}, ignoring room presence", context.getFullJid());
+            return context;
+        }
+
+        if (type == null) {
+            mucService.join(to, session);
+        } else if ("unavailable".equals(type)) {
+            mucService.leave(to, context.getFullJid());
+        }
+        return context;
+    }
+}
@@ -26,8 +26,7 @@ public class DefaultSaslHandlerTest {
     }
 
     private ClientContext createContext(XMLStreamWriter writer) {
-        Set<String> connectedUsernames = Collections.synchronizedSet(new HashSet<>());
-        return new ClientContext(ClientState.WAITING_FOR_AUTH, writer, new ConcurrentHashMap<>(), connectedUsernames);
+        return new ClientContext(ClientState.WAITING_FOR_AUTH, writer, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
     }
 
     @Test
@@ -28,21 +28,6 @@ public class DefaultStreamHandler implements XmppStreamHandler {
 
         XMLStreamWriter xmlWriter = context.getXmlWriter();
 
-        // Check for duplicate connections before proceeding
-        String username = context.getUsername();
-        if (isUserAlreadyConnected(context, username)) {
-            logger.log(Level.WARNING, "User {0} attempted duplicate connection, rejecting with 409 Conflict", username);
-            xmlWriter.writeStartElement("error");
-            xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_STREAM);
-            xmlWriter.writeStartElement("conflict");
-            xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_STREAMS);
-            xmlWriter.writeEndElement();
-            xmlWriter.writeEndElement();
-            xmlWriter.flush();
-            context.setState(ClientState.CLOSED);
-            return context;
-        }
-
         // Send XML declaration and stream header
         xmlWriter.writeStartDocument("UTF-8", "1.0");
         xmlWriter.writeStartElement("stream", "stream", XmppServerConfig.NAMESPACE_STREAM);
@@ -79,10 +64,6 @@ public class DefaultStreamHandler implements XmppStreamHandler {
         return context;
     }
 
-    private boolean isUserAlreadyConnected(ClientContext context, String username) {
-        return context.getConnectedUsernames().contains(username);
-    }
-
     private void sendSaslFeatures(XMLStreamWriter xmlWriter) throws XMLStreamException {
         xmlWriter.writeStartElement("stream", "features", XmppServerConfig.NAMESPACE_STREAM);
         xmlWriter.writeStartElement("mechanisms");
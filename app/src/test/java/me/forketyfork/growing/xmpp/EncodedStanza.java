@@ -0,0 +1,177 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A stanza that has already been serialized to UTF-8 bytes.
+ * The same instance can be written to any number of client sessions,
+ * so a broadcast pays the serialization cost only once.
+ * Stanzas are encoded without a 'to' attribute, which RFC 6120 allows
+ * for stanzas delivered by the server to the connected client; forwarded stanzas keep theirs.
+ */
+public final class EncodedStanza {
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    private final byte[] bytes;
+
+    private EncodedStanza(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Wrap already serialized stanza characters.
+     */
+    public static EncodedStanza of(String xml) {
+        return new EncodedStanza(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encode a message stanza with a single body element.
+     */
+    public static EncodedStanza message(String from, String type, String body) throws XMLStreamException {
+        return encode(writer -> {
+            writer.writeStartElement("message");
+            if (from != null) {
+                writer.writeAttribute("from", from);
+            }
+            writer.writeAttribute("type", type);
+            writer.writeStartElement("body");
+            if (body != null) {
+                writer.writeCharacters(body);
+            }
+            writer.writeEndElement(); // body
+            writer.writeEndElement(); // message
+        });
+    }
+
+    /**
+     * Encode an arbitrary stanza written by the given content callback.
+     */
+    public static EncodedStanza encode(Content content) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+        content.writeTo(writer);
+        writer.flush();
+        writer.close();
+        return new EncodedStanza(out.toByteArray());
+    }
+
+    /**
+     * Forward a stanza as the client sent it, only its 'from' and 'to' attributes are replaced.
+     *
+     * @param namespaces prefixes the stanza uses but that were declared on the sender's stream,
+     *                   declared on the forwarded stanza with their namespaces
+     */
+    static EncodedStanza forward(StanzaFramer.RawStanza stanza, String from, String to,
+                                 Map<String, String> namespaces) {
+        byte[] bytes = stanza.bytes();
+        int length = stanza.length();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 128);
+        int position = 1;
+        while (!isEndOfName(bytes[position])) {
+            position++;
+        }
+        out.write(bytes, 0, position);
+        writeAttribute(out, "from", from);
+        writeAttribute(out, "to", to);
+        for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+            writeAttribute(out, "xmlns:" + namespace.getKey(), namespace.getValue());
+        }
+        // Copy the other attributes with the whitespace before them
+        while (true) {
+            int start = position;
+            while (isWhitespace(bytes[position])) {
+                position++;
+            }
+            if (bytes[position] == '/' || bytes[position] == '>') {
+                position = start;
+                break;
+            }
+            int nameStart = position;
+            while (bytes[position] != '=' && !isWhitespace(bytes[position])) {
+                position++;
+            }
+            int nameLength = position - nameStart;
+            while (bytes[position] != '"' && bytes[position] != '\'') {
+                position++;
+            }
+            byte quote = bytes[position++];
+            while (bytes[position] != quote) {
+                position++;
+            }
+            position++;
+            if (!isName(bytes, nameStart, nameLength, "from") && !isName(bytes, nameStart, nameLength, "to")) {
+                out.write(bytes, start, position - start);
+            }
+        }
+        out.write(bytes, position, length - position);
+        return new EncodedStanza(out.toByteArray());
+    }
+
+    private static boolean isName(byte[] bytes, int start, int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEndOfName(byte b) {
+        return isWhitespace(b) || b == '/' || b == '>';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static void writeAttribute(ByteArrayOutputStream out, String name, String value) {
+        StringBuilder attribute = new StringBuilder(name.length() + value.length() + 4);
+        attribute.append(' ').append(name).append("='");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> attribute.append("&amp;");
+                case '<' -> attribute.append("&lt;");
+                case '\'' -> attribute.append("&apos;");
+                default -> attribute.append(c);
+            }
+        }
+        out.writeBytes(attribute.append('\'').toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write the stanza bytes to the given stream without flushing it.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Callback that writes a single stanza to the encoding writer.
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,11 @@
+package me.forketyfork.growing.xmpp;
+
+/**
+ * The outcome of {@link SimpleXmppServer#handoffTo(SimpleXmppServer, long)}.
+ *
+ * @param adopted connections the successor serves
+ * @param closed  connections that didn't reach a safe point within the time allowed, they are closed
+ * @param pauseMs milliseconds during which no client was served and no new client accepted
+ */
+public record HandoffReport(int adopted, int closed, long pauseMs) {
+}
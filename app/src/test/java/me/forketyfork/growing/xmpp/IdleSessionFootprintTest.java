@@ -0,0 +1,153 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures what an idle authenticated session costs the {@link SimpleXmppServer}: heap bytes and platform threads.
+ * The clients are {@link RawXmppClient}s on loopback sockets. What the same number of clients' ends of loopback
+ * sockets with their pipes costs without a server is measured the same way and subtracted, which leaves
+ * the server's share.
+ * <p>
+ * Heap deltas after {@code System.gc()} vary between runs, collectors and JDKs, and include the holes the collector
+ * fills, so the budget is the measured share with a tolerance. What's left per session is the session state,
+ * its thread and the server's end of the socket.
+ */
+public class IdleSessionFootprintTest {
+
+    private static final Logger logger = Logger.getLogger("IdleSessionFootprintTest");
+
+    private static final int SESSIONS = 2_000;
+    private static final int PIPE_SIZE = 1024;
+    private static final long IDLE_MS = 2_000;
+    // About 7.5 KB measured, plus a third for the variation between runs and JDKs: 100k sessions take about 750 MB,
+    // not the few hundred aimed at
+    private static final long SERVER_BYTES_PER_SESSION_BUDGET = 10 * 1024;
+
+    private SimpleXmppServer server;
+    private final List<RawXmppClient> clients = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        for (RawXmppClient client : clients) {
+            client.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return heap bytes per client's end of a loopback socket with its pipes and a client buffer, without a server
+     */
+    private static long bytesPerClientSocket() throws Exception {
+        List<Object> ends = new ArrayList<>();
+        // Nobody keeps the server's end, it is part of the server's share
+        LoopbackSocketFactory factory = new LoopbackSocketFactory(serverEnd -> {
+        }, PIPE_SIZE);
+        long heapBefore = usedHeapAfterGc();
+        for (int i = 0; i < SESSIONS; i++) {
+            ends.add(factory.createSocket("localhost", 5222));
+            // Like the buffer of a RawXmppClient
+            ends.add(new byte[1024]);
+        }
+        long heapAfter = usedHeapAfterGc();
+        long bytes = (heapAfter - heapBefore) / SESSIONS;
+        for (Object end : ends) {
+            if (end instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+        return bytes;
+    }
+
+    @Test
+    public void keepsIdleAuthenticatedSessionsWithinTheirBudget() throws Exception {
+        long clientBytesPerSession = bytesPerClientSocket();
+
+        server = new SimpleXmppServer(XmppServerConfig.builder()
+                .port(freePort())
+                .maxConnections(SESSIONS + 1)
+                // Idle clients wake up often, so they soon release their parsers and writers
+                .socketTimeoutMs(100)
+                .build());
+        server.start();
+        LoopbackSocketFactory factory = new LoopbackSocketFactory(server::acceptLoopback, PIPE_SIZE);
+        // Warms up the classes, pools and handlers shared by all sessions
+        clients.add(RawXmppClient.login(factory, "warm-up"));
+        Thread.sleep(IDLE_MS);
+
+        long heapBefore = usedHeapAfterGc();
+        int platformThreadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        for (int i = 0; i < SESSIONS; i++) {
+            clients.add(RawXmppClient.login(factory, "sniper-" + i));
+        }
+        // Idle for longer than a client keeps its parser and writer
+        Thread.sleep(IDLE_MS);
+        long heapAfter = usedHeapAfterGc();
+        int platformThreads = ManagementFactory.getThreadMXBean().getThreadCount() - platformThreadsBefore;
+
+        long bytesPerSession = (heapAfter - heapBefore) / SESSIONS;
+        long serverBytesPerSession = bytesPerSession - clientBytesPerSession;
+        logger.log(Level.INFO, "{0} heap bytes per idle authenticated session, {1} without the clients and "
+                        + "their sockets, {2} platform threads for {3} sessions",
+                new Object[]{bytesPerSession, serverBytesPerSession, platformThreads, SESSIONS});
+        assertTrue(serverBytesPerSession < SERVER_BYTES_PER_SESSION_BUDGET,
+                serverBytesPerSession + " bytes per session, budget " + SERVER_BYTES_PER_SESSION_BUDGET);
+        assertTrue(platformThreads < SESSIONS / 100, platformThreads + " platform threads for " + SESSIONS + " sessions");
+    }
+
+    @Test
+    public void keepsServingSessionsAfterReleasingTheirParserAndWriter() throws Exception {
+        server = new SimpleXmppServer(XmppServerConfig.builder()
+                .port(freePort())
+                .socketTimeoutMs(100)
+                .build());
+        server.start();
+        LoopbackSocketFactory factory = new LoopbackSocketFactory(server::acceptLoopback, PIPE_SIZE);
+        RawXmppClient auction = RawXmppClient.login(factory, "auction");
+        RawXmppClient sniper = RawXmppClient.login(factory, "sniper");
+        clients.add(auction);
+        clients.add(sniper);
+        // Both give their parser and writer back
+        Thread.sleep(IDLE_MS);
+
+        auction.send("<message to='sniper@localhost/auction' type='chat'>"
+                + "<body>SOLVersion: 1.1; Event: PRICE; CurrentPrice: 192; Increment: 7; Bidder: other;</body></message>");
+        String message = sniper.readUntil("</message>");
+        assertTrue(message.contains("auction@localhost/auction"), message);
+        assertTrue(message.contains("CurrentPrice: 192;"), message);
+
+        Thread.sleep(IDLE_MS);
+        // Both streams the client opened during the login are closed by the server
+        sniper.send("</stream:stream>");
+        String end = sniper.readToEnd();
+        assertEquals("</stream:stream></stream:stream>", end.strip());
+    }
+}
@@ -0,0 +1,180 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded in-memory byte stream from one {@link LoopbackSocket} to its peer.
+ * <p>
+ * A write of at most the capacity is copied in one piece, so the reader never sees half of a stanza
+ * that was written at once. The reader can be woken up while it waits for data, it then gets
+ * a {@link SocketTimeoutException} just like after the socket timeout.
+ */
+final class LoopbackPipe {
+
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+    private int readPosition;
+    private int size;
+    private boolean writerClosed;
+    private boolean readerClosed;
+    private boolean reset;
+    private boolean wakeUpPending;
+
+    LoopbackPipe(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got: " + capacity);
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * @param timeoutMs how long to wait for data, 0 to wait forever
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    int read(byte[] destination, int offset, int length, int timeoutMs) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (true) {
+                if (reset) {
+                    throw new SocketException("Connection reset");
+                }
+                if (readerClosed) {
+                    throw new SocketException("Socket closed");
+                }
+                if (size > 0) {
+                    break;
+                }
+                if (writerClosed) {
+                    return -1;
+                }
+                if (wakeUpPending) {
+                    wakeUpPending = false;
+                    throw new SocketTimeoutException("Woken up");
+                }
+                if (timeoutMs == 0) {
+                    readable.await();
+                } else if (remainingNanos <= 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                } else {
+                    remainingNanos = readable.awaitNanos(remainingNanos);
+                }
+            }
+            int count = Math.min(length, size);
+            int first = Math.min(count, buffer.length - readPosition);
+            System.arraycopy(buffer, readPosition, destination, offset, first);
+            System.arraycopy(buffer, 0, destination, offset + first, count - first);
+            readPosition = (readPosition + count) % buffer.length;
+            size -= count;
+            // The reader is about to handle what it got, an earlier wake-up is served by that
+            wakeUpPending = false;
+            writable.signalAll();
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void write(byte[] source, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            while (length > 0) {
+                int chunk = Math.min(length, buffer.length);
+                while (!reset && !readerClosed && !writerClosed && buffer.length - size < chunk) {
+                    writable.await();
+                }
+                if (reset) {
+                    throw new SocketException("Connection reset");
+                }
+                if (writerClosed) {
+                    throw new SocketException("Socket closed");
+                }
+                if (readerClosed) {
+                    throw new SocketException("Broken pipe");
+                }
+                int writePosition = (readPosition + size) % buffer.length;
+                int first = Math.min(chunk, buffer.length - writePosition);
+                System.arraycopy(source, offset, buffer, writePosition, first);
+                System.arraycopy(source, offset + first, buffer, 0, chunk - first);
+                size += chunk;
+                offset += chunk;
+                length -= chunk;
+                readable.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int available() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The reader gets the rest of the data and then the end of the stream.
+     */
+    void closeWriter() {
+        update(() -> writerClosed = true);
+    }
+
+    /**
+     * The data is discarded, the writer fails from now on.
+     */
+    void closeReader() {
+        update(() -> readerClosed = true);
+    }
+
+    /**
+     * Fail both ends at once, like a TCP reset.
+     */
+    void reset() {
+        update(() -> reset = true);
+    }
+
+    /**
+     * Make a reader waiting for data return with a {@link SocketTimeoutException}, or the next one if none is waiting.
+     */
+    void wakeUpReader() {
+        // Called for every message queued to a client, so without the allocation of a lambda
+        lock.lock();
+        try {
+            wakeUpPending = true;
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(Runnable change) {
+        lock.lock();
+        try {
+            change.run();
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
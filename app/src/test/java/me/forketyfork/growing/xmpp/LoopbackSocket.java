@@ -0,0 +1,318 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+/**
+ * A socket connected to its peer in the same JVM through two {@link LoopbackPipe}s, without the network stack.
+ * <p>
+ * A client end is created unconnected, as Smack expects from a socket factory; connecting creates
+ * the server end and hands it to the {@link Acceptor}, e.g. {@link SimpleXmppServer#acceptLoopback(LoopbackSocket)}.
+ * Closing an end closes both directions for it, the peer reads the end of the stream.
+ * Closing with a zero linger timeout resets the connection, and the peer fails like after a TCP reset.
+ */
+public class LoopbackSocket extends Socket {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Takes the server end of a new loopback connection.
+     */
+    @FunctionalInterface
+    public interface Acceptor {
+        void accept(LoopbackSocket serverEnd) throws IOException;
+    }
+
+    private final Acceptor acceptor;
+    private final int bufferSize;
+    private volatile LoopbackPipe input;
+    private volatile LoopbackPipe output;
+    private volatile InetSocketAddress remoteAddress;
+    private volatile boolean closed;
+    private volatile boolean inputShutdown;
+    private volatile boolean outputShutdown;
+    private volatile int soTimeoutMs;
+    private volatile boolean resetOnClose;
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (inputShutdown) {
+                return -1;
+            }
+            return connectedInput().read(b, off, len, soTimeoutMs);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inputShutdown ? 0 : connectedInput().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            LoopbackSocket.this.close();
+        }
+    };
+
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (outputShutdown) {
+                throw new SocketException("Socket output is shut down");
+            }
+            connectedOutput().write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            LoopbackSocket.this.close();
+        }
+    };
+
+    /**
+     * An unconnected client end.
+     */
+    public LoopbackSocket(Acceptor acceptor, int bufferSize) {
+        this.acceptor = acceptor;
+        this.bufferSize = bufferSize;
+    }
+
+    private LoopbackSocket(LoopbackPipe input, LoopbackPipe output, InetSocketAddress remoteAddress) {
+        this.acceptor = null;
+        this.bufferSize = 0;
+        this.input = input;
+        this.output = output;
+        this.remoteAddress = remoteAddress;
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint) throws IOException {
+        connect(endpoint, 0);
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint, int timeout) throws IOException {
+        if (closed) {
+            throw new SocketException("Socket is closed");
+        }
+        if (isConnected()) {
+            throw new SocketException("Already connected");
+        }
+        if (acceptor == null) {
+            throw new SocketException("A server end can't connect");
+        }
+        InetSocketAddress address = endpoint instanceof InetSocketAddress inet
+                ? inet : new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        LoopbackPipe toServer = new LoopbackPipe(bufferSize);
+        LoopbackPipe toClient = new LoopbackPipe(bufferSize);
+        LoopbackSocket serverEnd = new LoopbackSocket(toServer, toClient,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        input = toClient;
+        output = toServer;
+        remoteAddress = address;
+        try {
+            acceptor.accept(serverEnd);
+        } catch (IOException e) {
+            serverEnd.close();
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Make a read waiting for data return with a {@link java.net.SocketTimeoutException}, so the reading thread
+     * can do other work, e.g. deliver queued messages, without waiting for the socket timeout.
+     */
+    public void wakeUpInput() {
+        LoopbackPipe current = input;
+        if (current != null) {
+            current.wakeUpReader();
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        connectedInput();
+        return inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        connectedOutput();
+        return outputStream;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LoopbackPipe in = input;
+        LoopbackPipe out = output;
+        if (in == null || out == null) {
+            return;
+        }
+        if (resetOnClose) {
+            in.reset();
+            out.reset();
+        } else {
+            in.closeReader();
+            out.closeWriter();
+        }
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        connectedInput().closeReader();
+        inputShutdown = true;
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        connectedOutput().closeWriter();
+        outputShutdown = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return input != null;
+    }
+
+    @Override
+    public boolean isBound() {
+        return isConnected();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return inputShutdown;
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return outputShutdown;
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout can't be negative");
+        }
+        soTimeoutMs = timeout;
+    }
+
+    @Override
+    public int getSoTimeout() {
+        return soTimeoutMs;
+    }
+
+    /**
+     * Only a zero linger timeout has an effect: closing then resets the connection.
+     */
+    @Override
+    public void setSoLinger(boolean on, int linger) {
+        resetOnClose = on && linger == 0;
+    }
+
+    @Override
+    public int getSoLinger() {
+        return resetOnClose ? 0 : -1;
+    }
+
+    @Override
+    public void setTcpNoDelay(boolean on) {
+        // Every write is delivered right away
+    }
+
+    @Override
+    public boolean getTcpNoDelay() {
+        return true;
+    }
+
+    @Override
+    public void setKeepAlive(boolean on) {
+        // There is no network between the ends
+    }
+
+    @Override
+    public boolean getKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        InetSocketAddress address = remoteAddress;
+        return address == null ? null : address.getAddress();
+    }
+
+    @Override
+    public int getPort() {
+        InetSocketAddress address = remoteAddress;
+        return address == null ? 0 : address.getPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return isConnected() ? 0 : -1;
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return isConnected() ? new InetSocketAddress(InetAddress.getLoopbackAddress(), 0) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackSocket[" + (acceptor == null ? "server end" : "client end")
+                + (closed ? ", closed" : isConnected() ? ", connected to " + remoteAddress : ", unconnected") + "]";
+    }
+
+    private LoopbackPipe connectedInput() throws SocketException {
+        LoopbackPipe current = input;
+        if (current == null) {
+            throw new SocketException("Socket is not connected");
+        }
+        return current;
+    }
+
+    private LoopbackPipe connectedOutput() throws SocketException {
+        LoopbackPipe current = output;
+        if (current == null) {
+            throw new SocketException("Socket is not connected");
+        }
+        return current;
+    }
+}
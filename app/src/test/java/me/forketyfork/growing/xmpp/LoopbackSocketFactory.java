@@ -0,0 +1,58 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Creates {@link LoopbackSocket}s, for Smack connections to a server in the same JVM:
+ * {@code XMPPTCPConnectionConfiguration.builder().setSocketFactory(server.loopbackSocketFactory())}.
+ * The host and port of the connection configuration are only used for the socket's remote address.
+ */
+public class LoopbackSocketFactory extends SocketFactory {
+
+    private final LoopbackSocket.Acceptor acceptor;
+    private final int bufferSize;
+
+    public LoopbackSocketFactory(LoopbackSocket.Acceptor acceptor) {
+        this(acceptor, LoopbackSocket.DEFAULT_BUFFER_SIZE);
+    }
+
+    public LoopbackSocketFactory(LoopbackSocket.Acceptor acceptor, int bufferSize) {
+        this.acceptor = acceptor;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Socket createSocket() {
+        return new LoopbackSocket(acceptor, bufferSize);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return connected(new InetSocketAddress(address, port));
+    }
+
+    private Socket connected(InetSocketAddress address) throws IOException {
+        Socket socket = createSocket();
+        socket.connect(address);
+        return socket;
+    }
+}
@@ -0,0 +1,112 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoopbackSocketTest {
+
+    private final BlockingQueue<LoopbackSocket> accepted = new ArrayBlockingQueue<>(1);
+
+    private Socket connect(int bufferSize) throws Exception {
+        Socket client = new LoopbackSocketFactory(accepted::add, bufferSize).createSocket();
+        client.connect(new InetSocketAddress("localhost", 5222), 1000);
+        return client;
+    }
+
+    private LoopbackSocket serverEnd() throws InterruptedException {
+        LoopbackSocket server = accepted.poll(1, TimeUnit.SECONDS);
+        assertNotNull(server, "No server end accepted");
+        return server;
+    }
+
+    private static String read(InputStream in, int length) throws IOException {
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void carriesBytesBothWays() throws Exception {
+        Socket client = connect(16);
+        LoopbackSocket server = serverEnd();
+
+        client.getOutputStream().write("<stream:stream>".getBytes(StandardCharsets.UTF_8));
+        assertEquals("<stream:stream>", read(server.getInputStream(), 15));
+
+        // Longer than the buffer, the writer waits for the reader
+        String reply = "<stream:features><bind/></stream:features>";
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+            try {
+                server.getOutputStream().write(reply.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(reply, read(client.getInputStream(), reply.length()));
+        write.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void timesOutAndWakesUpAWaitingReader() throws Exception {
+        connect(1024);
+        LoopbackSocket server = serverEnd();
+        server.setSoTimeout(50);
+
+        assertThrows(SocketTimeoutException.class, () -> server.getInputStream().read());
+
+        server.setSoTimeout(10_000);
+        long start = System.nanoTime();
+        CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS).execute(server::wakeUpInput);
+        assertThrows(SocketTimeoutException.class, () -> server.getInputStream().read());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000, "Not woken up");
+    }
+
+    @Test
+    public void peerReadsTheRestAndThenTheEndOfTheStreamAfterClose() throws Exception {
+        Socket client = connect(1024);
+        LoopbackSocket server = serverEnd();
+
+        client.getOutputStream().write("</stream:stream>".getBytes(StandardCharsets.UTF_8));
+        client.close();
+
+        assertTrue(client.isClosed());
+        assertEquals("</stream:stream>", read(server.getInputStream(), 16));
+        assertEquals(-1, server.getInputStream().read());
+        assertThrows(SocketException.class, () -> server.getOutputStream().write(1));
+    }
+
+    @Test
+    public void zeroLingerCloseResetsTheConnection() throws Exception {
+        Socket client = connect(1024);
+        LoopbackSocket server = serverEnd();
+        server.getOutputStream().write(1);
+
+        server.setSoLinger(true, 0);
+        server.close();
+
+        SocketException e = assertThrows(SocketException.class, () -> client.getInputStream().read());
+        assertEquals("Connection reset", e.getMessage());
+    }
+
+    @Test
+    public void failsToConnectWhenTheServerRejects() throws Exception {
+        Socket client = new LoopbackSocketFactory(serverEnd -> {
+            throw new ConnectException("Connection limit reached");
+        }).createSocket();
+
+        assertThrows(ConnectException.class, () -> client.connect(new InetSocketAddress("localhost", 5222)));
+        assertTrue(client.isClosed());
+    }
+}
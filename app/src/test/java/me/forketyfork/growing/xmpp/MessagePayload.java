@@ -0,0 +1,70 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A text-only extension element of a message, such as a binary SOL payload, forwarded to the recipient as received.
+ */
+public record MessagePayload(String name, String namespace, Map<String, String> attributes, String text) {
+
+    /**
+     * Read the element the reader is positioned at, leaving the reader at its end element.
+     * @return the payload, or null if the element has child elements and can't be forwarded
+     */
+    public static MessagePayload read(XMLStreamReader xmlReader) throws XMLStreamException {
+        String name = xmlReader.getLocalName();
+        String namespace = xmlReader.getNamespaceURI();
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+            attributes.put(xmlReader.getAttributeLocalName(i), xmlReader.getAttributeValue(i));
+        }
+
+        StringBuilder text = new StringBuilder();
+        return readText(xmlReader, text) ? new MessagePayload(name, namespace, attributes, text.toString()) : null;
+    }
+
+    /**
+     * Read the text of the element the reader is positioned at and of its descendants, skipping their markup,
+     * leaving the reader at its end element. Unlike {@link XMLStreamReader#getElementText()} it doesn't fail
+     * on child elements.
+     * @return true if the element has no child elements
+     */
+    public static boolean readText(XMLStreamReader xmlReader, StringBuilder text) throws XMLStreamException {
+        boolean textOnly = true;
+        int depth = 1;
+        while (depth > 0) {
+            int event = xmlReader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    depth++;
+                    textOnly = false;
+                }
+                case XMLStreamConstants.END_ELEMENT -> depth--;
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        text.append(xmlReader.getText());
+                default -> {
+                }
+            }
+        }
+        return textOnly;
+    }
+
+    public void writeTo(XMLStreamWriter xmlWriter) throws XMLStreamException {
+        xmlWriter.writeStartElement(name);
+        if (namespace != null && !namespace.isEmpty()) {
+            xmlWriter.writeAttribute("xmlns", namespace);
+        }
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            xmlWriter.writeAttribute(attribute.getKey(), attribute.getValue());
+        }
+        if (!text.isEmpty()) {
+            xmlWriter.writeCharacters(text);
+        }
+        xmlWriter.writeEndElement();
+    }
+}
@@ -0,0 +1,187 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Minimal multi-user chat service (XEP-0045 subset) hosting one room per auction item.
+ * Rooms are created on the first join. A groupchat message is encoded once and the
+ * resulting bytes are queued to every occupant's session.
+ */
+public class MultiUserChatService {
+
+    private static final Logger logger = Logger.getLogger("MultiUserChatService");
+
+    private final String domain;
+    private final ConcurrentHashMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<ChatRoom>> roomsByOccupant = new ConcurrentHashMap<>();
+
+    public MultiUserChatService(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Check whether the address (bare or with a nickname) belongs to this service.
+     */
+    public boolean isRoomAddress(String jid) {
+        if (jid == null) {
+            return false;
+        }
+        int at = jid.indexOf('@');
+        if (at < 0) {
+            return false;
+        }
+        int slash = jid.indexOf('/', at);
+        int domainEnd = slash >= 0 ? slash : jid.length();
+        return jid.regionMatches(true, at + 1, domain, 0, domain.length()) && domainEnd - at - 1 == domain.length();
+    }
+
+    public ChatRoom getRoom(String roomJid) {
+        return rooms.get(bareJid(roomJid));
+    }
+
+    /**
+     * Join the client to the room addressed by {@code roomJidWithNick}, creating the room if needed.
+     */
+    public void join(String roomJidWithNick, ClientSession session) throws XMLStreamException {
+        String roomJid = bareJid(roomJidWithNick);
+        String nick = nick(roomJidWithNick);
+        if (nick == null || nick.isEmpty()) {
+            session.queueStanza(presenceError(roomJidWithNick, "modify", "jid-malformed"));
+            return;
+        }
+
+        ChatRoom room = rooms.computeIfAbsent(roomJid, ChatRoom::new);
+        String occupantJid = roomJid + "/" + nick;
+        ChatRoom.Occupant occupant = new ChatRoom.Occupant(nick, session.getFullJid(), session,
+                occupantPresence(occupantJid, null, false));
+        if (!room.join(occupant)) {
+            logger.log(Level.INFO, "MUC: Nickname {0} is already taken in room {1}", new Object[]{nick, roomJid});
+            session.queueStanza(presenceError(occupantJid, "cancel", "conflict"));
+            return;
+        }
+        roomsByOccupant.computeIfAbsent(session.getFullJid(), jid -> ConcurrentHashMap.newKeySet()).add(room);
+
+        // Existing occupants' presence goes to the new occupant first, then the new presence to everybody else,
+        // and the self-presence with status 110 comes last as required by XEP-0045
+        for (ChatRoom.Occupant other : room.getOccupants()) {
+            if (other != occupant) {
+                session.queueStanza(other.presence());
+                other.session().queueStanza(occupant.presence());
+            }
+        }
+        session.queueStanza(occupantPresence(occupantJid, null, true));
+        logger.log(Level.INFO, "MUC: {0} joined room {1} as {2}", new Object[]{session.getFullJid(), roomJid, nick});
+    }
+
+    /**
+     * Remove the client from the room and notify the remaining occupants.
+     */
+    public void leave(String roomJid, String occupantFullJid) throws XMLStreamException {
+        ChatRoom room = rooms.get(bareJid(roomJid));
+        if (room == null) {
+            return;
+        }
+        ChatRoom.Occupant removed = room.leave(occupantFullJid);
+        if (removed == null) {
+            return;
+        }
+        Set<ChatRoom> joined = roomsByOccupant.get(occupantFullJid);
+        if (joined != null) {
+            joined.remove(room);
+        }
+        String occupantJid = room.getJid() + "/" + removed.nick();
+        room.broadcast(occupantPresence(occupantJid, "unavailable", false));
+        removed.session().queueStanza(occupantPresence(occupantJid, "unavailable", true));
+        logger.log(Level.INFO, "MUC: {0} left room {1}", new Object[]{occupantFullJid, room.getJid()});
+    }
+
+    /**
+     * Remove a disconnected client from every room it occupied.
+     */
+    public void leaveAll(String occupantFullJid) {
+        Set<ChatRoom> joined = roomsByOccupant.remove(occupantFullJid);
+        if (joined == null) {
+            return;
+        }
+        for (ChatRoom room : joined) {
+            ChatRoom.Occupant removed = room.leave(occupantFullJid);
+            if (removed != null) {
+                try {
+                    room.broadcast(occupantPresence(room.getJid() + "/" + removed.nick(), "unavailable", false));
+                } catch (XMLStreamException e) {
+                    logger.log(Level.WARNING, "Failed to encode unavailable presence for " + occupantFullJid, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode the groupchat message once and queue it to every occupant of the room, including the sender.
+     * @return false if the sender isn't an occupant of the room
+     */
+    public boolean broadcast(String roomJid, String senderFullJid, String body) throws XMLStreamException {
+        ChatRoom room = rooms.get(bareJid(roomJid));
+        ChatRoom.Occupant sender = room == null ? null : room.findByJid(senderFullJid);
+        if (sender == null) {
+            return false;
+        }
+        EncodedStanza stanza = EncodedStanza.message(room.getJid() + "/" + sender.nick(), "groupchat", body);
+        int recipients = room.broadcast(stanza);
+        logger.log(Level.FINE, "MUC: Broadcast {0} bytes from {1} to {2} occupants of {3}",
+                new Object[]{stanza.length(), senderFullJid, recipients, room.getJid()});
+        return true;
+    }
+
+    private static EncodedStanza occupantPresence(String occupantJid, String type, boolean self) throws XMLStreamException {
+        return EncodedStanza.encode(writer -> {
+            writer.writeStartElement("presence");
+            writer.writeAttribute("from", occupantJid);
+            if (type != null) {
+                writer.writeAttribute("type", type);
+            }
+            writer.writeStartElement("x");
+            writer.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_MUC_USER);
+            writer.writeEmptyElement("item");
+            writer.writeAttribute("affiliation", "none");
+            writer.writeAttribute("role", "unavailable".equals(type) ? "none" : "participant");
+            if (self) {
+                writer.writeEmptyElement("status");
+                writer.writeAttribute("code", "110");
+            }
+            writer.writeEndElement(); // x
+            writer.writeEndElement(); // presence
+        });
+    }
+
+    private static EncodedStanza presenceError(String from, String errorType, String condition) throws XMLStreamException {
+        return EncodedStanza.encode(writer -> {
+            writer.writeStartElement("presence");
+            writer.writeAttribute("from", from);
+            writer.writeAttribute("type", "error");
+            writer.writeStartElement("error");
+            writer.writeAttribute("type", errorType);
+            writer.writeEmptyElement(condition);
+            writer.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_STANZAS);
+            writer.writeEndElement(); // error
+            writer.writeEndElement(); // presence
+        });
+    }
+
+    private static String bareJid(String jid) {
+        int slash = jid.indexOf('/');
+        return slash >= 0 ? jid.substring(0, slash) : jid;
+    }
+
+    private static String nick(String jid) {
+        int slash = jid.indexOf('/');
+        return slash >= 0 ? jid.substring(slash + 1) : null;
+    }
+}
@@ -0,0 +1,113 @@
+package me.forketyfork.growing.xmpp;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A publish-subscribe node keeping the last published notification.
+ * Subscribing appends to a shared array and publishes a new immutable view of it,
+ * so the fan-out on publish iterates a snapshot without locking or allocating.
+ */
+public class PubSubNode {
+
+    private final String id;
+    private final Object subscriptionLock = new Object();
+    // Guarded by subscriptionLock, only used to make subscribe idempotent
+    private final Map<ClientSession, PubSubSubscription> subscriptionsBySession = new IdentityHashMap<>();
+    private volatile Subscriptions subscriptions = new Subscriptions(new PubSubSubscription[16], 0);
+    private volatile EncodedStanza lastNotification;
+    private volatile String lastItemId;
+
+    /**
+     * A view of the first {@code count} entries of the array; entries below count never change.
+     */
+    private record Subscriptions(PubSubSubscription[] array, int count) {
+    }
+
+    public PubSubNode(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the notification for the last published item, or null if nothing was published yet
+     */
+    public EncodedStanza getLastNotification() {
+        return lastNotification;
+    }
+
+    public String getLastItemId() {
+        return lastItemId;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.count();
+    }
+
+    public PubSubSubscription subscribe(ClientSession session) {
+        synchronized (subscriptionLock) {
+            PubSubSubscription existing = subscriptionsBySession.get(session);
+            if (existing != null) {
+                return existing;
+            }
+            Subscriptions current = subscriptions;
+            PubSubSubscription subscription = new PubSubSubscription(this, session);
+            subscriptionsBySession.put(session, subscription);
+            PubSubSubscription[] array = current.array();
+            if (current.count() == array.length) {
+                PubSubSubscription[] grown = new PubSubSubscription[array.length * 2];
+                System.arraycopy(array, 0, grown, 0, current.count());
+                array = grown;
+            }
+            array[current.count()] = subscription;
+            subscriptions = new Subscriptions(array, current.count() + 1);
+            return subscription;
+        }
+    }
+
+    /**
+     * @return the cancelled subscription or null if the session wasn't subscribed
+     */
+    public PubSubSubscription unsubscribe(ClientSession session) {
+        synchronized (subscriptionLock) {
+            if (subscriptionsBySession.remove(session) == null) {
+                return null;
+            }
+            Subscriptions current = subscriptions;
+            PubSubSubscription[] array = current.array();
+            for (int i = 0; i < current.count(); i++) {
+                if (array[i].getSession() == session) {
+                    PubSubSubscription removed = array[i];
+                    // Copy instead of shifting in place, concurrent publishers may still iterate the old view
+                    PubSubSubscription[] compacted = new PubSubSubscription[array.length];
+                    System.arraycopy(array, 0, compacted, 0, i);
+                    System.arraycopy(array, i + 1, compacted, i, current.count() - i - 1);
+                    subscriptions = new Subscriptions(compacted, current.count() - 1);
+                    removed.cancel();
+                    return removed;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Store the notification as the last item and schedule it for every subscriber.
+     * Subscribers that haven't received the previous notification yet only get the latest one.
+     * @return the number of subscribers
+     */
+    public int publish(String itemId, EncodedStanza notification) {
+        lastItemId = itemId;
+        lastNotification = notification;
+        Subscriptions current = subscriptions;
+        PubSubSubscription[] array = current.array();
+        int count = current.count();
+        for (int i = 0; i < count; i++) {
+            array[i].notifySubscriber();
+        }
+        return count;
+    }
+}
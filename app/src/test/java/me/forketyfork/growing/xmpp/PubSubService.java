@@ -0,0 +1,220 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Minimal publish-subscribe service (XEP-0060 subset) with one node per auction item.
+ * Nodes are created on the first subscribe or publish. Only the auction account of the item
+ * may publish to its node. Every publish is encoded once into a notification that is cached
+ * as the node's last item and delivered to new subscribers right after they subscribe.
+ */
+public class PubSubService implements XmppIqHandler {
+
+    private static final Logger logger = Logger.getLogger("PubSubService");
+
+    // Login of the account allowed to publish to a node, same as the auction login of the item
+    public static final String PUBLISHER_LOGIN_FORMAT = "auction-%s";
+
+    private final String domain;
+    private final ConcurrentHashMap<String, PubSubNode> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<PubSubSubscription>> subscriptionsByJid = new ConcurrentHashMap<>();
+    private final AtomicLong itemIds = new AtomicLong();
+
+    public PubSubService(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public PubSubNode getNode(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    @Override
+    public ClientContext handleIqStanza(XMLStreamReader xmlReader, ClientContext context) throws XMLStreamException {
+        String type = xmlReader.getAttributeValue(null, "type");
+        String id = xmlReader.getAttributeValue(null, "id");
+        if (id == null || id.isEmpty()) id = "response";
+
+        String action = null;
+        String nodeId = null;
+        String itemId = null;
+        MessagePayload payload = null;
+        boolean payloadRejected = false;
+
+        int depth = 1;
+        while (xmlReader.hasNext() && depth > 0) {
+            int event = xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String localName = xmlReader.getLocalName();
+                if (depth == 3 && ("subscribe".equals(localName) || "unsubscribe".equals(localName)
+                        || "publish".equals(localName))) {
+                    action = localName;
+                    nodeId = xmlReader.getAttributeValue(null, "node");
+                } else if (depth == 4 && "item".equals(localName)) {
+                    itemId = xmlReader.getAttributeValue(null, "id");
+                } else if (depth == 5 && payload == null && !payloadRejected) {
+                    // Null if the payload has child elements, the item is then rejected
+                    payload = MessagePayload.read(xmlReader);
+                    payloadRejected = payload == null;
+                    depth--; // read() positions reader at END_ELEMENT
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        logger.log(Level.FINE, "PUBSUB: {0} node {1} from {2}", new Object[]{action, nodeId, context.getFullJid()});
+        XMLStreamWriter xmlWriter = context.getXmlWriter();
+        ClientSession session = context.getFullJid() == null ? null : context.findClientSession(context.getFullJid());
+        if (!"set".equals(type) || action == null || nodeId == null || nodeId.isEmpty() || session == null) {
+            sendError(xmlWriter, id, "modify", "bad-request");
+            return context;
+        }
+
+        switch (action) {
+            case "subscribe" -> subscribe(xmlWriter, id, nodeId, session);
+            case "unsubscribe" -> unsubscribe(xmlWriter, id, nodeId, session);
+            default -> publish(xmlWriter, id, nodeId, itemId, payload, context);
+        }
+        return context;
+    }
+
+    /**
+     * Cancel all subscriptions of a disconnected client.
+     */
+    public void unsubscribeAll(String fullJid) {
+        Set<PubSubSubscription> subscriptions = subscriptionsByJid.remove(fullJid);
+        if (subscriptions != null) {
+            for (PubSubSubscription subscription : subscriptions) {
+                subscription.getNode().unsubscribe(subscription.getSession());
+            }
+        }
+    }
+
+    private void subscribe(XMLStreamWriter xmlWriter, String id, String nodeId, ClientSession session) throws XMLStreamException {
+        PubSubNode node = nodes.computeIfAbsent(nodeId, PubSubNode::new);
+        PubSubSubscription subscription = node.subscribe(session);
+        subscriptionsByJid.computeIfAbsent(session.getFullJid(), jid -> ConcurrentHashMap.newKeySet()).add(subscription);
+
+        xmlWriter.writeStartElement("iq");
+        xmlWriter.writeAttribute("type", "result");
+        xmlWriter.writeAttribute("id", id);
+        xmlWriter.writeAttribute("from", domain);
+        xmlWriter.writeStartElement("pubsub");
+        xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_PUBSUB);
+        xmlWriter.writeEmptyElement("subscription");
+        xmlWriter.writeAttribute("node", nodeId);
+        xmlWriter.writeAttribute("jid", session.getFullJid());
+        xmlWriter.writeAttribute("subscription", "subscribed");
+        xmlWriter.writeEndElement(); // pubsub
+        xmlWriter.writeEndElement(); // iq
+        xmlWriter.flush();
+
+        // Deliver the cached last item, it is written after the result when the session processes its queue
+        subscription.notifySubscriber();
+        logger.log(Level.INFO, "PUBSUB: {0} subscribed to node {1}, {2} subscribers",
+                new Object[]{session.getFullJid(), nodeId, node.getSubscriberCount()});
+    }
+
+    private void unsubscribe(XMLStreamWriter xmlWriter, String id, String nodeId, ClientSession session) throws XMLStreamException {
+        PubSubNode node = nodes.get(nodeId);
+        PubSubSubscription removed = node == null ? null : node.unsubscribe(session);
+        if (removed == null) {
+            sendError(xmlWriter, id, "cancel", "unexpected-request");
+            return;
+        }
+        Set<PubSubSubscription> subscriptions = subscriptionsByJid.get(session.getFullJid());
+        if (subscriptions != null) {
+            subscriptions.remove(removed);
+        }
+        sendEmptyResult(xmlWriter, id);
+        logger.log(Level.INFO, "PUBSUB: {0} unsubscribed from node {1}", new Object[]{session.getFullJid(), nodeId});
+    }
+
+    private void publish(XMLStreamWriter xmlWriter, String id, String nodeId, String itemId, MessagePayload payload,
+                         ClientContext context) throws XMLStreamException {
+        if (!String.format(PUBLISHER_LOGIN_FORMAT, nodeId).equals(context.getUsername())) {
+            logger.log(Level.WARNING, "PUBSUB: {0} is not allowed to publish to node {1}",
+                    new Object[]{context.getUsername(), nodeId});
+            sendError(xmlWriter, id, "auth", "forbidden");
+            return;
+        }
+        if (payload == null) {
+            sendError(xmlWriter, id, "modify", "bad-request");
+            return;
+        }
+        String actualItemId = itemId == null || itemId.isEmpty() ? Long.toString(itemIds.incrementAndGet()) : itemId;
+        PubSubNode node = nodes.computeIfAbsent(nodeId, PubSubNode::new);
+        int subscribers = node.publish(actualItemId, notification(nodeId, actualItemId, payload));
+
+        xmlWriter.writeStartElement("iq");
+        xmlWriter.writeAttribute("type", "result");
+        xmlWriter.writeAttribute("id", id);
+        xmlWriter.writeAttribute("from", domain);
+        xmlWriter.writeStartElement("pubsub");
+        xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_PUBSUB);
+        xmlWriter.writeStartElement("publish");
+        xmlWriter.writeAttribute("node", nodeId);
+        xmlWriter.writeEmptyElement("item");
+        xmlWriter.writeAttribute("id", actualItemId);
+        xmlWriter.writeEndElement(); // publish
+        xmlWriter.writeEndElement(); // pubsub
+        xmlWriter.writeEndElement(); // iq
+        xmlWriter.flush();
+        logger.log(Level.FINE, "PUBSUB: Published item {0} to node {1} for {2} subscribers",
+                new Object[]{actualItemId, nodeId, subscribers});
+    }
+
+    private EncodedStanza notification(String nodeId, String itemId, MessagePayload payload) throws XMLStreamException {
+        return EncodedStanza.encode(writer -> {
+            writer.writeStartElement("message");
+            writer.writeAttribute("from", domain);
+            writer.writeAttribute("type", "headline");
+            writer.writeStartElement("event");
+            writer.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_PUBSUB_EVENT);
+            writer.writeStartElement("items");
+            writer.writeAttribute("node", nodeId);
+            writer.writeStartElement("item");
+            writer.writeAttribute("id", itemId);
+            payload.writeTo(writer);
+            writer.writeEndElement(); // item
+            writer.writeEndElement(); // items
+            writer.writeEndElement(); // event
+            writer.writeEndElement(); // message
+        });
+    }
+
+    private void sendEmptyResult(XMLStreamWriter xmlWriter, String id) throws XMLStreamException {
+        xmlWriter.writeEmptyElement("iq");
+        xmlWriter.writeAttribute("type", "result");
+        xmlWriter.writeAttribute("id", id);
+        xmlWriter.writeAttribute("from", domain);
+        xmlWriter.flush();
+    }
+
+    private void sendError(XMLStreamWriter xmlWriter, String id, String errorType, String condition) throws XMLStreamException {
+        xmlWriter.writeStartElement("iq");
+        xmlWriter.writeAttribute("type", "error");
+        xmlWriter.writeAttribute("id", id);
+        xmlWriter.writeAttribute("from", domain);
+        xmlWriter.writeStartElement("error");
+        xmlWriter.writeAttribute("type", errorType);
+        xmlWriter.writeEmptyElement(condition);
+        xmlWriter.writeAttribute("xmlns", XmppServerConfig.NAMESPACE_STANZAS);
+        xmlWriter.writeEndElement(); // error
+        xmlWriter.writeEndElement(); // iq
+        xmlWriter.flush();
+    }
+}
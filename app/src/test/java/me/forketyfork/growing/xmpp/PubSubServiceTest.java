@@ -0,0 +1,157 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PubSubServiceTest {
+
+    private static final String PRICE = "SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1000; Increment: 98; Bidder: other;";
+
+    private final ConcurrentHashMap<String, ClientSession> registry = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<ClientSession>> accountSessions = new ConcurrentHashMap<>();
+    private final PubSubService service = new PubSubService("pubsub.localhost");
+
+    private ClientContext connect(String username, ByteArrayOutputStream out) throws Exception {
+        XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+        ClientContext context = new ClientContext(ClientState.PROCESSING_STANZAS, writer, out, registry, accountSessions);
+        context.setUsername(username);
+        context.setFullJid(username + "@localhost/res");
+        context.registerClient();
+        return context;
+    }
+
+    private void sendIq(ClientContext context, String payload) throws Exception {
+        String xml = "<iq type='set' id='1' to='pubsub.localhost'><pubsub xmlns='" + XmppServerConfig.NAMESPACE_PUBSUB
+                + "'>" + payload + "</pubsub></iq>";
+        XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+        reader.nextTag();
+        service.handleIqStanza(reader, context);
+        context.findClientSession(context.getFullJid()).processPendingMessages();
+    }
+
+    private static String publish(String node, String price) {
+        return "<publish node='" + node + "'><item><price xmlns='urn:xmpp:sol:0'>" + price + "</price></item></publish>";
+    }
+
+    @Test
+    public void deliversLastPublishedItemOnSubscribe() throws Exception {
+        ByteArrayOutputStream auctionOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream sniperOut = new ByteArrayOutputStream();
+        ClientContext auction = connect("auction-item-1", auctionOut);
+        ClientContext sniper = connect("sniper", sniperOut);
+
+        sendIq(auction, publish("item-1", PRICE));
+        sendIq(sniper, "<subscribe node='item-1' jid='sniper@localhost/res'/>");
+
+        String received = sniperOut.toString(StandardCharsets.UTF_8);
+        assertTrue(received.contains("subscription=\"subscribed\""));
+        assertTrue(received.contains("<items node=\"item-1\">"));
+        assertTrue(received.contains(PRICE));
+        assertTrue(received.indexOf("subscribed") < received.indexOf(PRICE), "Last item must follow the IQ result");
+    }
+
+    @Test
+    public void notifiesSubscribersOfNewItems() throws Exception {
+        ByteArrayOutputStream auctionOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream sniperOut = new ByteArrayOutputStream();
+        ClientContext auction = connect("auction-item-1", auctionOut);
+        ClientContext sniper = connect("sniper", sniperOut);
+
+        sendIq(sniper, "<subscribe node='item-1' jid='sniper@localhost/res'/>");
+        sendIq(auction, publish("item-1", PRICE));
+        sniper.findClientSession(sniper.getFullJid()).processPendingMessages();
+
+        assertTrue(sniperOut.toString(StandardCharsets.UTF_8).contains(PRICE));
+    }
+
+    @Test
+    public void rejectsPublishFromOtherAccounts() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientContext sniper = connect("sniper", out);
+
+        sendIq(sniper, publish("item-1", PRICE));
+
+        String received = out.toString(StandardCharsets.UTF_8);
+        assertTrue(received.contains("type=\"error\""));
+        assertTrue(received.contains("<forbidden"));
+        assertNull(service.getNode("item-1"));
+    }
+
+    @Test
+    public void rejectsPayloadsWithChildElementsAndKeepsTheSession() throws Exception {
+        ByteArrayOutputStream auctionOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream sniperOut = new ByteArrayOutputStream();
+        ClientContext auction = connect("auction-item-1", auctionOut);
+        ClientContext sniper = connect("sniper", sniperOut);
+
+        sendIq(sniper, "<subscribe node='item-1' jid='sniper@localhost/res'/>");
+        sendIq(auction, "<publish node='item-1'><item><price xmlns='urn:xmpp:sol:0'>1000<amount>1000</amount></price>"
+                + "</item></publish>");
+        assertTrue(auctionOut.toString(StandardCharsets.UTF_8).contains("<bad-request"));
+
+        sendIq(auction, publish("item-1", PRICE));
+        sniper.findClientSession(sniper.getFullJid()).processPendingMessages();
+        String received = sniperOut.toString(StandardCharsets.UTF_8);
+        assertTrue(received.contains(PRICE));
+        assertFalse(received.contains("<amount>"));
+    }
+
+    @Test
+    public void fansOutToManySubscribersWithoutPerSubscriberAllocation() throws Exception {
+        int subscriberCount = 100_000;
+        CountingOutputStream out = new CountingOutputStream();
+        XMLStreamWriter writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+        PubSubNode node = new PubSubNode("item-1");
+        List<ClientSession> sessions = new ArrayList<>(subscriberCount);
+        for (int i = 0; i < subscriberCount; i++) {
+            ClientSession session = new ClientSession("sniper" + i, "sniper" + i + "@localhost/res",
+                    "sniper" + i + "@localhost", writer, out);
+            node.subscribe(session);
+            sessions.add(session);
+        }
+        EncodedStanza first = EncodedStanza.of("<message><body>first</body></message>");
+        EncodedStanza second = EncodedStanza.of("<message><body>second</body></message>");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        node.publish("1", first);
+        node.publish("2", second);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        assertTrue(allocated < 64 * 1024, "Fan-out allocated " + allocated + " bytes for " + subscriberCount + " subscribers");
+
+        for (ClientSession session : sessions) {
+            assertTrue(session.hasPendingMessages());
+            session.processPendingMessages();
+        }
+        // Both publishes happened before delivery, so every subscriber only gets the latest item
+        assertEquals((long) subscriberCount * second.length(), out.count);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
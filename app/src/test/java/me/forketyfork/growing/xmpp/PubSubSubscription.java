@@ -0,0 +1,59 @@
+package me.forketyfork.growing.xmpp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A subscription of one client session to one publish-subscribe node.
+ * The subscription doubles as the entry of the session's pending notification list,
+ * so notifying a subscriber doesn't allocate anything.
+ */
+public class PubSubSubscription {
+
+    private final PubSubNode node;
+    private final ClientSession session;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    private volatile boolean cancelled;
+
+    // Link in the session's pending notification stack, owned by ClientSession
+    PubSubSubscription nextPending;
+    // Last notification written to the session, only accessed by the session's own thread
+    EncodedStanza lastDelivered;
+
+    public PubSubSubscription(PubSubNode node, ClientSession session) {
+        this.node = node;
+        this.session = session;
+    }
+
+    public PubSubNode getNode() {
+        return node;
+    }
+
+    public ClientSession getSession() {
+        return session;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Schedule delivery of the node's latest notification unless a delivery is already pending.
+     */
+    void notifySubscriber() {
+        if (!cancelled && pending.compareAndSet(false, true)) {
+            session.scheduleNotification(this);
+        }
+    }
+
+    /**
+     * Called by the session before it reads the latest notification,
+     * so a publish that happens afterward schedules the subscription again.
+     */
+    void clearPending() {
+        pending.set(false);
+    }
+}
@@ -0,0 +1,90 @@
+package me.forketyfork.growing.xmpp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that a message to a local client arrives as the bytes its sender wrote, with only 'from' and 'to' replaced.
+ */
+public class RawStanzaForwardingTest {
+
+    private SimpleXmppServer server;
+    private LoopbackSocketFactory factory;
+    private RawXmppClient auction;
+    private RawXmppClient sniper;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        server = new SimpleXmppServer(XmppServerConfig.builder().port(port).build());
+        server.start();
+        factory = new LoopbackSocketFactory(server::acceptLoopback, 4096);
+        sniper = RawXmppClient.login(factory, "sniper");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (auction != null) {
+            auction.close();
+        }
+        sniper.close();
+        server.stop();
+    }
+
+    @Test
+    public void forwardsExtensionsAsSentWithTheSenderAndRecipientReplaced() throws Exception {
+        auction = RawXmppClient.login(factory, "auction");
+        auction.send("<message from='someone@else' to='sniper@localhost' type='chat' id='price-1'>"
+                + "<body>SOLVersion: 1.1; Event: PRICE; CurrentPrice: 192; Increment: 7; Bidder: other;</body>"
+                + "<x xmlns='urn:test:auction'><item id='1'><price currency=\"EUR\">192</price></item></x>"
+                + "</message>");
+
+        assertEquals("<message from='auction@localhost/auction' to='sniper@localhost/auction' type='chat' id='price-1'>"
+                        + "<body>SOLVersion: 1.1; Event: PRICE; CurrentPrice: 192; Increment: 7; Bidder: other;</body>"
+                        + "<x xmlns='urn:test:auction'><item id='1'><price currency=\"EUR\">192</price></item></x>"
+                        + "</message>",
+                sniper.readUntil("</message>").strip());
+    }
+
+    @Test
+    public void findsTheEndOfAMessageThroughCommentsCdataAndQuotedMarkup() throws Exception {
+        auction = RawXmppClient.login(factory, "auction");
+        String first = "<message to='sniper@localhost/auction' title='a > b &amp; c'>"
+                + "<body><![CDATA[</message><message>]]></body><!-- </message> --><?note </message>?></message>";
+        String second = "<message to='sniper@localhost/auction'><body>second</body><empty/></message>";
+        // Both in one write, with a presence in between that isn't forwarded
+        auction.send(first + "<presence/>" + second);
+
+        String received = sniper.readUntil("<empty/></message>").strip();
+        assertEquals("<message from='auction@localhost/auction' to='sniper@localhost/auction'"
+                        + " title='a > b &amp; c'>"
+                        + "<body><![CDATA[</message><message>]]></body><!-- </message> --><?note </message>?></message>"
+                        + "<message from='auction@localhost/auction' to='sniper@localhost/auction'>"
+                        + "<body>second</body><empty/></message>",
+                received);
+    }
+
+    @Test
+    public void declaresThePrefixesTheSenderDeclaredOnItsStream() throws Exception {
+        auction = RawXmppClient.login(factory, "auction", RawXmppClient.STREAM_START.replace(
+                "version='1.0'>", "version='1.0' xmlns:sol='urn:test:sol'>"));
+        auction.send("<message to='sniper@localhost/auction' xml:lang='en'>"
+                + "<sol:event sol:type='PRICE' xmlns:own='urn:test:own'><own:price>192</own:price></sol:event>"
+                + "</message>");
+
+        assertEquals("<message from='auction@localhost/auction' to='sniper@localhost/auction'"
+                        + " xmlns:sol='urn:test:sol' xml:lang='en'>"
+                        + "<sol:event sol:type='PRICE' xmlns:own='urn:test:own'><own:price>192</own:price></sol:event>"
+                        + "</message>",
+                sniper.readUntil("</message>").strip());
+    }
+}
@@ -0,0 +1,93 @@
+package me.forketyfork.growing.xmpp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A client that logs in to a {@link SimpleXmppServer} over a loopback socket by hand and then sends and receives
+ * XML as text. Much lighter than a Smack connection, so a test can open thousands, and it shows the exact bytes.
+ */
+final class RawXmppClient implements Closeable {
+
+    static final String STREAM_START = "<stream:stream xmlns='jabber:client'"
+            + " xmlns:stream='http://etherx.jabber.org/streams' to='localhost' version='1.0'>";
+    static final String RESOURCE = "auction";
+
+    private final Socket socket;
+    private final byte[] buffer = new byte[1024];
+
+    private RawXmppClient(Socket socket) {
+        this.socket = socket;
+    }
+
+    static RawXmppClient login(LoopbackSocketFactory factory, String username) throws IOException {
+        return login(factory, username, STREAM_START);
+    }
+
+    /**
+     * Log in with SASL PLAIN and bind the {@link #RESOURCE} resource, opening both streams with the given start tag.
+     */
+    static RawXmppClient login(LoopbackSocketFactory factory, String username, String streamStart) throws IOException {
+        Socket socket = factory.createSocket("localhost", 5222);
+        socket.setSoTimeout(10_000);
+        RawXmppClient client = new RawXmppClient(socket);
+        String credentials = Base64.getEncoder().encodeToString(
+                ("\0" + username + "\0password").getBytes(StandardCharsets.UTF_8));
+        client.send(streamStart
+                + "<auth xmlns='urn:ietf:params:xml:ns:xmpp-sasl' mechanism='PLAIN'>" + credentials + "</auth>"
+                + streamStart
+                + "<iq type='set' id='bind-1'><bind xmlns='urn:ietf:params:xml:ns:xmpp-bind'>"
+                + "<resource>" + RESOURCE + "</resource></bind></iq>");
+        // Wait for the bound JID, the session is registered before the answer is written
+        client.readUntil("</iq>");
+        return client;
+    }
+
+    void send(String xml) throws IOException {
+        socket.getOutputStream().write(xml.getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    /**
+     * @return what was received until the given text
+     */
+    String readUntil(String end) throws IOException {
+        StringBuilder received = new StringBuilder();
+        while (received.indexOf(end) < 0) {
+            if (!read(received)) {
+                throw new IOException("Connection closed before " + end + ": " + received);
+            }
+        }
+        return received.toString();
+    }
+
+    /**
+     * @return what was received until the server closed the connection
+     */
+    String readToEnd() throws IOException {
+        StringBuilder received = new StringBuilder();
+        while (read(received)) {
+            // Until the end of the stream
+        }
+        return received.toString();
+    }
+
+    private boolean read(StringBuilder received) throws IOException {
+        InputStream input = socket.getInputStream();
+        int count = input.read(buffer);
+        if (count < 0) {
+            return false;
+        }
+        received.append(new String(buffer, 0, count, StandardCharsets.UTF_8));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
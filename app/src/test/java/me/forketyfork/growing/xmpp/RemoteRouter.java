@@ -0,0 +1,25 @@
+package me.forketyfork.growing.xmpp;
+
+/**
+ * Extension point for routing messages to clients connected to other server instances.
+ */
+public interface RemoteRouter {
+
+    /**
+     * Called when a client has bound its resource on this server.
+     * @param fullJid the full JID of the bound client
+     */
+    void sessionBound(String fullJid);
+
+    /**
+     * Called when a bound client has disconnected from this server and no other client of its account is left here.
+     * @param fullJid the full JID of the disconnected client
+     */
+    void sessionClosed(String fullJid);
+
+    /**
+     * Route a message whose recipient isn't connected to this server.
+     * @return true if the message was handed over for remote delivery
+     */
+    boolean routeMessage(String from, String to, String body);
+}
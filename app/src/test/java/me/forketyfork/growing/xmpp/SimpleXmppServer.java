@@ -1,15 +1,17 @@
 package me.forketyfork.growing.xmpp;
 
+import javax.net.SocketFactory;
 import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.net.ConnectException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,6 +28,12 @@ public class SimpleXmppServer {
 
     private final Logger logger = Logger.getLogger("SimpleXmppServer");
 
+    // The acceptor wakes up this often to notice a handoff without closing the listening socket
+    private static final int ACCEPT_POLL_INTERVAL_MS = 100;
+    // A client idle this long gives its parser and writer back until there is something to read or write,
+    // see ClientInput and ClientOutput
+    private static final long IDLE_RELEASE_MS = 1000;
+
     private final XmppServerConfig config;
     private ServerSocket serverSocket;
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -37,25 +45,39 @@ public class SimpleXmppServer {
         t.setDaemon(true);
         return t;
     });
-    private final ExecutorService clients = Executors.newCachedThreadPool(r -> {
-        Thread t = new Thread(r, "SimpleXmppServer-Client");
-        t.setDaemon(true);
-        return t;
-    });
+    // A virtual thread per client: a thread waiting for an idle client only keeps its small stack on the heap
+    private final ExecutorService clients = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("SimpleXmppServer-Client-", 0).factory());
 
     private final Set<Socket> openClients = Collections.synchronizedSet(new HashSet<>());
+    // Context of every client in its processing loop, by socket
+    private final ConcurrentHashMap<Socket, ClientContext> servedClients = new ConcurrentHashMap<>();
 
-    // Client session registry for message routing
-    private static final ConcurrentHashMap<String, ClientSession> clientRegistry = new ConcurrentHashMap<>();
+    // Client session registry for message routing, per server instance so that several servers can share a JVM
+    private final ConcurrentHashMap<String, ClientSession> clientRegistry = new ConcurrentHashMap<>();
 
-    // Set of connected usernames for efficient duplicate connection checking
-    private static final Set<String> connectedUsernames = Collections.synchronizedSet(new HashSet<>());
+    // The sessions of each account by bare JID, an account may bind several resources
+    private final ConcurrentHashMap<String, List<ClientSession>> accountSessions = new ConcurrentHashMap<>();
+
+    // Routes messages for clients connected to other server instances, e.g. cluster peers
+    private volatile RemoteRouter remoteRouter;
 
     // Handler interfaces for extensibility
     private final XmppStreamHandler streamHandler;
     private final XmppSaslHandler saslHandler;
     private final XmppIqHandler iqHandler;
-    private final XmppMessageHandler messageHandler;
+    private XmppMessageHandler messageHandler;
+    private XmppPresenceHandler presenceHandler;
+
+    // Not final: a successor server takes these over, together with rooms and subscriptions, during a handoff
+    private MultiUserChatService mucService;
+    private PubSubService pubSubService;
+
+    // Collects the connections of client loops that reached a safe point while a handoff is in progress
+    private volatile List<ClientConnection> handoffConnections;
+    // Set once the successor has adopted the collected connections, guarded by handoffConnections
+    private boolean handoffComplete;
+    private Future<?> acceptorTask;
 
     public SimpleXmppServer(int port) {
         this(new XmppServerConfig(port));
@@ -66,7 +88,75 @@ public class SimpleXmppServer {
         this.streamHandler = new DefaultStreamHandler(config);
         this.saslHandler = new DefaultSaslHandler(config.userCredentials());
         this.iqHandler = new DefaultIqHandler(config.serverName());
-        this.messageHandler = new DefaultMessageHandler();
+        installServices(new MultiUserChatService(config.mucDomain()), new PubSubService(config.pubSubDomain()));
+    }
+
+    private void installServices(MultiUserChatService mucService, PubSubService pubSubService) {
+        this.mucService = mucService;
+        this.pubSubService = pubSubService;
+        this.messageHandler = new DefaultMessageHandler(mucService);
+        this.presenceHandler = new DefaultPresenceHandler(mucService);
+    }
+
+    public XmppServerConfig getConfig() {
+        return config;
+    }
+
+    public void setRemoteRouter(RemoteRouter remoteRouter) {
+        this.remoteRouter = remoteRouter;
+    }
+
+    /**
+     * @return full JIDs of the clients currently bound on this server
+     */
+    public Set<String> getLocalFullJids() {
+        Set<String> fullJids = new HashSet<>();
+        for (ClientSession session : clientRegistry.values()) {
+            fullJids.add(session.getFullJid());
+        }
+        return fullJids;
+    }
+
+    /**
+     * Deliver a message to a client connected to this server, addressed by its full or bare JID.
+     * @return false if no such client is connected
+     */
+    public boolean deliverLocal(String from, String to, String body) {
+        ClientSession session = clientRegistry.get(to);
+        if (session == null) {
+            int resourceIndex = to.indexOf('/');
+            if (resourceIndex >= 0) {
+                session = clientRegistry.get(to.substring(0, resourceIndex));
+            }
+        }
+        if (session == null) {
+            return false;
+        }
+        session.queueMessage(from, DefaultMessageHandler.recipientJid(session, to), body);
+        return true;
+    }
+
+    /**
+     * Reset the connections of all clients logged in as the username, as if the network failed.
+     * The clients get no closing stream element, only a TCP reset.
+     * @return the number of connections dropped
+     */
+    public int dropConnections(String username) {
+        int dropped = 0;
+        for (var entry : servedClients.entrySet()) {
+            if (username.equals(entry.getValue().getUsername())) {
+                Socket socket = entry.getKey();
+                try {
+                    socket.setSoLinger(true, 0);
+                    socket.close();
+                    dropped++;
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Error dropping client socket", e);
+                }
+            }
+        }
+        logger.log(Level.INFO, "Dropped {0} connections of {1}", new Object[]{dropped, username});
+        return dropped;
     }
 
     public void start() throws IOException {
@@ -76,8 +166,40 @@ public class SimpleXmppServer {
             return;
         }
         serverSocket = new ServerSocket(config.port());
-        acceptor.submit(() -> {
-            while (running.get()) {
+        startAccepting();
+    }
+
+    /**
+     * Serve a client connected through an in-memory {@link LoopbackSocket} instead of TCP,
+     * with the same handlers as a TCP client. A loopback connection taken over by a successor server
+     * during a handoff keeps working, new ones have to use the successor's factory.
+     *
+     * @throws ConnectException if the server doesn't accept clients or has reached its connection limit
+     */
+    public void acceptLoopback(LoopbackSocket socket) throws IOException {
+        if (!running.get() || handoffConnections != null) {
+            throw new ConnectException("Server is not accepting connections");
+        }
+        if (activeConnections.get() >= config.maxConnections()) {
+            logger.log(Level.WARNING, "Connection limit reached, rejecting loopback client");
+            throw new ConnectException("Connection limit reached");
+        }
+        openClients.add(socket);
+        activeConnections.incrementAndGet();
+        clients.submit(() -> handleClient(socket));
+    }
+
+    /**
+     * @return a factory of sockets connected to this server in memory, see {@link #acceptLoopback(LoopbackSocket)}
+     */
+    public SocketFactory loopbackSocketFactory() {
+        return new LoopbackSocketFactory(this::acceptLoopback);
+    }
+
+    private void startAccepting() throws IOException {
+        serverSocket.setSoTimeout(ACCEPT_POLL_INTERVAL_MS);
+        acceptorTask = acceptor.submit(() -> {
+            while (running.get() && handoffConnections == null) {
                 try {
                     Socket socket = serverSocket.accept();
 
@@ -91,6 +213,8 @@ public class SimpleXmppServer {
                     openClients.add(socket);
                     activeConnections.incrementAndGet();
                     clients.submit(() -> handleClient(socket));
+                } catch (SocketTimeoutException e) {
+                    // No client to accept, check whether the server is still running
                 } catch (IOException e) {
                     if (running.get()) {
                         logger.log(Level.WARNING, "IOException occurred during socket processing", e);
@@ -100,6 +224,102 @@ public class SimpleXmppServer {
         });
     }
 
+    /**
+     * Hand the listening socket and all client connections over to a successor server instance in the same JVM,
+     * without disconnecting any client.
+     * <p>
+     * Client loops stop at the next safe point between XML events, which takes at most the socket timeout
+     * for an idle client. The successor then adopts the connections with their open XML streams,
+     * bound JIDs, queued messages, room occupancy and subscriptions, and starts serving them and
+     * accepting new clients. Clients waiting to connect meanwhile stay in the listen backlog.
+     * Connections that don't reach a safe point within {@code maxPauseMs} are closed.
+     * This server is stopped afterward.
+     * <p>
+     * The successor has to run in this JVM: the sockets, parsers and sessions are handed over as objects.
+     * Handing off to another process, e.g. a restarted server with a new build, is out of scope, it would
+     * need the socket descriptors passed over a Unix domain socket and the session state serialized.
+     * Restarting the process still disconnects every client. Clients stay connected during the handoff,
+     * but aren't served for the pause reported.
+     *
+     * @param successor  a server with the same configuration that hasn't been started
+     * @param maxPauseMs how long to wait for the client loops to reach a safe point
+     * @return the connections adopted and closed, and the pause
+     */
+    public HandoffReport handoffTo(SimpleXmppServer successor, long maxPauseMs) throws InterruptedException, IOException {
+        if (!running.get()) {
+            throw new IllegalStateException("Server is not running");
+        }
+        if (successor.running.getAndSet(true)) {
+            throw new IllegalStateException("Successor server is already running");
+        }
+        logger.info("HANDOFF: Handing off, active connections: " + activeConnections.get());
+        long pauseStart = System.nanoTime();
+        long deadline = pauseStart + TimeUnit.MILLISECONDS.toNanos(maxPauseMs);
+        List<ClientConnection> connections = Collections.synchronizedList(new ArrayList<>());
+        handoffConnections = connections;
+
+        // Wait for the acceptor and every client loop to reach a safe point
+        final long handoffPollIntervalMs = 1L;
+        while ((!acceptorTask.isDone() || activeConnections.get() > 0) && System.nanoTime() - deadline < 0) {
+            Thread.sleep(handoffPollIntervalMs);
+        }
+
+        successor.installServices(mucService, pubSubService);
+        successor.serverSocket = serverSocket;
+        serverSocket = null;
+        int closed = 0;
+        synchronized (connections) {
+            Set<Socket> adopted = new HashSet<>();
+            for (ClientConnection connection : connections) {
+                successor.adopt(connection);
+                adopted.add(connection.socket());
+            }
+            handoffComplete = true;
+            // The other connections are closed when their loop reaches a safe point, or when this server stops
+            synchronized (openClients) {
+                for (Socket socket : openClients) {
+                    if (!adopted.contains(socket)) {
+                        closed++;
+                    }
+                }
+            }
+        }
+        successor.startAccepting();
+        HandoffReport report = new HandoffReport(connections.size(), closed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pauseStart));
+        logger.log(closed > 0 ? Level.WARNING : Level.INFO,
+                "HANDOFF: Handed off {0} connections, closed {1} that missed the safe point, pause {2} ms",
+                new Object[]{report.adopted(), report.closed(), report.pauseMs()});
+
+        stop();
+        return report;
+    }
+
+    /**
+     * Collect the connection of a client loop that reached a safe point during a handoff, for the successor to adopt.
+     *
+     * @return false if the successor has already adopted the others, the connection has to be closed then
+     */
+    boolean handOffAtSafePoint(ClientConnection connection) {
+        List<ClientConnection> connections = handoffConnections;
+        synchronized (connections) {
+            if (handoffComplete) {
+                logger.log(Level.WARNING, "HANDOFF: Connection reached a safe point too late, closing it");
+                return false;
+            }
+            connections.add(connection);
+            return true;
+        }
+    }
+
+    private void adopt(ClientConnection connection) {
+        ClientContext context = connection.context().transferTo(clientRegistry, accountSessions, remoteRouter);
+        Socket socket = connection.socket();
+        openClients.add(socket);
+        activeConnections.incrementAndGet();
+        clients.submit(() -> serveClient(new ClientConnection(socket, connection.input(), connection.xmlWriter(), context)));
+    }
+
     public void stop() {
         if (!running.getAndSet(false)) return;
 
@@ -159,132 +379,168 @@ public class SimpleXmppServer {
 
     private void handleClient(Socket socket) {
         logger.info("Client connected");
-        try (socket) {
+        try {
             socket.setSoTimeout(config.socketTimeoutMs());
 
-            // Create an XML input factory and output factory
-            XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
-            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
-            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
-            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
-
-            XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-
-            // Create a streaming XML reader and writer for this client
-            try (InputStreamReader inputStreamReader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-                 OutputStreamWriter outputStreamWriter = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
-
-                XMLStreamReader xmlReader = inputFactory.createXMLStreamReader(inputStreamReader);
-                XMLStreamWriter xmlWriter = outputFactory.createXMLStreamWriter(outputStreamWriter);
+            // Create the XML input and output for this client, they are closed together with the socket;
+            // both only borrow their buffers while there is something to read or write
+            ClientInput input = new ClientInput(socket.getInputStream());
+            ClientOutput xmlWriter = new ClientOutput(socket.getOutputStream());
+
+            ClientContext context = new ClientContext(ClientState.WAITING_FOR_STREAM_START, xmlWriter,
+                    socket.getOutputStream(), clientRegistry, accountSessions);
+            context.setRemoteRouter(remoteRouter);
+            context.setInput(input);
+            if (socket instanceof LoopbackSocket loopback) {
+                // Messages queued for the client are written right away instead of after the socket timeout
+                context.setWakeUp(loopback::wakeUpInput);
+            }
+            serveClient(new ClientConnection(socket, input, xmlWriter, context));
+        } catch (IOException | XMLStreamException e) {
+            logger.log(Level.FINE, "Failed to set up client connection", e);
+            try {
+                socket.close();
+            } catch (IOException closeException) {
+                logger.log(Level.FINE, "Error closing client socket", closeException);
+            }
+            openClients.remove(socket);
+            activeConnections.decrementAndGet();
+        }
+    }
 
-                ClientContext context = null;
+    /**
+     * Run the processing loop of a client connection until the client leaves, the server stops,
+     * or the connection is handed off to a successor server.
+     */
+    private void serveClient(ClientConnection connection) {
+        Socket socket = connection.socket();
+        ClientInput input = connection.input();
+        ClientOutput xmlWriter = connection.xmlWriter();
+        ClientContext context = connection.context();
+        boolean handedOff = false;
+        servedClients.put(socket, context);
+        try {
+            // Event-driven XML processing loop with periodic message processing
+            long lastMessageCheck = System.currentTimeMillis();
+            while (!socket.isClosed() && running.get() && context.getState() != ClientState.CLOSED) {
+                // Between two XML events is a safe point to hand the connection off, no handler is in the middle of a stanza
+                if (handoffConnections != null) {
+                    handedOff = handOffAtSafePoint(new ClientConnection(socket, input, xmlWriter, context));
+                    break;
+                }
                 try {
-                    context = new ClientContext(ClientState.WAITING_FOR_STREAM_START, xmlWriter, clientRegistry, connectedUsernames);
-
-                    // Event-driven XML processing loop with periodic message processing
-                    long lastMessageCheck = System.currentTimeMillis();
-                    while (!socket.isClosed() && running.get() && context.getState() != ClientState.CLOSED) {
-                        try {
-                            boolean hasXmlEvent = xmlReader.hasNext();
-
-                            if (hasXmlEvent) {
-                                int event = xmlReader.next();
-                                context = processXmlEvent(xmlReader, context, event);
-                            }
-
-                            // Process pending messages for this client after XML events or periodically
-                            long currentTime = System.currentTimeMillis();
-                            if (context.getFullJid() != null && (hasXmlEvent || currentTime - lastMessageCheck > 100)) {
-                                ClientSession session = context.findClientSession(context.getFullJid());
-                                if (session != null && session.hasPendingMessages()) {
-                                    session.processPendingMessages();
-                                }
-                                lastMessageCheck = currentTime;
-                            }
-
-                            if (!hasXmlEvent) {
-                                // Brief sleep to avoid busy-waiting when no XML events are available
-                                logger.log(Level.INFO, "DEBUG: No XML events available for client {0}, sleeping",
-                                        context.getFullJid() != null ? context.getFullJid() : "unknown");
-                                Thread.sleep(10);
-                            }
-
-                        } catch (XMLStreamException e) {
-                            // Connection closed or malformed XML - but also handle socket timeouts
-                            if (e.getCause() instanceof java.net.SocketTimeoutException) {
-                                logger.log(Level.FINE, "Socket timeout while reading XML, checking for pending messages");
-                                // Socket timeout - use this opportunity to process pending messages
-                                if (context.getFullJid() != null) {
-                                    ClientSession session = context.findClientSession(context.getFullJid());
-                                    if (session != null && session.hasPendingMessages()) {
-                                        try {
-                                            session.processPendingMessages();
-                                        } catch (XMLStreamException processingException) {
-                                            logger.log(Level.WARNING, "Failed to process pending messages during timeout", processingException);
-                                        }
-                                    }
-                                }
-                            } else {
-                                logger.log(Level.FINE, "XML parsing error, closing connection", e);
-                                break;
-                            }
-                        } catch (InterruptedException e) {
-                            // Thread interrupted, close connection
-                            Thread.currentThread().interrupt();
-                            break;
+                    // Waits for input if the parser was released
+                    XMLStreamReader xmlReader = input.xmlReader();
+                    boolean hasXmlEvent = xmlReader.hasNext();
+
+                    if (hasXmlEvent) {
+                        int event = xmlReader.next();
+                        ClientContext previous = context;
+                        input.handlingEvent(event);
+                        context = processXmlEvent(xmlReader, context, event);
+                        input.eventHandled(event);
+                        if (context != previous) {
+                            servedClients.put(socket, context);
                         }
                     }
-                } finally {
-                    // Remove client from registry BEFORE closing resources to prevent routing race conditions
-                    if (context != null && context.getFullJid() != null) {
-                        clientRegistry.remove(context.getFullJid());
-                        clientRegistry.remove(context.getBareJid());
-                        // Remove username from connected usernames set for efficient duplicate checking
-                        if (context.getUsername() != null) {
-                            connectedUsernames.remove(context.getUsername());
+
+                    // Process pending messages for this client after XML events or periodically
+                    long currentTime = System.currentTimeMillis();
+                    if (context.getFullJid() != null && (hasXmlEvent || currentTime - lastMessageCheck > 100)) {
+                        ClientSession session = context.findClientSession(context.getFullJid());
+                        if (session != null && session.hasPendingMessages()) {
+                            session.processPendingMessages();
                         }
-                        logger.log(Level.INFO, "Removed client {0} from registry", context.getFullJid());
+                        lastMessageCheck = currentTime;
+                    }
+
+                    if (!hasXmlEvent) {
+                        // Brief sleep to avoid busy-waiting when no XML events are available
+                        logger.log(Level.INFO, "DEBUG: No XML events available for client {0}, sleeping",
+                                context.getFullJid() != null ? context.getFullJid() : "unknown");
+                        Thread.sleep(10);
                     }
 
-                    try {
-                        if (xmlWriter != null && context != null && context.getState() != ClientState.CLOSED) {
-                            // Properly close the XML stream if not already closed
-                            try {
-                                xmlWriter.writeEndElement(); // Close the stream:stream element
-                                xmlWriter.writeEndDocument(); // Close the XML document
-                                xmlWriter.flush();
-                            } catch (XMLStreamException e) {
-                                logger.log(Level.FINE, "Error properly closing XML stream", e);
+                } catch (XMLStreamException e) {
+                    // Connection closed or malformed XML - but also handle socket timeouts
+                    if (e.getCause() instanceof java.net.SocketTimeoutException) {
+                        logger.log(Level.FINE, "Socket timeout while reading XML, checking for pending messages");
+                        // Socket timeout - use this opportunity to process pending messages
+                        if (context.getFullJid() != null) {
+                            ClientSession session = context.findClientSession(context.getFullJid());
+                            if (session != null && session.hasPendingMessages()) {
+                                try {
+                                    session.processPendingMessages();
+                                } catch (XMLStreamException processingException) {
+                                    logger.log(Level.WARNING, "Failed to process pending messages during timeout", processingException);
+                                }
                             }
                         }
-                        if (xmlWriter != null) {
-                            xmlWriter.close();
+                        if (input.releaseIfIdle(IDLE_RELEASE_MS)) {
+                            logger.log(Level.FINE, "Released the parser of idle client {0}", context.getFullJid());
                         }
-                    } catch (XMLStreamException e) {
-                        logger.log(Level.FINE, "Error closing XML writer", e);
-                    }
-                    try {
-                        if (xmlReader != null) {
-                            xmlReader.close();
+                        if (xmlWriter.releaseIfIdle(IDLE_RELEASE_MS)) {
+                            logger.log(Level.FINE, "Released the writer of idle client {0}", context.getFullJid());
                         }
-                    } catch (XMLStreamException e) {
-                        logger.log(Level.FINE, "Error closing XML reader", e);
+                    } else {
+                        logger.log(Level.FINE, "XML parsing error, closing connection", e);
+                        break;
                     }
+                } catch (InterruptedException e) {
+                    // Thread interrupted, close connection
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
+        } finally {
+            servedClients.remove(socket);
+            if (!handedOff) {
+                closeClient(socket, input, xmlWriter, context);
+            }
+            openClients.remove(socket);
+            activeConnections.decrementAndGet();
+            if (handedOff) {
+                logger.log(Level.INFO, "Client {0} handed off", context.getFullJid());
+            } else {
+                logger.info("Client disconnected, active connections: " + activeConnections.get());
+            }
+        }
+    }
 
+    private void closeClient(Socket socket, ClientInput input, ClientOutput xmlWriter, ClientContext context) {
+        // Remove client from registry BEFORE closing resources to prevent routing race conditions
+        if (context.getFullJid() != null) {
+            mucService.leaveAll(context.getFullJid());
+            pubSubService.unsubscribeAll(context.getFullJid());
+            boolean lastOfAccount = context.unregisterClient();
+            if (lastOfAccount && context.getRemoteRouter() != null) {
+                context.getRemoteRouter().sessionClosed(context.getFullJid());
+            }
+            logger.log(Level.INFO, "Removed client {0} from registry", context.getFullJid());
+        }
+
+        try {
+            if (context.getState() != ClientState.CLOSED) {
+                // Properly close the XML stream if not already closed
+                try {
+                    xmlWriter.writeEndElement(); // Close the stream:stream element
+                    xmlWriter.writeEndDocument(); // Close the XML document
+                    xmlWriter.flush();
+                } catch (XMLStreamException e) {
+                    logger.log(Level.FINE, "Error properly closing XML stream", e);
+                }
+            }
+            xmlWriter.close();
+        } catch (XMLStreamException e) {
+            logger.log(Level.FINE, "Error closing XML writer", e);
+        }
+        input.close();
+        try {
+            socket.close();
         } catch (IOException e) {
             if (running.get()) {
-                logger.log(Level.FINE, "IOException handling client connection", e);
+                logger.log(Level.FINE, "IOException closing client connection", e);
             }
-            // Otherwise, expected during shutdown
-        } catch (XMLStreamException e) {
-            logger.log(Level.FINE, "XMLStreamException handling client connection", e);
-        } finally {
-            openClients.remove(socket);
-            activeConnections.decrementAndGet();
-            logger.info("Client disconnected, active connections: " + activeConnections.get());
         }
     }
 
@@ -337,8 +593,11 @@ public class SimpleXmppServer {
             return saslHandler.handleSaslAuth(xmlReader, context);
         }
 
-        // Handle IQ stanzas
+        // Handle IQ stanzas, the ones addressed to the publish-subscribe service go there
         if ("iq".equals(localName) && XmppServerConfig.NAMESPACE_CLIENT.equals(namespace)) {
+            if (pubSubService.getDomain().equals(xmlReader.getAttributeValue(null, "to"))) {
+                return pubSubService.handleIqStanza(xmlReader, context);
+            }
             return iqHandler.handleIqStanza(xmlReader, context);
         }
 
@@ -347,6 +606,11 @@ public class SimpleXmppServer {
             return messageHandler.handleMessageStanza(xmlReader, context);
         }
 
+        // Handle presence stanzas (multi-user chat rooms)
+        if ("presence".equals(localName) && XmppServerConfig.NAMESPACE_CLIENT.equals(namespace)) {
+            return presenceHandler.handlePresenceStanza(xmlReader, context);
+        }
+
         return context;
     }
 
@@ -1,9 +1,15 @@
 package me.forketyfork.growing.xmpp;
 
+import me.forketyfork.growing.MessageProbe;
+import org.hamcrest.Matcher;
 import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.chat2.Chat;
 import org.jivesoftware.smack.chat2.ChatManager;
+import org.jivesoftware.smack.filter.MessageTypeFilter;
+import org.jivesoftware.smack.filter.StanzaTypeFilter;
 import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.StandardExtensionElement;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smack.tcp.XMPPTCPConnectionConfiguration;
 import org.junit.jupiter.api.AfterEach;
@@ -12,13 +18,18 @@ import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.jid.parts.Resourcepart;
 
+import javax.net.SocketFactory;
+import javax.xml.namespace.QName;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -53,12 +64,22 @@ public class SimpleXmppServerTest {
     }
 
     private AbstractXMPPConnection newConnection(int port, String user, String resource, String password) throws Exception {
+        return newConnection(port, user, resource, password, SocketFactory.getDefault());
+    }
+
+    private AbstractXMPPConnection newLoopbackConnection(String user, String resource) throws Exception {
+        return newConnection(server.getConfig().port(), user, resource, "password", server.loopbackSocketFactory());
+    }
+
+    private AbstractXMPPConnection newConnection(int port, String user, String resource, String password,
+                                                 SocketFactory socketFactory) throws Exception {
         XMPPTCPConnectionConfiguration config = XMPPTCPConnectionConfiguration.builder()
                 .setHost("localhost")
                 .setXmppDomain("localhost")
                 .setPort(port)
                 .setSecurityMode(org.jivesoftware.smack.ConnectionConfiguration.SecurityMode.disabled)
                 .setCompressionEnabled(false)
+                .setSocketFactory(socketFactory)
                 .build();
         AbstractXMPPConnection connection = new XMPPTCPConnection(config);
         try {
@@ -115,6 +136,66 @@ public class SimpleXmppServerTest {
         assertEquals("hello", messages.getFirst());
     }
 
+    @Test
+    public void deliversToLoopbackClientsWithoutWaitingForTheSocketTimeout() throws Exception {
+        int port = freePort();
+        server = new SimpleXmppServer(new XmppServerConfig(port, "localhost", 10_000, 1000, 100, java.util.Map.of()));
+        server.start();
+
+        AbstractXMPPConnection alice = newLoopbackConnection("alice", "res1");
+        AbstractXMPPConnection bob = newConnection(port, "bob", "res2");
+
+        List<String> messages = new CopyOnWriteArrayList<>();
+        ChatManager.getInstanceFor(alice).addIncomingListener((_, message, _) -> messages.add(message.getBody()));
+
+        ChatManager.getInstanceFor(bob).chatWith(JidCreate.entityBareFrom("alice@localhost")).send("from tcp");
+        // Far below the socket timeout, the server thread of alice is woken up by the queued message
+        for (int i = 0; i < 100 && messages.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(List.of("from tcp"), messages);
+    }
+
+    @Test
+    public void streamsMessagesInOrderWithinLatencyBudget() throws Exception {
+        int messageCount = 1_000;
+        server = new SimpleXmppServer(new XmppServerConfig(freePort(), "localhost", 1000, 1000, 100, java.util.Map.of()));
+        server.start();
+        AbstractXMPPConnection alice = newLoopbackConnection("alice", "res1");
+        AbstractXMPPConnection bob = newLoopbackConnection("bob", "res2");
+        MessageProbe probe = new MessageProbe(10_000);
+        ChatManager.getInstanceFor(bob).addIncomingListener(probe);
+
+        Chat chat = ChatManager.getInstanceFor(alice).chatWith(JidCreate.entityBareFrom("bob@localhost"));
+        long[] sentNanos = new long[messageCount];
+        List<Matcher<? super String>> expected = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            sentNanos[i] = System.nanoTime();
+            chat.send(Integer.toString(i));
+            expected.add(equalTo(Integer.toString(i)));
+        }
+
+        probe.receivesInOrder(expected);
+        long p99Ms = probe.latencyPercentile(99, TimeUnit.MILLISECONDS, m -> sentNanos[Integer.parseInt(m.body())]);
+        assertTrue(p99Ms < 500, "99th percentile latency " + p99Ms + " ms");
+        assertTrue(probe.messagesPerSecond() > 500, probe.messagesPerSecond() + " messages per second");
+    }
+
+    @Test
+    public void resetsDroppedLoopbackConnections() throws Exception {
+        server = new SimpleXmppServer(new XmppServerConfig(freePort(), "localhost", 200, 1000, 100, java.util.Map.of()));
+        server.start();
+        AbstractXMPPConnection alice = newLoopbackConnection("alice", "res1");
+
+        assertEquals(1, server.dropConnections("alice"));
+
+        for (int i = 0; i < 100 && alice.isConnected(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(alice.isConnected());
+    }
+
     @Test
     public void rejectsConnectionsBeyondLimit() throws Exception {
         int port = freePort();
@@ -181,7 +262,225 @@ public class SimpleXmppServerTest {
         AbstractXMPPConnection alice1 = newConnection(port, "alice", "res1");
         assertTrue(alice1.isAuthenticated());
 
-        // Second connection with same username should be rejected with conflict
-        assertThrows(Exception.class, () -> newConnection(port, "alice", "res2"));
+        // Second connection binding the same resource should be rejected with conflict
+        assertThrows(Exception.class, () -> newConnection(port, "alice", "res1"));
+        assertEquals(java.util.Set.of("alice@localhost/res1"), server.getLocalFullJids());
+    }
+
+    @Test
+    public void routesMessagesToEachResourceOfAnAccount() throws Exception {
+        server = new SimpleXmppServer(new XmppServerConfig(freePort(), "localhost", 200, 1000, 100, java.util.Map.of()));
+        server.start();
+        AbstractXMPPConnection first = newLoopbackConnection("alice", "res1");
+        AbstractXMPPConnection second = newLoopbackConnection("alice", "res2");
+        AbstractXMPPConnection bob = newLoopbackConnection("bob", "res");
+
+        List<String> firstMessages = new CopyOnWriteArrayList<>();
+        List<String> secondMessages = new CopyOnWriteArrayList<>();
+        first.addAsyncStanzaListener(stanza -> firstMessages.add(((Message) stanza).getBody()), StanzaTypeFilter.MESSAGE);
+        second.addAsyncStanzaListener(stanza -> secondMessages.add(((Message) stanza).getBody()), StanzaTypeFilter.MESSAGE);
+
+        sendChat(bob, "alice@localhost/res2", "to the second");
+        // The first resource bound gets the messages to the bare JID
+        sendChat(bob, "alice@localhost", "to the account");
+        for (int i = 0; i < 20 && (firstMessages.isEmpty() || secondMessages.isEmpty()); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(List.of("to the account"), firstMessages);
+        assertEquals(List.of("to the second"), secondMessages);
+
+        // Once the first resource is gone, the messages to the bare JID go to the second
+        first.disconnect();
+        for (int i = 0; i < 20 && server.getLocalFullJids().contains("alice@localhost/res1"); i++) {
+            Thread.sleep(100);
+        }
+        sendChat(bob, "alice@localhost", "to the account again");
+        for (int i = 0; i < 20 && secondMessages.size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(List.of("to the second", "to the account again"), secondMessages);
+    }
+
+    private static void sendChat(AbstractXMPPConnection from, String to, String body) throws Exception {
+        from.sendStanza(from.getStanzaFactory().buildMessageStanza()
+                .to(JidCreate.from(to))
+                .ofType(Message.Type.chat)
+                .setBody(body)
+                .build());
+    }
+
+    @Test
+    public void handsOffSessionsToSuccessorWithoutDisconnecting() throws Exception {
+        int port = freePort();
+        XmppServerConfig config = new XmppServerConfig(port, "localhost", 200, 1000, 100, java.util.Map.of());
+        server = new SimpleXmppServer(config);
+        server.start();
+
+        AbstractXMPPConnection alice = newConnection(port, "alice", "res1");
+        AbstractXMPPConnection bob = newConnection(port, "bob", "res2");
+
+        List<String> messages = new CopyOnWriteArrayList<>();
+        ChatManager.getInstanceFor(bob).addIncomingListener((_, message, _) -> messages.add(message.getBody()));
+        Chat chat = ChatManager.getInstanceFor(alice).chatWith(JidCreate.entityBareFrom("bob@localhost"));
+        chat.send("before");
+        for (int i = 0; i < 20 && messages.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        SimpleXmppServer successor = new SimpleXmppServer(config);
+        HandoffReport report = server.handoffTo(successor, 1000);
+        server = successor;
+
+        // An idle client reaches a safe point within the socket timeout
+        assertEquals(2, report.adopted());
+        assertEquals(0, report.closed());
+        assertTrue(report.pauseMs() < 1000, "Handoff paused clients for " + report.pauseMs() + " ms");
+
+        chat.send("after");
+        for (int i = 0; i < 20 && messages.size() < 2; i++) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(List.of("before", "after"), messages);
+        assertTrue(alice.isConnected());
+        assertTrue(bob.isConnected());
+
+        // The successor keeps accepting clients on the same port and knows the resources bound before
+        assertThrows(Exception.class, () -> newConnection(port, "alice", "res1"));
+        assertTrue(newConnection(port, "carol", "res1").isAuthenticated());
+    }
+
+    @Test
+    public void closesSessionsThatReachTheirSafePointAfterTheHandoff() throws Exception {
+        XmppServerConfig config = new XmppServerConfig(freePort(), "localhost", 200, 1000, 100, java.util.Map.of());
+        SimpleXmppServer predecessor = new SimpleXmppServer(config);
+        predecessor.start();
+        server = predecessor;
+
+        SimpleXmppServer successor = new SimpleXmppServer(config);
+        predecessor.handoffTo(successor, 1000);
+        server = successor;
+
+        // A client loop that was still in the middle of a stanza when the successor adopted the others
+        // is told to close its connection, the server state is all that matters here
+        assertFalse(predecessor.handOffAtSafePoint(new ClientConnection(null, null, null, null)));
+        assertFalse(predecessor.handOffAtSafePoint(new ClientConnection(null, null, null, null)));
+    }
+
+    @Test
+    public void forwardsExtensionElementsInPlaceOfBody() throws Exception {
+        int port = freePort();
+        server = new SimpleXmppServer(new XmppServerConfig(port, "localhost", 200, 1000, 100, java.util.Map.of()));
+        server.start();
+
+        AbstractXMPPConnection alice = newConnection(port, "alice", "res1");
+        AbstractXMPPConnection bob = newConnection(port, "bob", "res2");
+
+        List<Message> messages = new CopyOnWriteArrayList<>();
+        bob.addAsyncStanzaListener(stanza -> messages.add((Message) stanza), StanzaTypeFilter.MESSAGE);
+
+        alice.sendStanza(alice.getStanzaFactory().buildMessageStanza()
+                .to(JidCreate.entityBareFrom("bob@localhost"))
+                .ofType(Message.Type.chat)
+                .addExtension(StandardExtensionElement.builder("sol", "urn:xmpp:sol:binary")
+                        .addAttribute("version", "1")
+                        .setText("AQHQDw==")
+                        .build())
+                .build());
+
+        for (int i = 0; i < 20 && messages.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(1, messages.size());
+        assertNull(messages.getFirst().getBody());
+        StandardExtensionElement payload = (StandardExtensionElement) messages.getFirst()
+                .getExtension(new QName("urn:xmpp:sol:binary", "sol"));
+        assertNotNull(payload);
+        assertEquals("1", payload.getAttributeValue("version"));
+        assertEquals("AQHQDw==", payload.getText());
+    }
+
+    @Test
+    public void broadcastsRoomMessageToAllOccupants() throws Exception {
+        int port = freePort();
+        server = new SimpleXmppServer(new XmppServerConfig(port, "localhost", 200, 1000, 100, java.util.Map.of()));
+        server.start();
+
+        AbstractXMPPConnection auction = newConnection(port, "auction-item-1", "Auction");
+        AbstractXMPPConnection sniper1 = newConnection(port, "sniper1", "res1");
+        AbstractXMPPConnection sniper2 = newConnection(port, "sniper2", "res2");
+
+        List<Message> auctionMessages = collectGroupchatMessages(auction);
+        List<Message> sniper1Messages = collectGroupchatMessages(sniper1);
+        List<Message> sniper2Messages = collectGroupchatMessages(sniper2);
+
+        joinRoom(auction, "item-1@conference.localhost/auction");
+        joinRoom(sniper1, "item-1@conference.localhost/sniper1");
+        joinRoom(sniper2, "item-1@conference.localhost/sniper2");
+
+        auction.sendStanza(auction.getStanzaFactory().buildMessageStanza()
+                .to(JidCreate.entityBareFrom("item-1@conference.localhost"))
+                .ofType(Message.Type.groupchat)
+                .setBody("SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1000; Increment: 98; Bidder: other;")
+                .build());
+
+        for (int i = 0; i < 20 && (auctionMessages.isEmpty() || sniper1Messages.isEmpty() || sniper2Messages.isEmpty()); i++) {
+            Thread.sleep(100);
+        }
+
+        for (List<Message> messages : List.of(auctionMessages, sniper1Messages, sniper2Messages)) {
+            assertEquals(1, messages.size());
+            assertEquals("item-1@conference.localhost/auction", messages.getFirst().getFrom().toString());
+            assertEquals("SOLVersion: 1.1; Event: PRICE; CurrentPrice: 1000; Increment: 98; Bidder: other;",
+                    messages.getFirst().getBody());
+        }
+    }
+
+    @Test
+    public void rejectsRoomMessageFromNonOccupant() throws Exception {
+        int port = freePort();
+        server = new SimpleXmppServer(new XmppServerConfig(port, "localhost", 200, 1000, 100, java.util.Map.of()));
+        server.start();
+
+        AbstractXMPPConnection alice = newConnection(port, "alice", "res1");
+
+        List<Message> messages = new CopyOnWriteArrayList<>();
+        alice.addAsyncStanzaListener(stanza -> messages.add((Message) stanza), StanzaTypeFilter.MESSAGE);
+
+        alice.sendStanza(alice.getStanzaFactory().buildMessageStanza()
+                .to(JidCreate.entityBareFrom("item-1@conference.localhost"))
+                .ofType(Message.Type.groupchat)
+                .setBody("hello")
+                .build());
+
+        for (int i = 0; i < 20 && messages.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(1, messages.size());
+        assertEquals("Message delivery failed: not-acceptable", messages.getFirst().getBody());
+    }
+
+    private List<Message> collectGroupchatMessages(AbstractXMPPConnection connection) {
+        List<Message> messages = new CopyOnWriteArrayList<>();
+        connection.addAsyncStanzaListener(stanza -> messages.add((Message) stanza), MessageTypeFilter.GROUPCHAT);
+        return messages;
+    }
+
+    private void joinRoom(AbstractXMPPConnection connection, String roomJidWithNick) throws Exception {
+        List<Presence> selfPresences = new CopyOnWriteArrayList<>();
+        connection.addAsyncStanzaListener(stanza -> selfPresences.add((Presence) stanza),
+                stanza -> stanza instanceof Presence && roomJidWithNick.equals(String.valueOf(stanza.getFrom())));
+
+        connection.sendStanza(connection.getStanzaFactory().buildPresenceStanza()
+                .to(JidCreate.from(roomJidWithNick))
+                .addExtension(StandardExtensionElement.builder("x", XmppServerConfig.NAMESPACE_MUC).build())
+                .build());
+
+        for (int i = 0; i < 20 && selfPresences.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(selfPresences.isEmpty(), "Did not receive self-presence from " + roomJidWithNick);
     }
 }
@@ -0,0 +1,275 @@
+package me.forketyfork.growing.xmpp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Follows the elements in the raw bytes of a client's input and keeps the original bytes of every top-level
+ * {@code message}, so it can be forwarded without being serialized again, see {@link EncodedStanza#forward}.
+ * <p>
+ * Only the markup is followed: tags, quoted attribute values, comments, CDATA sections and processing instructions.
+ * All of it is ASCII, which never occurs inside a multibyte UTF-8 sequence, so the bytes aren't decoded.
+ * The top-level elements that aren't streams are numbered from 1 in the order the parser reports them,
+ * which tells {@link ClientInput} what stanza the kept bytes belong to. Used by the connection's thread only.
+ */
+final class StanzaFramer {
+
+    private static final byte[] MESSAGE = "message".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STREAM = "stream".getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_CAPACITY = 256;
+
+    private enum State {
+        TEXT, TAG_OPEN, START_TAG_NAME, ATTRIBUTES, ATTRIBUTE_VALUE, END_TAG,
+        MARKUP, COMMENT, CDATA, DECLARATION, PROCESSING_INSTRUCTION
+    }
+
+    /**
+     * The original bytes of a top-level message, from its start tag to its end tag.
+     */
+    record RawStanza(long ordinal, byte[] bytes, int length) {
+    }
+
+    private State state = State.TEXT;
+    // Open elements, and how many of them are streams
+    private int depth;
+    private int streamDepth;
+    // The start tag being read is of a top-level element, of a stream
+    private boolean topLevel;
+    private boolean stream;
+    // Bytes of the name matched so far against "message", and against "stream" after the last colon, -1 if it differs
+    private int messageMatched;
+    private int streamMatched;
+    private boolean slash;
+    private byte quote;
+    // Consecutive '-', ']' or '?' that may end a comment, a CDATA section or a processing instruction
+    private int markers;
+    private long ordinal;
+
+    // Null unless a top-level element is being kept; its ordinal is 0 until its name shows it is a message
+    private byte[] captured;
+    private int capturedLength;
+    private long capturedOrdinal;
+    // Null until the first message is kept
+    private ArrayDeque<RawStanza> completed;
+
+    /**
+     * Follow bytes as they arrive from the client, each of them exactly once.
+     */
+    void scan(byte[] bytes, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            byte b = bytes[i];
+            if (captured != null) {
+                append(b);
+            }
+            next(b);
+        }
+    }
+
+    private void next(byte b) {
+        switch (state) {
+            case TEXT -> {
+                if (b == '<') {
+                    state = State.TAG_OPEN;
+                    if (depth == streamDepth) {
+                        captured = new byte[INITIAL_CAPACITY];
+                        capturedLength = 0;
+                        capturedOrdinal = 0;
+                        append(b);
+                    }
+                }
+            }
+            case TAG_OPEN -> {
+                if (b == '/' || b == '!' || b == '?') {
+                    if (depth == streamDepth) {
+                        // Not a stanza
+                        captured = null;
+                    }
+                    state = b == '/' ? State.END_TAG : b == '!' ? State.MARKUP : State.PROCESSING_INSTRUCTION;
+                    markers = 0;
+                } else {
+                    state = State.START_TAG_NAME;
+                    topLevel = depth == streamDepth;
+                    messageMatched = 0;
+                    streamMatched = 0;
+                    nameByte(b);
+                }
+            }
+            case START_TAG_NAME -> {
+                if (isWhitespace(b) || b == '/' || b == '>') {
+                    nameEnded();
+                    state = State.ATTRIBUTES;
+                    slash = false;
+                    next(b);
+                } else {
+                    nameByte(b);
+                }
+            }
+            case ATTRIBUTES -> {
+                if (b == '"' || b == '\'') {
+                    quote = b;
+                    state = State.ATTRIBUTE_VALUE;
+                    slash = false;
+                } else if (b == '/') {
+                    slash = true;
+                } else if (b == '>') {
+                    startTagEnded();
+                } else if (!isWhitespace(b)) {
+                    slash = false;
+                }
+            }
+            case ATTRIBUTE_VALUE -> {
+                if (b == quote) {
+                    state = State.ATTRIBUTES;
+                }
+            }
+            case END_TAG -> {
+                if (b == '>') {
+                    state = State.TEXT;
+                    if (depth > 0) {
+                        if (depth == streamDepth) {
+                            // The end of a stream
+                            streamDepth--;
+                        }
+                        depth--;
+                        if (captured != null && depth == streamDepth) {
+                            complete();
+                        }
+                    }
+                }
+            }
+            case MARKUP -> {
+                if (b == '-') {
+                    state = State.COMMENT;
+                    // The second dash of the comment start doesn't count
+                    markers = -1;
+                } else if (b == '[') {
+                    state = State.CDATA;
+                } else {
+                    state = b == '>' ? State.TEXT : State.DECLARATION;
+                }
+            }
+            case COMMENT -> {
+                if (b == '-') {
+                    markers++;
+                } else {
+                    state = b == '>' && markers >= 2 ? State.TEXT : State.COMMENT;
+                    markers = 0;
+                }
+            }
+            case CDATA -> {
+                if (b == ']') {
+                    markers++;
+                } else {
+                    state = b == '>' && markers >= 2 ? State.TEXT : State.CDATA;
+                    markers = 0;
+                }
+            }
+            case PROCESSING_INSTRUCTION -> {
+                if (b == '?') {
+                    markers = 1;
+                } else {
+                    state = b == '>' && markers == 1 ? State.TEXT : State.PROCESSING_INSTRUCTION;
+                    markers = 0;
+                }
+            }
+            case DECLARATION -> {
+                if (b == '>') {
+                    state = State.TEXT;
+                }
+            }
+        }
+    }
+
+    private void nameByte(byte b) {
+        messageMatched = messageMatched >= 0 && messageMatched < MESSAGE.length && b == MESSAGE[messageMatched]
+                ? messageMatched + 1 : -1;
+        if (b == ':') {
+            streamMatched = 0;
+        } else {
+            streamMatched = streamMatched >= 0 && streamMatched < STREAM.length && b == STREAM[streamMatched]
+                    ? streamMatched + 1 : -1;
+        }
+    }
+
+    private void nameEnded() {
+        stream = streamMatched == STREAM.length;
+        if (!topLevel) {
+            return;
+        }
+        if (stream) {
+            captured = null;
+        } else {
+            ordinal++;
+            if (captured != null && messageMatched == MESSAGE.length) {
+                capturedOrdinal = ordinal;
+            } else {
+                captured = null;
+            }
+        }
+    }
+
+    private void startTagEnded() {
+        state = State.TEXT;
+        if (slash) {
+            if (captured != null && topLevel) {
+                complete();
+            }
+        } else {
+            if (topLevel && stream) {
+                streamDepth = depth + 1;
+            }
+            depth++;
+        }
+    }
+
+    private void append(byte b) {
+        if (capturedLength == captured.length) {
+            captured = Arrays.copyOf(captured, capturedLength * 2);
+        }
+        captured[capturedLength++] = b;
+    }
+
+    private void complete() {
+        if (completed == null) {
+            completed = new ArrayDeque<>();
+        }
+        completed.add(new RawStanza(capturedOrdinal, captured, capturedLength));
+        captured = null;
+    }
+
+    /**
+     * @return true if the bytes of the given top-level element are kept, complete or not yet
+     */
+    boolean keeps(long stanzaOrdinal) {
+        discardBefore(stanzaOrdinal);
+        return (completed != null && !completed.isEmpty() && completed.peek().ordinal() == stanzaOrdinal)
+                || (captured != null && capturedOrdinal == stanzaOrdinal);
+    }
+
+    /**
+     * @return the complete bytes of the given top-level element, null if they weren't kept
+     */
+    RawStanza take(long stanzaOrdinal) {
+        discardBefore(stanzaOrdinal);
+        if (completed != null && !completed.isEmpty() && completed.peek().ordinal() == stanzaOrdinal) {
+            return completed.poll();
+        }
+        return null;
+    }
+
+    /**
+     * Drop the bytes kept for top-level elements before the given one, their handlers didn't want them.
+     */
+    void discardBefore(long stanzaOrdinal) {
+        if (completed != null) {
+            while (!completed.isEmpty() && completed.peek().ordinal() < stanzaOrdinal) {
+                completed.poll();
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,19 @@
+package me.forketyfork.growing.xmpp;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Interface for handling presence stanzas.
+ */
+public interface XmppPresenceHandler {
+
+    /**
+     * Handle presence stanza.
+     * @param xmlReader the XML stream reader positioned at the presence start element
+     * @param context the client context containing state and connection info
+     * @return the updated client context
+     * @throws XMLStreamException if XML processing fails
+     */
+    ClientContext handlePresenceStanza(XMLStreamReader xmlReader, ClientContext context) throws XMLStreamException;
+}
@@ -32,6 +32,16 @@ public record XmppServerConfig(
     public static final String NAMESPACE_COMPRESSION = "http://jabber.org/features/compress";
     public static final String NAMESPACE_IQ_AUTH = "jabber:iq:auth";
     public static final String NAMESPACE_IQ_ROSTER = "jabber:iq:roster";
+    public static final String NAMESPACE_STANZAS = "urn:ietf:params:xml:ns:xmpp-stanzas";
+    public static final String NAMESPACE_MUC = "http://jabber.org/protocol/muc";
+    public static final String NAMESPACE_MUC_USER = "http://jabber.org/protocol/muc#user";
+    public static final String NAMESPACE_PUBSUB = "http://jabber.org/protocol/pubsub";
+    public static final String NAMESPACE_PUBSUB_EVENT = "http://jabber.org/protocol/pubsub#event";
+
+    // Subdomain hosting the multi-user chat rooms, e.g. item-1@conference.localhost
+    public static final String MUC_SUBDOMAIN = "conference";
+    // Subdomain hosting the publish-subscribe service with one node per item
+    public static final String PUBSUB_SUBDOMAIN = "pubsub";
 
     /**
      * Create configuration with default settings.
@@ -132,6 +142,20 @@ public record XmppServerConfig(
         return userCredentials;
     }
 
+    /**
+     * @return the domain of the multi-user chat service
+     */
+    public String mucDomain() {
+        return MUC_SUBDOMAIN + "." + serverName;
+    }
+
+    /**
+     * @return the domain of the publish-subscribe service
+     */
+    public String pubSubDomain() {
+        return PUBSUB_SUBDOMAIN + "." + serverName;
+    }
+
     /**
      * Builder for {@link XmppServerConfig}.
      */